@@ -189,7 +189,7 @@ public final class Phase4ENTSOGSender
     protected WSS4JAttachment createMainAttachment (@Nonnull final AS4OutgoingAttachment aPayload,
                                                     @Nonnull final AS4ResourceHelper aResHelper) throws IOException
     {
-      final WSS4JAttachment aPayloadAttachment = WSS4JAttachment.createOutgoingFileAttachment (aPayload, aResHelper);
+      final WSS4JAttachment aPayloadAttachment = super.createMainAttachment (aPayload, aResHelper);
       if (m_aPayloadParams != null)
       {
         if (m_aPayloadParams.getDocumentType () != null)
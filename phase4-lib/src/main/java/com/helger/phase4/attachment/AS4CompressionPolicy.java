@@ -0,0 +1,463 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.annotation.CheckForSigned;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.builder.IBuilder;
+import com.helger.commons.collection.impl.CommonsLinkedHashSet;
+import com.helger.commons.collection.impl.ICommonsOrderedSet;
+import com.helger.commons.mime.IMimeType;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * A policy that decides whether an outgoing attachment should be compressed
+ * and how. Compression is skipped for payloads smaller than a configurable
+ * threshold and for MIME types that are already compressed (like images or
+ * ZIP files), because that only costs CPU time without reducing the size. The
+ * deflate level can be configured, and the {@link Deflater} instances are
+ * pooled and reused across attachments, avoiding the native memory allocation
+ * per attachment.<br>
+ * Instances of this class are thread-safe and should be reused.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@ThreadSafe
+public class AS4CompressionPolicy
+{
+  /** The default compression mode to use */
+  public static final EAS4CompressionMode DEFAULT_COMPRESSION_MODE = EAS4CompressionMode.GZIP;
+  /** Payloads smaller than this number of bytes are not compressed */
+  public static final long DEFAULT_MIN_SIZE = 1024;
+  /** The default deflate level */
+  public static final int DEFAULT_COMPRESSION_LEVEL = Deflater.DEFAULT_COMPRESSION;
+  /** The default maximum number of pooled Deflater instances */
+  public static final int DEFAULT_MAX_POOLED_DEFLATERS = 16;
+
+  /**
+   * The MIME types that are not compressed by default, because they are
+   * already compressed. A trailing <code>*</code> matches all MIME types with
+   * the same prefix.
+   */
+  private static final String [] DEFAULT_INCOMPRESSIBLE_MIME_TYPES = { "application/gzip",
+                                                                        "application/x-gzip",
+                                                                        "application/zip",
+                                                                        "application/x-zip-compressed",
+                                                                        "application/x-7z-compressed",
+                                                                        "application/x-bzip2",
+                                                                        "application/x-xz",
+                                                                        "application/x-rar-compressed",
+                                                                        "application/vnd.rar",
+                                                                        "application/zstd",
+                                                                        "application/vnd.openxmlformats-officedocument.*",
+                                                                        "application/vnd.oasis.opendocument.*",
+                                                                        "image/jpeg",
+                                                                        "image/png",
+                                                                        "image/gif",
+                                                                        "image/webp",
+                                                                        "audio/*",
+                                                                        "video/*" };
+
+  // The GZIP header as written by java.util.zip.GZIPOutputStream
+  private static final byte [] GZIP_HEADER = { (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+  private final EAS4CompressionMode m_eCompressionMode;
+  private final long m_nMinSize;
+  private final ICommonsOrderedSet <String> m_aIncompressibleMimeTypes;
+  private final int m_nCompressionLevel;
+  private final BlockingQueue <Deflater> m_aDeflaterPool;
+
+  protected AS4CompressionPolicy (@Nullable final EAS4CompressionMode eCompressionMode,
+                                  @Nonnegative final long nMinSize,
+                                  @Nonnull final ICommonsOrderedSet <String> aIncompressibleMimeTypes,
+                                  final int nCompressionLevel,
+                                  @Nonnegative final int nMaxPooledDeflaters)
+  {
+    ValueEnforcer.isGE0 (nMinSize, "MinSize");
+    ValueEnforcer.notNull (aIncompressibleMimeTypes, "IncompressibleMimeTypes");
+    ValueEnforcer.isTrue (nCompressionLevel == Deflater.DEFAULT_COMPRESSION ||
+                          (nCompressionLevel >= Deflater.NO_COMPRESSION &&
+                           nCompressionLevel <= Deflater.BEST_COMPRESSION),
+                          () -> "Invalid compression level " + nCompressionLevel);
+    ValueEnforcer.isGE0 (nMaxPooledDeflaters, "MaxPooledDeflaters");
+    m_eCompressionMode = eCompressionMode;
+    m_nMinSize = nMinSize;
+    m_aIncompressibleMimeTypes = aIncompressibleMimeTypes.getClone ();
+    m_nCompressionLevel = nCompressionLevel;
+    m_aDeflaterPool = nMaxPooledDeflaters > 0 ? new ArrayBlockingQueue <> (nMaxPooledDeflaters) : null;
+  }
+
+  /**
+   * @return The compression mode to use for compressible payloads. May be
+   *         <code>null</code> to never compress.
+   */
+  @Nullable
+  public final EAS4CompressionMode getCompressionMode ()
+  {
+    return m_eCompressionMode;
+  }
+
+  /**
+   * @return The minimum payload size in bytes to be compressed. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getMinSize ()
+  {
+    return m_nMinSize;
+  }
+
+  /**
+   * @return A copy of all MIME types that are never compressed. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public final ICommonsOrderedSet <String> getAllIncompressibleMimeTypes ()
+  {
+    return m_aIncompressibleMimeTypes.getClone ();
+  }
+
+  /**
+   * @return The deflate level to use. Either
+   *         {@link Deflater#DEFAULT_COMPRESSION} or a value between 0 and 9.
+   */
+  public final int getCompressionLevel ()
+  {
+    return m_nCompressionLevel;
+  }
+
+  /**
+   * Check if the provided MIME type is considered to be already compressed.
+   *
+   * @param aMimeType
+   *        The MIME type to check. May be <code>null</code>.
+   * @return <code>true</code> if it is contained in the list of incompressible
+   *         MIME types, <code>false</code> if not.
+   */
+  public boolean isIncompressibleMimeType (@Nullable final IMimeType aMimeType)
+  {
+    if (aMimeType == null)
+      return false;
+
+    final String sMimeType = aMimeType.getAsStringWithoutParameters ().toLowerCase (Locale.ROOT);
+    for (final String sPattern : m_aIncompressibleMimeTypes)
+    {
+      if (sPattern.endsWith ("*"))
+      {
+        if (sMimeType.startsWith (sPattern.substring (0, sPattern.length () - 1)))
+          return true;
+      }
+      else
+        if (sMimeType.equals (sPattern))
+          return true;
+    }
+    return false;
+  }
+
+  /**
+   * Determine the compression mode to be used for a single payload.
+   *
+   * @param aMimeType
+   *        The MIME type of the uncompressed payload. May be
+   *        <code>null</code>.
+   * @param nSize
+   *        The size of the uncompressed payload in bytes, or a negative value
+   *        if it is unknown.
+   * @return The compression mode to use or <code>null</code> if the payload
+   *         should not be compressed.
+   */
+  @Nullable
+  public EAS4CompressionMode getCompressionModeToUse (@Nullable final IMimeType aMimeType,
+                                                     @CheckForSigned final long nSize)
+  {
+    if (m_eCompressionMode == null)
+      return null;
+
+    // Too small to be worth it
+    if (nSize >= 0 && nSize < m_nMinSize)
+      return null;
+
+    // Already compressed
+    if (isIncompressibleMimeType (aMimeType))
+      return null;
+
+    return m_eCompressionMode;
+  }
+
+  @Nonnull
+  private Deflater _borrowDeflater ()
+  {
+    final Deflater ret = m_aDeflaterPool == null ? null : m_aDeflaterPool.poll ();
+    // GZIP uses raw deflate data
+    return ret != null ? ret : new Deflater (m_nCompressionLevel, true);
+  }
+
+  private void _returnDeflater (@Nonnull final Deflater aDeflater)
+  {
+    aDeflater.reset ();
+    if (m_aDeflaterPool == null || !m_aDeflaterPool.offer (aDeflater))
+      aDeflater.end ();
+  }
+
+  /**
+   * Get an {@link OutputStream} to compress the provided {@link OutputStream}
+   * with the provided compression mode, using the compression level of this
+   * policy and a pooled {@link Deflater}. The {@link Deflater} is returned to
+   * the pool when the returned stream is closed.
+   *
+   * @param eCompressionMode
+   *        The compression mode to use. May not be <code>null</code>.
+   * @param aOS
+   *        The target {@link OutputStream}. May not be <code>null</code>.
+   * @return The compressing {@link OutputStream}. Never <code>null</code>.
+   * @throws IOException
+   *         In case of IO error
+   */
+  @Nonnull
+  public OutputStream getCompressStream (@Nonnull final EAS4CompressionMode eCompressionMode,
+                                         @Nonnull final OutputStream aOS) throws IOException
+  {
+    ValueEnforcer.notNull (eCompressionMode, "CompressionMode");
+    ValueEnforcer.notNull (aOS, "OS");
+
+    switch (eCompressionMode)
+    {
+      case GZIP:
+        return new PooledGZIPOutputStream (aOS, _borrowDeflater ());
+      default:
+        return eCompressionMode.getCompressStream (aOS);
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("CompressionMode", m_eCompressionMode)
+                                       .append ("MinSize", m_nMinSize)
+                                       .append ("IncompressibleMimeTypes", m_aIncompressibleMimeTypes)
+                                       .append ("CompressionLevel", m_nCompressionLevel)
+                                       .getToString ();
+  }
+
+  /**
+   * A GZIP output stream that uses a provided {@link Deflater} and returns it
+   * to the pool on close. The output is identical to the output of
+   * {@link java.util.zip.GZIPOutputStream}.
+   *
+   * @author Philip Helger
+   */
+  private final class PooledGZIPOutputStream extends DeflaterOutputStream
+  {
+    private final CRC32 m_aCRC = new CRC32 ();
+    private boolean m_bFinished = false;
+    private boolean m_bReturned = false;
+
+    PooledGZIPOutputStream (@Nonnull final OutputStream aOS, @Nonnull final Deflater aDeflater) throws IOException
+    {
+      super (aOS, aDeflater, 8192);
+      try
+      {
+        out.write (GZIP_HEADER);
+      }
+      catch (final IOException ex)
+      {
+        _return ();
+        throw ex;
+      }
+    }
+
+    private void _return ()
+    {
+      if (!m_bReturned)
+      {
+        m_bReturned = true;
+        _returnDeflater (def);
+      }
+    }
+
+    private void _writeIntLE (final long n) throws IOException
+    {
+      out.write ((int) (n & 0xff));
+      out.write ((int) ((n >> 8) & 0xff));
+      out.write ((int) ((n >> 16) & 0xff));
+      out.write ((int) ((n >> 24) & 0xff));
+    }
+
+    @Override
+    public void write (final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+    {
+      super.write (aBuf, nOfs, nLen);
+      m_aCRC.update (aBuf, nOfs, nLen);
+    }
+
+    @Override
+    public void finish () throws IOException
+    {
+      if (!m_bFinished)
+      {
+        m_bFinished = true;
+        def.finish ();
+        while (!def.finished ())
+          deflate ();
+        _writeIntLE (m_aCRC.getValue ());
+        _writeIntLE (def.getBytesRead ());
+      }
+    }
+
+    @Override
+    public void close () throws IOException
+    {
+      try
+      {
+        super.close ();
+      }
+      finally
+      {
+        _return ();
+      }
+    }
+  }
+
+  /**
+   * @return A new builder with the default values. Never <code>null</code>.
+   */
+  @Nonnull
+  public static Builder builder ()
+  {
+    return new Builder ();
+  }
+
+  /**
+   * Builder class for class {@link AS4CompressionPolicy}.
+   *
+   * @author Philip Helger
+   */
+  public static class Builder implements IBuilder <AS4CompressionPolicy>
+  {
+    private EAS4CompressionMode m_eCompressionMode = DEFAULT_COMPRESSION_MODE;
+    private long m_nMinSize = DEFAULT_MIN_SIZE;
+    private final ICommonsOrderedSet <String> m_aIncompressibleMimeTypes = new CommonsLinkedHashSet <> (DEFAULT_INCOMPRESSIBLE_MIME_TYPES);
+    private int m_nCompressionLevel = DEFAULT_COMPRESSION_LEVEL;
+    private int m_nMaxPooledDeflaters = DEFAULT_MAX_POOLED_DEFLATERS;
+
+    public Builder ()
+    {}
+
+    @Nonnull
+    public Builder compressionMode (@Nullable final EAS4CompressionMode e)
+    {
+      m_eCompressionMode = e;
+      return this;
+    }
+
+    @Nonnull
+    public Builder minSize (@Nonnegative final long n)
+    {
+      m_nMinSize = n;
+      return this;
+    }
+
+    /**
+     * Add a MIME type that should never be compressed.
+     *
+     * @param s
+     *        The MIME type without parameters (e.g. <code>image/png</code>). A
+     *        trailing <code>*</code> matches all MIME types with the same
+     *        prefix (e.g. <code>video/*</code>). May be <code>null</code>.
+     * @return this for chaining
+     */
+    @Nonnull
+    public Builder addIncompressibleMimeType (@Nullable final String s)
+    {
+      if (StringHelper.hasText (s))
+        m_aIncompressibleMimeTypes.add (s.trim ().toLowerCase (Locale.ROOT));
+      return this;
+    }
+
+    @Nonnull
+    public Builder addIncompressibleMimeType (@Nullable final IMimeType a)
+    {
+      return addIncompressibleMimeType (a == null ? null : a.getAsStringWithoutParameters ());
+    }
+
+    /**
+     * Remove all incompressible MIME types, including the default ones.
+     *
+     * @return this for chaining
+     */
+    @Nonnull
+    public Builder removeAllIncompressibleMimeTypes ()
+    {
+      m_aIncompressibleMimeTypes.clear ();
+      return this;
+    }
+
+    /**
+     * @param n
+     *        The deflate level. Either {@link Deflater#DEFAULT_COMPRESSION} or
+     *        a value between {@link Deflater#NO_COMPRESSION} and
+     *        {@link Deflater#BEST_COMPRESSION}.
+     * @return this for chaining
+     */
+    @Nonnull
+    public Builder compressionLevel (final int n)
+    {
+      m_nCompressionLevel = n;
+      return this;
+    }
+
+    /**
+     * @param n
+     *        The maximum number of idle {@link Deflater} instances to keep for
+     *        reuse. 0 disables pooling.
+     * @return this for chaining
+     */
+    @Nonnull
+    public Builder maxPooledDeflaters (@Nonnegative final int n)
+    {
+      m_nMaxPooledDeflaters = n;
+      return this;
+    }
+
+    @Nonnull
+    public AS4CompressionPolicy build ()
+    {
+      return new AS4CompressionPolicy (m_eCompressionMode,
+                                       m_nMinSize,
+                                       m_aIncompressibleMimeTypes,
+                                       m_nCompressionLevel,
+                                       m_nMaxPooledDeflaters);
+    }
+  }
+}
@@ -48,6 +48,7 @@ public class AS4OutgoingAttachment
   private final IMimeType m_aMimeType;
   private final EAS4CompressionMode m_eCompressionMode;
   private final Charset m_aCharset;
+  private final AS4CompressionPolicy m_aCompressionPolicy;
 
   protected AS4OutgoingAttachment (@Nullable final ByteArrayWrapper aDataBytes,
                                    @Nullable final File aDataFile,
@@ -56,6 +57,39 @@ public class AS4OutgoingAttachment
                                    @Nonnull final IMimeType aMimeType,
                                    @Nullable final EAS4CompressionMode eCompressionMode,
                                    @Nullable final Charset aCharset)
+  {
+    this (aDataBytes, aDataFile, sContentID, sFilename, aMimeType, eCompressionMode, aCharset, null);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aDataBytes
+   *        Data as bytes. Either this or the data file must be present.
+   * @param aDataFile
+   *        Data as file. Either this or the data bytes must be present.
+   * @param sContentID
+   *        Optional content ID.
+   * @param sFilename
+   *        Optional filename.
+   * @param aMimeType
+   *        MIME type. May not be <code>null</code>.
+   * @param eCompressionMode
+   *        Optional compression mode.
+   * @param aCharset
+   *        Optional charset.
+   * @param aCompressionPolicy
+   *        Optional compression policy.
+   * @since 2.7.6
+   */
+  protected AS4OutgoingAttachment (@Nullable final ByteArrayWrapper aDataBytes,
+                                   @Nullable final File aDataFile,
+                                   @Nullable final String sContentID,
+                                   @Nullable final String sFilename,
+                                   @Nonnull final IMimeType aMimeType,
+                                   @Nullable final EAS4CompressionMode eCompressionMode,
+                                   @Nullable final Charset aCharset,
+                                   @Nullable final AS4CompressionPolicy aCompressionPolicy)
   {
     ValueEnforcer.isTrue (aDataBytes != null || aDataFile != null, "SrcData or SrcFile must be present");
     ValueEnforcer.isFalse (aDataBytes != null && aDataFile != null,
@@ -68,6 +102,7 @@ public class AS4OutgoingAttachment
     m_aMimeType = aMimeType;
     m_eCompressionMode = eCompressionMode;
     m_aCharset = aCharset;
+    m_aCompressionPolicy = aCompressionPolicy;
   }
 
   /**
@@ -160,6 +195,27 @@ public class AS4OutgoingAttachment
     return m_aCharset;
   }
 
+  /**
+   * @return The compression policy to use. If present, it takes precedence
+   *         over {@link #getCompressionMode()}. May be <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nullable
+  public final AS4CompressionPolicy getCompressionPolicy ()
+  {
+    return m_aCompressionPolicy;
+  }
+
+  /**
+   * @return <code>true</code> if a compression policy is present,
+   *         <code>false</code> if not.
+   * @since 2.7.6
+   */
+  public final boolean hasCompressionPolicy ()
+  {
+    return m_aCompressionPolicy != null;
+  }
+
   @Override
   public String toString ()
   {
@@ -170,6 +226,7 @@ public class AS4OutgoingAttachment
                                        .append ("MimeType", m_aMimeType)
                                        .append ("CompressionMode", m_eCompressionMode)
                                        .append ("Charset", m_aCharset)
+                                       .append ("CompressionPolicy", m_aCompressionPolicy)
                                        .getToString ();
   }
 
@@ -199,6 +256,7 @@ public class AS4OutgoingAttachment
     private IMimeType m_aMimeType;
     private EAS4CompressionMode m_eCompressionMode;
     private Charset m_aCharset;
+    private AS4CompressionPolicy m_aCompressionPolicy;
 
     public Builder ()
     {}
@@ -296,6 +354,25 @@ public class AS4OutgoingAttachment
       return this;
     }
 
+    /**
+     * Define the compression policy of the outgoing attachment. If set, the
+     * policy decides if the attachment is compressed, unless a compression
+     * mode was explicitly set via {@link #compression(EAS4CompressionMode)}.
+     * An explicit compression mode is never overridden - in that case the
+     * policy only provides the compression level and the pooled deflaters.
+     *
+     * @param a
+     *        The compression policy to use. May be <code>null</code>.
+     * @return this for chaining
+     * @since 2.7.6
+     */
+    @Nonnull
+    public Builder compressionPolicy (@Nullable final AS4CompressionPolicy a)
+    {
+      m_aCompressionPolicy = a;
+      return this;
+    }
+
     @OverridingMethodsMustInvokeSuper
     protected void checkConsistency ()
     {
@@ -315,7 +392,8 @@ public class AS4OutgoingAttachment
                                         m_sFilename,
                                         m_aMimeType,
                                         m_eCompressionMode,
-                                        m_aCharset);
+                                        m_aCharset,
+                                        m_aCompressionPolicy);
     }
   }
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.functional.IThrowingFunction;
+import com.helger.commons.io.file.FileHelper;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * Helper class to process multiple attachments of a single message in
+ * parallel. Compression and symmetric encryption are CPU bound and independent
+ * per attachment, so messages with many large attachments benefit from
+ * processing them on multiple cores. All results are always returned in the
+ * order of the source attachments, so that the resulting MIME message has the
+ * same layout as if processed sequentially.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@Immutable
+public final class AS4ParallelAttachmentHelper
+{
+  private AS4ParallelAttachmentHelper ()
+  {}
+
+  @Nonnull
+  private static IOException _unwrap (@Nonnull final CompletionException ex)
+  {
+    final Throwable aCause = ex.getCause ();
+    if (aCause instanceof UncheckedIOException)
+      return ((UncheckedIOException) aCause).getCause ();
+    if (aCause instanceof RuntimeException)
+      throw (RuntimeException) aCause;
+    if (aCause instanceof Error)
+      throw (Error) aCause;
+    return new IOException ("Failed to process attachment", aCause);
+  }
+
+  /**
+   * Apply the provided mapper on all source elements and return the results in
+   * the order of the source elements. If an executor is provided and more than
+   * one element is present, the mapper is invoked concurrently on the
+   * executor. This method always waits until all invocations are finished,
+   * even if one of them failed, so that no task is running after this method
+   * returned.
+   *
+   * @param <SRCTYPE>
+   *        Source element type
+   * @param <DSTTYPE>
+   *        Result element type
+   * @param aSrc
+   *        The source elements. May not be <code>null</code>.
+   * @param aMapper
+   *        The mapper to be applied. Must be thread-safe if an executor is
+   *        provided. May not be <code>null</code>. The mapper may return
+   *        <code>null</code>.
+   * @param aExecutor
+   *        The executor to use. May be <code>null</code> to process all
+   *        elements sequentially in the calling thread.
+   * @return A list with the same size as the source, containing the mapped
+   *         elements in the source order. Never <code>null</code>.
+   * @throws IOException
+   *         The first exception of the mapper, in source order
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static <SRCTYPE, DSTTYPE> ICommonsList <DSTTYPE> getAllMappedInOrder (@Nonnull final Iterable <? extends SRCTYPE> aSrc,
+                                                                               @Nonnull final IThrowingFunction <? super SRCTYPE, ? extends DSTTYPE, IOException> aMapper,
+                                                                               @Nullable final Executor aExecutor) throws IOException
+  {
+    ValueEnforcer.notNull (aSrc, "Src");
+    ValueEnforcer.notNull (aMapper, "Mapper");
+
+    final ICommonsList <SRCTYPE> aSrcList = new CommonsArrayList <> (aSrc);
+    final ICommonsList <DSTTYPE> ret = new CommonsArrayList <> (aSrcList.size ());
+    if (aExecutor == null || aSrcList.size () <= 1)
+    {
+      // Sequential processing
+      for (final SRCTYPE aElement : aSrcList)
+        ret.add (aMapper.apply (aElement));
+      return ret;
+    }
+
+    // Fan out
+    final ICommonsList <CompletableFuture <? extends DSTTYPE>> aFutures = new CommonsArrayList <> (aSrcList.size ());
+    for (final SRCTYPE aElement : aSrcList)
+      aFutures.add (CompletableFuture.supplyAsync ( () -> {
+        try
+        {
+          return aMapper.apply (aElement);
+        }
+        catch (final IOException ex)
+        {
+          throw new UncheckedIOException (ex);
+        }
+      }, aExecutor));
+
+    // Collect in the original order
+    CompletionException aFirstEx = null;
+    for (final CompletableFuture <? extends DSTTYPE> aFuture : aFutures)
+    {
+      try
+      {
+        ret.add (aFuture.join ());
+      }
+      catch (final CompletionException ex)
+      {
+        if (aFirstEx == null)
+          aFirstEx = ex;
+      }
+    }
+    if (aFirstEx != null)
+      throw _unwrap (aFirstEx);
+    return ret;
+  }
+
+  /**
+   * Create all outgoing attachments, including the optional compression, with
+   * the provided executor.
+   *
+   * @param aAttachments
+   *        The attachments to be created. May not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper to use for the temporary files. May not be
+   *        <code>null</code>.
+   * @param aExecutor
+   *        The executor to use. May be <code>null</code> to process all
+   *        attachments sequentially in the calling thread.
+   * @return The created attachments in the order of the source attachments.
+   *         Never <code>null</code>.
+   * @throws IOException
+   *         In case compression fails
+   * @see WSS4JAttachment#createOutgoingFileAttachment(AS4OutgoingAttachment,
+   *      AS4ResourceHelper)
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static ICommonsList <WSS4JAttachment> createAllOutgoingAttachments (@Nonnull final Iterable <? extends AS4OutgoingAttachment> aAttachments,
+                                                                             @Nonnull @WillNotClose final AS4ResourceHelper aResHelper,
+                                                                             @Nullable final Executor aExecutor) throws IOException
+  {
+    ValueEnforcer.notNull (aResHelper, "ResHelper");
+    return getAllMappedInOrder (aAttachments,
+                                x -> WSS4JAttachment.createOutgoingFileAttachment (x, aResHelper),
+                                aExecutor);
+  }
+
+  /**
+   * Store the content of all encrypted attachments that can only be read once
+   * in temporary files. Reading the encrypted stream performs the actual
+   * symmetric encryption, so doing this with an executor encrypts all
+   * attachments in parallel. Afterwards the attachments are file based and can
+   * be read multiple times. Attachments that are already repeatable are left
+   * untouched.
+   *
+   * @param aEncryptedAttachments
+   *        The encrypted attachments to be modified. May not be
+   *        <code>null</code>.
+   * @param aResHelper
+   *        The resource helper to use for the temporary files. May not be
+   *        <code>null</code>.
+   * @param aExecutor
+   *        The executor to use. May be <code>null</code> to process all
+   *        attachments sequentially in the calling thread.
+   * @throws IOException
+   *         In case encryption or writing fails
+   */
+  public static void storeEncryptedAttachments (@Nonnull final Iterable <? extends WSS4JAttachment> aEncryptedAttachments,
+                                                @Nonnull @WillNotClose final AS4ResourceHelper aResHelper,
+                                                @Nullable final Executor aExecutor) throws IOException
+  {
+    ValueEnforcer.notNull (aEncryptedAttachments, "EncryptedAttachments");
+    ValueEnforcer.notNull (aResHelper, "ResHelper");
+
+    final ICommonsList <WSS4JAttachment> aOneTime = new CommonsArrayList <> ();
+    for (final WSS4JAttachment aAttachment : aEncryptedAttachments)
+      if (!aAttachment.isRepeatable ())
+        aOneTime.add (aAttachment);
+
+    final ICommonsList <File> aFiles = getAllMappedInOrder (aOneTime, x -> {
+      final File aFile = aResHelper.createTempFile ();
+      try (final InputStream aIS = x.getSourceStream (aResHelper);
+           final OutputStream aOS = FileHelper.getBufferedOutputStream (aFile))
+      {
+        if (aOS == null)
+          throw new IOException ("Failed to open temporary file '" + aFile.getAbsolutePath () + "' for writing");
+        aIS.transferTo (aOS);
+      }
+      return aFile;
+    }, aExecutor);
+
+    // Switch the sources only after all files were written successfully
+    for (int i = 0; i < aOneTime.size (); ++i)
+      aOneTime.get (i).setSourceFile (aFiles.get (i));
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.security.GeneralSecurityException;
+
+import javax.annotation.CheckForSigned;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillCloseWhenClosed;
+import javax.annotation.concurrent.Immutable;
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.SecretKey;
+
+import org.apache.xml.security.algorithms.JCEMapper;
+import org.apache.xml.security.encryption.XMLCipherUtil;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * Re-creates the encrypted content of an attachment on demand. WSS4J encrypts
+ * attachments (content only) as <code>IV || ciphertext</code>, using the
+ * symmetric session key and a random IV. When the same session key and the
+ * same IV are applied to the same plain text again, the result is byte for
+ * byte identical. That allows to re-read encrypted attachments, without
+ * storing the encrypted content in a temporary file. No new information is
+ * revealed by this, as long as the same plain text is encrypted again. As
+ * reusing the IV for a different plain text breaks AES-GCM, this must only be
+ * used for content that never changes (see
+ * {@link WSS4JAttachment#isSourceImmutable()}).<br>
+ * This only works for algorithms without random padding (e.g. AES-GCM). The
+ * CBC algorithms of XML Encryption use ISO 10126 padding, which contains
+ * random bytes - see {@link #isSupportedAlgorithm(String)}.<br>
+ * The cipher is created exactly like in WSS4J.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@Immutable
+public final class AS4ReproducibleAttachmentEncryption
+{
+  private final SecretKey m_aSessionKey;
+  private final String m_sAlgorithmURI;
+  private final int m_nIVLength;
+
+  /**
+   * Constructor
+   *
+   * @param aSessionKey
+   *        The symmetric session key used for encryption. May not be
+   *        <code>null</code>.
+   * @param sAlgorithmURI
+   *        The XML encryption algorithm URI of the symmetric algorithm. May
+   *        neither be <code>null</code> nor empty.
+   */
+  public AS4ReproducibleAttachmentEncryption (@Nonnull final SecretKey aSessionKey,
+                                              @Nonnull @Nonempty final String sAlgorithmURI)
+  {
+    ValueEnforcer.notNull (aSessionKey, "SessionKey");
+    ValueEnforcer.notEmpty (sAlgorithmURI, "AlgorithmURI");
+    ValueEnforcer.isTrue (isSupportedAlgorithm (sAlgorithmURI),
+                          () -> "The algorithm '" + sAlgorithmURI + "' does not create reproducible results");
+    m_aSessionKey = aSessionKey;
+    m_sAlgorithmURI = sAlgorithmURI;
+    // Length is in bits
+    m_nIVLength = JCEMapper.getIVLengthFromURI (sAlgorithmURI) / 8;
+    ValueEnforcer.isGT0 (m_nIVLength, "IVLength");
+  }
+
+  /**
+   * Check if the provided algorithm creates reproducible results for the same
+   * key and IV. This requires the JCE mapping to be initialized.
+   *
+   * @param sAlgorithmURI
+   *        The XML encryption algorithm URI. May be <code>null</code>.
+   * @return <code>true</code> if the algorithm uses no padding,
+   *         <code>false</code> otherwise.
+   */
+  public static boolean isSupportedAlgorithm (@Nullable final String sAlgorithmURI)
+  {
+    final String sJCEID = JCEMapper.translateURItoJCEID (sAlgorithmURI);
+    // Padding like ISO10126 adds random bytes
+    return sJCEID != null && sJCEID.endsWith ("/NoPadding") && JCEMapper.getIVLengthFromURI (sAlgorithmURI) > 0;
+  }
+
+  /**
+   * @return The XML encryption algorithm URI. Neither <code>null</code> nor
+   *         empty.
+   */
+  @Nonnull
+  @Nonempty
+  public String getAlgorithmURI ()
+  {
+    return m_sAlgorithmURI;
+  }
+
+  /**
+   * @return The length of the IV in bytes, that precedes the cipher text.
+   *         Always &gt; 0.
+   */
+  @Nonnegative
+  public int getIVLength ()
+  {
+    return m_nIVLength;
+  }
+
+  @Nonnull
+  private Cipher _createCipher (@Nonnull final byte [] aIV) throws GeneralSecurityException
+  {
+    final Cipher ret = Cipher.getInstance (JCEMapper.translateURItoJCEID (m_sAlgorithmURI));
+    ret.init (Cipher.ENCRYPT_MODE, m_aSessionKey, XMLCipherUtil.constructBlockCipherParameters (m_sAlgorithmURI, aIV));
+    return ret;
+  }
+
+  /**
+   * Read the IV from the beginning of an encrypted attachment stream created
+   * by WSS4J.
+   *
+   * @param aEncryptedIS
+   *        The encrypted stream. May not be <code>null</code>. Is always
+   *        closed.
+   * @return The IV. Never <code>null</code>.
+   * @throws IOException
+   *         if the IV cannot be read
+   */
+  @Nonnull
+  public byte [] readIV (@Nonnull @WillCloseWhenClosed final InputStream aEncryptedIS) throws IOException
+  {
+    ValueEnforcer.notNull (aEncryptedIS, "EncryptedIS");
+    try (final InputStream aIS = aEncryptedIS)
+    {
+      final byte [] ret = aIS.readNBytes (m_nIVLength);
+      if (ret.length != m_nIVLength)
+        throw new IOException ("Failed to read " + m_nIVLength + " bytes IV - only got " + ret.length + " bytes");
+      return ret;
+    }
+  }
+
+  /**
+   * Create a new encrypted stream.
+   *
+   * @param aPlainIS
+   *        The plain text stream. May not be <code>null</code>.
+   * @param aIV
+   *        The IV as read by {@link #readIV(InputStream)}. May not be
+   *        <code>null</code>.
+   * @return <code>IV || ciphertext</code> as a stream. Never
+   *         <code>null</code>.
+   * @throws IOException
+   *         if the cipher cannot be created
+   */
+  @Nonnull
+  public InputStream createEncryptedStream (@Nonnull @WillCloseWhenClosed final InputStream aPlainIS,
+                                            @Nonnull final byte [] aIV) throws IOException
+  {
+    ValueEnforcer.notNull (aPlainIS, "PlainIS");
+    ValueEnforcer.notNull (aIV, "IV");
+    ValueEnforcer.isTrue (aIV.length == m_nIVLength, "IV has the wrong length");
+    try
+    {
+      return new SequenceInputStream (new ByteArrayInputStream (aIV),
+                                      new CipherInputStream (aPlainIS, _createCipher (aIV)));
+    }
+    catch (final GeneralSecurityException ex)
+    {
+      aPlainIS.close ();
+      throw new IOException ("Failed to create cipher for '" + m_sAlgorithmURI + "'", ex);
+    }
+  }
+
+  /**
+   * Get the length of the encrypted stream, based on the plain text length.
+   *
+   * @param nPlainLength
+   *        The plain text length in bytes. Must be &ge; 0.
+   * @return The number of bytes of <code>IV || ciphertext</code> or -1 if it
+   *         cannot be determined.
+   */
+  @CheckForSigned
+  public long getEncryptedLength (@Nonnegative final long nPlainLength)
+  {
+    ValueEnforcer.isGE0 (nPlainLength, "PlainLength");
+    if (nPlainLength > Integer.MAX_VALUE)
+      return -1;
+    try
+    {
+      // Any IV of the right length will do
+      return m_nIVLength + (long) _createCipher (new byte [m_nIVLength]).getOutputSize ((int) nPlainLength);
+    }
+    catch (final GeneralSecurityException ex)
+    {
+      return -1;
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    // Never print the key
+    return new ToStringGenerator (this).append ("AlgorithmURI", m_sAlgorithmURI)
+                                       .append ("IVLength", m_nIVLength)
+                                       .getToString ();
+  }
+}
@@ -20,6 +20,8 @@ import java.io.IOException;
 
 import javax.annotation.Nonnull;
 
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.phase4.messaging.mime.AS4IncomingMimePart;
 import com.helger.phase4.util.AS4ResourceHelper;
 
 import jakarta.mail.MessagingException;
@@ -51,10 +53,61 @@ public interface IAS4IncomingAttachmentFactory
   WSS4JAttachment createAttachment (@Nonnull MimeBodyPart aBodyPart, @Nonnull AS4ResourceHelper aResHelper) throws IOException,
                                                                                                             MessagingException;
 
+  /**
+   * Create an attachment from a MIME part of which only the headers were read.
+   * This is the method invoked when parsing incoming messages. The default
+   * implementation reads the whole body into a {@link MimeBodyPart} and calls
+   * {@link #createAttachment(MimeBodyPart, AS4ResourceHelper)} for backwards
+   * compatibility. Implementations should override this method to stream the
+   * body without buffering it in memory.
+   *
+   * @param aMimePart
+   *        The MIME part with the unconsumed body. May not be
+   *        <code>null</code>.
+   * @param aResHelper
+   *        The resource manager to use. May not be <code>null</code>.
+   * @return The internal attachment representation. Never <code>null</code>.
+   * @throws IOException
+   *         In case of IO error
+   * @throws MessagingException
+   *         In case MIME part reading fails.
+   * @since 2.7.6
+   */
+  @Nonnull
+  default WSS4JAttachment createAttachment (@Nonnull final AS4IncomingMimePart aMimePart,
+                                            @Nonnull final AS4ResourceHelper aResHelper) throws IOException,
+                                                                                        MessagingException
+  {
+    final MimeBodyPart aBodyPart = new MimeBodyPart (aMimePart.getHeaders (),
+                                                     StreamHelper.getAllBytes (aMimePart.getRawBodyInputStream ()));
+    return createAttachment (aBodyPart, aResHelper);
+  }
+
   /**
    * The default instance of {@link IAS4IncomingAttachmentFactory} that uses
    * {@link WSS4JAttachment#createIncomingFileAttachment(MimeBodyPart, AS4ResourceHelper)}
+   * and
+   * {@link WSS4JAttachment#createIncomingFileAttachment(AS4IncomingMimePart, AS4ResourceHelper)}
    */
   @Nonnull
-  IAS4IncomingAttachmentFactory DEFAULT_INSTANCE = WSS4JAttachment::createIncomingFileAttachment;
+  IAS4IncomingAttachmentFactory DEFAULT_INSTANCE = new IAS4IncomingAttachmentFactory ()
+  {
+    @Nonnull
+    @Override
+    public WSS4JAttachment createAttachment (@Nonnull final MimeBodyPart aBodyPart,
+                                             @Nonnull final AS4ResourceHelper aResHelper) throws IOException,
+                                                                                         MessagingException
+    {
+      return WSS4JAttachment.createIncomingFileAttachment (aBodyPart, aResHelper);
+    }
+
+    @Nonnull
+    @Override
+    public WSS4JAttachment createAttachment (@Nonnull final AS4IncomingMimePart aMimePart,
+                                             @Nonnull final AS4ResourceHelper aResHelper) throws IOException,
+                                                                                         MessagingException
+    {
+      return WSS4JAttachment.createIncomingFileAttachment (aMimePart, aResHelper);
+    }
+  };
 }
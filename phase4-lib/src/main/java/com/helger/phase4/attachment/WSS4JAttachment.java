@@ -21,10 +21,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.util.Enumeration;
 import java.util.Map;
 
+import javax.annotation.CheckForSigned;
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.WillNotClose;
@@ -34,13 +41,13 @@ import org.apache.wss4j.common.ext.Attachment;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.helger.commons.CGlobal;
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.commons.annotation.UnsupportedOperation;
 import com.helger.commons.collection.impl.CommonsLinkedHashMap;
 import com.helger.commons.collection.impl.ICommonsOrderedMap;
 import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.io.ByteArrayWrapper;
 import com.helger.commons.io.IHasInputStream;
 import com.helger.commons.io.file.FileHelper;
 import com.helger.commons.io.stream.HasInputStream;
@@ -53,6 +60,11 @@ import com.helger.commons.string.ToStringGenerator;
 import com.helger.mail.cte.EContentTransferEncoding;
 import com.helger.mail.datasource.InputStreamProviderDataSource;
 import com.helger.phase4.messaging.domain.MessageHelperMethods;
+import com.helger.phase4.messaging.mime.AS4IncomingMimePart;
+import com.helger.phase4.messaging.mime.AS4KnownLengthDataHandler;
+import com.helger.phase4.spool.AS4SpoolEntry;
+import com.helger.phase4.spool.AS4SpoolOutputStream;
+import com.helger.phase4.spool.AS4SpoolStore;
 import com.helger.phase4.util.AS4ResourceHelper;
 
 import jakarta.activation.DataHandler;
@@ -82,6 +94,11 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
 
   private final AS4ResourceHelper m_aResHelper;
   private IHasInputStream m_aISP;
+  // Length of the source stream in bytes, if known
+  private long m_nSourceLength = -1;
+  // Source file, if the content is file based
+  private File m_aSourceFile;
+  private boolean m_bSourceImmutable;
   private EContentTransferEncoding m_eCTE = EContentTransferEncoding.BINARY;
   private EAS4CompressionMode m_eCompressionMode;
   private Charset m_aCharset;
@@ -185,9 +202,199 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
   }
 
   public void setSourceStreamProvider (@Nonnull final IHasInputStream aISP)
+  {
+    setSourceStreamProvider (aISP, -1);
+  }
+
+  /**
+   * Set the source stream provider together with the length of the provided
+   * content, if known.
+   *
+   * @param aISP
+   *        The input stream provider. May not be <code>null</code>.
+   * @param nSourceLength
+   *        The number of bytes provided by each stream, or a negative value if
+   *        it is unknown.
+   * @since 2.7.6
+   */
+  public void setSourceStreamProvider (@Nonnull final IHasInputStream aISP, final long nSourceLength)
   {
     ValueEnforcer.notNull (aISP, "InputStreamProvider");
     m_aISP = aISP;
+    m_nSourceLength = nSourceLength < 0 ? -1 : nSourceLength;
+    m_aSourceFile = null;
+    m_bSourceImmutable = false;
+  }
+
+  /**
+   * Use the provided file as the source of this attachment. The file may be
+   * read multiple times and must therefore exist as long as this attachment is
+   * used.
+   *
+   * @param aFile
+   *        The source file. May not be <code>null</code>.
+   * @since 2.7.6
+   */
+  public void setSourceFile (@Nonnull final File aFile)
+  {
+    ValueEnforcer.notNull (aFile, "File");
+    // Opens a new FileInputStream for every read
+    setSourceStreamProvider (HasInputStream.multiple ( () -> FileHelper.getBufferedInputStream (aFile)), aFile.length ());
+    m_aSourceFile = aFile;
+  }
+
+  /**
+   * @return The source file of this attachment, if it is file based. May be
+   *         <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nullable
+  public final File getSourceFile ()
+  {
+    return m_aSourceFile;
+  }
+
+  /**
+   * @return <code>true</code> if this attachment is file based,
+   *         <code>false</code> if not.
+   * @since 2.7.6
+   */
+  public final boolean hasSourceFile ()
+  {
+    return m_aSourceFile != null;
+  }
+
+  /**
+   * @return <code>true</code> if the source content was created by phase4
+   *         (e.g. a temporary file with the compressed content) and is
+   *         guaranteed to be identical on every read, <code>false</code> if it
+   *         is provided by the caller (e.g. an uncompressed source file) and
+   *         may change between two reads.
+   * @since 2.7.6
+   */
+  public final boolean isSourceImmutable ()
+  {
+    return m_bSourceImmutable;
+  }
+
+  /**
+   * Open a read-only {@link FileChannel} on the source file. This allows
+   * random access and zero-copy transfers via
+   * {@link FileChannel#transferTo(long, long, WritableByteChannel)}. The
+   * channel is closed together with the resource helper of this attachment at
+   * the latest, but may be closed earlier by the caller.
+   *
+   * @return <code>null</code> if this attachment is not file based.
+   * @throws IOException
+   *         If the file cannot be opened
+   * @see #hasSourceFile()
+   * @since 2.7.6
+   */
+  @Nullable
+  public final FileChannel openSourceFileChannel () throws IOException
+  {
+    if (m_aSourceFile == null)
+      return null;
+
+    final FileChannel ret = FileChannel.open (m_aSourceFile.toPath (), StandardOpenOption.READ);
+    m_aResHelper.addCloseable (ret);
+    return ret;
+  }
+
+  /**
+   * Map the source file read-only into memory. The mapping stays valid until
+   * the returned buffer is garbage collected, so it should not be kept longer
+   * than the attachment itself. Note: on Windows the temporary file cannot be
+   * deleted while it is mapped.
+   *
+   * @return <code>null</code> if this attachment is not file based.
+   * @throws IOException
+   *         If the file cannot be mapped, e.g. because it is larger than 2GB
+   * @see #hasSourceFile()
+   * @since 2.7.6
+   */
+  @Nullable
+  public final MappedByteBuffer getSourceFileMappedBuffer () throws IOException
+  {
+    if (m_aSourceFile == null)
+      return null;
+
+    try (final FileChannel aChannel = FileChannel.open (m_aSourceFile.toPath (), StandardOpenOption.READ))
+    {
+      final long nSize = aChannel.size ();
+      if (nSize > Integer.MAX_VALUE)
+        throw new IOException ("The source file '" +
+                               m_aSourceFile.getAbsolutePath () +
+                               "' is too large to be mapped (" +
+                               nSize +
+                               " bytes)");
+      // The mapping stays valid after the channel is closed
+      return aChannel.map (FileChannel.MapMode.READ_ONLY, 0, nSize);
+    }
+  }
+
+  /**
+   * Write the content of this attachment to the provided channel. For file
+   * based attachments this uses
+   * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, so that
+   * the operating system can copy the bytes without passing them through the
+   * Java heap (e.g. into a {@link FileChannel} of the final storage file).
+   * Other attachments are copied from {@link #getSourceStream()}.
+   *
+   * @param aDst
+   *        The target channel. May not be <code>null</code>. It is not closed.
+   * @return The number of bytes written. Always &ge; 0.
+   * @throws IOException
+   *         In case of an I/O error
+   * @since 2.7.6
+   */
+  @Nonnegative
+  public final long transferSourceTo (@Nonnull @WillNotClose final WritableByteChannel aDst) throws IOException
+  {
+    ValueEnforcer.notNull (aDst, "Destination");
+
+    if (m_aSourceFile != null)
+    {
+      try (final FileChannel aSrc = FileChannel.open (m_aSourceFile.toPath (), StandardOpenOption.READ))
+      {
+        final long nSize = aSrc.size ();
+        long nPos = 0;
+        while (nPos < nSize)
+          nPos += aSrc.transferTo (nPos, nSize - nPos, aDst);
+        return nPos;
+      }
+    }
+
+    // Closing the wrapping stream would close the channel
+    final InputStream aIS = getSourceStream ();
+    try
+    {
+      return aIS.transferTo (Channels.newOutputStream (aDst));
+    }
+    finally
+    {
+      StreamHelper.close (aIS);
+    }
+  }
+
+  /**
+   * @return The number of bytes of the source stream, or -1 if it is unknown.
+   * @since 2.7.6
+   */
+  @CheckForSigned
+  public final long getSourceLength ()
+  {
+    return m_nSourceLength;
+  }
+
+  /**
+   * @return <code>true</code> if the number of bytes of the source stream is
+   *         known, <code>false</code> if not.
+   * @since 2.7.6
+   */
+  public final boolean hasSourceLength ()
+  {
+    return m_nSourceLength >= 0;
   }
 
   @Nonnull
@@ -285,7 +492,19 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
     // headers
     // On some tests the datahandler did reset content-type and transfer
     // encoding, so this is now the correct order
-    aMimeBodyPart.setDataHandler (new DataHandler (_getAsDataSource ()));
+    final DataSource aDS = _getAsDataSource ();
+    final EContentTransferEncoding eCTE = getContentTransferEncoding ();
+    if (hasSourceLength () &&
+        (eCTE == EContentTransferEncoding.BINARY ||
+         eCTE == EContentTransferEncoding._8BIT ||
+         eCTE == EContentTransferEncoding._7BIT))
+    {
+      // Content is written unmodified - allows for length determination
+      // without reading the content
+      aMimeBodyPart.setDataHandler (new AS4KnownLengthDataHandler (aDS, m_nSourceLength));
+    }
+    else
+      aMimeBodyPart.setDataHandler (new DataHandler (aDS));
 
     // After DataHandler!!
     aMimeBodyPart.setHeader (CHttpHeader.CONTENT_TYPE, getMimeType ());
@@ -312,6 +531,7 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
                                        .append ("CTE", m_eCTE)
                                        .append ("CM", m_eCompressionMode)
                                        .append ("Charset", m_aCharset)
+                                       .append ("SourceImmutable", m_bSourceImmutable)
                                        .getToString ();
   }
 
@@ -339,27 +559,73 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
   public static WSS4JAttachment createOutgoingFileAttachment (@Nonnull final AS4OutgoingAttachment aAttachment,
                                                               @Nonnull @WillNotClose final AS4ResourceHelper aResHelper) throws IOException
   {
+    return createOutgoingFileAttachment (aAttachment, (AS4CompressionPolicy) null, aResHelper);
+  }
+
+  @Nullable
+  private static EAS4CompressionMode _getCompressionModeToUse (@Nonnull final AS4OutgoingAttachment aAttachment,
+                                                               @Nullable final AS4CompressionPolicy aCompressionPolicy,
+                                                               final long nSize)
+  {
+    // An explicitly requested compression mode is never downgraded
+    final EAS4CompressionMode eCompressionMode = aAttachment.getCompressionMode ();
+    if (eCompressionMode != null || aCompressionPolicy == null)
+      return eCompressionMode;
+    return aCompressionPolicy.getCompressionModeToUse (aAttachment.getMimeType (), nSize);
+  }
+
+  /**
+   * Create an outgoing attachment from the provided data. If the attachment
+   * has an explicit compression mode, it is always used (e.g. because a
+   * profile requires compression). Otherwise, if the attachment has a
+   * compression policy or if a default compression policy is provided, the
+   * policy decides if the attachment is compressed. In all cases the policy
+   * provides the compression level and the deflaters to use.
+   *
+   * @param aAttachment
+   *        The outgoing attachment data. May not be <code>null</code>.
+   * @param aDefaultCompressionPolicy
+   *        The compression policy to use if the attachment has no own
+   *        compression policy. May be <code>null</code>.
+   * @param aResHelper
+   *        The resource manager to use. May not be <code>null</code>.
+   * @return The newly created attachment instance. Never <code>null</code>.
+   * @throws IOException
+   *         In case something goes wrong during compression
+   * @since 2.7.6
+   */
+  @Nonnull
+  public static WSS4JAttachment createOutgoingFileAttachment (@Nonnull final AS4OutgoingAttachment aAttachment,
+                                                              @Nullable final AS4CompressionPolicy aDefaultCompressionPolicy,
+                                                              @Nonnull @WillNotClose final AS4ResourceHelper aResHelper) throws IOException
+  {
+    final AS4CompressionPolicy aCompressionPolicy = aAttachment.hasCompressionPolicy () ? aAttachment.getCompressionPolicy ()
+                                                                                        : aDefaultCompressionPolicy;
     if (aAttachment.hasDataBytes ())
     {
       // Byte array
-      return createOutgoingFileAttachment (aAttachment.getDataBytes ().bytes (),
+      final byte [] aBytes = aAttachment.getDataBytes ().bytes ();
+      return createOutgoingFileAttachment (aBytes,
                                            aAttachment.getContentID (),
                                            aAttachment.getFilename (),
                                            aAttachment.getMimeType (),
-                                           aAttachment.getCompressionMode (),
+                                           _getCompressionModeToUse (aAttachment, aCompressionPolicy, aBytes.length),
                                            aAttachment.getCharset (),
+                                           aCompressionPolicy,
                                            aResHelper);
     }
 
     if (aAttachment.hasDataFile ())
     {
       // File based
-      return createOutgoingFileAttachment (aAttachment.getDataFile (),
+      final File aFile = aAttachment.getDataFile ();
+      return createOutgoingFileAttachment (aFile,
                                            aAttachment.getContentID (),
                                            aAttachment.getFilename (),
                                            aAttachment.getMimeType (),
-                                           aAttachment.getCompressionMode (),
+                                           _getCompressionModeToUse (aAttachment, aCompressionPolicy, aFile.length ()),
                                            aAttachment.getCharset (),
+                                           aCompressionPolicy,
                                            aResHelper);
     }
 
@@ -390,6 +656,53 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
    * @throws IOException
    *         In case something goes wrong during compression
    */
+  @Nonnull
+  public static WSS4JAttachment createOutgoingFileAttachment (@Nonnull final File aSrcFile,
+                                                              @Nullable final String sContentID,
+                                                              @Nullable final String sFilename,
+                                                              @Nonnull final IMimeType aMimeType,
+                                                              @Nullable final EAS4CompressionMode eCompressionMode,
+                                                              @Nullable final Charset aCharset,
+                                                              @Nonnull @WillNotClose final AS4ResourceHelper aResHelper) throws IOException
+  {
+    return createOutgoingFileAttachment (aSrcFile,
+                                         sContentID,
+                                         sFilename,
+                                         aMimeType,
+                                         eCompressionMode,
+                                         aCharset,
+                                         (AS4CompressionPolicy) null,
+                                         aResHelper);
+  }
+
+  /**
+   * Quasi constructor. Performs compression internally if necessary.
+   *
+   * @param aSrcFile
+   *        Source, uncompressed, unencrypted file.
+   * @param sContentID
+   *        Content-ID of the attachment. If <code>null</code> a random ID is
+   *        created.
+   * @param sFilename
+   *        Optional filename to use in the "Content-Disposition" headers. May
+   *        be <code>null</code>.
+   * @param aMimeType
+   *        Original mime type of the file.
+   * @param eCompressionMode
+   *        Optional compression mode to use. May be <code>null</code>.
+   * @param aCharset
+   *        The character set to use. May be <code>null</code>.
+   * @param aCompressionPolicy
+   *        The optional compression policy that provides the compression level
+   *        and the pooled compressors. It is not used to decide whether to
+   *        compress. May be <code>null</code>.
+   * @param aResHelper
+   *        The resource manager to use. May not be <code>null</code>.
+   * @return The newly created attachment instance. Never <code>null</code>.
+   * @throws IOException
+   *         In case something goes wrong during compression
+   * @since 2.7.6
+   */
   @SuppressWarnings ("resource")
   @Nonnull
   public static WSS4JAttachment createOutgoingFileAttachment (@Nonnull final File aSrcFile,
@@ -398,6 +711,7 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
                                                               @Nonnull final IMimeType aMimeType,
                                                               @Nullable final EAS4CompressionMode eCompressionMode,
                                                               @Nullable final Charset aCharset,
+                                                              @Nullable final AS4CompressionPolicy aCompressionPolicy,
                                                               @Nonnull @WillNotClose final AS4ResourceHelper aResHelper) throws IOException
   {
     ValueEnforcer.notNull (aSrcFile, "File");
@@ -421,7 +735,7 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
       try (final NonBlockingBufferedOutputStream aFOS = FileHelper.getBufferedOutputStream (aRealFile))
       {
         if (aFOS != null)
-          try (final OutputStream aOS = eCompressionMode.getCompressStream (aFOS))
+          try (final OutputStream aOS = _getCompressStream (eCompressionMode, aCompressionPolicy, aFOS))
           {
             StreamHelper.copyInputStreamToOutputStream (FileHelper.getBufferedInputStream (aSrcFile), aOS);
           }
@@ -435,7 +749,9 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
 
     // Set a stream provider that can be read multiple times (opens a new
     // FileInputStream internally)
-    ret.setSourceStreamProvider (HasInputStream.multiple ( () -> FileHelper.getBufferedInputStream (aRealFile)));
+    ret.setSourceFile (aRealFile);
+    // Only our own temporary file is guaranteed not to change
+    ret.m_bSourceImmutable = eCompressionMode != null;
     return ret;
   }
 
@@ -463,6 +779,52 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
    * @throws IOException
    *         In case something goes wrong during compression
    */
+  @Nonnull
+  public static WSS4JAttachment createOutgoingFileAttachment (@Nonnull final byte [] aSrcData,
+                                                              @Nullable final String sContentID,
+                                                              @Nullable final String sFilename,
+                                                              @Nonnull final IMimeType aMimeType,
+                                                              @Nullable final EAS4CompressionMode eCompressionMode,
+                                                              @Nullable final Charset aCharset,
+                                                              @Nonnull final AS4ResourceHelper aResHelper) throws IOException
+  {
+    return createOutgoingFileAttachment (aSrcData,
+                                         sContentID,
+                                         sFilename,
+                                         aMimeType,
+                                         eCompressionMode,
+                                         aCharset,
+                                         (AS4CompressionPolicy) null,
+                                         aResHelper);
+  }
+
+  /**
+   * Quasi constructor. Performs compression internally.
+   *
+   * @param aSrcData
+   *        Source in-memory data, uncompressed, unencrypted.
+   * @param sContentID
+   *        Optional content ID or <code>null</code> to create a random one.
+   * @param sFilename
+   *        Optional filename to use in the "Content-Disposition" headers. May
+   *        be <code>null</code>.
+   * @param aMimeType
+   *        Original mime type of the file. May not be <code>null</code>.
+   * @param eCompressionMode
+   *        Optional compression mode to use. May be <code>null</code>.
+   * @param aCharset
+   *        The character set to use. May be <code>null</code>.
+   * @param aCompressionPolicy
+   *        The optional compression policy that provides the compression level
+   *        and the pooled compressors. It is not used to decide whether to
+   *        compress. May be <code>null</code>.
+   * @param aResHelper
+   *        The resource manager to use. May not be <code>null</code>.
+   * @return The newly created attachment instance. Never <code>null</code>.
+   * @throws IOException
+   *         In case something goes wrong during compression
+   * @since 2.7.6
+   */
   @SuppressWarnings ("resource")
   @Nonnull
   public static WSS4JAttachment createOutgoingFileAttachment (@Nonnull final byte [] aSrcData,
@@ -471,6 +833,7 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
                                                               @Nonnull final IMimeType aMimeType,
                                                               @Nullable final EAS4CompressionMode eCompressionMode,
                                                               @Nullable final Charset aCharset,
+                                                              @Nullable final AS4CompressionPolicy aCompressionPolicy,
                                                               @Nonnull final AS4ResourceHelper aResHelper) throws IOException
   {
     ValueEnforcer.notNull (aSrcData, "Data");
@@ -493,32 +856,45 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
       try (final NonBlockingBufferedOutputStream aFOS = FileHelper.getBufferedOutputStream (aRealFile))
       {
         if (aFOS != null)
-          try (final OutputStream aOS = eCompressionMode.getCompressStream (aFOS))
+          try (final OutputStream aOS = _getCompressStream (eCompressionMode, aCompressionPolicy, aFOS))
           {
             aOS.write (aSrcData);
           }
       }
-      ret.setSourceStreamProvider (HasInputStream.multiple ( () -> FileHelper.getBufferedInputStream (aRealFile)));
+      ret.setSourceFile (aRealFile);
+      ret.m_bSourceImmutable = true;
     }
     else
     {
       // No compression - use data as-is
-      ret.setSourceStreamProvider (HasInputStream.multiple ( () -> new NonBlockingByteArrayInputStream (aSrcData)));
+      ret.setSourceStreamProvider (HasInputStream.multiple ( () -> new NonBlockingByteArrayInputStream (aSrcData)),
+                                   aSrcData.length);
     }
     return ret;
   }
 
+  @Nonnull
+  private static OutputStream _getCompressStream (@Nonnull final EAS4CompressionMode eCompressionMode,
+                                                  @Nullable final AS4CompressionPolicy aCompressionPolicy,
+                                                  @Nonnull final OutputStream aOS) throws IOException
+  {
+    if (aCompressionPolicy != null)
+      return aCompressionPolicy.getCompressStream (eCompressionMode, aOS);
+    return eCompressionMode.getCompressStream (aOS);
+  }
+
   /**
    * Check if an incoming attachment can be kept in memory, or if a temporary
    * file is needed.
    *
    * @param nBytes
    *        File size.
-   * @return <code>true</code> if the size is &le; than 64 Kilobytes
+   * @return <code>true</code> if the size is &le; than the memory threshold
+   *         of the default {@link AS4SpoolStore} (64 Kilobytes by default)
    */
   public static boolean canBeKeptInMemory (final long nBytes)
   {
-    return nBytes <= 64 * CGlobal.BYTES_PER_KILOBYTE;
+    return nBytes <= AS4SpoolStore.getDefaultInstance ().getMemoryThreshold ();
   }
 
   @SuppressWarnings ("resource")
@@ -595,24 +971,92 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
       {
         aBodyPart.getDataHandler ().writeTo (aOS);
       }
-      ret.setSourceStreamProvider (HasInputStream.multiple ( () -> FileHelper.getBufferedInputStream (aTempFile)));
+      ret.setSourceFile (aTempFile);
     }
 
+    _addIncomingHeaders (ret, aBodyPart.getAllHeaders ());
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Finished handling of incoming WSS4J attachment");
+
+    return ret;
+  }
+
+  private static void _addIncomingHeaders (@Nonnull final WSS4JAttachment aAttachment,
+                                           @Nonnull final Enumeration <Header> aEnum)
+  {
     // Read all MIME part headers
-    final Enumeration <Header> aEnum = aBodyPart.getAllHeaders ();
     while (aEnum.hasMoreElements ())
     {
       final Header aHeader = aEnum.nextElement ();
-      ret.addHeader (aHeader.getName (), aHeader.getValue ());
+      aAttachment.addHeader (aHeader.getName (), aHeader.getValue ());
     }
 
     // These headers are mandatory and overwrite headers from the MIME body part
-    ret.addHeader (CHttpHeader.CONTENT_DESCRIPTION, CONTENT_DESCRIPTION_ATTACHMENT);
-    ret.addHeader (CHttpHeader.CONTENT_ID, CONTENT_ID_PREFIX + ret.getId () + CONTENT_ID_SUFFIX);
-    ret.addHeader (CHttpHeader.CONTENT_TYPE, ret.getMimeType ());
+    aAttachment.addHeader (CHttpHeader.CONTENT_DESCRIPTION, CONTENT_DESCRIPTION_ATTACHMENT);
+    aAttachment.addHeader (CHttpHeader.CONTENT_ID, CONTENT_ID_PREFIX + aAttachment.getId () + CONTENT_ID_SUFFIX);
+    aAttachment.addHeader (CHttpHeader.CONTENT_TYPE, aAttachment.getMimeType ());
+  }
 
+  /**
+   * Create an incoming attachment from a MIME part, of which only the headers
+   * were read. The decoded body is streamed directly into the spool store of
+   * the resource helper: small bodies are kept in an exact-size heap byte
+   * array, larger bodies are copied to a temporary file chunk by chunk. The
+   * byte arrays count against the memory budget of the spool store, until they
+   * are garbage collected. So the heap usage is bounded independent of the
+   * attachment size and the number of attachments.
+   *
+   * @param aMimePart
+   *        The incoming MIME part with an unconsumed body. May not be
+   *        <code>null</code>.
+   * @param aResHelper
+   *        The resource manager to use. May not be <code>null</code>.
+   * @return The newly created attachment instance. Never <code>null</code>.
+   * @throws MessagingException
+   *         In case the Content-Transfer-Encoding is unknown
+   * @throws IOException
+   *         In case of an I/O error
+   * @since 2.7.6
+   */
+  @Nonnull
+  public static WSS4JAttachment createIncomingFileAttachment (@Nonnull final AS4IncomingMimePart aMimePart,
+                                                              @Nonnull final AS4ResourceHelper aResHelper) throws MessagingException,
+                                                                                                           IOException
+  {
+    ValueEnforcer.notNull (aMimePart, "MimePart");
+    ValueEnforcer.notNull (aResHelper, "ResHelper");
+
+    final WSS4JAttachment ret = new WSS4JAttachment (aResHelper, aMimePart.getContentType ());
+
+    // Reference in Content-ID header is: "<ID>"
+    ret.setId (StringHelper.trimStartAndEnd (aMimePart.getContentID (), '<', '>'));
+
+    // Pooled memory chunks are reused as soon as the resource helper is closed,
+    // but the attachment may be used longer (e.g. by an asynchronous SPI)
+    final AS4SpoolOutputStream aSpoolOS = aResHelper.createSpoolOutputStream (false);
+    try (final OutputStream aOS = aSpoolOS)
+    {
+      aMimePart.getDecodedBodyInputStream ().transferTo (aOS);
+    }
+
+    final AS4SpoolEntry aEntry = aSpoolOS.getSpoolEntry ();
     if (LOGGER.isDebugEnabled ())
-      LOGGER.debug ("Finished handling of incoming WSS4J attachment");
+      LOGGER.debug ("Spooled WSS4J attachment with " + aEntry.getLength () + " bytes to " + aEntry.getTier ());
+
+    if (aEntry.hasFile ())
+      ret.setSourceFile (aEntry.getFile ());
+    else
+    {
+      // Private to this attachment - no need to copy
+      final byte [] aBytes = aEntry.getHeapBytes ();
+      ret.setSourceStreamProvider (new ByteArrayWrapper (aBytes, false), aBytes.length);
+    }
+
+    _addIncomingHeaders (ret, aMimePart.getAllHeaders ());
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Finished streaming of incoming WSS4J attachment");
 
     return ret;
   }
@@ -17,6 +17,7 @@
 package com.helger.phase4.attachment;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -59,6 +60,7 @@ public class WSS4JAttachmentCallbackHandler implements CallbackHandler
 
   private final ICommonsOrderedMap <String, WSS4JAttachment> m_aAttachmentMap = new CommonsLinkedHashMap <> ();
   private final AS4ResourceHelper m_aResHelper;
+  private AS4ReproducibleAttachmentEncryption m_aReproducibleEncryption;
 
   public WSS4JAttachmentCallbackHandler (@Nullable final Iterable <? extends WSS4JAttachment> aSrcAttachments,
                                          @Nonnull @WillNotClose final AS4ResourceHelper aResHelper)
@@ -90,6 +92,38 @@ public class WSS4JAttachmentCallbackHandler implements CallbackHandler
     return m_aResHelper;
   }
 
+  /**
+   * @return The reproducible encryption settings. May be <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nullable
+  public final AS4ReproducibleAttachmentEncryption getReproducibleEncryption ()
+  {
+    return m_aReproducibleEncryption;
+  }
+
+  /**
+   * Enable or disable reproducible attachment encryption. If enabled, the
+   * encrypted result attachments of repeatable and immutable source attachments
+   * (see {@link WSS4JAttachment#isSourceImmutable()}) are repeatable as well,
+   * because the encrypted content is re-created on demand with the same session
+   * key and IV. Sources provided by the caller are never re-encrypted, because
+   * encrypting changed content with the same AES-GCM key and IV would break
+   * confidentiality and integrity.
+   *
+   * @param a
+   *        The reproducible encryption settings. May be <code>null</code> to
+   *        disable it.
+   * @return this for chaining
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final WSS4JAttachmentCallbackHandler setReproducibleEncryption (@Nullable final AS4ReproducibleAttachmentEncryption a)
+  {
+    m_aReproducibleEncryption = a;
+    return this;
+  }
+
   /**
    * Try to match the Attachment Id. Otherwise, add all Attachments if the ID
    * "Attachments" is used.
@@ -170,8 +204,31 @@ public class WSS4JAttachmentCallbackHandler implements CallbackHandler
           // This property is only in WSS4JAttachment so we need to copy it
           // separately
           aEffectiveResultAttachment.setCharset (aSrcAttachment.getCharsetOrDefault (null));
-          // Use supplier to ensure stream is opened only when needed
-          aEffectiveResultAttachment.setSourceStreamProvider (HasInputStream.once (aAttachmentResult::getSourceStream));
+          final AS4ReproducibleAttachmentEncryption aReproducible = m_aReproducibleEncryption;
+          if (aReproducible != null && aSrcAttachment.isRepeatable () && aSrcAttachment.isSourceImmutable ())
+          {
+            // Re-create the encrypted content on every read. This is only safe
+            // if the plain content is identical on every read, as the IV is
+            // reused
+            final byte [] aIV = aReproducible.readIV (aAttachmentResult.getSourceStream ());
+            final long nEncryptedLength = aSrcAttachment.hasSourceLength () ? aReproducible.getEncryptedLength (aSrcAttachment.getSourceLength ())
+                                                                            : -1;
+            aEffectiveResultAttachment.setSourceStreamProvider (HasInputStream.multiple ( () -> {
+              try
+              {
+                return aReproducible.createEncryptedStream (aSrcAttachment.getSourceStream (), aIV);
+              }
+              catch (final IOException ex)
+              {
+                throw new UncheckedIOException (ex);
+              }
+            }), nEncryptedLength);
+          }
+          else
+          {
+            // Use supplier to ensure stream is opened only when needed
+            aEffectiveResultAttachment.setSourceStreamProvider (HasInputStream.once (aAttachmentResult::getSourceStream));
+          }
 
           // Overwrite decrypted attachment in the Map
           m_aAttachmentMap.put (sAttachmentID, aEffectiveResultAttachment);
@@ -203,6 +260,7 @@ public class WSS4JAttachmentCallbackHandler implements CallbackHandler
   {
     return new ToStringGenerator (this).append ("AttachmentMap", m_aAttachmentMap)
                                        .append ("ResHelper", m_aResHelper)
+                                       .append ("ReproducibleEncryption", m_aReproducibleEncryption)
                                        .getToString ();
   }
 }
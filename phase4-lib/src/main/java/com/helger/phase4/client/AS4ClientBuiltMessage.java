@@ -27,6 +27,7 @@ import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.http.HttpHeaderMap;
 import com.helger.commons.string.ToStringGenerator;
 import com.helger.phase4.http.HttpMimeMessageEntity;
+import com.helger.phase4.http.HttpMultipartRelatedEntity;
 import com.helger.phase4.http.HttpXMLEntity;
 import com.helger.phase4.messaging.domain.MessageHelperMethods;
 
@@ -58,6 +59,23 @@ public final class AS4ClientBuiltMessage
     m_aCustomHeaders = MessageHelperMethods.getAndRemoveAllHeaders (aHttpEntity.getMimeMessage ());
   }
 
+  /**
+   * Constructor for MIME messages created without JavaMail.
+   *
+   * @param sMessageID
+   *        The AS4 message ID. May neither be <code>null</code> nor empty.
+   * @param aHttpEntity
+   *        The HTTP entity to send. May not be <code>null</code>.
+   * @since 2.7.6
+   */
+  public AS4ClientBuiltMessage (@Nonnull @Nonempty final String sMessageID,
+                                @Nonnull final HttpMultipartRelatedEntity aHttpEntity)
+  {
+    m_sMessageID = ValueEnforcer.notEmpty (sMessageID, "MessageID");
+    m_aHttpEntity = ValueEnforcer.notNull (aHttpEntity, "HttpEntity");
+    m_aCustomHeaders = aHttpEntity.getWriter ().getAllHttpHeaders ();
+  }
+
   @Nonnull
   @Nonempty
   public String getMessageID ()
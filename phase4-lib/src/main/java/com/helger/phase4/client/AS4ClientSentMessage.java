@@ -17,6 +17,7 @@
 package com.helger.phase4.client;
 
 import java.time.OffsetDateTime;
+import java.util.function.Function;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -179,6 +180,30 @@ public class AS4ClientSentMessage <T>
     return m_aSentDateTime;
   }
 
+  /**
+   * Create a copy of this object with a different response payload. All other
+   * fields including the sent date time stay the same.
+   *
+   * @param <U>
+   *        The new response type
+   * @param aMapper
+   *        The mapper from the current to the new response payload. Is only
+   *        invoked if a response is present. May not be <code>null</code>.
+   * @return The new object. Never <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final <U> AS4ClientSentMessage <U> getWithMappedResponse (@Nonnull final Function <? super T, ? extends U> aMapper)
+  {
+    ValueEnforcer.notNull (aMapper, "Mapper");
+    final U aMappedResponse = m_aResponseContent == null ? null : aMapper.apply (m_aResponseContent);
+    return new AS4ClientSentMessage <> (m_aBuiltMsg,
+                                        m_aResponseStatusLine,
+                                        m_aResponseHeaders,
+                                        aMappedResponse,
+                                        m_aSentDateTime);
+  }
+
   @Override
   public String toString ()
   {
@@ -19,6 +19,7 @@ package com.helger.phase4.client;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.time.OffsetDateTime;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
@@ -52,14 +53,17 @@ import com.helger.phase4.ebms3header.Ebms3PayloadInfo;
 import com.helger.phase4.ebms3header.Ebms3Property;
 import com.helger.phase4.http.AS4HttpDebug;
 import com.helger.phase4.http.HttpMimeMessageEntity;
+import com.helger.phase4.http.HttpMultipartRelatedEntity;
 import com.helger.phase4.http.HttpXMLEntity;
 import com.helger.phase4.messaging.crypto.AS4Encryptor;
 import com.helger.phase4.messaging.crypto.AS4Signer;
 import com.helger.phase4.messaging.domain.AS4UserMessage;
+import com.helger.phase4.messaging.domain.AS4UserMessageHeaderTemplate;
+import com.helger.phase4.messaging.domain.AS4UserMessageHeaderTemplateCache;
 import com.helger.phase4.messaging.domain.EAS4MessageType;
 import com.helger.phase4.messaging.domain.MessageHelperMethods;
 import com.helger.phase4.messaging.mime.AS4MimeMessage;
-import com.helger.phase4.messaging.mime.MimeMessageCreator;
+import com.helger.phase4.messaging.mime.AS4MultipartRelatedWriter;
 import com.helger.phase4.model.pmode.IPMode;
 import com.helger.phase4.model.pmode.leg.PModeLeg;
 import com.helger.phase4.util.AS4ResourceHelper;
@@ -83,6 +87,7 @@ public class AS4ClientUserMessage extends AbstractAS4Client <AS4ClientUserMessag
   private Node m_aSoapBodyPayload;
   private final ICommonsList <WSS4JAttachment> m_aAttachments = new CommonsArrayList <> ();
   private boolean m_bForceMimeMessage = DEFAULT_FORCE_MIME_MESSAGE;
+  private AS4UserMessageHeaderTemplateCache m_aHeaderTemplateCache;
 
   // Document related attributes
   private final ICommonsList <Ebms3Property> m_aEbms3Properties = new CommonsArrayList <> ();
@@ -181,6 +186,37 @@ public class AS4ClientUserMessage extends AbstractAS4Client <AS4ClientUserMessag
     return this;
   }
 
+  /**
+   * @return The header template cache to use. May be <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nullable
+  public final AS4UserMessageHeaderTemplateCache getHeaderTemplateCache ()
+  {
+    return m_aHeaderTemplateCache;
+  }
+
+  /**
+   * Set the cache for pre-marshalled ebMS header templates. If set, the SOAP
+   * document is created from a cached template, and only the message specific
+   * values are filled in. The template is not used if a build message callback
+   * is provided, because that callback may modify the {@link AS4UserMessage}
+   * before it is serialized.
+   *
+   * @param aHeaderTemplateCache
+   *        The cache to use. May be <code>null</code> to always marshal the
+   *        complete message (default).
+   * @return this for chaining
+   * @since 2.7.6
+   * @see AS4UserMessageHeaderTemplateCache#getDefaultInstance()
+   */
+  @Nonnull
+  public final AS4ClientUserMessage setHeaderTemplateCache (@Nullable final AS4UserMessageHeaderTemplateCache aHeaderTemplateCache)
+  {
+    m_aHeaderTemplateCache = aHeaderTemplateCache;
+    return this;
+  }
+
   /**
    * Adds a file as attachment to the message.
    *
@@ -657,9 +693,7 @@ public class AS4ClientUserMessage extends AbstractAS4Client <AS4ClientUserMessag
     final boolean bSoapBoayPayloadPresent = m_aSoapBodyPayload != null;
     final boolean bAttachmentsPresent = m_aAttachments.isNotEmpty ();
 
-    final Ebms3MessageInfo aEbms3MessageInfo = MessageHelperMethods.createEbms3MessageInfo (sMessageID,
-                                                                                            getRefToMessageID (),
-                                                                                            ensureSendingDateTime ().getSendingDateTime ());
+    final OffsetDateTime aSendingDateTime = ensureSendingDateTime ().getSendingDateTime ();
     final Ebms3PayloadInfo aEbms3PayloadInfo = MessageHelperMethods.createEbms3PayloadInfo (m_aSoapBodyPayload != null,
                                                                                             m_aAttachments);
     final Ebms3CollaborationInfo aEbms3CollaborationInfo = MessageHelperMethods.createEbms3CollaborationInfo (sAgreementRefPMode,
@@ -677,18 +711,45 @@ public class AS4ClientUserMessage extends AbstractAS4Client <AS4ClientUserMessag
 
     final Ebms3MessageProperties aEbms3MessageProperties = MessageHelperMethods.createEbms3MessageProperties (m_aEbms3Properties);
 
-    final AS4UserMessage aUserMsg = AS4UserMessage.create (aEbms3MessageInfo,
-                                                           aEbms3PayloadInfo,
-                                                           aEbms3CollaborationInfo,
-                                                           aEbms3PartyInfo,
-                                                           aEbms3MessageProperties,
-                                                           null,
-                                                           getSoapVersion ()).setMustUnderstand (true);
-
-    if (aCallback != null)
-      aCallback.onAS4Message (aUserMsg);
-
-    final Document aPureDoc = aUserMsg.getAsSoapDocument (m_aSoapBodyPayload);
+    final String sMessagingID;
+    final Document aPureDoc;
+    if (m_aHeaderTemplateCache != null && aCallback == null)
+    {
+      // Use a pre-marshalled template and only fill in the message specific
+      // values
+      final AS4UserMessageHeaderTemplate aTemplate = m_aHeaderTemplateCache.getOrCreateTemplate (getSoapVersion (),
+                                                                                                 AS4UserMessageHeaderTemplate.createSkeleton (aEbms3PartyInfo,
+                                                                                                                                              aEbms3CollaborationInfo,
+                                                                                                                                              aEbms3MessageProperties,
+                                                                                                                                              null));
+      sMessagingID = MessageHelperMethods.createRandomMessagingID ();
+      aPureDoc = aTemplate.createSoapDocument (sMessagingID,
+                                               sMessageID,
+                                               getRefToMessageID (),
+                                               aSendingDateTime,
+                                               m_sConversationID,
+                                               aEbms3PayloadInfo,
+                                               m_aSoapBodyPayload);
+    }
+    else
+    {
+      final Ebms3MessageInfo aEbms3MessageInfo = MessageHelperMethods.createEbms3MessageInfo (sMessageID,
+                                                                                              getRefToMessageID (),
+                                                                                              aSendingDateTime);
+      final AS4UserMessage aUserMsg = AS4UserMessage.create (aEbms3MessageInfo,
+                                                             aEbms3PayloadInfo,
+                                                             aEbms3CollaborationInfo,
+                                                             aEbms3PartyInfo,
+                                                             aEbms3MessageProperties,
+                                                             null,
+                                                             getSoapVersion ()).setMustUnderstand (true);
+
+      if (aCallback != null)
+        aCallback.onAS4Message (aUserMsg);
+
+      sMessagingID = aUserMsg.getMessagingID ();
+      aPureDoc = aUserMsg.getAsSoapDocument (m_aSoapBodyPayload);
+    }
 
     if (aCallback != null)
       aCallback.onSoapDocument (aPureDoc);
@@ -713,7 +774,7 @@ public class AS4ClientUserMessage extends AbstractAS4Client <AS4ClientUserMessag
         final Document aSignedDoc = AS4Signer.createSignedMessage (aCryptoFactorySign,
                                                                    aDoc,
                                                                    getSoapVersion (),
-                                                                   aUserMsg.getMessagingID (),
+                                                                   sMessagingID,
                                                                    m_aAttachments,
                                                                    getAS4ResourceHelper (),
                                                                    bMustUnderstand,
@@ -770,25 +831,27 @@ public class AS4ClientUserMessage extends AbstractAS4Client <AS4ClientUserMessag
       }
     }
 
-    if ((bAttachmentsPresent || m_bForceMimeMessage) && aMimeMsg == null)
-    {
-      // * not encrypted, not signed
-      // * not encrypted, signed
-      // * forced by flag
-      aMimeMsg = MimeMessageCreator.generateMimeMessage (getSoapVersion (), aDoc, m_aAttachments);
-    }
-
     final AS4ClientBuiltMessage ret;
     if (aMimeMsg != null)
     {
-      // Wrap MIME message
+      // Wrap encrypted MIME message
       ret = new AS4ClientBuiltMessage (sMessageID, HttpMimeMessageEntity.create (aMimeMsg));
     }
     else
-    {
-      // Wrap SOAP XML
-      ret = new AS4ClientBuiltMessage (sMessageID, new HttpXMLEntity (aDoc, getSoapVersion ().getMimeType ()));
-    }
+      if (bAttachmentsPresent || m_bForceMimeMessage)
+      {
+        // * not encrypted, not signed
+        // * not encrypted, signed
+        // * forced by flag
+        // Write the MIME message directly without JavaMail
+        final AS4MultipartRelatedWriter aWriter = new AS4MultipartRelatedWriter (getSoapVersion (), aDoc, m_aAttachments);
+        ret = new AS4ClientBuiltMessage (sMessageID, new HttpMultipartRelatedEntity (aWriter));
+      }
+      else
+      {
+        // Wrap SOAP XML
+        ret = new AS4ClientBuiltMessage (sMessageID, new HttpXMLEntity (aDoc, getSoapVersion ().getMimeType ()));
+      }
 
     LOGGER.info ("phase4 --- usermessage-building:end");
 
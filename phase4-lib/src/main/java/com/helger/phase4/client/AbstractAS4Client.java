@@ -19,6 +19,7 @@ package com.helger.phase4.client;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 
 import javax.annotation.Nonnull;
@@ -46,6 +47,7 @@ import com.helger.phase4.crypto.IAS4CryptoFactory;
 import com.helger.phase4.dump.AS4DumpManager;
 import com.helger.phase4.dump.IAS4OutgoingDumper;
 import com.helger.phase4.http.BasicHttpPoster;
+import com.helger.phase4.http.HttpResponseSettings;
 import com.helger.phase4.http.HttpRetrySettings;
 import com.helger.phase4.http.IHttpPoster;
 import com.helger.phase4.messaging.domain.EAS4MessageType;
@@ -99,6 +101,8 @@ public abstract class AbstractAS4Client <IMPLTYPE extends AbstractAS4Client <IMP
 
   // Retry handling
   private final HttpRetrySettings m_aHttpRetrySettings = new HttpRetrySettings ();
+  // Response handling
+  private final HttpResponseSettings m_aHttpResponseSettings = new HttpResponseSettings ();
 
   protected AbstractAS4Client (@Nonnull final EAS4MessageType eMessageType,
                                @Nonnull @WillNotClose final AS4ResourceHelper aResHelper)
@@ -451,6 +455,17 @@ public abstract class AbstractAS4Client <IMPLTYPE extends AbstractAS4Client <IMP
     return m_aHttpRetrySettings;
   }
 
+  /**
+   * @return The HTTP response settings to be used. Never <code>null</code>.
+   *         Modify the response object.
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final HttpResponseSettings httpResponseSettings ()
+  {
+    return m_aHttpResponseSettings;
+  }
+
   @Nonnull
   protected IAS4CryptoFactory internalGetCryptoFactorySign ()
   {
@@ -559,6 +574,48 @@ public abstract class AbstractAS4Client <IMPLTYPE extends AbstractAS4Client <IMP
     // Create a new message ID for each build!
     final String sMessageID = createMessageID ();
     final AS4ClientBuiltMessage aBuiltMsg = buildMessage (sMessageID, aCallback);
+    return sendBuiltMessageWithRetries (sURL, aBuiltMsg, aResponseHandler, aOutgoingDumper, aRetryCallback);
+  }
+
+  /**
+   * Send an AS4 client message that was already created by
+   * {@link #buildMessage(String, IAS4ClientBuildMessageCallback)} to the
+   * provided URL. This allows to build the message in one thread and to send
+   * it in another thread. This methods does take retries into account. It
+   * synchronously handles the retries and only returns after the last retry.
+   *
+   * @param <T>
+   *        The response data type
+   * @param sURL
+   *        The URL to send the HTTP POST to
+   * @param aBuiltMsg
+   *        The message that was built by this client. May not be
+   *        <code>null</code>.
+   * @param aResponseHandler
+   *        The response handler that converts the HTTP response to a domain
+   *        object. May not be <code>null</code>.
+   * @param aOutgoingDumper
+   *        An outgoing dumper to be used. Maybe <code>null</code>. If
+   *        <code>null</code> the global outgoing dumper from
+   *        {@link AS4DumpManager} is used.
+   * @param aRetryCallback
+   *        An optional callback to be invoked if a retry happens on HTTP level.
+   *        May be <code>null</code>.
+   * @return The sent message that contains
+   * @throws IOException
+   *         in case of error when sending the message
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final <T> AS4ClientSentMessage <T> sendBuiltMessageWithRetries (@Nonnull final String sURL,
+                                                                         @Nonnull final AS4ClientBuiltMessage aBuiltMsg,
+                                                                         @Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler,
+                                                                         @Nullable final IAS4OutgoingDumper aOutgoingDumper,
+                                                                         @Nullable final IAS4RetryCallback aRetryCallback) throws IOException
+  {
+    ValueEnforcer.notNull (aBuiltMsg, "BuiltMsg");
+
+    final String sMessageID = aBuiltMsg.getMessageID ();
     HttpEntity aBuiltEntity = aBuiltMsg.getHttpEntity ();
     HttpHeaderMap aBuiltHttpHeaders = aBuiltMsg.getCustomHeaders ();
     if (false)
@@ -611,4 +668,94 @@ public abstract class AbstractAS4Client <IMPLTYPE extends AbstractAS4Client <IMP
 
     return ret;
   }
+
+  /**
+   * Send the AS4 client message created by
+   * {@link #buildMessage(String, IAS4ClientBuildMessageCallback)} to the
+   * provided URL in an asynchronous manner. The message is built in the
+   * calling thread, but the transmission and the retries are handled by the
+   * {@link IHttpPoster#sendGenericMessageWithRetriesAsync(String, HttpHeaderMap, HttpEntity, String, HttpRetrySettings, HttpClientResponseHandler, IAS4OutgoingDumper, IAS4RetryCallback)}
+   * method of the configured HTTP poster. Only if an
+   * {@link com.helger.phase4.http.AsyncHttpPoster} is used, the transmission
+   * is really non-blocking.
+   *
+   * @param <T>
+   *        The response data type
+   * @param sURL
+   *        The URL to send the HTTP POST to
+   * @param aResponseHandler
+   *        The response handler that converts the HTTP response to a domain
+   *        object. May not be <code>null</code>.
+   * @param aCallback
+   *        An optional callback for the different stages of building the
+   *        document. May be <code>null</code>.
+   * @param aOutgoingDumper
+   *        An outgoing dumper to be used. Maybe <code>null</code>. If
+   *        <code>null</code> the global outgoing dumper from
+   *        {@link AS4DumpManager} is used.
+   * @param aRetryCallback
+   *        An optional callback to be invoked if a retry happens on HTTP level.
+   *        May be <code>null</code>.
+   * @return A future with the sent message. Never <code>null</code>.
+   * @throws IOException
+   *         in case of error when building the message
+   * @throws WSSecurityException
+   *         In case there is an issue with signing/encryption
+   * @throws MessagingException
+   *         in case something happens in MIME wrapping
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final <T> CompletableFuture <AS4ClientSentMessage <T>> sendMessageWithRetriesAsync (@Nonnull final String sURL,
+                                                                                             @Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler,
+                                                                                             @Nullable final IAS4ClientBuildMessageCallback aCallback,
+                                                                                             @Nullable final IAS4OutgoingDumper aOutgoingDumper,
+                                                                                             @Nullable final IAS4RetryCallback aRetryCallback) throws IOException,
+                                                                                                                                               WSSecurityException,
+                                                                                                                                               MessagingException
+  {
+    // Create a new message ID for each build!
+    final String sMessageID = createMessageID ();
+    final AS4ClientBuiltMessage aBuiltMsg = buildMessage (sMessageID, aCallback);
+    HttpEntity aBuiltEntity = aBuiltMsg.getHttpEntity ();
+    final HttpHeaderMap aBuiltHttpHeaders = aBuiltMsg.getCustomHeaders ();
+
+    LOGGER.info ("phase4 --- sending.withretries.async:start");
+
+    if (m_aHttpRetrySettings.isRetryEnabled () ||
+        aOutgoingDumper != null ||
+        AS4DumpManager.getOutgoingDumper () != null)
+    {
+      // Ensure a repeatable entity is provided
+      aBuiltEntity = m_aResHelper.createRepeatableHttpEntity (aBuiltEntity);
+    }
+
+    // Keep the HTTP response status line for external evaluation
+    final Wrapper <StatusLine> aStatusLineKeeper = new Wrapper <> ();
+    // Keep the HTTP response headers for external evaluation
+    final HttpHeaderMap aResponseHeaders = new HttpHeaderMap ();
+
+    final HttpClientResponseHandler <T> aRealResponseHandler = x -> {
+      // Remember the HTTP response data
+      aStatusLineKeeper.set (new StatusLine (x));
+      final Header [] aHeaders = x.getHeaders ();
+      if (aHeaders != null)
+        for (final Header aHeader : aHeaders)
+          aResponseHeaders.addHeader (aHeader.getName (), aHeader.getValue ());
+      // Call the original handler
+      return aResponseHandler.handleResponse (x);
+    };
+    final CompletableFuture <T> aResponseFuture = m_aHttpPoster.sendGenericMessageWithRetriesAsync (sURL,
+                                                                                                    aBuiltHttpHeaders,
+                                                                                                    aBuiltEntity,
+                                                                                                    sMessageID,
+                                                                                                    m_aHttpRetrySettings,
+                                                                                                    aRealResponseHandler,
+                                                                                                    aOutgoingDumper,
+                                                                                                    aRetryCallback);
+    return aResponseFuture.thenApply (aResponseContent -> {
+      LOGGER.info ("phase4 --- sending.withretries.async:end");
+      return new AS4ClientSentMessage <> (aBuiltMsg, aStatusLineKeeper.get (), aResponseHeaders, aResponseContent);
+    });
+  }
 }
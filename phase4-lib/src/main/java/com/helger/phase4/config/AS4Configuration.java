@@ -61,6 +61,16 @@ public final class AS4Configuration
   public static final String PROPERTY_PHASE4_WSS4J_SYNCSECURITY = "phase4.wss4j.syncsecurity";
   public static final boolean DEFAULT_PHASE4_WSS4J_SYNCSECURITY = false;
 
+  public static final String PROPERTY_PHASE4_EXECUTION_MODE = "phase4.execution.mode";
+  public static final EAS4ExecutionMode DEFAULT_PHASE4_EXECUTION_MODE = EAS4ExecutionMode.PLATFORM_THREADS;
+
+  /**
+   * The boolean property to enable the streaming pre-scan of incoming ebMS
+   * headers.
+   */
+  public static final String PROPERTY_PHASE4_INCOMING_PRESCAN_ENABLED = "phase4.incoming.prescan.enabled";
+  public static final boolean DEFAULT_PHASE4_INCOMING_PRESCAN_ENABLED = false;
+
   public static final long DEFAULT_PHASE4_INCOMING_DUPLICATEDISPOSAL_MINUTES = 10;
 
   private static final Logger LOGGER = LoggerFactory.getLogger (AS4Configuration.class);
@@ -297,4 +307,34 @@ public final class AS4Configuration
     // Defaults to true for backwards compatibility reason
     return getConfig ().getAsBoolean ("phase4.errormsg.include.stacktraces", true);
   }
+
+  /**
+   * @return The execution mode for outbound sending and asynchronous
+   *         processing. Taken from the configuration item
+   *         <code>phase4.execution.mode</code> with the possible values
+   *         <code>platform</code> and <code>virtual</code>. Defaults to
+   *         {@link EAS4ExecutionMode#PLATFORM_THREADS}. Never
+   *         <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nonnull
+  public static EAS4ExecutionMode getExecutionMode ()
+  {
+    final String sValue = getConfig ().getAsString (PROPERTY_PHASE4_EXECUTION_MODE);
+    return EAS4ExecutionMode.getFromIDOrDefault (sValue, DEFAULT_PHASE4_EXECUTION_MODE);
+  }
+
+  /**
+   * @return <code>true</code> if the ebMS header of incoming messages should
+   *         be pre-scanned in a streaming way, to reject duplicates and
+   *         unknown PModes before the DOM is built. Taken from the
+   *         configuration item
+   *         {@link #PROPERTY_PHASE4_INCOMING_PRESCAN_ENABLED}. Defaults to
+   *         {@link #DEFAULT_PHASE4_INCOMING_PRESCAN_ENABLED}.
+   * @since 2.7.6
+   */
+  public static boolean isIncomingPreScanEnabled ()
+  {
+    return getConfig ().getAsBoolean (PROPERTY_PHASE4_INCOMING_PRESCAN_ENABLED, DEFAULT_PHASE4_INCOMING_PRESCAN_ENABLED);
+  }
 }
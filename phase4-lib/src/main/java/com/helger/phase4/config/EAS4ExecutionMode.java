@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.config;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.lang.EnumHelper;
+
+/**
+ * The threading model for outbound sending and asynchronous processing.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+public enum EAS4ExecutionMode implements IHasID <String>
+{
+  /**
+   * Use the classic pools of platform threads.
+   */
+  PLATFORM_THREADS ("platform"),
+  /**
+   * Use one virtual thread per task. This requires Java 21 or later at
+   * runtime - on older runtimes platform threads are used.
+   */
+  VIRTUAL_THREADS ("virtual");
+
+  private final String m_sID;
+
+  EAS4ExecutionMode (@Nonnull @Nonempty final String sID)
+  {
+    m_sID = sID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  @Nullable
+  public static EAS4ExecutionMode getFromIDOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDOrNull (EAS4ExecutionMode.class, sID);
+  }
+
+  @Nullable
+  public static EAS4ExecutionMode getFromIDOrDefault (@Nullable final String sID,
+                                                      @Nullable final EAS4ExecutionMode eDefault)
+  {
+    return EnumHelper.getFromIDOrDefault (EAS4ExecutionMode.class, sID, eDefault);
+  }
+}
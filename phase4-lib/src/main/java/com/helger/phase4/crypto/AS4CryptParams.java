@@ -20,6 +20,7 @@ import java.security.Provider;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
 import javax.annotation.Nonnull;
@@ -56,6 +57,7 @@ public class AS4CryptParams implements ICloneable <AS4CryptParams>
   public static final String DEFAULT_DIGEST_ALGORITHM = WSS4JConstants.SHA256;
   public static final ICryptoSessionKeyProvider DEFAULT_SESSION_KEY_PROVIDER = ICryptoSessionKeyProvider.INSTANCE_RANDOM_AES_128;
   public static final boolean DEFAULT_ENCRYPT_SYMMETRIC_SESSION_KEY = true;
+  public static final boolean DEFAULT_REPRODUCIBLE_ATTACHMENT_ENCRYPTION = false;
 
   private static final Logger LOGGER = LoggerFactory.getLogger (AS4CryptParams.class);
 
@@ -79,6 +81,8 @@ public class AS4CryptParams implements ICloneable <AS4CryptParams>
   private Provider m_aSecurityProviderDecrypt;
   private boolean m_bEncryptSymmetricSessionKey = DEFAULT_ENCRYPT_SYMMETRIC_SESSION_KEY;
   private IWSSecEncryptCustomizer m_aWSSecEncryptCustomizer;
+  private boolean m_bReproducibleAttachmentEncryption = DEFAULT_REPRODUCIBLE_ATTACHMENT_ENCRYPTION;
+  private Executor m_aAttachmentExecutor;
 
   /**
    * Default constructor using default
@@ -438,6 +442,81 @@ public class AS4CryptParams implements ICloneable <AS4CryptParams>
     return this;
   }
 
+  /**
+   * @return <code>true</code> if encrypted attachments are re-created on
+   *         demand with the same session key and IV, so that they can be read
+   *         more than once without being stored in a temporary file,
+   *         <code>false</code> if not. Default is
+   *         {@link #DEFAULT_REPRODUCIBLE_ATTACHMENT_ENCRYPTION}
+   * @since 2.7.6
+   */
+  public final boolean isReproducibleAttachmentEncryption ()
+  {
+    return m_bReproducibleAttachmentEncryption;
+  }
+
+  /**
+   * Enable or disable reproducible attachment encryption. This only has an
+   * effect for attachments whose content was created by phase4 and can be read
+   * more than once (e.g. the temporary file of a compressed attachment) and for
+   * encryption algorithms without random padding (e.g. AES-GCM). Caller
+   * provided content (e.g. an uncompressed source file) may change between two
+   * reads and is therefore always encrypted only once.
+   *
+   * @param b
+   *        <code>true</code> to enabled, <code>false</code> to disable it.
+   * @return this for chaining
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final AS4CryptParams setReproducibleAttachmentEncryption (final boolean b)
+  {
+    m_bReproducibleAttachmentEncryption = b;
+    return this;
+  }
+
+  /**
+   * @return The executor used to encrypt multiple attachments in parallel. May
+   *         be <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nullable
+  public final Executor getAttachmentExecutor ()
+  {
+    return m_aAttachmentExecutor;
+  }
+
+  /**
+   * @return <code>true</code> if an attachment executor is present,
+   *         <code>false</code> if not.
+   * @since 2.7.6
+   */
+  public final boolean hasAttachmentExecutor ()
+  {
+    return m_aAttachmentExecutor != null;
+  }
+
+  /**
+   * Set the executor to encrypt multiple attachments in parallel. If set, all
+   * encrypted attachments that cannot be re-created on demand (see
+   * {@link #setReproducibleAttachmentEncryption(boolean)}) are encrypted
+   * concurrently into temporary files, before the MIME message is assembled in
+   * the original attachment order. The executor is not owned by this object and
+   * is never shut down.
+   *
+   * @param a
+   *        The executor to use. May be <code>null</code> to encrypt all
+   *        attachments sequentially while the message is written.
+   * @return this for chaining
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final AS4CryptParams setAttachmentExecutor (@Nullable final Executor a)
+  {
+    m_aAttachmentExecutor = a;
+    return this;
+  }
+
   /**
    * This method calls {@link #setAlgorithmCrypt(ECryptoAlgorithmCrypt)} based
    * on the PMode parameters. If the PMode parameter is <code>null</code> the
@@ -477,7 +556,9 @@ public class AS4CryptParams implements ICloneable <AS4CryptParams>
            .setSecurityProviderEncrypt (m_aSecurityProviderEncrypt)
            .setSecurityProviderDecrypt (m_aSecurityProviderDecrypt)
            .setEncryptSymmetricSessionKey (m_bEncryptSymmetricSessionKey)
-           .setWSSecEncryptCustomizer (m_aWSSecEncryptCustomizer);
+           .setWSSecEncryptCustomizer (m_aWSSecEncryptCustomizer)
+           .setReproducibleAttachmentEncryption (m_bReproducibleAttachmentEncryption)
+           .setAttachmentExecutor (m_aAttachmentExecutor);
   }
 
   @Nonnull
@@ -504,6 +585,8 @@ public class AS4CryptParams implements ICloneable <AS4CryptParams>
                                        .append ("SecurityProviderDecrypt", m_aSecurityProviderDecrypt)
                                        .append ("EncryptSymmetricSessionKey", m_bEncryptSymmetricSessionKey)
                                        .append ("WSSecEncryptCustomizer", m_aWSSecEncryptCustomizer)
+                                       .append ("ReproducibleAttachmentEncryption", m_bReproducibleAttachmentEncryption)
+                                       .append ("AttachmentExecutor", m_aAttachmentExecutor)
                                        .getToString ();
   }
 
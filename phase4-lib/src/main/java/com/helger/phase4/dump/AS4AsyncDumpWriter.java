@@ -0,0 +1,560 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.dump;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * Writes dump data on a background thread, so that slow dump targets (e.g. a
+ * slow disk) don't throttle the network I/O of the AS4 transmission. Every
+ * {@link OutputStream} created by {@link #wrap(OutputStream)} copies the
+ * written bytes into pooled buffers that are handed over to a single writer
+ * thread. The number of buffers is limited, so the memory used is bounded by
+ * <code>buffer size * max buffers</code>. If all buffers are in use, the
+ * configured {@link EAS4DumpOverflowPolicy} applies.<br>
+ * Upon {@link #close()} all pending data is written and all target streams
+ * are closed, before the method returns (with a configurable timeout). If the
+ * timeout is exceeded, the pending data is discarded, but the target streams
+ * are still closed.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ * @see AS4IncomingDumperAsync
+ * @see AS4OutgoingDumperAsync
+ */
+@ThreadSafe
+public class AS4AsyncDumpWriter implements AutoCloseable
+{
+  public static final int DEFAULT_BUFFER_SIZE = 64 * CGlobal.BYTES_PER_KILOBYTE;
+  public static final int DEFAULT_MAX_BUFFERS = 256;
+  public static final EAS4DumpOverflowPolicy DEFAULT_OVERFLOW_POLICY = EAS4DumpOverflowPolicy.BLOCK;
+  public static final Duration DEFAULT_SHUTDOWN_TIMEOUT = Duration.ofSeconds (30);
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4AsyncDumpWriter.class);
+  // How often a blocked writer checks if this writer was closed
+  private static final long BUFFER_WAIT_MILLIS = 100;
+
+  /**
+   * A task for the writer thread, that can be abandoned if the shutdown timeout
+   * is exceeded.
+   */
+  private interface IDumpTask extends Runnable
+  {
+    /**
+     * Release all resources of this task without running it.
+     */
+    void abandon ();
+  }
+
+  @Nonnull
+  private static IDumpTask _task (@Nonnull final Runnable aRun, @Nonnull final Runnable aAbandon)
+  {
+    return new IDumpTask ()
+    {
+      public void run ()
+      {
+        aRun.run ();
+      }
+
+      public void abandon ()
+      {
+        aAbandon.run ();
+      }
+    };
+  }
+
+  private static final IDumpTask STOP = _task ( () -> {}, () -> {});
+
+  /**
+   * The output stream handed out to the dumping code. It must only be used by
+   * a single thread, as all output streams.
+   */
+  @NotThreadSafe
+  private final class AsyncDumpOutputStream extends OutputStream
+  {
+    private final OutputStream m_aTarget;
+    private byte [] m_aBuffer;
+    private int m_nBufferPos;
+    private boolean m_bDropped;
+    private boolean m_bClosed;
+    // Set by the writer thread
+    private volatile boolean m_bFailed;
+
+    AsyncDumpOutputStream (@Nonnull final OutputStream aTarget)
+    {
+      m_aTarget = aTarget;
+    }
+
+    private boolean _ensureBuffer () throws IOException
+    {
+      if (m_aBuffer == null)
+      {
+        m_aBuffer = _acquireBuffer ();
+        m_nBufferPos = 0;
+        if (m_aBuffer == null)
+        {
+          m_bDropped = true;
+          m_aDroppedDumpCount.incrementAndGet ();
+          if (isClosed ())
+            LOGGER.warn ("The dump writer is closed and all " +
+                         m_nMaxBuffers +
+                         " dump buffers are in use - dropping the rest of the dump");
+          else
+            LOGGER.warn ("All " + m_nMaxBuffers + " dump buffers are in use - dropping the rest of the dump");
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void _handOver ()
+    {
+      final byte [] aBuffer = m_aBuffer;
+      final int nLen = m_nBufferPos;
+      m_aBuffer = null;
+      m_nBufferPos = 0;
+      if (aBuffer != null)
+      {
+        if (nLen > 0)
+          _submit (_task ( () -> _writeToTarget (this, aBuffer, nLen), () -> _abandonWrite (this, aBuffer)));
+        else
+          _releaseBuffer (aBuffer);
+      }
+    }
+
+    @Override
+    public void write (final int b) throws IOException
+    {
+      if (m_bClosed || m_bDropped || m_bFailed)
+        return;
+      if (!_ensureBuffer ())
+        return;
+      m_aBuffer[m_nBufferPos++] = (byte) b;
+      if (m_nBufferPos == m_aBuffer.length)
+        _handOver ();
+    }
+
+    @Override
+    public void write (@Nonnull final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+    {
+      ValueEnforcer.isArrayOfsLen (aBuf, nOfs, nLen);
+      int nOffset = nOfs;
+      int nRemaining = nLen;
+      while (nRemaining > 0)
+      {
+        if (m_bClosed || m_bDropped || m_bFailed)
+          return;
+        if (!_ensureBuffer ())
+          return;
+        final int nChunk = Math.min (nRemaining, m_aBuffer.length - m_nBufferPos);
+        System.arraycopy (aBuf, nOffset, m_aBuffer, m_nBufferPos, nChunk);
+        m_nBufferPos += nChunk;
+        nOffset += nChunk;
+        nRemaining -= nChunk;
+        if (m_nBufferPos == m_aBuffer.length)
+          _handOver ();
+      }
+    }
+
+    @Override
+    public void flush ()
+    {
+      // Intentionally a no-op: handing over partially filled buffers on every
+      // flush would waste buffers. All data is written upon close.
+    }
+
+    @Override
+    public void close ()
+    {
+      if (!m_bClosed)
+      {
+        m_bClosed = true;
+        _handOver ();
+        _submit (_task ( () -> StreamHelper.close (m_aTarget), () -> StreamHelper.close (m_aTarget)));
+      }
+    }
+  }
+
+  private final int m_nBufferSize;
+  private final int m_nMaxBuffers;
+  private final EAS4DumpOverflowPolicy m_eOverflowPolicy;
+  private final Duration m_aShutdownTimeout;
+  private final BlockingQueue <byte []> m_aFreeBuffers;
+  private final AtomicInteger m_aAllocatedBuffers = new AtomicInteger (0);
+  private final BlockingQueue <IDumpTask> m_aTasks = new LinkedBlockingQueue <> ();
+  private final AtomicLong m_aDroppedDumpCount = new AtomicLong (0);
+  private final AtomicLong m_aFailedWriteCount = new AtomicLong (0);
+  // Read lock for submitting, write lock for closing
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  private final AtomicBoolean m_aStarted = new AtomicBoolean (false);
+  private final AtomicBoolean m_aClosed = new AtomicBoolean (false);
+  private final Thread m_aWorker;
+
+  /**
+   * Constructor with default settings.
+   */
+  public AS4AsyncDumpWriter ()
+  {
+    this (DEFAULT_BUFFER_SIZE, DEFAULT_MAX_BUFFERS, DEFAULT_OVERFLOW_POLICY, DEFAULT_SHUTDOWN_TIMEOUT);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param nBufferSize
+   *        The size of a single buffer in bytes. Must be &gt; 0.
+   * @param nMaxBuffers
+   *        The maximum number of buffers that may exist. Must be &gt; 0.
+   * @param eOverflowPolicy
+   *        What to do if all buffers are in use. May not be <code>null</code>.
+   * @param aShutdownTimeout
+   *        The maximum time to wait in {@link #close()} for the pending data to
+   *        be written. May not be <code>null</code>.
+   */
+  public AS4AsyncDumpWriter (@Nonnegative final int nBufferSize,
+                             @Nonnegative final int nMaxBuffers,
+                             @Nonnull final EAS4DumpOverflowPolicy eOverflowPolicy,
+                             @Nonnull final Duration aShutdownTimeout)
+  {
+    ValueEnforcer.isGT0 (nBufferSize, "BufferSize");
+    ValueEnforcer.isGT0 (nMaxBuffers, "MaxBuffers");
+    ValueEnforcer.notNull (eOverflowPolicy, "OverflowPolicy");
+    ValueEnforcer.notNull (aShutdownTimeout, "ShutdownTimeout");
+    ValueEnforcer.isFalse (aShutdownTimeout.isNegative (), "ShutdownTimeout may not be negative");
+
+    m_nBufferSize = nBufferSize;
+    m_nMaxBuffers = nMaxBuffers;
+    m_eOverflowPolicy = eOverflowPolicy;
+    m_aShutdownTimeout = aShutdownTimeout;
+    m_aFreeBuffers = new ArrayBlockingQueue <> (nMaxBuffers);
+
+    m_aWorker = new Thread (this::_run, "phase4-AS4AsyncDumpWriter");
+    m_aWorker.setDaemon (true);
+  }
+
+  /**
+   * @return The size of a single buffer in bytes. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getBufferSize ()
+  {
+    return m_nBufferSize;
+  }
+
+  /**
+   * @return The maximum number of buffers. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxBuffers ()
+  {
+    return m_nMaxBuffers;
+  }
+
+  /**
+   * @return The overflow policy used. Never <code>null</code>.
+   */
+  @Nonnull
+  public final EAS4DumpOverflowPolicy getOverflowPolicy ()
+  {
+    return m_eOverflowPolicy;
+  }
+
+  /**
+   * @return The number of dumps that were truncated because of the
+   *         {@link EAS4DumpOverflowPolicy#DROP} policy. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getDroppedDumpCount ()
+  {
+    return m_aDroppedDumpCount.get ();
+  }
+
+  /**
+   * @return The number of dumps that were truncated because the target stream
+   *         failed. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getFailedWriteCount ()
+  {
+    return m_aFailedWriteCount.get ();
+  }
+
+  /**
+   * @return <code>true</code> if this writer was already closed,
+   *         <code>false</code> if not.
+   */
+  public final boolean isClosed ()
+  {
+    return m_aClosed.get ();
+  }
+
+  @Nullable
+  private byte [] _acquireBuffer () throws IOException
+  {
+    byte [] ret = m_aFreeBuffers.poll ();
+    if (ret != null)
+      return ret;
+
+    // Allocate lazily
+    while (true)
+    {
+      final int nAllocated = m_aAllocatedBuffers.get ();
+      if (nAllocated >= m_nMaxBuffers)
+        break;
+      if (m_aAllocatedBuffers.compareAndSet (nAllocated, nAllocated + 1))
+        return new byte [m_nBufferSize];
+    }
+
+    if (m_eOverflowPolicy == EAS4DumpOverflowPolicy.DROP)
+      return null;
+
+    try
+    {
+      // Don't wait for buffers that may never be returned after closing
+      while (!isClosed ())
+      {
+        ret = m_aFreeBuffers.poll (BUFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        if (ret != null)
+          return ret;
+      }
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      throw new IOException ("Interrupted while waiting for a dump buffer", ex);
+    }
+    return null;
+  }
+
+  private void _releaseBuffer (@Nonnull final byte [] aBuffer)
+  {
+    // Cannot fail, as never more than m_nMaxBuffers exist
+    m_aFreeBuffers.offer (aBuffer);
+  }
+
+  private void _writeToTarget (@Nonnull final AsyncDumpOutputStream aOS, @Nonnull final byte [] aBuffer, final int nLen)
+  {
+    try
+    {
+      if (!aOS.m_bFailed)
+        aOS.m_aTarget.write (aBuffer, 0, nLen);
+    }
+    catch (final IOException ex)
+    {
+      aOS.m_bFailed = true;
+      m_aFailedWriteCount.incrementAndGet ();
+      LOGGER.error ("Failed to write dump data - dropping the rest of the dump", ex);
+    }
+    finally
+    {
+      _releaseBuffer (aBuffer);
+    }
+  }
+
+  private void _abandonWrite (@Nonnull final AsyncDumpOutputStream aOS, @Nonnull final byte [] aBuffer)
+  {
+    // The dump is incomplete - don't write anything else
+    aOS.m_bFailed = true;
+    _releaseBuffer (aBuffer);
+  }
+
+  private static void _runSafe (@Nonnull final Runnable aTask)
+  {
+    try
+    {
+      aTask.run ();
+    }
+    catch (final RuntimeException ex)
+    {
+      LOGGER.error ("Error in asynchronous dump task", ex);
+    }
+  }
+
+  private void _submit (@Nonnull final IDumpTask aTask)
+  {
+    final boolean bQueued = m_aRWLock.readLockedBoolean ( () -> {
+      if (m_aClosed.get ())
+        return false;
+      if (!m_aStarted.get () && m_aStarted.compareAndSet (false, true))
+        m_aWorker.start ();
+      m_aTasks.add (aTask);
+      return true;
+    });
+    if (!bQueued)
+    {
+      // Already closed - run in the calling thread
+      _runSafe (aTask);
+    }
+  }
+
+  private void _run ()
+  {
+    while (true)
+    {
+      final IDumpTask aTask;
+      try
+      {
+        aTask = m_aTasks.take ();
+      }
+      catch (final InterruptedException ex)
+      {
+        // Only close interrupts, if the timeout is exceeded
+        Thread.currentThread ().interrupt ();
+        break;
+      }
+      if (aTask == STOP)
+        break;
+      _runSafe (aTask);
+    }
+  }
+
+  /**
+   * Wrap the provided dump target so that all data is written asynchronously.
+   * The returned stream must be closed. Closing the returned stream closes the
+   * target stream on the writer thread after all data was written.
+   *
+   * @param aTarget
+   *        The target stream to dump to. May not be <code>null</code>.
+   * @return The stream that the dumping code should write to. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public OutputStream wrap (@Nonnull final OutputStream aTarget)
+  {
+    ValueEnforcer.notNull (aTarget, "Target");
+    return new AsyncDumpOutputStream (aTarget);
+  }
+
+  /**
+   * Run the provided callback on the writer thread, after all data that was
+   * handed over so far was written. This is used to invoke the
+   * <code>onEndRequest</code> callbacks of the wrapped dumpers only after the
+   * dump is complete. If the shutdown timeout is exceeded, the callback is run
+   * in the closing thread anyway.
+   *
+   * @param aCallback
+   *        The callback to run. May not be <code>null</code>.
+   */
+  public void runAfterPendingWrites (@Nonnull final Runnable aCallback)
+  {
+    ValueEnforcer.notNull (aCallback, "Callback");
+    _submit (_task (aCallback, aCallback));
+  }
+
+  /**
+   * Register a JVM shutdown hook that closes this writer when the JVM
+   * terminates, so that pending dumps are flushed.
+   *
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4AsyncDumpWriter registerShutdownHook ()
+  {
+    Runtime.getRuntime ().addShutdownHook (new Thread (this::close, "phase4-AS4AsyncDumpWriter-shutdown"));
+    return this;
+  }
+
+  /**
+   * Close the writer. All data handed over so far is written and all target
+   * streams that were closed by the caller are closed, before this method
+   * returns or the shutdown timeout is exceeded. In the latter case the
+   * pending data is discarded and the target streams are closed in the calling
+   * thread. Data written to this writer after closing is written synchronously
+   * in the calling thread, or dropped if no buffer is available.
+   */
+  public void close ()
+  {
+    final boolean bStarted = m_aRWLock.writeLockedBoolean ( () -> {
+      if (m_aClosed.getAndSet (true))
+        return false;
+      m_aTasks.add (STOP);
+      return m_aStarted.get ();
+    });
+
+    if (bStarted)
+    {
+      try
+      {
+        m_aWorker.join (Math.max (1, m_aShutdownTimeout.toMillis ()));
+        if (m_aWorker.isAlive ())
+        {
+          LOGGER.warn ("AS4AsyncDumpWriter did not finish within " +
+                       m_aShutdownTimeout +
+                       " - " +
+                       m_aTasks.size () +
+                       " dump tasks are abandoned");
+          m_aWorker.interrupt ();
+          _abandonPendingTasks ();
+        }
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+      }
+    }
+  }
+
+  private void _abandonPendingTasks ()
+  {
+    // The worker may still take tasks concurrently - each task is either run
+    // or abandoned
+    IDumpTask aTask;
+    while ((aTask = m_aTasks.poll ()) != null)
+      if (aTask != STOP)
+        _runSafe (aTask::abandon);
+
+    // The worker may have cleared the interrupt flag in a blocking write
+    m_aTasks.add (STOP);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("BufferSize", m_nBufferSize)
+                                       .append ("MaxBuffers", m_nMaxBuffers)
+                                       .append ("OverflowPolicy", m_eOverflowPolicy)
+                                       .append ("ShutdownTimeout", m_aShutdownTimeout)
+                                       .append ("DroppedDumps", m_aDroppedDumpCount.get ())
+                                       .append ("FailedWrites", m_aFailedWriteCount.get ())
+                                       .append ("Closed", m_aClosed.get ())
+                                       .getToString ();
+  }
+}
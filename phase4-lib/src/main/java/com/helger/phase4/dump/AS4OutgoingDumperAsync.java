@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.dump;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.http.HttpHeaderMap;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.messaging.EAS4MessageMode;
+import com.helger.phase4.messaging.IAS4IncomingMessageMetadata;
+import com.helger.phase4.servlet.IAS4MessageState;
+
+/**
+ * Decorator for an {@link IAS4OutgoingDumper} that writes the dump data
+ * asynchronously using an {@link AS4AsyncDumpWriter}, so that sending the
+ * outgoing message is not throttled by the dump target. The
+ * {@link #onEndRequest(EAS4MessageMode, IAS4IncomingMessageMetadata, IAS4MessageState, String)}
+ * callback of the wrapped dumper is invoked after all dump data was written.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+public class AS4OutgoingDumperAsync implements IAS4OutgoingDumper, AutoCloseable
+{
+  private final IAS4OutgoingDumper m_aDelegate;
+  private final AS4AsyncDumpWriter m_aWriter;
+  private final boolean m_bOwnsWriter;
+
+  /**
+   * Constructor using a new {@link AS4AsyncDumpWriter} with default settings
+   * that is closed together with this dumper.
+   *
+   * @param aDelegate
+   *        The dumper to decorate. May not be <code>null</code>.
+   */
+  public AS4OutgoingDumperAsync (@Nonnull final IAS4OutgoingDumper aDelegate)
+  {
+    this (aDelegate, new AS4AsyncDumpWriter (), true);
+  }
+
+  /**
+   * Constructor using a shared {@link AS4AsyncDumpWriter}. The writer is not
+   * closed by {@link #close()}.
+   *
+   * @param aDelegate
+   *        The dumper to decorate. May not be <code>null</code>.
+   * @param aWriter
+   *        The writer to use. May not be <code>null</code>.
+   */
+  public AS4OutgoingDumperAsync (@Nonnull final IAS4OutgoingDumper aDelegate, @Nonnull final AS4AsyncDumpWriter aWriter)
+  {
+    this (aDelegate, aWriter, false);
+  }
+
+  private AS4OutgoingDumperAsync (@Nonnull final IAS4OutgoingDumper aDelegate,
+                                  @Nonnull final AS4AsyncDumpWriter aWriter,
+                                  final boolean bOwnsWriter)
+  {
+    ValueEnforcer.notNull (aDelegate, "Delegate");
+    ValueEnforcer.notNull (aWriter, "Writer");
+    m_aDelegate = aDelegate;
+    m_aWriter = aWriter;
+    m_bOwnsWriter = bOwnsWriter;
+  }
+
+  /**
+   * @return The decorated dumper. Never <code>null</code>.
+   */
+  @Nonnull
+  public final IAS4OutgoingDumper getDelegate ()
+  {
+    return m_aDelegate;
+  }
+
+  /**
+   * @return The asynchronous writer used. Never <code>null</code>.
+   */
+  @Nonnull
+  public final AS4AsyncDumpWriter getWriter ()
+  {
+    return m_aWriter;
+  }
+
+  @Nullable
+  public OutputStream onBeginRequest (@Nonnull final EAS4MessageMode eMsgMode,
+                                      @Nullable final IAS4IncomingMessageMetadata aMessageMetadata,
+                                      @Nullable final IAS4MessageState aState,
+                                      @Nonnull @Nonempty final String sMessageID,
+                                      @Nullable final HttpHeaderMap aCustomHeaders,
+                                      @Nonnegative final int nTry) throws IOException
+  {
+    final OutputStream ret = m_aDelegate.onBeginRequest (eMsgMode,
+                                                         aMessageMetadata,
+                                                         aState,
+                                                         sMessageID,
+                                                         aCustomHeaders,
+                                                         nTry);
+    return ret == null ? null : m_aWriter.wrap (ret);
+  }
+
+  @Override
+  public void onEndRequest (@Nonnull final EAS4MessageMode eMsgMode,
+                            @Nullable final IAS4IncomingMessageMetadata aMessageMetadata,
+                            @Nullable final IAS4MessageState aState,
+                            @Nonnull @Nonempty final String sMessageID)
+  {
+    m_aWriter.runAfterPendingWrites ( () -> m_aDelegate.onEndRequest (eMsgMode, aMessageMetadata, aState, sMessageID));
+  }
+
+  /**
+   * Close the writer if it was created by this dumper. All pending dump data is
+   * written.
+   */
+  public void close ()
+  {
+    if (m_bOwnsWriter)
+      m_aWriter.close ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Delegate", m_aDelegate)
+                                       .append ("Writer", m_aWriter)
+                                       .append ("OwnsWriter", m_bOwnsWriter)
+                                       .getToString ();
+  }
+}
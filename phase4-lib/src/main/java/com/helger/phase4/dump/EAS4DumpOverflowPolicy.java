@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.dump;
+
+/**
+ * Defines what an {@link AS4AsyncDumpWriter} does, if all of its buffers are
+ * in use, because the dump target is slower than the network.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+public enum EAS4DumpOverflowPolicy
+{
+  /**
+   * Wait until a buffer is available again. No dump data is lost, but the
+   * transmission is throttled to the speed of the dump target.
+   */
+  BLOCK,
+  /**
+   * Stop dumping the affected message. The transmission is never throttled,
+   * but the dump of that message is incomplete.
+   */
+  DROP;
+}
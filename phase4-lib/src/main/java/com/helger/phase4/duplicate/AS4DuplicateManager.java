@@ -96,6 +96,7 @@ public class AS4DuplicateManager extends AbstractPhotonMapBasedWALDAO <IAS4Dupli
     if (StringHelper.hasNoText (sMessageID))
       return null;
 
-    return findFirst (x -> x.getMessageID ().equals (sMessageID));
+    // The message ID is the ID of the item
+    return getOfID (sMessageID);
   }
 }
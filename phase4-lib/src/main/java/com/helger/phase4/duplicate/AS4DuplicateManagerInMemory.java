@@ -131,7 +131,8 @@ public class AS4DuplicateManagerInMemory implements IAS4DuplicateManager
     if (StringHelper.hasNoText (sMessageID))
       return null;
 
-    return findFirst (x -> x.getMessageID ().equals (sMessageID));
+    // The message ID is the key of the map
+    return m_aRWLock.readLockedGet ( () -> m_aMap.get (sMessageID));
   }
 
   @Nonnull
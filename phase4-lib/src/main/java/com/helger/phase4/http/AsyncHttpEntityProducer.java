@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+import org.apache.hc.core5.http.nio.support.classic.ContentOutputStream;
+import org.apache.hc.core5.http.nio.support.classic.SharedOutputBuffer;
+
+import com.helger.commons.ValueEnforcer;
+
+/**
+ * An {@link AsyncEntityProducer} that streams a classic {@link HttpEntity}
+ * instead of serializing it into memory first. The entity is written in a
+ * thread of the provided executor into a bounded buffer, that is drained by the
+ * I/O thread. If the entity is repeatable, so is this producer - this allows
+ * the async client to retry the transmission.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@ThreadSafe
+final class AsyncHttpEntityProducer implements AsyncEntityProducer
+{
+  private static final int BUFFER_SIZE = 16 * 1024;
+
+  private final HttpEntity m_aEntity;
+  private final Executor m_aExecutor;
+  // The buffer of the current production run - null if not started
+  private final AtomicReference <SharedOutputBuffer> m_aBuffer = new AtomicReference <> ();
+  private final AtomicReference <Exception> m_aException = new AtomicReference <> ();
+
+  AsyncHttpEntityProducer (@Nonnull final HttpEntity aEntity, @Nonnull final Executor aExecutor)
+  {
+    ValueEnforcer.notNull (aEntity, "Entity");
+    ValueEnforcer.notNull (aExecutor, "Executor");
+    m_aEntity = aEntity;
+    m_aExecutor = aExecutor;
+  }
+
+  public boolean isRepeatable ()
+  {
+    return m_aEntity.isRepeatable ();
+  }
+
+  public long getContentLength ()
+  {
+    return m_aEntity.getContentLength ();
+  }
+
+  @Nullable
+  public String getContentType ()
+  {
+    return m_aEntity.getContentType ();
+  }
+
+  @Nullable
+  public String getContentEncoding ()
+  {
+    return m_aEntity.getContentEncoding ();
+  }
+
+  public boolean isChunked ()
+  {
+    return m_aEntity.isChunked ();
+  }
+
+  @Nullable
+  public Set <String> getTrailerNames ()
+  {
+    return m_aEntity.getTrailerNames ();
+  }
+
+  public int available ()
+  {
+    final SharedOutputBuffer aBuffer = m_aBuffer.get ();
+    return aBuffer == null ? 0 : aBuffer.length ();
+  }
+
+  public void produce (@Nonnull final DataStreamChannel aChannel) throws IOException
+  {
+    SharedOutputBuffer aBuffer = m_aBuffer.get ();
+    if (aBuffer == null)
+    {
+      final SharedOutputBuffer aNewBuffer = new SharedOutputBuffer (BUFFER_SIZE);
+      if (m_aBuffer.compareAndSet (null, aNewBuffer))
+      {
+        // Write the entity outside of the I/O thread, as this blocks whenever
+        // the buffer is full
+        m_aExecutor.execute ( () -> {
+          try
+          {
+            m_aEntity.writeTo (new ContentOutputStream (aNewBuffer));
+            aNewBuffer.writeCompleted ();
+          }
+          catch (final Exception ex)
+          {
+            aNewBuffer.abort ();
+            m_aException.compareAndSet (null, ex);
+          }
+        });
+      }
+      aBuffer = m_aBuffer.get ();
+      if (aBuffer == null)
+        return;
+    }
+    aBuffer.flush (aChannel);
+  }
+
+  public void failed (@Nonnull final Exception ex)
+  {
+    if (m_aException.compareAndSet (null, ex))
+      releaseResources ();
+  }
+
+  /**
+   * @return The exception that occurred while producing the entity. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public Exception getException ()
+  {
+    return m_aException.get ();
+  }
+
+  public void releaseResources ()
+  {
+    // Unblock a potentially waiting writer - a new production run (e.g. for a
+    // retry) uses a new buffer
+    final SharedOutputBuffer aBuffer = m_aBuffer.getAndSet (null);
+    if (aBuffer != null)
+      aBuffer.abort ();
+  }
+}
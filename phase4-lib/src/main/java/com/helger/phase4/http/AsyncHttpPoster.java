@@ -0,0 +1,569 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.net.ssl.SSLContext;
+
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.routing.DefaultProxyRoutePlanner;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.ssl.TlsStrategy;
+import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.apache.hc.core5.util.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.OverrideOnDemand;
+import com.helger.commons.annotation.ReturnsMutableObject;
+import com.helger.commons.collection.impl.CommonsTreeSet;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.http.HttpHeaderMap;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.commons.timing.StopWatch;
+import com.helger.http.tls.ITLSConfigurationMode;
+import com.helger.httpclient.HttpClientFactory;
+import com.helger.httpclient.HttpClientSettings;
+
+/**
+ * An {@link IHttpPoster} that performs the transmission with non-blocking I/O,
+ * based on the Apache HttpClient 5 async client. Only a few I/O threads are
+ * needed to drive a large number of concurrent transmissions, because no thread
+ * is blocked while waiting for the response.<br>
+ * The synchronous methods are inherited from {@link BasicHttpPoster}. The async
+ * client is created lazily upon the first asynchronous transmission, based on
+ * the settings of the {@link #getHttpClientFactory()} at that time. Therefore
+ * all settings must be applied before the first asynchronous usage.<br>
+ * Instances of this class are meant to be long-lived and shared between
+ * senders. Call {@link #close()} when the poster is no longer needed.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@ThreadSafe
+public class AsyncHttpPoster extends BasicHttpPoster implements AutoCloseable
+{
+  public static final int DEFAULT_IO_THREAD_COUNT = Runtime.getRuntime ().availableProcessors ();
+  public static final HttpVersionPolicy DEFAULT_HTTP_VERSION_POLICY = HttpVersionPolicy.FORCE_HTTP_1;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AsyncHttpPoster.class);
+
+  // Handled by the transport and must not be set explicitly (forbidden in
+  // HTTP/2)
+  private static final ICommonsSet <String> CONNECTION_SPECIFIC_HEADERS = new CommonsTreeSet <> (String.CASE_INSENSITIVE_ORDER);
+  static
+  {
+    CONNECTION_SPECIFIC_HEADERS.addAll (HttpHeaders.CONNECTION,
+                                        HttpHeaders.CONTENT_LENGTH,
+                                        HttpHeaders.HOST,
+                                        HttpHeaders.KEEP_ALIVE,
+                                        HttpHeaders.PROXY_CONNECTION,
+                                        HttpHeaders.TRANSFER_ENCODING,
+                                        HttpHeaders.UPGRADE);
+  }
+
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  private final HttpConnectionPoolSettings m_aPoolSettings = new HttpConnectionPoolSettings ();
+  private final HttpResponseSettings m_aResponseSettings = new HttpResponseSettings ();
+  private final AtomicBoolean m_aClosed = new AtomicBoolean (false);
+  private int m_nIOThreadCount = DEFAULT_IO_THREAD_COUNT;
+  private HttpVersionPolicy m_eHttpVersionPolicy = DEFAULT_HTTP_VERSION_POLICY;
+  private H2Config m_aH2Config = H2Config.DEFAULT;
+  @GuardedBy ("m_aRWLock")
+  private CloseableHttpAsyncClient m_aAsyncClient;
+
+  public AsyncHttpPoster ()
+  {}
+
+  /**
+   * @return The mutable connection pool settings used for the async client.
+   *         Modifications are only considered before the first asynchronous
+   *         transmission. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableObject
+  public final HttpConnectionPoolSettings connectionPoolSettings ()
+  {
+    return m_aPoolSettings;
+  }
+
+  /**
+   * @return The mutable response settings used for the asynchronous
+   *         transmissions. The maximum response size is enforced for all
+   *         response handlers, in-memory thresholds and spooling are up to the
+   *         response handler (see {@link ResponseHandlerSpooled}). Modifications
+   *         must be performed before the first asynchronous transmission. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableObject
+  public final HttpResponseSettings responseSettings ()
+  {
+    return m_aResponseSettings;
+  }
+
+  /**
+   * @return The number of I/O dispatcher threads of the async client. Always
+   *         &gt; 0.
+   */
+  @Nonnegative
+  public final int getIOThreadCount ()
+  {
+    return m_nIOThreadCount;
+  }
+
+  /**
+   * Set the number of I/O dispatcher threads. This is only considered before
+   * the first asynchronous transmission.
+   *
+   * @param nIOThreadCount
+   *        The number of I/O threads. Must be &gt; 0.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AsyncHttpPoster setIOThreadCount (@Nonnegative final int nIOThreadCount)
+  {
+    ValueEnforcer.isGT0 (nIOThreadCount, "IOThreadCount");
+    m_nIOThreadCount = nIOThreadCount;
+    return this;
+  }
+
+  /**
+   * @return The HTTP version policy of the async client. Never
+   *         <code>null</code>. Defaults to {@link #DEFAULT_HTTP_VERSION_POLICY}.
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final HttpVersionPolicy getHttpVersionPolicy ()
+  {
+    return m_eHttpVersionPolicy;
+  }
+
+  /**
+   * Set the HTTP version policy. With {@link HttpVersionPolicy#NEGOTIATE}
+   * HTTP/2 is used if the receiver supports it via TLS ALPN, and HTTP/1.1
+   * otherwise. This is only considered before the first asynchronous
+   * transmission.
+   *
+   * @param eHttpVersionPolicy
+   *        The version policy to use. May not be <code>null</code>.
+   * @return this for chaining
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final AsyncHttpPoster setHttpVersionPolicy (@Nonnull final HttpVersionPolicy eHttpVersionPolicy)
+  {
+    ValueEnforcer.notNull (eHttpVersionPolicy, "HttpVersionPolicy");
+    m_eHttpVersionPolicy = eHttpVersionPolicy;
+    return this;
+  }
+
+  /**
+   * @return The HTTP/2 protocol configuration (e.g. the maximum number of
+   *         concurrent streams per connection). Never <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final H2Config getH2Config ()
+  {
+    return m_aH2Config;
+  }
+
+  /**
+   * Set the HTTP/2 protocol configuration. This is only considered before the
+   * first asynchronous transmission.
+   *
+   * @param aH2Config
+   *        The HTTP/2 configuration to use. May not be <code>null</code>.
+   * @return this for chaining
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final AsyncHttpPoster setH2Config (@Nonnull final H2Config aH2Config)
+  {
+    ValueEnforcer.notNull (aH2Config, "H2Config");
+    m_aH2Config = aH2Config;
+    return this;
+  }
+
+  /**
+   * @return <code>true</code> if this poster was already closed,
+   *         <code>false</code> if not.
+   */
+  public final boolean isClosed ()
+  {
+    return m_aClosed.get ();
+  }
+
+  /**
+   * Check if the system properties (proxy, TLS protocols and cipher suites)
+   * should be used, like the synchronous {@link HttpClientFactory} does.
+   *
+   * @param aSettings
+   *        The settings to check. May not be <code>null</code>.
+   * @return <code>true</code> if system properties should be used.
+   */
+  @SuppressWarnings ("removal")
+  private static boolean _isUseSystemProperties (@Nonnull final HttpClientSettings aSettings)
+  {
+    // Deprecated for removal, but still honoured by HttpClientFactory
+    return aSettings.isUseSystemProperties ();
+  }
+
+  /**
+   * Create the TLS strategy for the async client, based on the SSL context,
+   * TLS configuration mode and hostname verifier of the HTTP client settings.
+   * If a {@link TlsSessionCachingHttpClientFactory} is used, the shared SSL
+   * context of its TLS session cache is used, so that TLS sessions can be
+   * resumed. If system properties should be used, the
+   * <code>https.protocols</code> and <code>https.cipherSuites</code> system
+   * properties apply, unless a TLS configuration mode is set.
+   *
+   * @param aHttpClientFactory
+   *        The HTTP client factory to use. May not be <code>null</code>.
+   * @return The TLS strategy to use. Never <code>null</code>.
+   */
+  @Nonnull
+  @OverrideOnDemand
+  protected TlsStrategy createTlsStrategy (@Nonnull final HttpClientFactory aHttpClientFactory)
+  {
+    final HttpClientSettings aSettings = aHttpClientFactory.httpClientSettings ();
+    final SSLContext aSSLContext;
+    if (aHttpClientFactory instanceof TlsSessionCachingHttpClientFactory)
+      aSSLContext = ((TlsSessionCachingHttpClientFactory) aHttpClientFactory).getTlsSessionCache ()
+                                                                             .getSSLContext (aSettings);
+    else
+      aSSLContext = aSettings.getSSLContext () != null ? aSettings.getSSLContext ()
+                                                       : SSLContexts.createSystemDefault ();
+    final ClientTlsStrategyBuilder aBuilder = ClientTlsStrategyBuilder.create ().setSslContext (aSSLContext);
+    if (_isUseSystemProperties (aSettings))
+      aBuilder.useSystemProperties ();
+    final ITLSConfigurationMode aTLSConfigMode = aSettings.getTLSConfigurationMode ();
+    if (aTLSConfigMode != null)
+    {
+      aBuilder.setTlsVersions (aTLSConfigMode.getAllTLSVersionIDsAsArray ());
+      aBuilder.setCiphers (aTLSConfigMode.getAllCipherSuitesAsArray ());
+    }
+    if (aSettings.getHostnameVerifier () != null)
+      aBuilder.setHostnameVerifier (aSettings.getHostnameVerifier ());
+    return aBuilder.build ();
+  }
+
+  /**
+   * Create the async HTTP client builder. All relevant settings of the
+   * provided HTTP client factory are applied. This includes the usage of
+   * system properties, e.g. for the proxy selection.
+   *
+   * @param aHttpClientFactory
+   *        The HTTP client factory to use. May not be <code>null</code>.
+   * @return A new async HTTP client builder. Never <code>null</code>.
+   */
+  @Nonnull
+  @OverrideOnDemand
+  protected HttpAsyncClientBuilder createAsyncHttpClientBuilder (@Nonnull final HttpClientFactory aHttpClientFactory)
+  {
+    final HttpClientSettings aSettings = aHttpClientFactory.httpClientSettings ();
+
+    final ConnectionConfig.Builder aConnConfigBuilder = ConnectionConfig.copy (aHttpClientFactory.createConnectionConfig ());
+    if (m_aPoolSettings.getTimeToLive () != null)
+      aConnConfigBuilder.setTimeToLive (TimeValue.ofMilliseconds (m_aPoolSettings.getTimeToLive ().toMillis ()));
+
+    final PoolingAsyncClientConnectionManagerBuilder aConnMgrBuilder = PoolingAsyncClientConnectionManagerBuilder.create ()
+                                                                                                                 .setTlsStrategy (createTlsStrategy (aHttpClientFactory))
+                                                                                                                 .setDnsResolver (aHttpClientFactory.createDNSResolver ())
+                                                                                                                 .setDefaultConnectionConfig (aConnConfigBuilder.build ())
+                                                                                                                 .setMaxConnTotal (m_aPoolSettings.getMaxTotal ())
+                                                                                                                 .setMaxConnPerRoute (m_aPoolSettings.getMaxPerRoute ());
+    // ALPN is used to negotiate HTTP/2 if enabled
+    aConnMgrBuilder.setDefaultTlsConfig (TlsConfig.custom ().setVersionPolicy (m_eHttpVersionPolicy).build ());
+    final PoolingAsyncClientConnectionManager aConnMgr = aConnMgrBuilder.build ();
+
+    final HttpAsyncClientBuilder ret = HttpAsyncClients.custom ()
+                                                       .setConnectionManager (aConnMgr)
+                                                       .setH2Config (m_aH2Config)
+                                                       .setSchemePortResolver (aHttpClientFactory.createSchemePortResolver ())
+                                                       .setDefaultRequestConfig (aHttpClientFactory.createRequestConfig ())
+                                                       .setDefaultCredentialsProvider (aHttpClientFactory.createCredentialsProvider ())
+                                                       .setConnectionReuseStrategy (aHttpClientFactory.createConnectionReuseStrategy ())
+                                                       .setIOReactorConfig (IOReactorConfig.custom ()
+                                                                                           .setIoThreadCount (m_nIOThreadCount)
+                                                                                           .build ())
+                                                       .evictExpiredConnections ()
+                                                       .evictIdleConnections (TimeValue.ofMilliseconds (m_aPoolSettings.getIdleEvictionDuration ()
+                                                                                                                       .toMillis ()));
+
+    final HttpHost aProxyHost = aSettings.getProxyHost ();
+    if (aProxyHost != null)
+    {
+      final ICommonsSet <String> aNonProxyHosts = aSettings.nonProxyHosts ().getClone ();
+      ret.setRoutePlanner (new DefaultProxyRoutePlanner (aProxyHost, aHttpClientFactory.createSchemePortResolver ())
+      {
+        @Override
+        protected HttpHost determineProxy (@Nonnull final HttpHost aTarget,
+                                           @Nullable final HttpContext aContext) throws HttpException
+        {
+          // Direct connection for non-proxy hosts
+          if (aNonProxyHosts.contains (aTarget.getHostName ()))
+            return null;
+          return super.determineProxy (aTarget, aContext);
+        }
+      });
+    }
+
+    if (_isUseSystemProperties (aSettings))
+      ret.useSystemProperties ();
+
+    if (aSettings.hasRetries ())
+      ret.setRetryStrategy (aHttpClientFactory.createRequestRetryStrategy (aSettings.getRetryCount (),
+                                                                          aSettings.getRetryIntervalAsTimeValue (),
+                                                                          aSettings.isRetryAlways ()));
+    else
+      ret.disableAutomaticRetries ();
+
+    if (aSettings.hasUserAgent ())
+      ret.setUserAgent (aSettings.getUserAgent ());
+
+    return ret;
+  }
+
+  /**
+   * @return The started async HTTP client. It is created on the first call.
+   *         Never <code>null</code>.
+   * @throws IllegalStateException
+   *         if this poster was already closed.
+   */
+  @Nonnull
+  protected final CloseableHttpAsyncClient getOrCreateAsyncHttpClient ()
+  {
+    if (m_aClosed.get ())
+      throw new IllegalStateException ("This AsyncHttpPoster is already closed!");
+
+    CloseableHttpAsyncClient ret = m_aRWLock.readLockedGet ( () -> m_aAsyncClient);
+    if (ret == null)
+    {
+      ret = m_aRWLock.writeLockedGet ( () -> {
+        if (m_aAsyncClient == null)
+        {
+          final CloseableHttpAsyncClient aClient = createAsyncHttpClientBuilder (getHttpClientFactory ()).build ();
+          aClient.start ();
+          m_aAsyncClient = aClient;
+
+          if (LOGGER.isDebugEnabled ())
+            LOGGER.debug ("Started async HTTP client with " + m_nIOThreadCount + " I/O threads");
+        }
+        return m_aAsyncClient;
+      });
+    }
+    return ret;
+  }
+
+  /**
+   * Send an arbitrary HTTP POST message to the provided URL asynchronously. The
+   * entity is streamed to the network, and the response is streamed to the
+   * response handler, so neither of them is held in memory as a whole. Writing
+   * the entity and the response handler happen in the
+   * {@link #getAsyncExecutor()}, so that the I/O threads are never blocked. The
+   * maximum response size of {@link #responseSettings()} is enforced.<br>
+   * This method does NOT retry.
+   *
+   * @param <T>
+   *        Response data type
+   * @param sURL
+   *        The URL to send to. May neither be <code>null</code> nor empty.
+   * @param aCustomHttpHeaders
+   *        An optional http header map that should be applied. May be
+   *        <code>null</code>.
+   * @param aHttpEntity
+   *        The HTTP entity to be send. May not be <code>null</code>.
+   * @param aResponseHandler
+   *        The Http response handler that should be used to convert the HTTP
+   *        response to a domain object.
+   * @return A future with the converted HTTP response. Never <code>null</code>.
+   */
+  @Override
+  @Nonnull
+  public <T> CompletableFuture <T> sendGenericMessageAsync (@Nonnull @Nonempty final String sURL,
+                                                            @Nullable final HttpHeaderMap aCustomHttpHeaders,
+                                                            @Nonnull final HttpEntity aHttpEntity,
+                                                            @Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler)
+  {
+    ValueEnforcer.notEmpty (sURL, "URL");
+    ValueEnforcer.notNull (aHttpEntity, "HttpEntity");
+
+    final CompletableFuture <T> ret = new CompletableFuture <> ();
+    final StopWatch aSW = StopWatch.createdStarted ();
+    LOGGER.info ("Starting to asynchronously transmit AS4 Message to '" + sURL + "'");
+
+    final AsyncRequestProducer aRequestProducer;
+    final AsyncResponseConsumer <T> aResponseConsumer;
+    final HttpClientContext aContext = HttpClientContext.create ();
+    try
+    {
+      // Apply headers and customizer as in the synchronous version
+      final HttpPost aPost = createHttpPost (sURL, aCustomHttpHeaders, aHttpEntity);
+      if (aPost.getConfig () != null)
+        aContext.setRequestConfig (aPost.getConfig ());
+
+      final AsyncRequestBuilder aRequestBuilder = AsyncRequestBuilder.post (sURL);
+      for (final Header aHeader : aPost.getHeaders ())
+        if (!CONNECTION_SPECIFIC_HEADERS.contains (aHeader.getName ()))
+          aRequestBuilder.addHeader (aHeader);
+      // Content type and encoding are taken from the entity
+      aRequestBuilder.setEntity (new AsyncHttpEntityProducer (aHttpEntity, getAsyncExecutor ()));
+      aRequestProducer = aRequestBuilder.build ();
+      aResponseConsumer = new AsyncHttpResponseConsumer <> (aResponseHandler, getAsyncExecutor (), m_aResponseSettings);
+    }
+    catch (final RuntimeException ex)
+    {
+      LOGGER.info ("Failed preparing AS4 Message for '" + sURL + "'");
+      ret.completeExceptionally (ex);
+      return ret;
+    }
+
+    // Circuit breaker and concurrency limit of the destination (if enabled)
+    final HttpEndpointHealth aEndpointHealth;
+    final CloseableHttpAsyncClient aAsyncClient;
+    try
+    {
+      aEndpointHealth = acquireEndpoint (sURL);
+      try
+      {
+        aAsyncClient = getOrCreateAsyncHttpClient ();
+      }
+      catch (final IllegalStateException ex)
+      {
+        if (aEndpointHealth != null)
+          aEndpointHealth.release ();
+        throw ex;
+      }
+    }
+    catch (final HttpEndpointUnavailableException | IllegalStateException ex)
+    {
+      ret.completeExceptionally (ex);
+      return ret;
+    }
+
+    final FutureCallback <T> aCallback = new FutureCallback <> ()
+    {
+      public void completed (@Nullable final T aResult)
+      {
+        // Invoked after the response handler finished
+        aSW.stop ();
+        LOGGER.info ("Finished asynchronously transmitting AS4 Message to '" +
+                     sURL +
+                     "' after " +
+                     aSW.getMillis () +
+                     " ms");
+        if (aEndpointHealth != null)
+          aEndpointHealth.onTransmissionFinished (true, aSW.getMillis ());
+        ret.complete (aResult);
+      }
+
+      public void failed (@Nonnull final Exception ex)
+      {
+        aSW.stop ();
+        LOGGER.info ("Failed asynchronously transmitting AS4 Message to '" +
+                     sURL +
+                     "' after " +
+                     aSW.getMillis () +
+                     " ms");
+        if (aEndpointHealth != null)
+          aEndpointHealth.onTransmissionFinished (false, aSW.getMillis ());
+        ret.completeExceptionally (ex instanceof IOException ? ex : new IOException (ex));
+      }
+
+      public void cancelled ()
+      {
+        aSW.stop ();
+        if (aEndpointHealth != null)
+          aEndpointHealth.release ();
+        ret.cancel (false);
+      }
+    };
+    aAsyncClient.execute (aRequestProducer, aResponseConsumer, aContext, aCallback);
+    return ret;
+  }
+
+  /**
+   * Gracefully shutdown the async HTTP client (if it was created). Subsequent
+   * calls to this method have no effect.
+   */
+  public void close ()
+  {
+    if (!m_aClosed.getAndSet (true))
+    {
+      final CloseableHttpAsyncClient aClient = m_aRWLock.writeLockedGet ( () -> {
+        final CloseableHttpAsyncClient ret = m_aAsyncClient;
+        m_aAsyncClient = null;
+        return ret;
+      });
+      if (aClient != null)
+      {
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Closing async HTTP client");
+        aClient.close (CloseMode.GRACEFUL);
+      }
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return ToStringGenerator.getDerived (super.toString ())
+                            .append ("PoolSettings", m_aPoolSettings)
+                            .append ("ResponseSettings", m_aResponseSettings)
+                            .append ("IOThreadCount", m_nIOThreadCount)
+                            .append ("HttpVersionPolicy", m_eHttpVersionPolicy)
+                            .append ("H2Config", m_aH2Config)
+                            .append ("Closed", m_aClosed.get ())
+                            .getToString ();
+  }
+}
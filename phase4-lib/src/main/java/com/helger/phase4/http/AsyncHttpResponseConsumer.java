@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.InputStreamEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.support.classic.AbstractClassicEntityConsumer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.io.stream.WrappedInputStream;
+
+/**
+ * An {@link AsyncResponseConsumer} that passes the response entity as a stream
+ * to a classic {@link HttpClientResponseHandler}, instead of buffering the
+ * whole response in memory. The response handler is invoked in a thread of the
+ * provided executor and reads the data while it is received, so only a bounded
+ * buffer is needed. In-memory thresholds and spooling are up to the response
+ * handler (see {@link ResponseHandlerSpooled}). The maximum response size of
+ * the provided {@link HttpResponseSettings} is enforced for every response
+ * handler.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ * @param <T>
+ *        The response type
+ */
+@ThreadSafe
+final class AsyncHttpResponseConsumer <T> implements AsyncResponseConsumer <T>
+{
+  private static final int BUFFER_SIZE = 16 * 1024;
+
+  /**
+   * Input stream that fails as soon as more than the allowed number of bytes
+   * was read.
+   */
+  private static final class SizeLimitingInputStream extends WrappedInputStream
+  {
+    private final long m_nMaxResponseSize;
+    private long m_nBytesRead;
+
+    SizeLimitingInputStream (@Nonnull final InputStream aIS, final long nMaxResponseSize)
+    {
+      super (aIS);
+      m_nMaxResponseSize = nMaxResponseSize;
+    }
+
+    private void _count (final long nBytes) throws HttpResponseTooLargeException
+    {
+      if (nBytes > 0)
+      {
+        m_nBytesRead += nBytes;
+        if (m_nBytesRead > m_nMaxResponseSize)
+          throw createTooLarge (m_nBytesRead, m_nMaxResponseSize);
+      }
+    }
+
+    @Override
+    public int read () throws IOException
+    {
+      final int ret = super.read ();
+      if (ret >= 0)
+        _count (1);
+      return ret;
+    }
+
+    @Override
+    public int read (@Nonnull final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+    {
+      final int ret = super.read (aBuf, nOfs, nLen);
+      _count (ret);
+      return ret;
+    }
+
+    @Override
+    public long skip (final long n) throws IOException
+    {
+      final long ret = super.skip (n);
+      _count (ret);
+      return ret;
+    }
+  }
+
+  private final HttpClientResponseHandler <? extends T> m_aResponseHandler;
+  private final Executor m_aExecutor;
+  private final long m_nMaxResponseSize;
+  private final AtomicReference <AbstractClassicEntityConsumer <T>> m_aEntityConsumer = new AtomicReference <> ();
+  // Set if the response handler failed, to abort the rest of the exchange
+  private final AtomicReference <Exception> m_aHandlerException = new AtomicReference <> ();
+
+  AsyncHttpResponseConsumer (@Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler,
+                             @Nonnull final Executor aExecutor,
+                             @Nonnull final HttpResponseSettings aSettings)
+  {
+    ValueEnforcer.notNull (aResponseHandler, "ResponseHandler");
+    ValueEnforcer.notNull (aExecutor, "Executor");
+    ValueEnforcer.notNull (aSettings, "Settings");
+    m_aResponseHandler = aResponseHandler;
+    m_aExecutor = aExecutor;
+    m_nMaxResponseSize = aSettings.getMaxResponseSize ();
+  }
+
+  @Nonnull
+  static HttpResponseTooLargeException createTooLarge (final long nBytes, final long nMaxResponseSize)
+  {
+    return new HttpResponseTooLargeException ("The HTTP response with " +
+                                              nBytes +
+                                              " bytes exceeds the maximum response size of " +
+                                              nMaxResponseSize +
+                                              " bytes",
+                                              nMaxResponseSize);
+  }
+
+  @Nullable
+  private T _handleResponse (@Nonnull final HttpResponse aResponse, @Nullable final HttpEntity aEntity) throws IOException
+  {
+    final BasicClassicHttpResponse aClassicResponse = new BasicClassicHttpResponse (aResponse.getCode (),
+                                                                                    aResponse.getReasonPhrase ());
+    aClassicResponse.setVersion (aResponse.getVersion ());
+    aClassicResponse.setHeaders (aResponse.getHeaders ());
+    aClassicResponse.setEntity (aEntity);
+    try
+    {
+      final T ret = m_aResponseHandler.handleResponse (aClassicResponse);
+      // Read the rest, so that the connection can be reused
+      EntityUtils.consume (aEntity);
+      return ret;
+    }
+    catch (final HttpException ex)
+    {
+      throw new IOException ("Failed to handle HTTP response", ex);
+    }
+  }
+
+  public void consumeResponse (@Nonnull final HttpResponse aResponse,
+                               @Nullable final EntityDetails aEntityDetails,
+                               @Nonnull final HttpContext aContext,
+                               @Nonnull final FutureCallback <T> aResultCallback) throws HttpException, IOException
+  {
+    if (aEntityDetails == null)
+    {
+      // No response body - don't block the I/O thread anyway
+      m_aExecutor.execute ( () -> {
+        try
+        {
+          aResultCallback.completed (_handleResponse (aResponse, null));
+        }
+        catch (final IOException | RuntimeException ex)
+        {
+          aResultCallback.failed (ex);
+        }
+      });
+      return;
+    }
+
+    // Fail early if the announced length is too large
+    final long nContentLength = aEntityDetails.getContentLength ();
+    if (m_nMaxResponseSize >= 0 && nContentLength > m_nMaxResponseSize)
+      throw createTooLarge (nContentLength, m_nMaxResponseSize);
+
+    final AbstractClassicEntityConsumer <T> aEntityConsumer = new AbstractClassicEntityConsumer <> (BUFFER_SIZE,
+                                                                                                    m_aExecutor)
+    {
+      @Override
+      protected T consumeData (@Nullable final ContentType aContentType,
+                               @Nonnull final InputStream aIS) throws IOException
+      {
+        final InputStream aLimitedIS = m_nMaxResponseSize >= 0 ? new SizeLimitingInputStream (aIS, m_nMaxResponseSize)
+                                                               : aIS;
+        try
+        {
+          return _handleResponse (aResponse,
+                                  new InputStreamEntity (aLimitedIS,
+                                                         nContentLength,
+                                                         aContentType,
+                                                         aEntityDetails.getContentEncoding ()));
+        }
+        catch (final IOException | RuntimeException ex)
+        {
+          m_aHandlerException.compareAndSet (null, ex);
+          throw ex;
+        }
+      }
+    };
+    m_aEntityConsumer.set (aEntityConsumer);
+    aEntityConsumer.streamStart (aEntityDetails, aResultCallback);
+  }
+
+  public void informationResponse (@Nonnull final HttpResponse aResponse, @Nonnull final HttpContext aContext)
+  {
+    // Ignore 1xx responses
+  }
+
+  public void updateCapacity (@Nonnull final CapacityChannel aCapacityChannel) throws IOException
+  {
+    final AbstractClassicEntityConsumer <T> aEntityConsumer = m_aEntityConsumer.get ();
+    if (aEntityConsumer != null)
+      aEntityConsumer.updateCapacity (aCapacityChannel);
+  }
+
+  public void consume (@Nonnull final ByteBuffer aSrc) throws IOException
+  {
+    final Exception aHandlerEx = m_aHandlerException.get ();
+    if (aHandlerEx != null)
+    {
+      // Nobody reads the rest of the response (e.g. because it is too large)
+      throw new IOException ("Aborting the HTTP response, because the response handler failed", aHandlerEx);
+    }
+
+    final AbstractClassicEntityConsumer <T> aEntityConsumer = m_aEntityConsumer.get ();
+    if (aEntityConsumer != null)
+      aEntityConsumer.consume (aSrc);
+  }
+
+  public void streamEnd (@Nullable final List <? extends Header> aTrailers) throws HttpException, IOException
+  {
+    final AbstractClassicEntityConsumer <T> aEntityConsumer = m_aEntityConsumer.get ();
+    if (aEntityConsumer != null)
+      aEntityConsumer.streamEnd (aTrailers);
+  }
+
+  public void failed (@Nonnull final Exception ex)
+  {
+    final AbstractClassicEntityConsumer <T> aEntityConsumer = m_aEntityConsumer.get ();
+    if (aEntityConsumer != null)
+      aEntityConsumer.failed (ex);
+    releaseResources ();
+  }
+
+  public void releaseResources ()
+  {
+    final AbstractClassicEntityConsumer <T> aEntityConsumer = m_aEntityConsumer.getAndSet (null);
+    if (aEntityConsumer != null)
+      aEntityConsumer.releaseResources ();
+  }
+}
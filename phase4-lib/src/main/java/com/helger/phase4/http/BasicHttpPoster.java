@@ -19,6 +19,12 @@ package com.helger.phase4.http;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 import javax.annotation.Nonnegative;
@@ -37,11 +43,11 @@ import org.slf4j.LoggerFactory;
 
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.Nonempty;
-import com.helger.commons.concurrent.ThreadHelper;
 import com.helger.commons.http.CHttp;
 import com.helger.commons.http.HttpHeaderMap;
 import com.helger.commons.io.stream.StreamHelper;
 import com.helger.commons.lang.StackTraceHelper;
+import com.helger.commons.state.ESuccess;
 import com.helger.commons.string.ToStringGenerator;
 import com.helger.commons.timing.StopWatch;
 import com.helger.commons.wrapper.Wrapper;
@@ -52,6 +58,7 @@ import com.helger.phase4.client.IAS4RetryCallback;
 import com.helger.phase4.dump.AS4DumpManager;
 import com.helger.phase4.dump.IAS4OutgoingDumper;
 import com.helger.phase4.messaging.EAS4MessageMode;
+import com.helger.phase4.util.AS4ExecutionHelper;
 import com.helger.phase4.util.MultiOutputStream;
 
 /**
@@ -65,7 +72,8 @@ public class BasicHttpPoster implements IHttpPoster
 {
   /**
    * @return The default {@link HttpClientFactory} to be used. Never
-   *         <code>null</code>.
+   *         <code>null</code>. To reuse TLS sessions across transmissions use
+   *         a {@link TlsSessionCachingHttpClientFactory} instead.
    * @since 0.8.3
    */
   @Nonnull
@@ -79,8 +87,12 @@ public class BasicHttpPoster implements IHttpPoster
 
   // By default no special SSL context present
   private HttpClientFactory m_aHttpClientFactory = createDefaultHttpClientFactory ();
+  private HttpConnectionPool m_aConnectionPool;
   private Consumer <? super HttpPost> m_aHttpCustomizer;
   private boolean m_bQuoteHttpHeaders = DEFAULT_QUOTE_HTTP_HEADERS;
+  private HttpRetryScheduler m_aRetryScheduler = HttpRetryScheduler.getDefaultInstance ();
+  private Executor m_aAsyncExecutor = AS4ExecutionHelper.getDefaultAsyncExecutor ();
+  private HttpEndpointHealthManager m_aEndpointHealthManager;
 
   public BasicHttpPoster ()
   {}
@@ -99,6 +111,19 @@ public class BasicHttpPoster implements IHttpPoster
     return this;
   }
 
+  @Nullable
+  public final HttpConnectionPool getConnectionPool ()
+  {
+    return m_aConnectionPool;
+  }
+
+  @Nonnull
+  public final BasicHttpPoster setConnectionPool (@Nullable final HttpConnectionPool aConnectionPool)
+  {
+    m_aConnectionPool = aConnectionPool;
+    return this;
+  }
+
   @Nullable
   public final Consumer <? super HttpPost> getHttpCustomizer ()
   {
@@ -124,6 +149,197 @@ public class BasicHttpPoster implements IHttpPoster
     return this;
   }
 
+  /**
+   * @return The scheduler that is used to wait before retries. Never
+   *         <code>null</code>. Defaults to
+   *         {@link HttpRetryScheduler#getDefaultInstance()}.
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final HttpRetryScheduler getRetryScheduler ()
+  {
+    return m_aRetryScheduler;
+  }
+
+  /**
+   * Set the scheduler that is used to wait before retries. This also defines
+   * the retry budget that applies to this poster.
+   *
+   * @param aRetryScheduler
+   *        The retry scheduler to use. May not be <code>null</code>.
+   * @return this for chaining
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final BasicHttpPoster setRetryScheduler (@Nonnull final HttpRetryScheduler aRetryScheduler)
+  {
+    ValueEnforcer.notNull (aRetryScheduler, "RetryScheduler");
+    m_aRetryScheduler = aRetryScheduler;
+    return this;
+  }
+
+  /**
+   * @return The executor in which asynchronous transmissions, response
+   *         handlers and retries are run. Never <code>null</code>. Defaults to
+   *         {@link AS4ExecutionHelper#getDefaultAsyncExecutor()}.
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final Executor getAsyncExecutor ()
+  {
+    return m_aAsyncExecutor;
+  }
+
+  /**
+   * Set the executor in which asynchronous transmissions, response handlers
+   * and retries are run. As this class uses blocking I/O, a dedicated executor
+   * should be used when many messages are sent asynchronously.
+   *
+   * @param aAsyncExecutor
+   *        The executor to use. May not be <code>null</code>.
+   * @return this for chaining
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final BasicHttpPoster setAsyncExecutor (@Nonnull final Executor aAsyncExecutor)
+  {
+    ValueEnforcer.notNull (aAsyncExecutor, "AsyncExecutor");
+    m_aAsyncExecutor = aAsyncExecutor;
+    return this;
+  }
+
+  /**
+   * @return The endpoint health manager that tracks the circuit breaker state
+   *         and the concurrency limit per destination URL. May be
+   *         <code>null</code> if not tracked.
+   * @since 2.7.6
+   */
+  @Nullable
+  public final HttpEndpointHealthManager getEndpointHealthManager ()
+  {
+    return m_aEndpointHealthManager;
+  }
+
+  /**
+   * Set the endpoint health manager to be used. If set, transmissions to
+   * endpoints with an open circuit or with too many concurrent transmissions
+   * fail immediately with an {@link HttpEndpointUnavailableException}. The same
+   * instance should be shared between all posters.
+   *
+   * @param aEndpointHealthManager
+   *        The endpoint health manager to use. May be <code>null</code> to
+   *        disable the tracking.
+   * @return this for chaining
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final BasicHttpPoster setEndpointHealthManager (@Nullable final HttpEndpointHealthManager aEndpointHealthManager)
+  {
+    m_aEndpointHealthManager = aEndpointHealthManager;
+    return this;
+  }
+
+  /**
+   * Get permission to send to the provided URL from the endpoint health
+   * manager (if any). If a non-<code>null</code> value is returned,
+   * {@link HttpEndpointHealth#onTransmissionFinished(boolean, long)} must be
+   * called after the transmission.
+   *
+   * @param sURL
+   *        The destination URL. May neither be <code>null</code> nor empty.
+   * @return <code>null</code> if no endpoint health manager is present.
+   * @throws HttpEndpointUnavailableException
+   *         If the endpoint currently does not accept transmissions
+   * @since 2.7.6
+   */
+  @Nullable
+  protected final HttpEndpointHealth acquireEndpoint (@Nonnull @Nonempty final String sURL) throws HttpEndpointUnavailableException
+  {
+    final HttpEndpointHealthManager aMgr = m_aEndpointHealthManager;
+    if (aMgr == null)
+      return null;
+
+    final HttpEndpointHealth ret = aMgr.getOrCreateHealth (sURL);
+    if (ret.tryAcquire ().isFailure ())
+    {
+      final EHttpCircuitState eState = ret.getCircuitState ();
+      LOGGER.warn ("Not transmitting AS4 Message to '" +
+                   sURL +
+                   "' because the endpoint is unavailable (circuit " +
+                   eState +
+                   ", limit " +
+                   ret.getConcurrencyLimit () +
+                   ")");
+      throw new HttpEndpointUnavailableException ("The endpoint '" +
+                                                  sURL +
+                                                  "' currently does not accept transmissions (circuit " +
+                                                  eState +
+                                                  ")",
+                                                  eState);
+    }
+    return ret;
+  }
+
+  /**
+   * Create the HTTP POST request to be send. This applies the custom HTTP
+   * headers, the entity and the optional customizer. Additionally the AS4 HTTP
+   * debugging is invoked in here.
+   *
+   * @param sURL
+   *        The URL to send to. May neither be <code>null</code> nor empty.
+   * @param aCustomHttpHeaders
+   *        An optional http header map that should be applied. May be
+   *        <code>null</code>.
+   * @param aHttpEntity
+   *        The HTTP entity to be send. May not be <code>null</code>.
+   * @return The created HTTP POST request. Never <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nonnull
+  protected HttpPost createHttpPost (@Nonnull @Nonempty final String sURL,
+                                     @Nullable final HttpHeaderMap aCustomHttpHeaders,
+                                     @Nonnull final HttpEntity aHttpEntity)
+  {
+    final HttpPost aPost = new HttpPost (sURL);
+
+    if (aCustomHttpHeaders != null)
+    {
+      // Always unify line endings
+      // By default quoting is disabled
+      aCustomHttpHeaders.forEachSingleHeader (aPost::addHeader, true, m_bQuoteHttpHeaders);
+    }
+
+    aPost.setEntity (aHttpEntity);
+
+    // Invoke optional customizer
+    if (m_aHttpCustomizer != null)
+      m_aHttpCustomizer.accept (aPost);
+
+    // Debug sending
+    AS4HttpDebug.debug ( () -> {
+      final StringBuilder ret = new StringBuilder ("SEND-START to ").append (sURL).append ("\n");
+      try
+      {
+        for (final Header aHeader : aPost.getHeaders ())
+          ret.append (aHeader.getName ()).append (": ").append (aHeader.getValue ()).append (CHttp.EOL);
+        ret.append (CHttp.EOL);
+        if (aHttpEntity.isRepeatable ())
+          ret.append (EntityUtils.toString (aHttpEntity));
+        else
+          ret.append ("## The payload is marked as 'not repeatable' and is the therefore not printed in debugging");
+      }
+      catch (final Exception ex)
+      {
+        ret.append ("## Exception listing payload: " + ex.getClass ().getName () + " -- " + ex.getMessage ())
+           .append (CHttp.EOL);
+        ret.append ("## ").append (StackTraceHelper.getStackAsString (ex));
+      }
+      return ret.toString ();
+    });
+
+    return aPost;
+  }
+
   /**
    * Send an arbitrary HTTP POST message to the provided URL, using the
    * contained HttpClientFactory as well as the customizer. Additionally the AS4
@@ -155,52 +371,25 @@ public class BasicHttpPoster implements IHttpPoster
     ValueEnforcer.notEmpty (sURL, "URL");
     ValueEnforcer.notNull (aHttpEntity, "HttpEntity");
 
+    // Circuit breaker and concurrency limit of the destination (if enabled)
+    final HttpEndpointHealth aEndpointHealth = acquireEndpoint (sURL);
+
     final StopWatch aSW = StopWatch.createdStarted ();
     LOGGER.info ("Starting to transmit AS4 Message to '" + sURL + "'");
 
-    IOException aCaughtException = null;
-    try (final HttpClientManager aClientMgr = new HttpClientManager (m_aHttpClientFactory))
+    Exception aCaughtException = null;
+    // Only create a new client, if no shared connection pool is present
+    final HttpConnectionPool aConnectionPool = m_aConnectionPool;
+    try (final HttpClientManager aClientMgr = aConnectionPool != null ? null
+                                                                      : new HttpClientManager (m_aHttpClientFactory))
     {
-      final HttpPost aPost = new HttpPost (sURL);
-
-      if (aCustomHttpHeaders != null)
-      {
-        // Always unify line endings
-        // By default quoting is disabled
-        aCustomHttpHeaders.forEachSingleHeader (aPost::addHeader, true, m_bQuoteHttpHeaders);
-      }
-
-      aPost.setEntity (aHttpEntity);
-
-      // Invoke optional customizer
-      if (m_aHttpCustomizer != null)
-        m_aHttpCustomizer.accept (aPost);
-
-      // Debug sending
-      AS4HttpDebug.debug ( () -> {
-        final StringBuilder ret = new StringBuilder ("SEND-START to ").append (sURL).append ("\n");
-        try
-        {
-          for (final Header aHeader : aPost.getHeaders ())
-            ret.append (aHeader.getName ()).append (": ").append (aHeader.getValue ()).append (CHttp.EOL);
-          ret.append (CHttp.EOL);
-          if (aHttpEntity.isRepeatable ())
-            ret.append (EntityUtils.toString (aHttpEntity));
-          else
-            ret.append ("## The payload is marked as 'not repeatable' and is the therefore not printed in debugging");
-        }
-        catch (final Exception ex)
-        {
-          ret.append ("## Exception listing payload: " + ex.getClass ().getName () + " -- " + ex.getMessage ())
-             .append (CHttp.EOL);
-          ret.append ("## ").append (StackTraceHelper.getStackAsString (ex));
-        }
-        return ret.toString ();
-      });
+      final HttpPost aPost = createHttpPost (sURL, aCustomHttpHeaders, aHttpEntity);
 
+      if (aConnectionPool != null)
+        return aConnectionPool.execute (aPost, aResponseHandler);
       return aClientMgr.execute (aPost, aResponseHandler);
     }
-    catch (final IOException ex)
+    catch (final IOException | RuntimeException ex)
     {
       aCaughtException = ex;
       throw ex;
@@ -208,6 +397,8 @@ public class BasicHttpPoster implements IHttpPoster
     finally
     {
       aSW.stop ();
+      if (aEndpointHealth != null)
+        aEndpointHealth.onTransmissionFinished (aCaughtException == null, aSW.getMillis ());
       LOGGER.info ((aCaughtException != null ? "Failed" : "Finished") +
                    " transmitting AS4 Message to '" +
                    sURL +
@@ -217,6 +408,89 @@ public class BasicHttpPoster implements IHttpPoster
     }
   }
 
+  /**
+   * Send an arbitrary HTTP POST message to the provided URL asynchronously.
+   * This implementation runs the blocking
+   * {@link #sendGenericMessage(String, HttpHeaderMap, HttpEntity, HttpClientResponseHandler)}
+   * in the {@link #getAsyncExecutor()}.<br>
+   * This method does NOT retry.
+   *
+   * @param <T>
+   *        Response data type
+   * @param sURL
+   *        The URL to send to. May neither be <code>null</code> nor empty.
+   * @param aCustomHttpHeaders
+   *        An optional http header map that should be applied. May be
+   *        <code>null</code>.
+   * @param aHttpEntity
+   *        The HTTP entity to be send. May not be <code>null</code>.
+   * @param aResponseHandler
+   *        The Http response handler that should be used to convert the HTTP
+   *        response to a domain object.
+   * @return A future with the converted HTTP response. Never <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nonnull
+  public <T> CompletableFuture <T> sendGenericMessageAsync (@Nonnull @Nonempty final String sURL,
+                                                            @Nullable final HttpHeaderMap aCustomHttpHeaders,
+                                                            @Nonnull final HttpEntity aHttpEntity,
+                                                            @Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler)
+  {
+    final CompletableFuture <T> ret = new CompletableFuture <> ();
+    try
+    {
+      m_aAsyncExecutor.execute ( () -> {
+        try
+        {
+          ret.complete (sendGenericMessage (sURL, aCustomHttpHeaders, aHttpEntity, aResponseHandler));
+        }
+        catch (final IOException | RuntimeException ex)
+        {
+          ret.completeExceptionally (ex);
+        }
+      });
+    }
+    catch (final RejectedExecutionException ex)
+    {
+      ret.completeExceptionally (ex);
+    }
+    return ret;
+  }
+
+  /**
+   * Block the current thread until the provided duration elapsed. The waiting
+   * is performed via the {@link #getRetryScheduler()} so that the global retry
+   * budget is considered.
+   *
+   * @param aDuration
+   *        The duration to wait. May not be <code>null</code>.
+   * @return {@link ESuccess#FAILURE} if the retry budget is exhausted or the
+   *         thread was interrupted, {@link ESuccess#SUCCESS} otherwise.
+   * @since 2.7.6
+   */
+  @Nonnull
+  protected ESuccess waitBeforeRetry (@Nonnull final Duration aDuration)
+  {
+    final CompletableFuture <Void> aDue = new CompletableFuture <> ();
+    if (m_aRetryScheduler.schedule (aDuration, () -> aDue.complete (null), Runnable::run).isFailure ())
+      return ESuccess.FAILURE;
+    try
+    {
+      aDue.get ();
+      return ESuccess.SUCCESS;
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      return ESuccess.FAILURE;
+    }
+    catch (final ExecutionException ex)
+    {
+      // Cannot happen
+      return ESuccess.FAILURE;
+    }
+  }
+
   @Nonnull
   protected static HttpEntity createDumpingHttpEntity (@Nullable final IAS4OutgoingDumper aOutgoingDumper,
                                                        @Nonnull final HttpEntity aSrcEntity,
@@ -327,8 +601,11 @@ public class BasicHttpPoster implements IHttpPoster
               aDurationBeforeRetry = HttpRetrySettings.getIncreased (aDurationBeforeRetry,
                                                                      aRetrySettings.getRetryIncreaseFactor ());
 
+            final Duration aJitteredDuration = HttpRetrySettings.getJittered (aDurationBeforeRetry,
+                                                                              aRetrySettings.getRetryJitterFactor ());
+
             if (aRetryCallback != null)
-              if (aRetryCallback.onBeforeRetry (sMessageID, sURL, nTry, nMaxTries, aDurationBeforeRetry.toMillis (), ex)
+              if (aRetryCallback.onBeforeRetry (sMessageID, sURL, nTry, nMaxTries, aJitteredDuration.toMillis (), ex)
                                 .isBreak ())
               {
                 // Explicitly interrupt retry
@@ -355,11 +632,15 @@ public class BasicHttpPoster implements IHttpPoster
                          " - " +
                          ex.getMessage () +
                          " - waiting " +
-                         aDurationBeforeRetry.toMillis () +
+                         aJitteredDuration.toMillis () +
                          " ms, than retrying");
 
-            // Sleep and try again afterwards
-            ThreadHelper.sleep (aDurationBeforeRetry.toMillis ());
+            // Wait and try again afterwards
+            if (waitBeforeRetry (aJitteredDuration).isFailure ())
+            {
+              LOGGER.warn ("Failed to wait for retry of message '" + sMessageID + "' - giving up");
+              throw ex;
+            }
           }
           finally
           {
@@ -409,12 +690,211 @@ public class BasicHttpPoster implements IHttpPoster
     }
   }
 
+  /**
+   * {@inheritDoc}<br>
+   * This implementation never blocks the calling thread. The waiting time
+   * before a retry is handled by the {@link #getRetryScheduler()} and the
+   * attempts are performed via
+   * {@link #sendGenericMessageAsync(String, HttpHeaderMap, HttpEntity, HttpClientResponseHandler)}.
+   */
+  @Override
+  @Nonnull
+  public <T> CompletableFuture <T> sendGenericMessageWithRetriesAsync (@Nonnull final String sURL,
+                                                                       @Nullable final HttpHeaderMap aCustomHttpHeaders,
+                                                                       @Nonnull final HttpEntity aHttpEntity,
+                                                                       @Nonnull final String sMessageID,
+                                                                       @Nonnull final HttpRetrySettings aRetrySettings,
+                                                                       @Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler,
+                                                                       @Nullable final IAS4OutgoingDumper aOutgoingDumper,
+                                                                       @Nullable final IAS4RetryCallback aRetryCallback)
+  {
+    // Parameter or global one - may still be null
+    final IAS4OutgoingDumper aRealOutgoingDumper = aOutgoingDumper != null ? aOutgoingDumper : AS4DumpManager
+                                                                                                             .getOutgoingDumper ();
+
+    final CompletableFuture <T> ret = new CompletableFuture <> ();
+    final int nMaxTries;
+    if (aRetrySettings.isRetryEnabled ())
+    {
+      if (!aHttpEntity.isRepeatable ())
+      {
+        ret.completeExceptionally (new IllegalStateException ("If retry is enabled, a repeatable entity must be provided"));
+        return ret;
+      }
+      nMaxTries = 1 + aRetrySettings.getMaxRetries ();
+    }
+    else
+      nMaxTries = 1;
+
+    // Remember if the dumper was invoked at all
+    final AtomicBoolean aDumped = new AtomicBoolean (false);
+    _sendAttemptAsync (ret,
+                       sURL,
+                       aCustomHttpHeaders,
+                       aHttpEntity,
+                       sMessageID,
+                       aRetrySettings,
+                       aResponseHandler,
+                       aRealOutgoingDumper,
+                       aRetryCallback,
+                       aDumped,
+                       0,
+                       nMaxTries,
+                       aRetrySettings.getDurationBeforeRetry ());
+
+    return ret.whenComplete ( (x, ex) -> {
+      // Add the possibility to close open resources
+      if (aRealOutgoingDumper != null && aDumped.get ())
+        try
+        {
+          aRealOutgoingDumper.onEndRequest (EAS4MessageMode.REQUEST, null, null, sMessageID);
+        }
+        catch (final Exception ex2)
+        {
+          LOGGER.error ("OutgoingDumper.onEndRequest failed. Dumper=" +
+                        aRealOutgoingDumper +
+                        "; MessageID=" +
+                        sMessageID,
+                        ex2);
+        }
+    });
+  }
+
+  private <T> void _sendAttemptAsync (@Nonnull final CompletableFuture <T> aResult,
+                                      @Nonnull final String sURL,
+                                      @Nullable final HttpHeaderMap aCustomHttpHeaders,
+                                      @Nonnull final HttpEntity aHttpEntity,
+                                      @Nonnull final String sMessageID,
+                                      @Nonnull final HttpRetrySettings aRetrySettings,
+                                      @Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler,
+                                      @Nullable final IAS4OutgoingDumper aRealOutgoingDumper,
+                                      @Nullable final IAS4RetryCallback aRetryCallback,
+                                      @Nonnull final AtomicBoolean aDumped,
+                                      final int nTry,
+                                      final int nMaxTries,
+                                      @Nonnull final Duration aDurationBeforeRetry)
+  {
+    if (nTry > 0)
+      LOGGER.info ("Retry #" + nTry + "/" + (nMaxTries - 1) + " for sending message with ID '" + sMessageID + "'");
+
+    CompletableFuture <T> aAttempt;
+    final Wrapper <OutputStream> aDumpOSHolder = new Wrapper <> ();
+    try
+    {
+      // Create a new one every time (for new filename, new timestamp, etc.)
+      final HttpEntity aDumpingEntity = createDumpingHttpEntity (aRealOutgoingDumper,
+                                                                 aHttpEntity,
+                                                                 sMessageID,
+                                                                 aCustomHttpHeaders,
+                                                                 nTry,
+                                                                 aDumpOSHolder);
+      if (aDumpOSHolder.isSet ())
+        aDumped.set (true);
+
+      aAttempt = sendGenericMessageAsync (sURL, aCustomHttpHeaders, aDumpingEntity, aResponseHandler);
+    }
+    catch (final Exception ex)
+    {
+      aAttempt = CompletableFuture.failedFuture (ex);
+    }
+
+    aAttempt.whenComplete ( (aResponse, t) -> {
+      // Flush and close the dump output stream (if any)
+      StreamHelper.close (aDumpOSHolder.get ());
+
+      if (t == null)
+      {
+        aResult.complete (aResponse);
+        return;
+      }
+
+      final Throwable aCause = t instanceof CompletionException && t.getCause () != null ? t.getCause () : t;
+      // Only IOExceptions are retried; last try? -> propagate exception
+      if (!(aCause instanceof IOException) || nTry == nMaxTries - 1)
+      {
+        aResult.completeExceptionally (aCause);
+        return;
+      }
+      final IOException ex = (IOException) aCause;
+
+      // After the first retry, increase the waiting time
+      final Duration aRealDurationBeforeRetry = nTry > 1 ? HttpRetrySettings.getIncreased (aDurationBeforeRetry,
+                                                                                           aRetrySettings.getRetryIncreaseFactor ())
+                                                         : aDurationBeforeRetry;
+      final Duration aJitteredDuration = HttpRetrySettings.getJittered (aRealDurationBeforeRetry,
+                                                                        aRetrySettings.getRetryJitterFactor ());
+
+      if (aRetryCallback != null)
+        if (aRetryCallback.onBeforeRetry (sMessageID,
+                                          sURL,
+                                          nTry,
+                                          nMaxTries,
+                                          aJitteredDuration.toMillis (),
+                                          ex)
+                          .isBreak ())
+        {
+          // Explicitly interrupt retry
+          LOGGER.warn ("Error sending message '" +
+                       sMessageID +
+                       "' to '" +
+                       sURL +
+                       ": " +
+                       ex.getClass ().getSimpleName () +
+                       " - " +
+                       ex.getMessage () +
+                       " - retrying was explicitly stopped by the RetryCallback");
+
+          // Propagate Exception as if it would be the last retry
+          aResult.completeExceptionally (ex);
+          return;
+        }
+
+      LOGGER.warn ("Error sending message '" +
+                   sMessageID +
+                   "' to '" +
+                   sURL +
+                   "': " +
+                   ex.getClass ().getSimpleName () +
+                   " - " +
+                   ex.getMessage () +
+                   " - waiting " +
+                   aJitteredDuration.toMillis () +
+                   " ms, than retrying");
+
+      // Park the retry without blocking a thread in the meantime
+      final ESuccess eScheduled = m_aRetryScheduler.schedule (aJitteredDuration,
+                                                             () -> _sendAttemptAsync (aResult,
+                                                                                      sURL,
+                                                                                      aCustomHttpHeaders,
+                                                                                      aHttpEntity,
+                                                                                      sMessageID,
+                                                                                      aRetrySettings,
+                                                                                      aResponseHandler,
+                                                                                      aRealOutgoingDumper,
+                                                                                      aRetryCallback,
+                                                                                      aDumped,
+                                                                                      nTry + 1,
+                                                                                      nMaxTries,
+                                                                                      aRealDurationBeforeRetry),
+                                                             m_aAsyncExecutor);
+      if (eScheduled.isFailure ())
+      {
+        LOGGER.warn ("Failed to schedule retry for message '" + sMessageID + "' - giving up");
+        aResult.completeExceptionally (ex);
+      }
+    });
+  }
+
   @Override
   public String toString ()
   {
     return new ToStringGenerator (this).append ("HttpClientFactory", m_aHttpClientFactory)
+                                       .append ("ConnectionPool", m_aConnectionPool)
                                        .append ("HttpCustomizer", m_aHttpCustomizer)
                                        .append ("QuoteHttpHeaders", m_bQuoteHttpHeaders)
+                                       .append ("RetryScheduler", m_aRetryScheduler)
+                                       .append ("AsyncExecutor", m_aAsyncExecutor)
+                                       .append ("EndpointHealthManager", m_aEndpointHealthManager)
                                        .getToString ();
   }
 }
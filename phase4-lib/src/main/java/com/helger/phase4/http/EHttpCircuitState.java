@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+/**
+ * The state of the circuit breaker of a single HTTP endpoint.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+public enum EHttpCircuitState
+{
+  /** Normal operation - transmissions are allowed */
+  CLOSED,
+  /** Too many failures - transmissions are rejected without trying */
+  OPEN,
+  /** Probing - a single trial transmission is allowed */
+  HALF_OPEN
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+
+import com.helger.httpclient.HttpClientFactory;
+
+/**
+ * An {@link IHttpPoster} that uses HTTP/2 where possible. Concurrent AS4
+ * messages to the same receiver are multiplexed as separate streams over a
+ * single TLS connection, instead of requiring one connection per message in
+ * flight. The protocol is negotiated via TLS ALPN - if the receiver does not
+ * support HTTP/2 (or the connection is not using TLS), HTTP/1.1 is used
+ * transparently.<br>
+ * All settings (TLS, proxy, timeouts etc.) are taken from the
+ * {@link HttpClientFactory}. The maximum number of concurrent streams per
+ * connection can be configured via {@link #setH2Config(org.apache.hc.core5.http2.config.H2Config)}.
+ * Instances of this class are meant to be long-lived and shared between
+ * senders. Call {@link #close()} when the poster is no longer needed.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@ThreadSafe
+public class Http2HttpPoster extends AsyncHttpPoster
+{
+  public Http2HttpPoster ()
+  {
+    setHttpVersionPolicy (HttpVersionPolicy.NEGOTIATE);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aHttpClientFactory
+   *        The HTTP client factory that defines all the settings. May not be
+   *        <code>null</code>.
+   */
+  public Http2HttpPoster (@Nonnull final HttpClientFactory aHttpClientFactory)
+  {
+    this ();
+    setHttpClientFactory (aHttpClientFactory);
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.socket.LayeredConnectionSocketFactory;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.httpclient.HttpClientFactory;
+
+/**
+ * A long-lived, thread-safe HTTP client with a pool of keep-alive connections.
+ * In contrast to the default behaviour of {@link BasicHttpPoster} that creates
+ * a new HTTP client for every transmission, an instance of this class should be
+ * created once and shared between all senders, so that connections (and the
+ * TLS handshakes) to the same receivers can be reused.<br>
+ * Call {@link #close()} when the pool is no longer needed, or use
+ * {@link #registerShutdownHook()} to close it when the JVM terminates.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@ThreadSafe
+public class HttpConnectionPool implements AutoCloseable
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (HttpConnectionPool.class);
+
+  private final HttpClientFactory m_aHttpClientFactory;
+  private final HttpConnectionPoolSettings m_aPoolSettings;
+  private final PoolingHttpClientConnectionManager m_aConnMgr;
+  private final CloseableHttpClient m_aHttpClient;
+  private final AtomicBoolean m_aClosed = new AtomicBoolean (false);
+
+  /**
+   * Constructor
+   *
+   * @param aHttpClientFactory
+   *        The HTTP client factory that defines SSL, proxy, timeout etc.
+   *        settings. May not be <code>null</code>.
+   * @param aPoolSettings
+   *        The pool settings to use. May not be <code>null</code>. The object
+   *        is copied internally.
+   */
+  public HttpConnectionPool (@Nonnull final HttpClientFactory aHttpClientFactory,
+                             @Nonnull final HttpConnectionPoolSettings aPoolSettings)
+  {
+    ValueEnforcer.notNull (aHttpClientFactory, "HttpClientFactory");
+    ValueEnforcer.notNull (aPoolSettings, "PoolSettings");
+
+    m_aHttpClientFactory = aHttpClientFactory;
+    m_aPoolSettings = new HttpConnectionPoolSettings ();
+    m_aPoolSettings.assignFrom (aPoolSettings);
+
+    final LayeredConnectionSocketFactory aSSLFactory = aHttpClientFactory.createSSLFactory ();
+    if (aSSLFactory == null)
+      throw new IllegalStateException ("Failed to create SSL SocketFactory");
+
+    final ConnectionConfig.Builder aConnConfigBuilder = aHttpClientFactory.createConnectionConfigBuilder ();
+    if (m_aPoolSettings.getTimeToLive () != null)
+      aConnConfigBuilder.setTimeToLive (TimeValue.ofMilliseconds (m_aPoolSettings.getTimeToLive ().toMillis ()));
+
+    m_aConnMgr = PoolingHttpClientConnectionManagerBuilder.create ()
+                                                          .setSSLSocketFactory (aSSLFactory)
+                                                          .setDnsResolver (aHttpClientFactory.createDNSResolver ())
+                                                          .setDefaultConnectionConfig (aConnConfigBuilder.build ())
+                                                          .setDefaultSocketConfig (aHttpClientFactory.createSocketConfig ())
+                                                          .setMaxConnTotal (m_aPoolSettings.getMaxTotal ())
+                                                          .setMaxConnPerRoute (m_aPoolSettings.getMaxPerRoute ())
+                                                          .build ();
+
+    // Use all the other settings (proxy, retries, user agent etc.) from the
+    // factory, but replace the connection manager with the shared pool. The
+    // client owns the pool, so closing the client closes the pool as well.
+    m_aHttpClient = aHttpClientFactory.createHttpClientBuilder ()
+                                      .setConnectionManager (m_aConnMgr)
+                                      .setConnectionManagerShared (false)
+                                      .evictExpiredConnections ()
+                                      .evictIdleConnections (TimeValue.ofMilliseconds (m_aPoolSettings.getIdleEvictionDuration ()
+                                                                                                      .toMillis ()))
+                                      .build ();
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Created new HttpConnectionPool with " + m_aPoolSettings);
+  }
+
+  /**
+   * @return The HTTP client factory provided in the constructor. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public final HttpClientFactory getHttpClientFactory ()
+  {
+    return m_aHttpClientFactory;
+  }
+
+  /**
+   * @return A copy of the pool settings used. Never <code>null</code>.
+   */
+  @Nonnull
+  public final HttpConnectionPoolSettings getPoolSettings ()
+  {
+    final HttpConnectionPoolSettings ret = new HttpConnectionPoolSettings ();
+    ret.assignFrom (m_aPoolSettings);
+    return ret;
+  }
+
+  /**
+   * @return The current statistics of the whole connection pool (leased,
+   *         available, pending). Never <code>null</code>.
+   */
+  @Nonnull
+  public final PoolStats getTotalStats ()
+  {
+    return m_aConnMgr.getTotalStats ();
+  }
+
+  /**
+   * @return <code>true</code> if this pool was already closed,
+   *         <code>false</code> if not.
+   */
+  public final boolean isClosed ()
+  {
+    return m_aClosed.get ();
+  }
+
+  /**
+   * Execute the provided HTTP request with a pooled connection. The response
+   * handler is responsible for converting the response. After the handler was
+   * invoked, the response entity is consumed so that the connection can be
+   * returned to the pool.
+   *
+   * @param <T>
+   *        Response data type
+   * @param aRequest
+   *        The request to be executed. May not be <code>null</code>.
+   * @param aResponseHandler
+   *        The response handler to use. May not be <code>null</code>.
+   * @return The result of the response handler. May be <code>null</code>.
+   * @throws IOException
+   *         In case of IO error
+   * @throws IllegalStateException
+   *         If the pool was already closed.
+   */
+  @Nullable
+  public <T> T execute (@Nonnull final ClassicHttpRequest aRequest,
+                        @Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler) throws IOException
+  {
+    if (m_aClosed.get ())
+      throw new IllegalStateException ("This HttpConnectionPool is already closed!");
+
+    return m_aHttpClient.execute (aRequest, aResponseHandler);
+  }
+
+  /**
+   * Register a JVM shutdown hook that closes this pool when the JVM terminates.
+   *
+   * @return this for chaining
+   */
+  @Nonnull
+  public final HttpConnectionPool registerShutdownHook ()
+  {
+    Runtime.getRuntime ().addShutdownHook (new Thread (this::close, "phase4-HttpConnectionPool-shutdown"));
+    return this;
+  }
+
+  /**
+   * Gracefully close the HTTP client and all pooled connections. Subsequent
+   * calls to this method have no effect.
+   */
+  public void close ()
+  {
+    if (!m_aClosed.getAndSet (true))
+    {
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Closing HttpConnectionPool with " + m_aConnMgr.getTotalStats ());
+
+      m_aHttpClient.close (CloseMode.GRACEFUL);
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("HttpClientFactory", m_aHttpClientFactory)
+                                       .append ("PoolSettings", m_aPoolSettings)
+                                       .append ("Closed", m_aClosed.get ())
+                                       .getToString ();
+  }
+}
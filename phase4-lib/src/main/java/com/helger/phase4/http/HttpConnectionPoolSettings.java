@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import java.time.Duration;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * Settings for the long-lived, pooled HTTP connection handling of
+ * {@link HttpConnectionPool}.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@NotThreadSafe
+public class HttpConnectionPoolSettings
+{
+  public static final int DEFAULT_MAX_TOTAL = 100;
+  public static final int DEFAULT_MAX_PER_ROUTE = 20;
+  public static final Duration DEFAULT_IDLE_EVICTION_DURATION = Duration.ofSeconds (30);
+
+  private int m_nMaxTotal = DEFAULT_MAX_TOTAL;
+  private int m_nMaxPerRoute = DEFAULT_MAX_PER_ROUTE;
+  private Duration m_aIdleEvictionDuration = DEFAULT_IDLE_EVICTION_DURATION;
+  private Duration m_aTimeToLive;
+
+  public HttpConnectionPoolSettings ()
+  {}
+
+  /**
+   * @return The maximum number of connections in the pool, over all routes.
+   *         Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxTotal ()
+  {
+    return m_nMaxTotal;
+  }
+
+  /**
+   * Set the maximum number of connections in the pool, over all routes.
+   *
+   * @param nMaxTotal
+   *        The maximum number of connections. Must be &gt; 0.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final HttpConnectionPoolSettings setMaxTotal (@Nonnegative final int nMaxTotal)
+  {
+    ValueEnforcer.isGT0 (nMaxTotal, "MaxTotal");
+    m_nMaxTotal = nMaxTotal;
+    return this;
+  }
+
+  /**
+   * @return The maximum number of connections per route (receiving host).
+   *         Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxPerRoute ()
+  {
+    return m_nMaxPerRoute;
+  }
+
+  /**
+   * Set the maximum number of connections per route (receiving host).
+   *
+   * @param nMaxPerRoute
+   *        The maximum number of connections per route. Must be &gt; 0.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final HttpConnectionPoolSettings setMaxPerRoute (@Nonnegative final int nMaxPerRoute)
+  {
+    ValueEnforcer.isGT0 (nMaxPerRoute, "MaxPerRoute");
+    m_nMaxPerRoute = nMaxPerRoute;
+    return this;
+  }
+
+  /**
+   * @return The duration after which idle connections are evicted from the
+   *         pool. Never <code>null</code>.
+   */
+  @Nonnull
+  public final Duration getIdleEvictionDuration ()
+  {
+    return m_aIdleEvictionDuration;
+  }
+
+  /**
+   * Set the duration after which idle connections are evicted from the pool by
+   * the background evictor thread.
+   *
+   * @param aIdleEvictionDuration
+   *        The duration to use. May not be <code>null</code> and must be
+   *        positive.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final HttpConnectionPoolSettings setIdleEvictionDuration (@Nonnull final Duration aIdleEvictionDuration)
+  {
+    ValueEnforcer.notNull (aIdleEvictionDuration, "IdleEvictionDuration");
+    ValueEnforcer.isTrue (!aIdleEvictionDuration.isNegative () && !aIdleEvictionDuration.isZero (),
+                          "IdleEvictionDuration must be positive");
+    m_aIdleEvictionDuration = aIdleEvictionDuration;
+    return this;
+  }
+
+  /**
+   * @return The maximum time to live of a single pooled connection, or
+   *         <code>null</code> if connections may live forever.
+   */
+  @Nullable
+  public final Duration getTimeToLive ()
+  {
+    return m_aTimeToLive;
+  }
+
+  /**
+   * Set the maximum time to live of a single pooled connection. This is e.g.
+   * helpful to pick up DNS changes of the receivers in a timely manner.
+   *
+   * @param aTimeToLive
+   *        The time to live. May be <code>null</code> to indicate an unlimited
+   *        time to live.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final HttpConnectionPoolSettings setTimeToLive (@Nullable final Duration aTimeToLive)
+  {
+    m_aTimeToLive = aTimeToLive;
+    return this;
+  }
+
+  public final void assignFrom (@Nonnull final HttpConnectionPoolSettings aOther)
+  {
+    ValueEnforcer.notNull (aOther, "Other");
+    setMaxTotal (aOther.getMaxTotal ());
+    setMaxPerRoute (aOther.getMaxPerRoute ());
+    setIdleEvictionDuration (aOther.getIdleEvictionDuration ());
+    setTimeToLive (aOther.getTimeToLive ());
+  }
+
+  @Override
+  public boolean equals (final Object o)
+  {
+    if (o == this)
+      return true;
+    if (o == null || !getClass ().equals (o.getClass ()))
+      return false;
+    final HttpConnectionPoolSettings rhs = (HttpConnectionPoolSettings) o;
+    return m_nMaxTotal == rhs.m_nMaxTotal &&
+           m_nMaxPerRoute == rhs.m_nMaxPerRoute &&
+           m_aIdleEvictionDuration.equals (rhs.m_aIdleEvictionDuration) &&
+           EqualsHelper.equals (m_aTimeToLive, rhs.m_aTimeToLive);
+  }
+
+  @Override
+  public int hashCode ()
+  {
+    return new HashCodeGenerator (this).append (m_nMaxTotal)
+                                       .append (m_nMaxPerRoute)
+                                       .append (m_aIdleEvictionDuration)
+                                       .append (m_aTimeToLive)
+                                       .getHashCode ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("MaxTotal", m_nMaxTotal)
+                                       .append ("MaxPerRoute", m_nMaxPerRoute)
+                                       .append ("IdleEvictionDuration", m_aIdleEvictionDuration)
+                                       .append ("TimeToLive", m_aTimeToLive)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.concurrent.SimpleLock;
+import com.helger.commons.state.ESuccess;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * The health state of a single outbound HTTP endpoint (destination URL). It
+ * combines a circuit breaker with an AIMD (additive increase, multiplicative
+ * decrease) limit of concurrent transmissions:
+ * <ul>
+ * <li>After {@link HttpEndpointHealthSettings#getFailureThreshold()}
+ * consecutive failures the circuit is opened and all transmissions are
+ * rejected for {@link HttpEndpointHealthSettings#getOpenDuration()}.
+ * Afterwards a single trial transmission is allowed (half-open) which decides
+ * whether the circuit is closed again or re-opened.</li>
+ * <li>Every fast successful transmission increases the concurrency limit by
+ * roughly 1 per "limit" transmissions. Every failure and every successful
+ * transmission slower than
+ * {@link HttpEndpointHealthSettings#getLatencyThreshold()} multiplies the limit
+ * by {@link HttpEndpointHealthSettings#getBackoffRatio()}.</li>
+ * </ul>
+ * Each successful {@link #tryAcquire()} must be followed by exactly one call to
+ * {@link #onTransmissionFinished(boolean, long)} or {@link #release()}.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@ThreadSafe
+public class HttpEndpointHealth
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (HttpEndpointHealth.class);
+
+  private final SimpleLock m_aLock = new SimpleLock ();
+  private final String m_sURL;
+  private final HttpEndpointHealthSettings m_aSettings;
+  @GuardedBy ("m_aLock")
+  private EHttpCircuitState m_eState = EHttpCircuitState.CLOSED;
+  @GuardedBy ("m_aLock")
+  private long m_nOpenedAtNanos;
+  @GuardedBy ("m_aLock")
+  private int m_nConsecutiveFailures;
+  @GuardedBy ("m_aLock")
+  private double m_dLimit;
+  @GuardedBy ("m_aLock")
+  private int m_nInFlight;
+  @GuardedBy ("m_aLock")
+  private long m_nLastLatencyMillis = -1;
+  @GuardedBy ("m_aLock")
+  private long m_nSuccessCount;
+  @GuardedBy ("m_aLock")
+  private long m_nFailureCount;
+  @GuardedBy ("m_aLock")
+  private long m_nRejectedCount;
+
+  /**
+   * Constructor
+   *
+   * @param sURL
+   *        The destination URL. May neither be <code>null</code> nor empty.
+   * @param aSettings
+   *        The settings to use. May not be <code>null</code>. Must not be
+   *        modified afterwards.
+   */
+  public HttpEndpointHealth (@Nonnull @Nonempty final String sURL, @Nonnull final HttpEndpointHealthSettings aSettings)
+  {
+    ValueEnforcer.notEmpty (sURL, "URL");
+    ValueEnforcer.notNull (aSettings, "Settings");
+    m_sURL = sURL;
+    m_aSettings = aSettings;
+    m_dLimit = aSettings.getInitialLimit ();
+  }
+
+  /**
+   * @return The destination URL. Neither <code>null</code> nor empty.
+   */
+  @Nonnull
+  @Nonempty
+  public final String getURL ()
+  {
+    return m_sURL;
+  }
+
+  @Nonnull
+  private EHttpCircuitState _getEffectiveState ()
+  {
+    if (m_eState == EHttpCircuitState.OPEN &&
+        System.nanoTime () - m_nOpenedAtNanos >= m_aSettings.getOpenDuration ().toNanos ())
+    {
+      // Open duration elapsed - allow a probe
+      m_eState = EHttpCircuitState.HALF_OPEN;
+    }
+    return m_eState;
+  }
+
+  /**
+   * @return The current circuit state. Never <code>null</code>.
+   */
+  @Nonnull
+  public final EHttpCircuitState getCircuitState ()
+  {
+    return m_aLock.lockedGet (this::_getEffectiveState);
+  }
+
+  /**
+   * @return The current concurrency limit of this endpoint. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getConcurrencyLimit ()
+  {
+    return m_aLock.lockedInt ( () -> (int) m_dLimit);
+  }
+
+  /**
+   * @return The number of transmissions currently in progress. Always &ge; 0.
+   */
+  @Nonnegative
+  public final int getInFlightCount ()
+  {
+    return m_aLock.lockedInt ( () -> m_nInFlight);
+  }
+
+  /**
+   * @return The duration of the last finished transmission in milliseconds or
+   *         -1 if no transmission finished yet.
+   */
+  public final long getLastLatencyMillis ()
+  {
+    return m_aLock.lockedLong ( () -> m_nLastLatencyMillis);
+  }
+
+  /**
+   * @return The number of successful transmissions. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getSuccessCount ()
+  {
+    return m_aLock.lockedLong ( () -> m_nSuccessCount);
+  }
+
+  /**
+   * @return The number of failed transmissions. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getFailureCount ()
+  {
+    return m_aLock.lockedLong ( () -> m_nFailureCount);
+  }
+
+  /**
+   * @return The number of transmissions that were rejected because of an open
+   *         circuit or the concurrency limit. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getRejectedCount ()
+  {
+    return m_aLock.lockedLong ( () -> m_nRejectedCount);
+  }
+
+  /**
+   * Try to start a transmission to this endpoint.
+   *
+   * @return {@link ESuccess#SUCCESS} if the transmission may take place,
+   *         {@link ESuccess#FAILURE} if the circuit is open or the concurrency
+   *         limit is reached.
+   */
+  @Nonnull
+  public ESuccess tryAcquire ()
+  {
+    return m_aLock.lockedGet ( () -> {
+      final EHttpCircuitState eState = _getEffectiveState ();
+      final int nMaxInFlight = eState == EHttpCircuitState.HALF_OPEN ? 1 : (int) m_dLimit;
+      if (eState == EHttpCircuitState.OPEN || m_nInFlight >= nMaxInFlight)
+      {
+        m_nRejectedCount++;
+        return ESuccess.FAILURE;
+      }
+      m_nInFlight++;
+      return ESuccess.SUCCESS;
+    });
+  }
+
+  /**
+   * Must be called after each transmission that was permitted by
+   * {@link #tryAcquire()}.
+   *
+   * @param bSuccess
+   *        <code>true</code> if the transmission succeeded, <code>false</code>
+   *        if it failed.
+   * @param nLatencyMillis
+   *        The duration of the transmission in milliseconds.
+   */
+  public void onTransmissionFinished (final boolean bSuccess, final long nLatencyMillis)
+  {
+    m_aLock.locked ( () -> {
+      m_nInFlight = Math.max (0, m_nInFlight - 1);
+      m_nLastLatencyMillis = nLatencyMillis;
+
+      final EHttpCircuitState eOldState = m_eState;
+      if (bSuccess)
+      {
+        m_nSuccessCount++;
+        m_nConsecutiveFailures = 0;
+        m_eState = EHttpCircuitState.CLOSED;
+
+        if (nLatencyMillis > m_aSettings.getLatencyThreshold ().toMillis ())
+          m_dLimit = Math.max (m_aSettings.getMinLimit (), m_dLimit * m_aSettings.getBackoffRatio ());
+        else
+          m_dLimit = Math.min (m_aSettings.getMaxLimit (), m_dLimit + 1d / m_dLimit);
+      }
+      else
+      {
+        m_nFailureCount++;
+        m_nConsecutiveFailures++;
+        m_dLimit = Math.max (m_aSettings.getMinLimit (), m_dLimit * m_aSettings.getBackoffRatio ());
+
+        if (m_eState == EHttpCircuitState.HALF_OPEN || m_nConsecutiveFailures >= m_aSettings.getFailureThreshold ())
+        {
+          m_eState = EHttpCircuitState.OPEN;
+          m_nOpenedAtNanos = System.nanoTime ();
+        }
+      }
+
+      if (eOldState != m_eState)
+        LOGGER.info ("Circuit of endpoint '" + m_sURL + "' changed from " + eOldState + " to " + m_eState);
+    });
+  }
+
+  /**
+   * Release a permit obtained by {@link #tryAcquire()} without recording an
+   * outcome. This should be used if the transmission was not even started.
+   */
+  public void release ()
+  {
+    m_aLock.locked ( () -> m_nInFlight = Math.max (0, m_nInFlight - 1));
+  }
+
+  @Override
+  public String toString ()
+  {
+    return m_aLock.lockedGet ( () -> new ToStringGenerator (this).append ("URL", m_sURL)
+                                                               .append ("State", m_eState)
+                                                               .append ("ConsecutiveFailures", m_nConsecutiveFailures)
+                                                               .append ("Limit", m_dLimit)
+                                                               .append ("InFlight", m_nInFlight)
+                                                               .append ("LastLatencyMillis", m_nLastLatencyMillis)
+                                                               .append ("SuccessCount", m_nSuccessCount)
+                                                               .append ("FailureCount", m_nFailureCount)
+                                                               .append ("RejectedCount", m_nRejectedCount)
+                                                               .getToString ());
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * Keeps the {@link HttpEndpointHealth} of all outbound HTTP endpoints, keyed by
+ * the destination URL. An instance of this class should be shared between all
+ * HTTP posters (see {@link BasicHttpPoster#setEndpointHealthManager(HttpEndpointHealthManager)})
+ * so that the health of a partner is tracked globally.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@ThreadSafe
+public class HttpEndpointHealthManager
+{
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  private final HttpEndpointHealthSettings m_aSettings;
+  @GuardedBy ("m_aRWLock")
+  private final ICommonsMap <String, HttpEndpointHealth> m_aMap = new CommonsHashMap <> ();
+
+  /**
+   * Constructor with default settings.
+   */
+  public HttpEndpointHealthManager ()
+  {
+    this (new HttpEndpointHealthSettings ());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aSettings
+   *        The settings to use for all endpoints. May not be <code>null</code>.
+   *        The object is copied internally.
+   */
+  public HttpEndpointHealthManager (@Nonnull final HttpEndpointHealthSettings aSettings)
+  {
+    ValueEnforcer.notNull (aSettings, "Settings");
+    m_aSettings = new HttpEndpointHealthSettings ();
+    m_aSettings.assignFrom (aSettings);
+  }
+
+  /**
+   * @return A copy of the settings used. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public final HttpEndpointHealthSettings getSettings ()
+  {
+    final HttpEndpointHealthSettings ret = new HttpEndpointHealthSettings ();
+    ret.assignFrom (m_aSettings);
+    return ret;
+  }
+
+  /**
+   * Get the health of the provided endpoint, creating it if necessary.
+   *
+   * @param sURL
+   *        The destination URL. May neither be <code>null</code> nor empty.
+   * @return The health object. Never <code>null</code>.
+   */
+  @Nonnull
+  public HttpEndpointHealth getOrCreateHealth (@Nonnull @Nonempty final String sURL)
+  {
+    ValueEnforcer.notEmpty (sURL, "URL");
+
+    final HttpEndpointHealth ret = m_aRWLock.readLockedGet ( () -> m_aMap.get (sURL));
+    if (ret != null)
+      return ret;
+    return m_aRWLock.writeLockedGet ( () -> m_aMap.computeIfAbsent (sURL,
+                                                                    k -> new HttpEndpointHealth (k, m_aSettings)));
+  }
+
+  /**
+   * @param sURL
+   *        The destination URL. May be <code>null</code>.
+   * @return The health of the provided endpoint or <code>null</code> if no
+   *         transmission to it took place so far.
+   */
+  @Nullable
+  public HttpEndpointHealth getHealth (@Nullable final String sURL)
+  {
+    return m_aRWLock.readLockedGet ( () -> m_aMap.get (sURL));
+  }
+
+  /**
+   * @return The health of all known endpoints. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <HttpEndpointHealth> getAllHealths ()
+  {
+    return m_aRWLock.readLockedGet (m_aMap::copyOfValues);
+  }
+
+  /**
+   * @param eState
+   *        The circuit state to filter. May not be <code>null</code>.
+   * @return The health of all known endpoints that are currently in the
+   *         provided circuit state. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <HttpEndpointHealth> getAllHealthsInState (@Nonnull final EHttpCircuitState eState)
+  {
+    ValueEnforcer.notNull (eState, "State");
+    return getAllHealths ().getAll (x -> x.getCircuitState () == eState);
+  }
+
+  /**
+   * Forget about all endpoints. This resets all circuits and limits.
+   */
+  public void clear ()
+  {
+    m_aRWLock.writeLocked (m_aMap::clear);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Settings", m_aSettings)
+                                       .append ("Endpoints", m_aRWLock.readLockedInt (m_aMap::size))
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import java.time.Duration;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * Settings for the circuit breaker and the adaptive concurrency limit of
+ * {@link HttpEndpointHealth}.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@NotThreadSafe
+public class HttpEndpointHealthSettings
+{
+  public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+  public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds (30);
+  public static final int DEFAULT_INITIAL_LIMIT = 20;
+  public static final int DEFAULT_MIN_LIMIT = 1;
+  public static final int DEFAULT_MAX_LIMIT = 200;
+  public static final Duration DEFAULT_LATENCY_THRESHOLD = Duration.ofSeconds (10);
+  public static final double DEFAULT_BACKOFF_RATIO = 0.5;
+
+  private int m_nFailureThreshold = DEFAULT_FAILURE_THRESHOLD;
+  private Duration m_aOpenDuration = DEFAULT_OPEN_DURATION;
+  private int m_nInitialLimit = DEFAULT_INITIAL_LIMIT;
+  private int m_nMinLimit = DEFAULT_MIN_LIMIT;
+  private int m_nMaxLimit = DEFAULT_MAX_LIMIT;
+  private Duration m_aLatencyThreshold = DEFAULT_LATENCY_THRESHOLD;
+  private double m_dBackoffRatio = DEFAULT_BACKOFF_RATIO;
+
+  public HttpEndpointHealthSettings ()
+  {}
+
+  /**
+   * @return The number of consecutive failures after which the circuit is
+   *         opened. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getFailureThreshold ()
+  {
+    return m_nFailureThreshold;
+  }
+
+  @Nonnull
+  public final HttpEndpointHealthSettings setFailureThreshold (@Nonnegative final int nFailureThreshold)
+  {
+    ValueEnforcer.isGT0 (nFailureThreshold, "FailureThreshold");
+    m_nFailureThreshold = nFailureThreshold;
+    return this;
+  }
+
+  /**
+   * @return The duration the circuit stays open, before a trial transmission
+   *         is allowed. Never <code>null</code>.
+   */
+  @Nonnull
+  public final Duration getOpenDuration ()
+  {
+    return m_aOpenDuration;
+  }
+
+  @Nonnull
+  public final HttpEndpointHealthSettings setOpenDuration (@Nonnull final Duration aOpenDuration)
+  {
+    ValueEnforcer.notNull (aOpenDuration, "OpenDuration");
+    ValueEnforcer.isFalse (aOpenDuration.isNegative (), "OpenDuration must not be negative");
+    m_aOpenDuration = aOpenDuration;
+    return this;
+  }
+
+  /**
+   * @return The initial number of concurrent transmissions per endpoint.
+   *         Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getInitialLimit ()
+  {
+    return m_nInitialLimit;
+  }
+
+  @Nonnull
+  public final HttpEndpointHealthSettings setInitialLimit (@Nonnegative final int nInitialLimit)
+  {
+    ValueEnforcer.isGT0 (nInitialLimit, "InitialLimit");
+    m_nInitialLimit = nInitialLimit;
+    return this;
+  }
+
+  /**
+   * @return The minimum number of concurrent transmissions per endpoint, the
+   *         adaptive limit never goes below. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMinLimit ()
+  {
+    return m_nMinLimit;
+  }
+
+  @Nonnull
+  public final HttpEndpointHealthSettings setMinLimit (@Nonnegative final int nMinLimit)
+  {
+    ValueEnforcer.isGT0 (nMinLimit, "MinLimit");
+    m_nMinLimit = nMinLimit;
+    return this;
+  }
+
+  /**
+   * @return The maximum number of concurrent transmissions per endpoint, the
+   *         adaptive limit never goes above. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxLimit ()
+  {
+    return m_nMaxLimit;
+  }
+
+  @Nonnull
+  public final HttpEndpointHealthSettings setMaxLimit (@Nonnegative final int nMaxLimit)
+  {
+    ValueEnforcer.isGT0 (nMaxLimit, "MaxLimit");
+    m_nMaxLimit = nMaxLimit;
+    return this;
+  }
+
+  /**
+   * @return The latency above which a successful transmission is considered
+   *         as a sign of overload, so that the concurrency limit is decreased.
+   *         Never <code>null</code>.
+   */
+  @Nonnull
+  public final Duration getLatencyThreshold ()
+  {
+    return m_aLatencyThreshold;
+  }
+
+  @Nonnull
+  public final HttpEndpointHealthSettings setLatencyThreshold (@Nonnull final Duration aLatencyThreshold)
+  {
+    ValueEnforcer.notNull (aLatencyThreshold, "LatencyThreshold");
+    m_aLatencyThreshold = aLatencyThreshold;
+    return this;
+  }
+
+  /**
+   * @return The factor with which the concurrency limit is multiplied upon
+   *         failure or overload. Always between 0 and 1 (exclusive).
+   */
+  public final double getBackoffRatio ()
+  {
+    return m_dBackoffRatio;
+  }
+
+  @Nonnull
+  public final HttpEndpointHealthSettings setBackoffRatio (final double dBackoffRatio)
+  {
+    ValueEnforcer.isTrue (dBackoffRatio > 0 && dBackoffRatio < 1, "BackoffRatio must be between 0 and 1");
+    m_dBackoffRatio = dBackoffRatio;
+    return this;
+  }
+
+  public final void assignFrom (@Nonnull final HttpEndpointHealthSettings aOther)
+  {
+    ValueEnforcer.notNull (aOther, "Other");
+    setFailureThreshold (aOther.getFailureThreshold ());
+    setOpenDuration (aOther.getOpenDuration ());
+    setInitialLimit (aOther.getInitialLimit ());
+    setMinLimit (aOther.getMinLimit ());
+    setMaxLimit (aOther.getMaxLimit ());
+    setLatencyThreshold (aOther.getLatencyThreshold ());
+    setBackoffRatio (aOther.getBackoffRatio ());
+  }
+
+  @Override
+  public boolean equals (final Object o)
+  {
+    if (o == this)
+      return true;
+    if (o == null || !getClass ().equals (o.getClass ()))
+      return false;
+    final HttpEndpointHealthSettings rhs = (HttpEndpointHealthSettings) o;
+    return m_nFailureThreshold == rhs.m_nFailureThreshold &&
+           m_aOpenDuration.equals (rhs.m_aOpenDuration) &&
+           m_nInitialLimit == rhs.m_nInitialLimit &&
+           m_nMinLimit == rhs.m_nMinLimit &&
+           m_nMaxLimit == rhs.m_nMaxLimit &&
+           m_aLatencyThreshold.equals (rhs.m_aLatencyThreshold) &&
+           Double.compare (m_dBackoffRatio, rhs.m_dBackoffRatio) == 0;
+  }
+
+  @Override
+  public int hashCode ()
+  {
+    return new HashCodeGenerator (this).append (m_nFailureThreshold)
+                                       .append (m_aOpenDuration)
+                                       .append (m_nInitialLimit)
+                                       .append (m_nMinLimit)
+                                       .append (m_nMaxLimit)
+                                       .append (m_aLatencyThreshold)
+                                       .append (m_dBackoffRatio)
+                                       .getHashCode ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("FailureThreshold", m_nFailureThreshold)
+                                       .append ("OpenDuration", m_aOpenDuration)
+                                       .append ("InitialLimit", m_nInitialLimit)
+                                       .append ("MinLimit", m_nMinLimit)
+                                       .append ("MaxLimit", m_nMaxLimit)
+                                       .append ("LatencyThreshold", m_aLatencyThreshold)
+                                       .append ("BackoffRatio", m_dBackoffRatio)
+                                       .getToString ();
+  }
+}
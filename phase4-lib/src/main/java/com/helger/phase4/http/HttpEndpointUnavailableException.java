@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Special {@link IOException} that is thrown if a transmission to an endpoint
+ * is not even tried, because the circuit breaker of the endpoint is open or
+ * the concurrency limit of the endpoint is reached. As this is an
+ * {@link IOException}, the regular HTTP retry handling applies.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+public class HttpEndpointUnavailableException extends IOException
+{
+  private final EHttpCircuitState m_eCircuitState;
+
+  public HttpEndpointUnavailableException (@Nonnull final String sMessage,
+                                           @Nonnull final EHttpCircuitState eCircuitState)
+  {
+    super (sMessage);
+    m_eCircuitState = eCircuitState;
+  }
+
+  /**
+   * @return The circuit state of the endpoint at the time the transmission was
+   *         rejected. Never <code>null</code>.
+   */
+  @Nonnull
+  public final EHttpCircuitState getCircuitState ()
+  {
+    return m_eCircuitState;
+  }
+}
@@ -23,11 +23,14 @@ import java.io.OutputStream;
 import javax.annotation.Nonnull;
 
 import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.string.ToStringGenerator;
 import com.helger.phase4.messaging.mime.AS4MimeMessage;
+import com.helger.phase4.messaging.mime.MimeLengthCountingOutputStream;
 
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
@@ -40,12 +43,40 @@ import jakarta.mail.internet.MimeMessage;
  */
 public class HttpMimeMessageEntity extends AbstractHttpEntity
 {
+  private static final Logger LOGGER = LoggerFactory.getLogger (HttpMimeMessageEntity.class);
+
+  /** By default the exact content length is computed if possible */
+  public static final boolean DEFAULT_COMPUTE_CONTENT_LENGTH = true;
+
   private final AS4MimeMessage m_aMsg;
+  private final boolean m_bComputeContentLength;
+  // Lazily computed
+  private long m_nContentLength = -1;
 
   protected HttpMimeMessageEntity (@Nonnull @Nonempty final String sContentType, @Nonnull final AS4MimeMessage aMsg)
+  {
+    this (sContentType, aMsg, DEFAULT_COMPUTE_CONTENT_LENGTH);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param sContentType
+   *        Content type to use. May neither be <code>null</code> nor empty.
+   * @param aMsg
+   *        The MIME message to be send. May not be <code>null</code>.
+   * @param bComputeContentLength
+   *        <code>true</code> to determine the exact content length up front,
+   *        <code>false</code> to use chunked encoding.
+   * @since 2.7.6
+   */
+  protected HttpMimeMessageEntity (@Nonnull @Nonempty final String sContentType,
+                                   @Nonnull final AS4MimeMessage aMsg,
+                                   final boolean bComputeContentLength)
   {
     super (sContentType, null);
     m_aMsg = aMsg;
+    m_bComputeContentLength = bComputeContentLength;
   }
 
   @Override
@@ -70,10 +101,62 @@ public class HttpMimeMessageEntity extends AbstractHttpEntity
     return m_aMsg.isRepeatable ();
   }
 
+  /**
+   * @return <code>true</code> if the exact content length should be
+   *         determined, <code>false</code> if chunked encoding is used.
+   * @since 2.7.6
+   */
+  public final boolean isComputeContentLength ()
+  {
+    return m_bComputeContentLength;
+  }
+
+  /**
+   * Determine the exact length of the MIME message, by serializing it into a
+   * counting stream. Attachments with a known length (e.g. file based
+   * attachments) are not read in this process, so only the MIME headers and
+   * the SOAP part are really serialized. This requires the MIME message to be
+   * repeatable.
+   *
+   * @return The number of bytes or -1 if the length cannot be determined.
+   */
+  private long _determineContentLength ()
+  {
+    if (!m_aMsg.isRepeatable ())
+    {
+      // We cannot write the message twice
+      return -1;
+    }
+
+    final MimeLengthCountingOutputStream aCOS = new MimeLengthCountingOutputStream ();
+    try
+    {
+      m_aMsg.writeTo (aCOS);
+      return aCOS.getBytesWritten ();
+    }
+    catch (final IOException | MessagingException ex)
+    {
+      LOGGER.warn ("Failed to determine length of MIME message - using chunked encoding", ex);
+      return -1;
+    }
+  }
+
+  /**
+   * {@inheritDoc}<br>
+   * Note: the length is determined only once, so the MIME message must not be
+   * modified after this method was called.
+   */
   public long getContentLength ()
   {
-    // length unknown - negative number
-    return -1;
+    if (!m_bComputeContentLength)
+    {
+      // length unknown - negative number
+      return -1;
+    }
+
+    if (m_nContentLength < 0)
+      m_nContentLength = _determineContentLength ();
+    return m_nContentLength;
   }
 
   public boolean isStreaming ()
@@ -111,16 +194,38 @@ public class HttpMimeMessageEntity extends AbstractHttpEntity
   @Override
   public String toString ()
   {
-    return ToStringGenerator.getDerived (super.toString ()).append ("MimeMsg", m_aMsg).getToString ();
+    return ToStringGenerator.getDerived (super.toString ())
+                            .append ("MimeMsg", m_aMsg)
+                            .append ("ComputeContentLength", m_bComputeContentLength)
+                            .append ("ContentLength", m_nContentLength)
+                            .getToString ();
   }
 
   @Nonnull
   public static HttpMimeMessageEntity create (@Nonnull final AS4MimeMessage aMsg)
+  {
+    return create (aMsg, DEFAULT_COMPUTE_CONTENT_LENGTH);
+  }
+
+  /**
+   * Create a new entity for the provided MIME message.
+   *
+   * @param aMsg
+   *        The MIME message to be send. May not be <code>null</code>.
+   * @param bComputeContentLength
+   *        <code>true</code> to determine the exact content length up front (if
+   *        the message is repeatable), <code>false</code> to use chunked
+   *        encoding.
+   * @return The new entity. Never <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nonnull
+  public static HttpMimeMessageEntity create (@Nonnull final AS4MimeMessage aMsg, final boolean bComputeContentLength)
   {
     ValueEnforcer.notNull (aMsg, "Msg");
     try
     {
-      return new HttpMimeMessageEntity (aMsg.getContentType (), aMsg);
+      return new HttpMimeMessageEntity (aMsg.getContentType (), aMsg, bComputeContentLength);
     }
     catch (final MessagingException ex)
     {
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.annotation.Nonnull;
+
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.messaging.mime.AS4MultipartRelatedWriter;
+
+/**
+ * Special HTTP entity that writes an AS4 <code>multipart/related</code>
+ * message using an {@link AS4MultipartRelatedWriter}, without JavaMail being
+ * involved.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+public class HttpMultipartRelatedEntity extends AbstractHttpEntity
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (HttpMultipartRelatedEntity.class);
+
+  private final AS4MultipartRelatedWriter m_aWriter;
+  private final boolean m_bComputeContentLength;
+  // Lazily computed; Long.MIN_VALUE means not yet computed
+  private long m_nContentLength = Long.MIN_VALUE;
+
+  public HttpMultipartRelatedEntity (@Nonnull final AS4MultipartRelatedWriter aWriter)
+  {
+    this (aWriter, HttpMimeMessageEntity.DEFAULT_COMPUTE_CONTENT_LENGTH);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aWriter
+   *        The writer for the message to be send. May not be
+   *        <code>null</code>.
+   * @param bComputeContentLength
+   *        <code>true</code> to determine the exact content length up front,
+   *        <code>false</code> to use chunked encoding.
+   */
+  public HttpMultipartRelatedEntity (@Nonnull final AS4MultipartRelatedWriter aWriter,
+                                     final boolean bComputeContentLength)
+  {
+    super (ValueEnforcer.notNull (aWriter, "Writer").getContentType (), null);
+    m_aWriter = aWriter;
+    m_bComputeContentLength = bComputeContentLength;
+  }
+
+  @Override
+  public final void close () throws IOException
+  {
+    // nothing to do
+  }
+
+  /**
+   * @return The writer passed in the constructor. Never <code>null</code>.
+   */
+  @Nonnull
+  public final AS4MultipartRelatedWriter getWriter ()
+  {
+    return m_aWriter;
+  }
+
+  @Override
+  public boolean isRepeatable ()
+  {
+    return m_aWriter.isRepeatable ();
+  }
+
+  /**
+   * @return <code>true</code> if the exact content length should be
+   *         determined, <code>false</code> if chunked encoding is used.
+   */
+  public final boolean isComputeContentLength ()
+  {
+    return m_bComputeContentLength;
+  }
+
+  public long getContentLength ()
+  {
+    if (!m_bComputeContentLength)
+    {
+      // length unknown - negative number
+      return -1;
+    }
+
+    if (m_nContentLength == Long.MIN_VALUE)
+    {
+      try
+      {
+        m_nContentLength = m_aWriter.getContentLength ();
+      }
+      catch (final IOException ex)
+      {
+        LOGGER.warn ("Failed to determine length of MIME message - using chunked encoding", ex);
+        m_nContentLength = -1;
+      }
+    }
+    return m_nContentLength;
+  }
+
+  public boolean isStreaming ()
+  {
+    // Depends on the attachments
+    return false;
+  }
+
+  public InputStream getContent () throws IOException
+  {
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+    {
+      m_aWriter.writeTo (aBAOS);
+      return aBAOS.getAsInputStream ();
+    }
+  }
+
+  @Override
+  public void writeTo (@Nonnull final OutputStream aOS) throws IOException
+  {
+    ValueEnforcer.notNull (aOS, "OutputStream");
+    m_aWriter.writeTo (aOS);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return ToStringGenerator.getDerived (super.toString ())
+                            .append ("Writer", m_aWriter)
+                            .append ("ComputeContentLength", m_bComputeContentLength)
+                            .getToString ();
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import javax.annotation.CheckForSigned;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * An object encapsulating the settings for reading synchronous HTTP responses.
+ * Responses up to a certain size are kept in memory, larger responses are
+ * spooled to a temporary file. By default the response size is unlimited.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@NotThreadSafe
+public class HttpResponseSettings
+{
+  public static final long DEFAULT_MAX_RESPONSE_SIZE = CGlobal.ILLEGAL_ULONG;
+  public static final int DEFAULT_IN_MEMORY_THRESHOLD = 64 * CGlobal.BYTES_PER_KILOBYTE;
+
+  private long m_nMaxResponseSize = DEFAULT_MAX_RESPONSE_SIZE;
+  private int m_nInMemoryThreshold = DEFAULT_IN_MEMORY_THRESHOLD;
+
+  public HttpResponseSettings ()
+  {}
+
+  /**
+   * @return <code>true</code> if the response size is limited,
+   *         <code>false</code> if not.
+   */
+  public final boolean hasMaxResponseSize ()
+  {
+    return m_nMaxResponseSize >= 0;
+  }
+
+  /**
+   * @return The maximum number of response bytes that are accepted. Values
+   *         &lt; 0 mean "unlimited".
+   */
+  @CheckForSigned
+  public final long getMaxResponseSize ()
+  {
+    return m_nMaxResponseSize;
+  }
+
+  /**
+   * Set the maximum number of response bytes that are accepted. If a response
+   * is larger, reading is aborted with an exception.
+   *
+   * @param nMaxResponseSize
+   *        The maximum number of bytes. Any value &lt; 0 means "unlimited".
+   * @return this for chaining
+   */
+  @Nonnull
+  public final HttpResponseSettings setMaxResponseSize (final long nMaxResponseSize)
+  {
+    m_nMaxResponseSize = nMaxResponseSize;
+    return this;
+  }
+
+  /**
+   * @return The maximum number of response bytes that are kept in memory.
+   *         Larger responses are spooled to a temporary file. Always &ge; 0.
+   */
+  @Nonnegative
+  public final int getInMemoryThreshold ()
+  {
+    return m_nInMemoryThreshold;
+  }
+
+  /**
+   * Set the maximum number of response bytes that are kept in memory.
+   *
+   * @param nInMemoryThreshold
+   *        The number of bytes. Must be &ge; 0. 0 means all responses are
+   *        spooled to disk.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final HttpResponseSettings setInMemoryThreshold (@Nonnegative final int nInMemoryThreshold)
+  {
+    ValueEnforcer.isGE0 (nInMemoryThreshold, "InMemoryThreshold");
+    m_nInMemoryThreshold = nInMemoryThreshold;
+    return this;
+  }
+
+  public final void assignFrom (@Nonnull final HttpResponseSettings aOther)
+  {
+    ValueEnforcer.notNull (aOther, "Other");
+    setMaxResponseSize (aOther.getMaxResponseSize ());
+    setInMemoryThreshold (aOther.getInMemoryThreshold ());
+  }
+
+  @Override
+  public boolean equals (final Object o)
+  {
+    if (o == this)
+      return true;
+    if (o == null || !getClass ().equals (o.getClass ()))
+      return false;
+    final HttpResponseSettings rhs = (HttpResponseSettings) o;
+    return m_nMaxResponseSize == rhs.m_nMaxResponseSize && m_nInMemoryThreshold == rhs.m_nInMemoryThreshold;
+  }
+
+  @Override
+  public int hashCode ()
+  {
+    return new HashCodeGenerator (this).append (m_nMaxResponseSize).append (m_nInMemoryThreshold).getHashCode ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("MaxResponseSize", m_nMaxResponseSize)
+                                       .append ("InMemoryThreshold", m_nInMemoryThreshold)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Special exception that is thrown if an HTTP response exceeds the configured
+ * maximum size.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ * @see HttpResponseSettings#getMaxResponseSize()
+ */
+public class HttpResponseTooLargeException extends IOException
+{
+  private final long m_nMaxResponseSize;
+
+  public HttpResponseTooLargeException (@Nonnull final String sMsg, final long nMaxResponseSize)
+  {
+    super (sMsg);
+    m_nMaxResponseSize = nMaxResponseSize;
+  }
+
+  /**
+   * @return The maximum response size that was exceeded.
+   */
+  public final long getMaxResponseSize ()
+  {
+    return m_nMaxResponseSize;
+  }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.state.ESuccess;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * A scheduler for delayed HTTP retries, based on a hashed timer wheel. Failed
+ * transmissions are parked in the wheel without occupying a thread, and are
+ * handed over to the provided executor when they are due. A single daemon
+ * thread advances the wheel. The precision is limited to the tick duration,
+ * which is fine for retry delays in the range of seconds or minutes.<br>
+ * Additionally a global retry budget is enforced: if more than
+ * {@link #getMaxPendingRetries()} retries are waiting at the same time, further
+ * retries are rejected. This prevents that a large outage of one partner
+ * accumulates an unbounded amount of waiting messages.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@ThreadSafe
+public class HttpRetryScheduler implements AutoCloseable
+{
+  public static final Duration DEFAULT_TICK_DURATION = Duration.ofMillis (100);
+  public static final int DEFAULT_WHEEL_SIZE = 512;
+  public static final int DEFAULT_MAX_PENDING_RETRIES = 10_000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (HttpRetryScheduler.class);
+
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  @GuardedBy ("RW_LOCK")
+  private static HttpRetryScheduler s_aDefaultInstance;
+
+  private static final class Entry
+  {
+    private final long m_nDeadlineNanos;
+    private final Runnable m_aTask;
+    private final Executor m_aExecutor;
+    private long m_nRemainingRounds;
+
+    Entry (final long nDeadlineNanos, @Nonnull final Runnable aTask, @Nonnull final Executor aExecutor)
+    {
+      m_nDeadlineNanos = nDeadlineNanos;
+      m_aTask = aTask;
+      m_aExecutor = aExecutor;
+    }
+  }
+
+  private final long m_nTickNanos;
+  private final int m_nMaxPendingRetries;
+  // Only accessed by the worker thread
+  private final Queue <Entry> [] m_aWheel;
+  private final int m_nWheelMask;
+  private final Queue <Entry> m_aNewEntries = new ConcurrentLinkedQueue <> ();
+  private final AtomicInteger m_aPendingCount = new AtomicInteger (0);
+  private final AtomicLong m_aRejectedCount = new AtomicLong (0);
+  private final AtomicBoolean m_aStarted = new AtomicBoolean (false);
+  private final AtomicBoolean m_aClosed = new AtomicBoolean (false);
+  private final Thread m_aWorker;
+  private volatile long m_nStartNanos;
+
+  /**
+   * Constructor with default settings.
+   */
+  public HttpRetryScheduler ()
+  {
+    this (DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE, DEFAULT_MAX_PENDING_RETRIES);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aTickDuration
+   *        The duration of a single tick of the wheel. May not be
+   *        <code>null</code> and must be positive.
+   * @param nWheelSize
+   *        The number of buckets in the wheel. Is rounded up to the next power
+   *        of 2. Must be &gt; 0.
+   * @param nMaxPendingRetries
+   *        The global retry budget - the maximum number of retries that may
+   *        wait concurrently. Must be &gt; 0.
+   */
+  public HttpRetryScheduler (@Nonnull final Duration aTickDuration,
+                             @Nonnegative final int nWheelSize,
+                             @Nonnegative final int nMaxPendingRetries)
+  {
+    ValueEnforcer.notNull (aTickDuration, "TickDuration");
+    ValueEnforcer.isTrue (!aTickDuration.isNegative () && !aTickDuration.isZero (), "TickDuration must be positive");
+    ValueEnforcer.isBetweenInclusive (nWheelSize, "WheelSize", 1, 1 << 20);
+    ValueEnforcer.isGT0 (nMaxPendingRetries, "MaxPendingRetries");
+
+    m_nTickNanos = aTickDuration.toNanos ();
+    m_nMaxPendingRetries = nMaxPendingRetries;
+
+    int nRealWheelSize = 1;
+    while (nRealWheelSize < nWheelSize)
+      nRealWheelSize <<= 1;
+    // Generic arrays cannot be created directly
+    @SuppressWarnings ({ "unchecked", "rawtypes" })
+    final Queue <Entry> [] aWheel = new Queue [nRealWheelSize];
+    for (int i = 0; i < nRealWheelSize; ++i)
+      aWheel[i] = new ArrayDeque <> ();
+    m_aWheel = aWheel;
+    m_nWheelMask = nRealWheelSize - 1;
+
+    m_aWorker = new Thread (this::_run, "phase4-HttpRetryScheduler");
+    m_aWorker.setDaemon (true);
+  }
+
+  /**
+   * @return The global default instance that is used by all HTTP posters if
+   *         not explicitly configured otherwise. It is created on first
+   *         access. Never <code>null</code>.
+   */
+  @Nonnull
+  public static HttpRetryScheduler getDefaultInstance ()
+  {
+    HttpRetryScheduler ret = RW_LOCK.readLockedGet ( () -> s_aDefaultInstance);
+    if (ret == null)
+    {
+      ret = RW_LOCK.writeLockedGet ( () -> {
+        if (s_aDefaultInstance == null)
+          s_aDefaultInstance = new HttpRetryScheduler ();
+        return s_aDefaultInstance;
+      });
+    }
+    return ret;
+  }
+
+  /**
+   * @return The maximum number of retries that may wait concurrently. Always
+   *         &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxPendingRetries ()
+  {
+    return m_nMaxPendingRetries;
+  }
+
+  /**
+   * @return The number of retries that are currently waiting. Always &ge; 0.
+   */
+  @Nonnegative
+  public final int getPendingRetryCount ()
+  {
+    return m_aPendingCount.get ();
+  }
+
+  /**
+   * @return The number of retries that were rejected so far, because the retry
+   *         budget was exhausted or the scheduler was closed. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getRejectedRetryCount ()
+  {
+    return m_aRejectedCount.get ();
+  }
+
+  /**
+   * @return <code>true</code> if this scheduler was already closed,
+   *         <code>false</code> if not.
+   */
+  public final boolean isClosed ()
+  {
+    return m_aClosed.get ();
+  }
+
+  /**
+   * Schedule a task to be executed after the provided delay. The task is not
+   * run in the scheduler thread, but handed over to the provided executor.
+   *
+   * @param aDelay
+   *        The delay after which the task should be run. May not be
+   *        <code>null</code>.
+   * @param aTask
+   *        The task to run. May not be <code>null</code>.
+   * @param aExecutor
+   *        The executor to run the task in. May not be <code>null</code>.
+   * @return {@link ESuccess#SUCCESS} if the task was scheduled,
+   *         {@link ESuccess#FAILURE} if the retry budget is exhausted or the
+   *         scheduler is closed. In the latter case the task will never be
+   *         run.
+   */
+  @Nonnull
+  public ESuccess schedule (@Nonnull final Duration aDelay,
+                            @Nonnull final Runnable aTask,
+                            @Nonnull final Executor aExecutor)
+  {
+    ValueEnforcer.notNull (aDelay, "Delay");
+    ValueEnforcer.notNull (aTask, "Task");
+    ValueEnforcer.notNull (aExecutor, "Executor");
+
+    if (m_aClosed.get ())
+    {
+      m_aRejectedCount.incrementAndGet ();
+      return ESuccess.FAILURE;
+    }
+
+    if (m_aPendingCount.incrementAndGet () > m_nMaxPendingRetries)
+    {
+      m_aPendingCount.decrementAndGet ();
+      m_aRejectedCount.incrementAndGet ();
+      LOGGER.warn ("The global HTTP retry budget of " + m_nMaxPendingRetries + " pending retries is exhausted");
+      return ESuccess.FAILURE;
+    }
+
+    if (m_aStarted.compareAndSet (false, true))
+    {
+      m_nStartNanos = System.nanoTime ();
+      m_aWorker.start ();
+    }
+
+    final long nDelayNanos = Math.max (0, aDelay.toNanos ());
+    final Entry aEntry = new Entry (System.nanoTime () + nDelayNanos, aTask, aExecutor);
+    m_aNewEntries.add (aEntry);
+
+    // Closed in the meantime? Make sure the entry is not lost
+    if (m_aClosed.get () && m_aNewEntries.remove (aEntry))
+      _dispatch (aEntry);
+    return ESuccess.SUCCESS;
+  }
+
+  private void _dispatch (@Nonnull final Entry aEntry)
+  {
+    m_aPendingCount.decrementAndGet ();
+    try
+    {
+      aEntry.m_aExecutor.execute (aEntry.m_aTask);
+    }
+    catch (final RejectedExecutionException ex)
+    {
+      // Run in the scheduler thread as a last resort
+      LOGGER.warn ("Retry executor rejected the task - running it in the scheduler thread");
+      aEntry.m_aTask.run ();
+    }
+  }
+
+  private void _transferNewEntries (final long nCurrentTick)
+  {
+    Entry aEntry;
+    while ((aEntry = m_aNewEntries.poll ()) != null)
+    {
+      final long nDeadlineTick = Math.max ((aEntry.m_nDeadlineNanos - m_nStartNanos + m_nTickNanos - 1) / m_nTickNanos,
+                                           nCurrentTick);
+      aEntry.m_nRemainingRounds = (nDeadlineTick - nCurrentTick) / m_aWheel.length;
+      m_aWheel[(int) (nDeadlineTick & m_nWheelMask)].add (aEntry);
+    }
+  }
+
+  private void _expireBucket (@Nonnull final Queue <Entry> aBucket)
+  {
+    final Iterator <Entry> it = aBucket.iterator ();
+    while (it.hasNext ())
+    {
+      final Entry aEntry = it.next ();
+      if (aEntry.m_nRemainingRounds <= 0)
+      {
+        it.remove ();
+        _dispatch (aEntry);
+      }
+      else
+        aEntry.m_nRemainingRounds--;
+    }
+  }
+
+  private void _run ()
+  {
+    long nTick = 0;
+    while (!m_aClosed.get ())
+    {
+      // Wait until the next tick is due
+      final long nTickDeadline = m_nStartNanos + (nTick + 1) * m_nTickNanos;
+      long nSleepNanos;
+      while ((nSleepNanos = nTickDeadline - System.nanoTime ()) > 0 && !m_aClosed.get ())
+      {
+        try
+        {
+          TimeUnit.NANOSECONDS.sleep (nSleepNanos);
+        }
+        catch (final InterruptedException ex)
+        {
+          // Closed
+          Thread.currentThread ().interrupt ();
+          break;
+        }
+      }
+      if (m_aClosed.get ())
+        break;
+
+      _transferNewEntries (nTick);
+      _expireBucket (m_aWheel[(int) (nTick & m_nWheelMask)]);
+      nTick++;
+    }
+
+    // Don't let anybody wait forever - run all remaining tasks now
+    _transferNewEntries (nTick);
+    for (final Queue <Entry> aBucket : m_aWheel)
+    {
+      Entry aEntry;
+      while ((aEntry = aBucket.poll ()) != null)
+        _dispatch (aEntry);
+    }
+  }
+
+  /**
+   * Close the scheduler. All retries that are still waiting are dispatched
+   * immediately, so that no caller waits forever. Subsequent calls to
+   * {@link #schedule(Duration, Runnable, Executor)} are rejected.
+   */
+  public void close ()
+  {
+    if (!m_aClosed.getAndSet (true))
+    {
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Closing HttpRetryScheduler with " + m_aPendingCount.get () + " pending retries");
+
+      if (m_aStarted.get ())
+      {
+        m_aWorker.interrupt ();
+        try
+        {
+          m_aWorker.join ();
+        }
+        catch (final InterruptedException ex)
+        {
+          Thread.currentThread ().interrupt ();
+        }
+      }
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("TickNanos", m_nTickNanos)
+                                       .append ("WheelSize", m_aWheel.length)
+                                       .append ("MaxPendingRetries", m_nMaxPendingRetries)
+                                       .append ("PendingRetries", m_aPendingCount.get ())
+                                       .append ("RejectedRetries", m_aRejectedCount.get ())
+                                       .append ("Closed", m_aClosed.get ())
+                                       .getToString ();
+  }
+}
@@ -18,6 +18,7 @@ package com.helger.phase4.http;
 
 import java.math.BigDecimal;
 import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
@@ -42,10 +43,13 @@ public class HttpRetrySettings
   public static final int DEFAULT_MAX_RETRIES = 0;
   public static final Duration DEFAULT_RETRY_DURATION = Duration.ofSeconds (10);
   public static final BigDecimal DEFAULT_RETRY_INCREASE_FACTOR = BigDecimal.ONE;
+  /** @since 2.7.6 */
+  public static final BigDecimal DEFAULT_RETRY_JITTER_FACTOR = BigDecimal.ZERO;
 
   private int m_nMaxRetries = DEFAULT_MAX_RETRIES;
   private Duration m_aDurationBeforeRetry = DEFAULT_RETRY_DURATION;
   private BigDecimal m_aRetryIncreaseFactor = DEFAULT_RETRY_INCREASE_FACTOR;
+  private BigDecimal m_aRetryJitterFactor = DEFAULT_RETRY_JITTER_FACTOR;
 
   public HttpRetrySettings ()
   {}
@@ -155,12 +159,73 @@ public class HttpRetrySettings
     return Duration.ofNanos (aRetryIncreaseFactor.multiply (BigDecimal.valueOf (aDuration.toNanos ())).longValue ());
   }
 
+  /**
+   * @return The retry jitter factor, that defines how much the waiting time
+   *         before a retry may randomly deviate from the calculated duration.
+   *         Never <code>null</code>. A factor of 0 means no jitter. A factor
+   *         of 0.2 means the effective waiting time is randomly chosen between
+   *         80% and 120% of the calculated duration. The default is 0. Return
+   *         values are always between 0 and 1.
+   * @since 2.7.6
+   */
+  @Nonnull
+  @Nonnegative
+  public final BigDecimal getRetryJitterFactor ()
+  {
+    return m_aRetryJitterFactor;
+  }
+
+  /**
+   * Set the retry jitter factor to use. Jitter avoids that many messages that
+   * failed at the same time (e.g. because of a partner outage) are all retried
+   * at exactly the same moment.
+   *
+   * @param aRetryJitterFactor
+   *        The retry jitter factor. May not be <code>null</code> and must be
+   *        between 0 and 1 (both inclusive).
+   * @return this for chaining
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final HttpRetrySettings setRetryJitterFactor (@Nonnull final BigDecimal aRetryJitterFactor)
+  {
+    ValueEnforcer.notNull (aRetryJitterFactor, "RetryJitterFactor");
+    ValueEnforcer.isTrue (aRetryJitterFactor.signum () >= 0 && aRetryJitterFactor.compareTo (BigDecimal.ONE) <= 0,
+                          "RetryJitterFactor must be between 0 and 1");
+    m_aRetryJitterFactor = aRetryJitterFactor;
+    return this;
+  }
+
+  /**
+   * Get the provided duration with a random deviation applied.
+   *
+   * @param aDuration
+   *        The source duration. May not be <code>null</code>.
+   * @param aRetryJitterFactor
+   *        The jitter factor between 0 and 1. May not be <code>null</code>.
+   * @return The randomized duration. Never <code>null</code> and never
+   *         negative.
+   * @since 2.7.6
+   */
+  @Nonnull
+  public static Duration getJittered (@Nonnull final Duration aDuration, @Nonnull final BigDecimal aRetryJitterFactor)
+  {
+    if (MathHelper.isEQ0 (aRetryJitterFactor) || aDuration.isZero ())
+      return aDuration;
+    // Random value in the range [-1;+1]
+    final double dRandom = ThreadLocalRandom.current ().nextDouble (-1d, 1d);
+    final long nNanos = aDuration.toNanos ();
+    final long nDelta = (long) (nNanos * aRetryJitterFactor.doubleValue () * dRandom);
+    return Duration.ofNanos (Math.max (0, nNanos + nDelta));
+  }
+
   public final void assignFrom (@Nonnull final HttpRetrySettings aOther)
   {
     ValueEnforcer.notNull (aOther, "Other");
     setMaxRetries (aOther.getMaxRetries ());
     setDurationBeforeRetry (aOther.getDurationBeforeRetry ());
     setRetryIncreaseFactor (aOther.getRetryIncreaseFactor ());
+    setRetryJitterFactor (aOther.getRetryJitterFactor ());
   }
 
   @Override
@@ -173,7 +238,8 @@ public class HttpRetrySettings
     final HttpRetrySettings rhs = (HttpRetrySettings) o;
     return m_nMaxRetries == rhs.m_nMaxRetries &&
            m_aDurationBeforeRetry.equals (rhs.m_aDurationBeforeRetry) &&
-           EqualsHelper.equals (m_aRetryIncreaseFactor, rhs.m_aRetryIncreaseFactor);
+           EqualsHelper.equals (m_aRetryIncreaseFactor, rhs.m_aRetryIncreaseFactor) &&
+           EqualsHelper.equals (m_aRetryJitterFactor, rhs.m_aRetryJitterFactor);
   }
 
   @Override
@@ -182,6 +248,7 @@ public class HttpRetrySettings
     return new HashCodeGenerator (this).append (m_nMaxRetries)
                                        .append (m_aDurationBeforeRetry)
                                        .append (m_aRetryIncreaseFactor)
+                                       .append (m_aRetryJitterFactor)
                                        .getHashCode ();
   }
 
@@ -191,6 +258,7 @@ public class HttpRetrySettings
     return new ToStringGenerator (this).append ("MaxRetries", m_nMaxRetries)
                                        .append ("DurationBeforeRetry", m_aDurationBeforeRetry)
                                        .append ("RetryIncreaseFactor", m_aRetryIncreaseFactor)
+                                       .append ("RetryJitterFactor", m_aRetryJitterFactor)
                                        .getToString ();
   }
 }
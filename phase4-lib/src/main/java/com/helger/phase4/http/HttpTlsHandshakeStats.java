@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * TLS handshake statistics for a single receiving host. Full handshakes and
+ * abbreviated (resumed) handshakes are counted separately, so that the
+ * effectiveness of the TLS session cache can be monitored.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ * @see HttpTlsSessionCache
+ */
+@ThreadSafe
+public class HttpTlsHandshakeStats
+{
+  private final String m_sHost;
+  private final LongAdder m_aFullCount = new LongAdder ();
+  private final LongAdder m_aFullMillis = new LongAdder ();
+  private final LongAdder m_aResumedCount = new LongAdder ();
+  private final LongAdder m_aResumedMillis = new LongAdder ();
+  private final AtomicLong m_aMaxMillis = new AtomicLong (0);
+
+  public HttpTlsHandshakeStats (@Nonnull @Nonempty final String sHost)
+  {
+    ValueEnforcer.notEmpty (sHost, "Host");
+    m_sHost = sHost;
+  }
+
+  /**
+   * @return The host name this statistics belong to. Neither
+   *         <code>null</code> nor empty.
+   */
+  @Nonnull
+  @Nonempty
+  public final String getHost ()
+  {
+    return m_sHost;
+  }
+
+  /**
+   * Register a successful handshake.
+   *
+   * @param bResumed
+   *        <code>true</code> if an existing TLS session was resumed,
+   *        <code>false</code> if a full handshake was performed.
+   * @param nMillis
+   *        The duration of the handshake in milliseconds.
+   */
+  public void onHandshake (final boolean bResumed, @Nonnegative final long nMillis)
+  {
+    if (bResumed)
+    {
+      m_aResumedCount.increment ();
+      m_aResumedMillis.add (nMillis);
+    }
+    else
+    {
+      m_aFullCount.increment ();
+      m_aFullMillis.add (nMillis);
+    }
+    m_aMaxMillis.accumulateAndGet (nMillis, Math::max);
+  }
+
+  /**
+   * @return The number of full handshakes. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getFullHandshakeCount ()
+  {
+    return m_aFullCount.sum ();
+  }
+
+  /**
+   * @return The total duration of all full handshakes in milliseconds. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public final long getFullHandshakeMillis ()
+  {
+    return m_aFullMillis.sum ();
+  }
+
+  /**
+   * @return The number of resumed (abbreviated) handshakes. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getResumedHandshakeCount ()
+  {
+    return m_aResumedCount.sum ();
+  }
+
+  /**
+   * @return The total duration of all resumed handshakes in milliseconds.
+   *         Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getResumedHandshakeMillis ()
+  {
+    return m_aResumedMillis.sum ();
+  }
+
+  /**
+   * @return The duration of the longest handshake in milliseconds. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public final long getMaxHandshakeMillis ()
+  {
+    return m_aMaxMillis.get ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Host", m_sHost)
+                                       .append ("FullCount", getFullHandshakeCount ())
+                                       .append ("FullMillis", getFullHandshakeMillis ())
+                                       .append ("ResumedCount", getResumedHandshakeCount ())
+                                       .append ("ResumedMillis", getResumedHandshakeMillis ())
+                                       .append ("MaxMillis", getMaxHandshakeMillis ())
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,455 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+
+import org.apache.hc.client5.http.socket.LayeredConnectionSocketFactory;
+import org.apache.hc.client5.http.ssl.HttpsSupport;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactory;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.apache.hc.core5.ssl.SSLInitializationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.map.LRUMap;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.regex.RegExHelper;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.commons.system.SystemProperties;
+import com.helger.http.tls.ITLSConfigurationMode;
+import com.helger.httpclient.HttpClientSettings;
+
+/**
+ * A shared cache for TLS state of outbound HTTP connections. For every
+ * distinct TLS configuration (SSL context, TLS configuration mode and hostname
+ * verifier of the {@link HttpClientSettings}) exactly one {@link SSLContext}
+ * and one socket factory is created and reused for all transmissions. As the
+ * client side TLS session cache of an {@link SSLContext} is keyed by the
+ * receiver host and port, this allows for abbreviated handshakes (session
+ * resumption) across messages to the same receiving access point. The session
+ * cache of each context is bounded in size and lifetime.<br>
+ * If the settings contain no SSL context, the SSL context is created from the
+ * system properties as described in the JSSE Reference Guide (e.g.
+ * <code>javax.net.ssl.keyStore</code>), and the system properties
+ * <code>https.protocols</code> and <code>https.cipherSuites</code> are
+ * honoured - just like {@link SSLConnectionSocketFactory#getSystemSocketFactory()}
+ * does.<br>
+ * Additionally statistics on full and resumed handshakes are kept per
+ * receiver host.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ * @see TlsSessionCachingHttpClientFactory
+ */
+@ThreadSafe
+public class HttpTlsSessionCache
+{
+  public static final int DEFAULT_SESSION_CACHE_SIZE = 1000;
+  public static final Duration DEFAULT_SESSION_TIMEOUT = Duration.ofHours (1);
+  public static final int DEFAULT_MAX_CONTEXTS = 50;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (HttpTlsSessionCache.class);
+  private static final HttpTlsSessionCache DEFAULT_INSTANCE = new HttpTlsSessionCache ();
+
+  /**
+   * The identity of a TLS configuration.
+   */
+  private static final class ContextKey
+  {
+    private final SSLContext m_aSSLContext;
+    private final ITLSConfigurationMode m_aTLSConfigMode;
+    private final HostnameVerifier m_aHostnameVerifier;
+
+    ContextKey (@Nonnull final HttpClientSettings aSettings)
+    {
+      m_aSSLContext = aSettings.getSSLContext ();
+      m_aTLSConfigMode = aSettings.getTLSConfigurationMode ();
+      m_aHostnameVerifier = aSettings.getHostnameVerifier ();
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (o == null || !getClass ().equals (o.getClass ()))
+        return false;
+      final ContextKey rhs = (ContextKey) o;
+      // SSL context and hostname verifier by identity
+      return m_aSSLContext == rhs.m_aSSLContext &&
+             EqualsHelper.equals (m_aTLSConfigMode, rhs.m_aTLSConfigMode) &&
+             m_aHostnameVerifier == rhs.m_aHostnameVerifier;
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return new HashCodeGenerator (this).append (System.identityHashCode (m_aSSLContext))
+                                         .append (m_aTLSConfigMode)
+                                         .append (System.identityHashCode (m_aHostnameVerifier))
+                                         .getHashCode ();
+    }
+  }
+
+  /**
+   * The cached TLS state of a single configuration.
+   */
+  private static final class ContextEntry
+  {
+    private final SSLContext m_aSSLContext;
+    private final LayeredConnectionSocketFactory m_aSocketFactory;
+
+    ContextEntry (@Nonnull final SSLContext aSSLContext, @Nonnull final LayeredConnectionSocketFactory aSocketFactory)
+    {
+      m_aSSLContext = aSSLContext;
+      m_aSocketFactory = aSocketFactory;
+    }
+  }
+
+  /**
+   * Socket factory that measures the TLS handshakes. The handshake starts
+   * after {@link #prepareSocket(SSLSocket, HttpContext)} and ends with
+   * {@link #verifySession(String, SSLSession)}.
+   */
+  private final class HandshakeMeasuringSocketFactory extends SSLConnectionSocketFactory
+  {
+    // [0] = start nano time; [1] = start wall clock millis
+    private final ThreadLocal <long []> m_aHandshakeStart = new ThreadLocal <> ();
+
+    HandshakeMeasuringSocketFactory (@Nonnull final SSLContext aSSLContext,
+                                     @Nullable final String [] aSupportedProtocols,
+                                     @Nullable final String [] aSupportedCipherSuites,
+                                     @Nonnull final HostnameVerifier aHostnameVerifier)
+    {
+      super (aSSLContext, aSupportedProtocols, aSupportedCipherSuites, aHostnameVerifier);
+    }
+
+    @Override
+    protected void prepareSocket (@Nonnull final SSLSocket aSocket,
+                                  @Nullable final HttpContext aContext) throws IOException
+    {
+      super.prepareSocket (aSocket, aContext);
+      m_aHandshakeStart.set (new long [] { System.nanoTime (), System.currentTimeMillis () });
+    }
+
+    @Override
+    protected void verifySession (@Nonnull final String sHostname, @Nonnull final SSLSession aSession) throws SSLException
+    {
+      final long [] aStart = m_aHandshakeStart.get ();
+      m_aHandshakeStart.remove ();
+
+      super.verifySession (sHostname, aSession);
+
+      if (aStart != null)
+      {
+        final long nMillis = Duration.ofNanos (System.nanoTime () - aStart[0]).toMillis ();
+        // A resumed session was created before this handshake started
+        final boolean bResumed = aSession.getCreationTime () < aStart[1];
+        onHandshake (sHostname, bResumed, nMillis);
+      }
+    }
+  }
+
+  private final int m_nSessionCacheSize;
+  private final Duration m_aSessionTimeout;
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  @GuardedBy ("m_aRWLock")
+  private final LRUMap <ContextKey, ContextEntry> m_aContexts;
+  @GuardedBy ("m_aRWLock")
+  private final ICommonsMap <String, HttpTlsHandshakeStats> m_aStats = new CommonsHashMap <> ();
+  // Used if no SSL context is present in the settings
+  @GuardedBy ("m_aRWLock")
+  private SSLContext m_aDefaultSSLContext;
+
+  /**
+   * Constructor with default settings.
+   */
+  public HttpTlsSessionCache ()
+  {
+    this (DEFAULT_SESSION_CACHE_SIZE, DEFAULT_SESSION_TIMEOUT, DEFAULT_MAX_CONTEXTS);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param nSessionCacheSize
+   *        The maximum number of TLS sessions to cache per SSL context. Must
+   *        be &gt; 0.
+   * @param aSessionTimeout
+   *        The maximum lifetime of a cached TLS session. May not be
+   *        <code>null</code> and must be at least one second.
+   * @param nMaxContexts
+   *        The maximum number of distinct TLS configurations to cache. Must be
+   *        &gt; 0.
+   */
+  public HttpTlsSessionCache (@Nonnegative final int nSessionCacheSize,
+                              @Nonnull final Duration aSessionTimeout,
+                              @Nonnegative final int nMaxContexts)
+  {
+    ValueEnforcer.isGT0 (nSessionCacheSize, "SessionCacheSize");
+    ValueEnforcer.notNull (aSessionTimeout, "SessionTimeout");
+    ValueEnforcer.isTrue (aSessionTimeout.getSeconds () >= 1, "SessionTimeout must be at least 1 second");
+    ValueEnforcer.isGT0 (nMaxContexts, "MaxContexts");
+    m_nSessionCacheSize = nSessionCacheSize;
+    m_aSessionTimeout = aSessionTimeout;
+    m_aContexts = new LRUMap <> (nMaxContexts);
+  }
+
+  /**
+   * @return The default instance that is shared by all default HTTP client
+   *         factories. Never <code>null</code>.
+   */
+  @Nonnull
+  public static HttpTlsSessionCache getDefaultInstance ()
+  {
+    return DEFAULT_INSTANCE;
+  }
+
+  /**
+   * @return The maximum number of cached TLS sessions per SSL context.
+   */
+  @Nonnegative
+  public final int getSessionCacheSize ()
+  {
+    return m_nSessionCacheSize;
+  }
+
+  /**
+   * @return The maximum lifetime of a cached TLS session. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public final Duration getSessionTimeout ()
+  {
+    return m_aSessionTimeout;
+  }
+
+  private void _configureSessionCache (@Nonnull final SSLContext aSSLContext)
+  {
+    final SSLSessionContext aSessionCtx = aSSLContext.getClientSessionContext ();
+    if (aSessionCtx != null)
+    {
+      aSessionCtx.setSessionCacheSize (m_nSessionCacheSize);
+      aSessionCtx.setSessionTimeout ((int) Math.min (Integer.MAX_VALUE, m_aSessionTimeout.getSeconds ()));
+    }
+  }
+
+  @Nullable
+  private static String [] _getSystemPropertyValues (@Nonnull final String sPropertyName)
+  {
+    final String sValue = SystemProperties.getPropertyValueOrNull (sPropertyName);
+    if (StringHelper.hasNoText (sValue))
+      return null;
+    return RegExHelper.getSplitToArray (sValue.trim (), " *, *");
+  }
+
+  @Nonnull
+  private static SSLContext _createSystemDefaultSSLContext ()
+  {
+    try
+    {
+      // Considers the javax.net.ssl.* system properties
+      return SSLContexts.createSystemDefault ();
+    }
+    catch (final SSLInitializationException ex)
+    {
+      LOGGER.warn ("Failed to create the SSL context from the system properties - using the default SSL context", ex);
+      return SSLContexts.createDefault ();
+    }
+  }
+
+  @Nonnull
+  @GuardedBy ("m_aRWLock")
+  private ContextEntry _createEntry (@Nonnull final HttpClientSettings aSettings)
+  {
+    final SSLContext aSettingsSSLContext = aSettings.getSSLContext ();
+    final SSLContext aSSLContext;
+    final String [] aProtocols;
+    final String [] aCipherSuites;
+    final HostnameVerifier aHostnameVerifier;
+    if (aSettingsSSLContext != null)
+    {
+      // Same logic as in HttpClientFactory.createCustomSSLFactory
+      final ITLSConfigurationMode aTLSConfigMode = aSettings.getTLSConfigurationMode () != null ? aSettings.getTLSConfigurationMode ()
+                                                                                                : HttpClientSettings.DEFAULT_TLS_CONFIG_MODE;
+      aSSLContext = aSettingsSSLContext;
+      aProtocols = aTLSConfigMode.getAllTLSVersionIDsAsArray ();
+      aCipherSuites = aTLSConfigMode.getAllCipherSuitesAsArray ();
+      aHostnameVerifier = aSettings.getHostnameVerifier () != null ? aSettings.getHostnameVerifier ()
+                                                                   : HttpsSupport.getDefaultHostnameVerifier ();
+    }
+    else
+    {
+      if (m_aDefaultSSLContext == null)
+      {
+        m_aDefaultSSLContext = _createSystemDefaultSSLContext ();
+        _configureSessionCache (m_aDefaultSSLContext);
+      }
+      // Same logic as in SSLConnectionSocketFactory.getSystemSocketFactory
+      aSSLContext = m_aDefaultSSLContext;
+      aProtocols = _getSystemPropertyValues ("https.protocols");
+      aCipherSuites = _getSystemPropertyValues ("https.cipherSuites");
+      aHostnameVerifier = HttpsSupport.getDefaultHostnameVerifier ();
+    }
+
+    if (aSettingsSSLContext != null)
+      _configureSessionCache (aSettingsSSLContext);
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Creating new TLS socket factory for " + aSSLContext);
+
+    return new ContextEntry (aSSLContext,
+                             new HandshakeMeasuringSocketFactory (aSSLContext,
+                                                                  aProtocols,
+                                                                  aCipherSuites,
+                                                                  aHostnameVerifier));
+  }
+
+  @Nonnull
+  private ContextEntry _getOrCreateEntry (@Nonnull final HttpClientSettings aSettings)
+  {
+    ValueEnforcer.notNull (aSettings, "Settings");
+
+    final ContextKey aKey = new ContextKey (aSettings);
+    final ContextEntry ret = m_aRWLock.readLockedGet ( () -> m_aContexts.get (aKey));
+    if (ret != null)
+      return ret;
+    return m_aRWLock.writeLockedGet ( () -> m_aContexts.computeIfAbsent (aKey, k -> _createEntry (aSettings)));
+  }
+
+  /**
+   * Get the shared SSL context for the provided settings. If the settings
+   * contain an SSL context, that is returned, otherwise a shared SSL context
+   * based on the system properties is returned.
+   *
+   * @param aSettings
+   *        The HTTP client settings to use. May not be <code>null</code>.
+   * @return The SSL context to use. Never <code>null</code>.
+   */
+  @Nonnull
+  public SSLContext getSSLContext (@Nonnull final HttpClientSettings aSettings)
+  {
+    return _getOrCreateEntry (aSettings).m_aSSLContext;
+  }
+
+  /**
+   * Get the shared TLS socket factory for the provided settings. The returned
+   * factory records the handshake statistics.
+   *
+   * @param aSettings
+   *        The HTTP client settings to use. May not be <code>null</code>.
+   * @return The socket factory to use. Never <code>null</code>.
+   */
+  @Nonnull
+  public LayeredConnectionSocketFactory getSSLSocketFactory (@Nonnull final HttpClientSettings aSettings)
+  {
+    return _getOrCreateEntry (aSettings).m_aSocketFactory;
+  }
+
+  /**
+   * Register a successful TLS handshake.
+   *
+   * @param sHost
+   *        The receiver host name. May neither be <code>null</code> nor empty.
+   * @param bResumed
+   *        <code>true</code> if an existing TLS session was resumed.
+   * @param nMillis
+   *        The duration of the handshake in milliseconds.
+   */
+  public void onHandshake (@Nonnull @Nonempty final String sHost,
+                           final boolean bResumed,
+                           @Nonnegative final long nMillis)
+  {
+    ValueEnforcer.notEmpty (sHost, "Host");
+
+    HttpTlsHandshakeStats aStats = m_aRWLock.readLockedGet ( () -> m_aStats.get (sHost));
+    if (aStats == null)
+      aStats = m_aRWLock.writeLockedGet ( () -> m_aStats.computeIfAbsent (sHost, HttpTlsHandshakeStats::new));
+    aStats.onHandshake (bResumed, nMillis);
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ((bResumed ? "Resumed" : "Full") + " TLS handshake with '" + sHost + "' took " + nMillis + " ms");
+  }
+
+  /**
+   * @param sHost
+   *        The receiver host name. May be <code>null</code>.
+   * @return The handshake statistics of the provided host or
+   *         <code>null</code> if no handshake with that host happened.
+   */
+  @Nullable
+  public HttpTlsHandshakeStats getHandshakeStats (@Nullable final String sHost)
+  {
+    return m_aRWLock.readLockedGet ( () -> m_aStats.get (sHost));
+  }
+
+  /**
+   * @return The handshake statistics of all hosts. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <HttpTlsHandshakeStats> getAllHandshakeStats ()
+  {
+    return m_aRWLock.readLockedGet (m_aStats::copyOfValues);
+  }
+
+  /**
+   * Remove all cached TLS contexts and statistics. Existing connections are
+   * not affected.
+   */
+  public void clear ()
+  {
+    m_aRWLock.writeLocked ( () -> {
+      m_aContexts.clear ();
+      m_aStats.clear ();
+      m_aDefaultSSLContext = null;
+    });
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("SessionCacheSize", m_nSessionCacheSize)
+                                       .append ("SessionTimeout", m_aSessionTimeout)
+                                       .append ("Contexts", m_aRWLock.readLockedInt (m_aContexts::size))
+                                       .getToString ();
+  }
+}
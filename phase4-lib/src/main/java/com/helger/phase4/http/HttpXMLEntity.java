@@ -16,27 +16,157 @@
  */
 package com.helger.phase4.http;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
 
 import org.apache.hc.core5.http.ContentType;
-import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
 import org.w3c.dom.Node;
 
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.io.stream.CountingOutputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.io.stream.NullOutputStream;
 import com.helger.commons.mime.IMimeType;
+import com.helger.commons.string.ToStringGenerator;
 import com.helger.phase4.util.AS4XMLHelper;
 
 /**
- * Special HttpClient HTTP POST entity that contains a DOM Node as a serialized
- * String. This entity is repeatable.
+ * Special HttpClient HTTP POST entity that contains a DOM Node. The node is
+ * serialized directly into the target output stream upon each
+ * {@link #writeTo(OutputStream)} call, so that no intermediate String or byte
+ * array copy of the message is created. This entity is repeatable.<br>
+ * If the content length should be computed (the default), an additional
+ * counting serialization pass is performed once, so that the message can be
+ * sent with an exact <code>Content-Length</code> instead of chunked encoding.
  *
  * @author Philip Helger
  */
-public class HttpXMLEntity extends StringEntity
+@NotThreadSafe
+public class HttpXMLEntity extends AbstractHttpEntity
 {
+  /** By default the exact content length is computed */
+  public static final boolean DEFAULT_COMPUTE_CONTENT_LENGTH = true;
+
+  private final Node m_aNode;
+  private final boolean m_bComputeContentLength;
+  // Lazily computed
+  private long m_nContentLength = -1;
+
   public HttpXMLEntity (@Nonnull final Node aNode, @Nonnull final IMimeType aMimeType)
+  {
+    this (aNode, aMimeType, DEFAULT_COMPUTE_CONTENT_LENGTH);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aNode
+   *        The DOM node to be serialized. May not be <code>null</code>.
+   * @param aMimeType
+   *        The MIME type to use. May not be <code>null</code>.
+   * @param bComputeContentLength
+   *        <code>true</code> to compute the exact content length in a counting
+   *        pre-pass, <code>false</code> to use chunked encoding.
+   * @since 2.7.6
+   */
+  public HttpXMLEntity (@Nonnull final Node aNode,
+                        @Nonnull final IMimeType aMimeType,
+                        final boolean bComputeContentLength)
   {
     // ContentType Required for AS4.NET
-    super (AS4XMLHelper.serializeXML (aNode),
-           ContentType.parse (aMimeType.getAsString ()).withCharset (AS4XMLHelper.XWS.getCharset ()));
+    super (ContentType.parse (aMimeType.getAsString ()).withCharset (AS4XMLHelper.XWS.getCharset ()), null);
+    ValueEnforcer.notNull (aNode, "Node");
+    m_aNode = aNode;
+    m_bComputeContentLength = bComputeContentLength;
+  }
+
+  /**
+   * @return The DOM node to be serialized. Never <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final Node getNode ()
+  {
+    return m_aNode;
+  }
+
+  /**
+   * @return <code>true</code> if the exact content length is computed,
+   *         <code>false</code> if chunked encoding is used.
+   * @since 2.7.6
+   */
+  public final boolean isComputeContentLength ()
+  {
+    return m_bComputeContentLength;
+  }
+
+  public final boolean isRepeatable ()
+  {
+    return true;
+  }
+
+  public final boolean isStreaming ()
+  {
+    return false;
+  }
+
+  public long getContentLength ()
+  {
+    if (!m_bComputeContentLength)
+      return -1;
+
+    if (m_nContentLength < 0)
+    {
+      // Counting pre-pass - nothing is buffered
+      try (final CountingOutputStream aCOS = new CountingOutputStream (new NullOutputStream ()))
+      {
+        AS4XMLHelper.serializeXML (m_aNode, aCOS);
+        m_nContentLength = aCOS.getBytesWritten ();
+      }
+      catch (final IOException ex)
+      {
+        // Cannot happen with a NullOutputStream
+        throw new IllegalStateException ("Failed to determine XML content length", ex);
+      }
+    }
+    return m_nContentLength;
+  }
+
+  @Nonnull
+  public InputStream getContent () throws IOException
+  {
+    // Only used for debugging or by wrapping entities - writeTo is the
+    // preferred way
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+    {
+      AS4XMLHelper.serializeXML (m_aNode, aBAOS);
+      return aBAOS.getAsInputStream ();
+    }
+  }
+
+  @Override
+  public void writeTo (@Nonnull final OutputStream aOS) throws IOException
+  {
+    ValueEnforcer.notNull (aOS, "OutputStream");
+    AS4XMLHelper.serializeXML (m_aNode, aOS);
+  }
+
+  public void close () throws IOException
+  {
+    // Nothing to close
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("ContentType", getContentType ())
+                                       .append ("ComputeContentLength", m_bComputeContentLength)
+                                       .append ("ContentLength", m_nContentLength)
+                                       .getToString ();
   }
 }
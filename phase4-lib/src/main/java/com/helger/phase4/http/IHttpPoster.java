@@ -17,6 +17,7 @@
 package com.helger.phase4.http;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 import javax.annotation.Nonnull;
@@ -62,6 +63,76 @@ public interface IHttpPoster
   @Nonnull
   IHttpPoster setHttpClientFactory (@Nonnull HttpClientFactory aHttpClientFactory);
 
+  /**
+   * @return The shared HTTP connection pool to be used for sending. May be
+   *         <code>null</code> in which case a new HTTP client is created from
+   *         the {@link #getHttpClientFactory()} for every transmission. The
+   *         default implementation always returns <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nullable
+  default HttpConnectionPool getConnectionPool ()
+  {
+    return null;
+  }
+
+  /**
+   * Set the shared HTTP connection pool to be used. If a pool is set, it takes
+   * precedence over the HTTP client factory of this poster, so that warm
+   * connections can be reused across multiple transmissions. The lifecycle of
+   * the pool is not managed by the poster.<br>
+   * The default implementation does not support connection pools.
+   *
+   * @param aConnectionPool
+   *        The connection pool to be used. May be <code>null</code>.
+   * @return this for chaining
+   * @throws UnsupportedOperationException
+   *         If a non-<code>null</code> pool is passed but the implementation
+   *         does not support connection pools.
+   * @since 2.7.6
+   */
+  @Nonnull
+  default IHttpPoster setConnectionPool (@Nullable final HttpConnectionPool aConnectionPool)
+  {
+    if (aConnectionPool != null)
+      throw new UnsupportedOperationException ("This HTTP poster does not support connection pools");
+    return this;
+  }
+
+  /**
+   * @return The endpoint health manager that tracks circuit breaker state and
+   *         concurrency limits per destination URL. May be <code>null</code>.
+   *         The default implementation always returns <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nullable
+  default HttpEndpointHealthManager getEndpointHealthManager ()
+  {
+    return null;
+  }
+
+  /**
+   * Set the endpoint health manager to be used. If set, transmissions to
+   * unhealthy or overloaded endpoints fail fast with a
+   * {@link HttpEndpointUnavailableException}.<br>
+   * The default implementation does not support endpoint health tracking.
+   *
+   * @param aEndpointHealthManager
+   *        The endpoint health manager to be used. May be <code>null</code>.
+   * @return this for chaining
+   * @throws UnsupportedOperationException
+   *         If a non-<code>null</code> manager is passed but the
+   *         implementation does not support endpoint health tracking.
+   * @since 2.7.6
+   */
+  @Nonnull
+  default IHttpPoster setEndpointHealthManager (@Nullable final HttpEndpointHealthManager aEndpointHealthManager)
+  {
+    if (aEndpointHealthManager != null)
+      throw new UnsupportedOperationException ("This HTTP poster does not support endpoint health tracking");
+    return this;
+  }
+
   /**
    * @return The HTTP Post customizer to be used. May be <code>null</code>.
    */
@@ -167,4 +238,65 @@ public interface IHttpPoster
                                        @Nonnull HttpClientResponseHandler <? extends T> aResponseHandler,
                                        @Nullable IAS4OutgoingDumper aOutgoingDumper,
                                        @Nullable IAS4RetryCallback aRetryCallback) throws IOException;
+
+  /**
+   * Asynchronous version of
+   * {@link #sendGenericMessageWithRetries(String, HttpHeaderMap, HttpEntity, String, HttpRetrySettings, HttpClientResponseHandler, IAS4OutgoingDumper, IAS4RetryCallback)}.
+   * The default implementation performs the blocking transmission in the
+   * calling thread and returns an already completed future. Implementations
+   * based on non-blocking I/O (like {@link AsyncHttpPoster}) return immediately
+   * and complete the future when the response was received.
+   *
+   * @param sURL
+   *        The URL to send to. May neither be <code>null</code> nor empty.
+   * @param aCustomHttpHeaders
+   *        An optional http header map that should be applied. May be
+   *        <code>null</code>.
+   * @param aHttpEntity
+   *        The HTTP entity to be send. May not be <code>null</code>.
+   * @param sMessageID
+   *        the AS4 message ID. May not be <code>null</code>.
+   * @param aRetrySettings
+   *        The retry settings to use. May not be <code>null</code>.
+   * @param aResponseHandler
+   *        The HTTP response handler that should be used to convert the HTTP
+   *        response to a domain object.
+   * @param aOutgoingDumper
+   *        An optional outgoing dumper for this message. May be
+   *        <code>null</code> to use the global one.
+   * @param aRetryCallback
+   *        An optional retry callback that is invoked, before a retry happens.
+   * @param <T>
+   *        Response data type
+   * @return A future with the HTTP response data as indicated by the
+   *         ResponseHandler. Never <code>null</code>. In case of an error the
+   *         future is completed exceptionally.
+   * @since 2.7.6
+   */
+  @Nonnull
+  default <T> CompletableFuture <T> sendGenericMessageWithRetriesAsync (@Nonnull final String sURL,
+                                                                        @Nullable final HttpHeaderMap aCustomHttpHeaders,
+                                                                        @Nonnull final HttpEntity aHttpEntity,
+                                                                        @Nonnull final String sMessageID,
+                                                                        @Nonnull final HttpRetrySettings aRetrySettings,
+                                                                        @Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler,
+                                                                        @Nullable final IAS4OutgoingDumper aOutgoingDumper,
+                                                                        @Nullable final IAS4RetryCallback aRetryCallback)
+  {
+    try
+    {
+      return CompletableFuture.completedFuture (sendGenericMessageWithRetries (sURL,
+                                                                               aCustomHttpHeaders,
+                                                                               aHttpEntity,
+                                                                               sMessageID,
+                                                                               aRetrySettings,
+                                                                               aResponseHandler,
+                                                                               aOutgoingDumper,
+                                                                               aRetryCallback));
+    }
+    catch (final IOException | RuntimeException ex)
+    {
+      return CompletableFuture.failedFuture (ex);
+    }
+  }
 }
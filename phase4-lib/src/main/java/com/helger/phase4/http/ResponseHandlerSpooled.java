@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillNotClose;
+
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.io.file.FileHelper;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.httpclient.response.ResponseHandlerHttpEntity;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * HTTP response handler that reads the response entity in a streaming way.
+ * Small responses are kept in memory, larger responses are spooled to a
+ * temporary file of the provided {@link AS4ResourceHelper}. If a maximum
+ * response size is configured, reading is aborted as soon as it is exceeded.
+ * Non-success status codes are handled like in
+ * {@link ResponseHandlerHttpEntity}.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+public class ResponseHandlerSpooled implements HttpClientResponseHandler <SpooledResponsePayload>
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (ResponseHandlerSpooled.class);
+  private static final int BUFFER_SIZE = 16 * 1024;
+
+  private final AS4ResourceHelper m_aResHelper;
+  private final HttpResponseSettings m_aSettings;
+
+  /**
+   * Constructor
+   *
+   * @param aResHelper
+   *        The resource helper to create temporary files. May not be
+   *        <code>null</code>.
+   * @param aSettings
+   *        The response settings to use. May not be <code>null</code>. The
+   *        object is copied.
+   */
+  public ResponseHandlerSpooled (@Nonnull @WillNotClose final AS4ResourceHelper aResHelper,
+                                 @Nonnull final HttpResponseSettings aSettings)
+  {
+    ValueEnforcer.notNull (aResHelper, "ResHelper");
+    ValueEnforcer.notNull (aSettings, "Settings");
+    m_aResHelper = aResHelper;
+    m_aSettings = new HttpResponseSettings ();
+    m_aSettings.assignFrom (aSettings);
+  }
+
+  @Nonnull
+  private HttpResponseTooLargeException _createTooLarge (final long nBytes)
+  {
+    return new HttpResponseTooLargeException ("The HTTP response with " +
+                                              nBytes +
+                                              " bytes exceeds the maximum response size of " +
+                                              m_aSettings.getMaxResponseSize () +
+                                              " bytes",
+                                              m_aSettings.getMaxResponseSize ());
+  }
+
+  @Nullable
+  public SpooledResponsePayload handleResponse (@Nonnull final ClassicHttpResponse aHttpResponse) throws IOException
+  {
+    // throws an ExtendedHttpResponseException on exception
+    final HttpEntity aEntity = ResponseHandlerHttpEntity.INSTANCE.handleResponse (aHttpResponse);
+    if (aEntity == null)
+      return null;
+
+    final long nMaxResponseSize = m_aSettings.getMaxResponseSize ();
+    final int nInMemoryThreshold = m_aSettings.getInMemoryThreshold ();
+    final long nContentLength = aEntity.getContentLength ();
+
+    // Fail early if the announced length is too large
+    if (m_aSettings.hasMaxResponseSize () && nContentLength > nMaxResponseSize)
+      throw _createTooLarge (nContentLength);
+
+    try (final InputStream aIS = aEntity.getContent ())
+    {
+      if (aIS == null)
+        return SpooledResponsePayload.createInMemory (new byte [0]);
+
+      final int nInitialSize = nContentLength >= 0 && nContentLength <= nInMemoryThreshold ? (int) nContentLength
+                                                                                            : BUFFER_SIZE;
+      NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream (Math.max (nInitialSize, 32));
+      OutputStream aOS = aBAOS;
+      File aSpoolFile = null;
+      long nTotalBytes = 0;
+      try
+      {
+        final byte [] aBuffer = new byte [BUFFER_SIZE];
+        int nRead;
+        while ((nRead = aIS.read (aBuffer)) >= 0)
+        {
+          nTotalBytes += nRead;
+          if (m_aSettings.hasMaxResponseSize () && nTotalBytes > nMaxResponseSize)
+            throw _createTooLarge (nTotalBytes);
+
+          if (aSpoolFile == null && nTotalBytes > nInMemoryThreshold)
+          {
+            // Switch from memory to disk
+            aSpoolFile = m_aResHelper.createTempFile ();
+            if (LOGGER.isDebugEnabled ())
+              LOGGER.debug ("Spooling HTTP response to temporary file '" + aSpoolFile.getAbsolutePath () + "'");
+
+            aOS = FileHelper.getBufferedOutputStream (aSpoolFile);
+            if (aOS == null)
+              throw new IOException ("Failed to open temporary file '" + aSpoolFile.getAbsolutePath () + "' for writing");
+            aBAOS.writeTo (aOS);
+            aBAOS = null;
+          }
+          aOS.write (aBuffer, 0, nRead);
+        }
+      }
+      catch (final IOException | RuntimeException ex)
+      {
+        if (aSpoolFile != null)
+          StreamHelper.close (aOS);
+        throw ex;
+      }
+
+      if (aSpoolFile != null)
+      {
+        // Close explicitly, so that errors are not swallowed
+        aOS.close ();
+        return SpooledResponsePayload.createSpooled (aSpoolFile, nTotalBytes);
+      }
+      return SpooledResponsePayload.createInMemory (aBAOS.getBufferOrCopy ());
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("Settings", m_aSettings).getToString ();
+  }
+}
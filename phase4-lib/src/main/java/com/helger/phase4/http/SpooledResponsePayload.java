@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import java.io.File;
+import java.io.InputStream;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableObject;
+import com.helger.commons.io.IHasInputStream;
+import com.helger.commons.io.file.FileHelper;
+import com.helger.commons.io.file.SimpleFileIO;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * The payload of an HTTP response that was either kept in memory or spooled to
+ * a temporary file. The content can be read multiple times. The lifecycle of
+ * the temporary file is handled by the AS4ResourceHelper that created it.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ * @see ResponseHandlerSpooled
+ */
+@Immutable
+public final class SpooledResponsePayload implements IHasInputStream
+{
+  private final byte [] m_aBytes;
+  private final File m_aFile;
+  private final long m_nSize;
+
+  private SpooledResponsePayload (@Nullable final byte [] aBytes, @Nullable final File aFile, final long nSize)
+  {
+    m_aBytes = aBytes;
+    m_aFile = aFile;
+    m_nSize = nSize;
+  }
+
+  /**
+   * @return <code>true</code> if the payload was spooled to a temporary file,
+   *         <code>false</code> if it is kept in memory.
+   */
+  public boolean isSpooled ()
+  {
+    return m_aFile != null;
+  }
+
+  /**
+   * @return The temporary file the payload was spooled to or
+   *         <code>null</code> if it is kept in memory.
+   */
+  @Nullable
+  public File getSpoolFile ()
+  {
+    return m_aFile;
+  }
+
+  /**
+   * @return The number of payload bytes. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getSize ()
+  {
+    return m_nSize;
+  }
+
+  public boolean isEmpty ()
+  {
+    return m_nSize == 0;
+  }
+
+  @Nonnull
+  public InputStream getInputStream ()
+  {
+    if (m_aFile != null)
+      return FileHelper.getBufferedInputStream (m_aFile);
+    return new NonBlockingByteArrayInputStream (m_aBytes);
+  }
+
+  public boolean isReadMultiple ()
+  {
+    return true;
+  }
+
+  /**
+   * Get the payload as a byte array. For spooled payloads this reads the
+   * whole file into memory, so it should only be used if really needed.
+   *
+   * @return The payload bytes. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableObject
+  public byte [] getAsByteArray ()
+  {
+    if (m_aFile != null)
+      return SimpleFileIO.getAllFileBytes (m_aFile);
+    return m_aBytes;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("Size", m_nSize).append ("SpoolFile", m_aFile).getToString ();
+  }
+
+  @Nonnull
+  public static SpooledResponsePayload createInMemory (@Nonnull final byte [] aBytes)
+  {
+    ValueEnforcer.notNull (aBytes, "Bytes");
+    return new SpooledResponsePayload (aBytes, null, aBytes.length);
+  }
+
+  @Nonnull
+  public static SpooledResponsePayload createSpooled (@Nonnull final File aFile, @Nonnegative final long nSize)
+  {
+    ValueEnforcer.notNull (aFile, "File");
+    ValueEnforcer.isGE0 (nSize, "Size");
+    return new SpooledResponsePayload (null, aFile, nSize);
+  }
+}
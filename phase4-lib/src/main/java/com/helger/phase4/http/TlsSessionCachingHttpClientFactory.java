@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import javax.annotation.Nonnull;
+
+import org.apache.hc.client5.http.socket.LayeredConnectionSocketFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.httpclient.HttpClientFactory;
+import com.helger.httpclient.HttpClientSettings;
+
+/**
+ * Special {@link HttpClientFactory} that does not create new TLS state for
+ * every HTTP client, but reuses the SSL context and socket factory from a
+ * shared {@link HttpTlsSessionCache}. That allows TLS session resumption
+ * across multiple transmissions to the same receiver.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+public class TlsSessionCachingHttpClientFactory extends HttpClientFactory
+{
+  private final HttpTlsSessionCache m_aTlsSessionCache;
+
+  public TlsSessionCachingHttpClientFactory ()
+  {
+    this (new HttpClientSettings ());
+  }
+
+  public TlsSessionCachingHttpClientFactory (@Nonnull final HttpClientSettings aHttpClientSettings)
+  {
+    this (aHttpClientSettings, HttpTlsSessionCache.getDefaultInstance ());
+  }
+
+  public TlsSessionCachingHttpClientFactory (@Nonnull final HttpClientSettings aHttpClientSettings,
+                                             @Nonnull final HttpTlsSessionCache aTlsSessionCache)
+  {
+    super (aHttpClientSettings);
+    ValueEnforcer.notNull (aTlsSessionCache, "TlsSessionCache");
+    m_aTlsSessionCache = aTlsSessionCache;
+  }
+
+  /**
+   * @return The TLS session cache used. Never <code>null</code>.
+   */
+  @Nonnull
+  public final HttpTlsSessionCache getTlsSessionCache ()
+  {
+    return m_aTlsSessionCache;
+  }
+
+  @Override
+  @Nonnull
+  public LayeredConnectionSocketFactory createSSLFactory ()
+  {
+    return m_aTlsSessionCache.getSSLSocketFactory (httpClientSettings ());
+  }
+
+  @Override
+  public String toString ()
+  {
+    return ToStringGenerator.getDerived (super.toString ())
+                            .append ("TlsSessionCache", m_aTlsSessionCache)
+                            .getToString ();
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.incoming.mgr;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.lang.ServiceLoaderHelper;
+import com.helger.commons.state.EChange;
+import com.helger.phase4.incoming.spi.IAS4IncomingMessageProcessingStatusSPI;
+
+/**
+ * This class manages all the {@link IAS4IncomingMessageProcessingStatusSPI}
+ * implementations. The SPI implementations are loaded once and kept in an
+ * immutable snapshot, so that no class path scan is needed per incoming
+ * message.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@ThreadSafe
+public final class AS4IncomingMessageProcessingStatusManager
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4IncomingMessageProcessingStatusManager.class);
+
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  @GuardedBy ("RW_LOCK")
+  private static final ICommonsList <IAS4IncomingMessageProcessingStatusSPI> s_aSPIs = new CommonsArrayList <> ();
+  // Immutable snapshot of s_aSPIs for lock free reading
+  private static volatile IAS4IncomingMessageProcessingStatusSPI [] s_aSnapshot = new IAS4IncomingMessageProcessingStatusSPI [0];
+
+  private AS4IncomingMessageProcessingStatusManager ()
+  {}
+
+  @GuardedBy ("RW_LOCK")
+  private static void _updateSnapshot ()
+  {
+    s_aSnapshot = s_aSPIs.toArray (new IAS4IncomingMessageProcessingStatusSPI [s_aSPIs.size ()]);
+  }
+
+  /**
+   * Reload all SPI implementations of
+   * {@link IAS4IncomingMessageProcessingStatusSPI}. All programmatically
+   * registered implementations are removed.
+   */
+  public static void reinit ()
+  {
+    final ICommonsList <IAS4IncomingMessageProcessingStatusSPI> aSPIs = ServiceLoaderHelper.getAllSPIImplementations (IAS4IncomingMessageProcessingStatusSPI.class);
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Found " + aSPIs.size () + " AS4 incoming message processing status SPIs");
+
+    RW_LOCK.writeLocked ( () -> {
+      s_aSPIs.setAll (aSPIs);
+      _updateSnapshot ();
+    });
+  }
+
+  static
+  {
+    // Init once at the beginning
+    reinit ();
+  }
+
+  /**
+   * Register an additional implementation programmatically.
+   *
+   * @param aSPI
+   *        The implementation to register. May not be <code>null</code>.
+   */
+  public static void registerSPI (@Nonnull final IAS4IncomingMessageProcessingStatusSPI aSPI)
+  {
+    ValueEnforcer.notNull (aSPI, "SPI");
+
+    RW_LOCK.writeLocked ( () -> {
+      s_aSPIs.add (aSPI);
+      _updateSnapshot ();
+    });
+  }
+
+  /**
+   * Unregister a previously registered implementation.
+   *
+   * @param aSPI
+   *        The implementation to unregister. May be <code>null</code>.
+   * @return {@link EChange#CHANGED} if it was removed.
+   */
+  @Nonnull
+  public static EChange unregisterSPI (@Nullable final IAS4IncomingMessageProcessingStatusSPI aSPI)
+  {
+    if (aSPI == null)
+      return EChange.UNCHANGED;
+
+    return RW_LOCK.writeLockedGet ( () -> {
+      if (s_aSPIs.removeObject (aSPI).isUnchanged ())
+        return EChange.UNCHANGED;
+      _updateSnapshot ();
+      return EChange.CHANGED;
+    });
+  }
+
+  /**
+   * @return A list of all registered implementations. Never <code>null</code>
+   *         but maybe empty. The contained instances are shared by all
+   *         incoming messages and must be thread-safe.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static ICommonsList <IAS4IncomingMessageProcessingStatusSPI> getAllSPIs ()
+  {
+    return new CommonsArrayList <> (s_aSnapshot);
+  }
+}
@@ -26,7 +26,14 @@ import com.helger.phase4.messaging.IAS4IncomingMessageMetadata;
  * Specific callback interface to inform interested entities about the end of
  * processing of an incoming message.<br>
  * Note: this interface is NOT called for outgoing messages, as for sending it
- * is clean and deterministic when it is done.
+ * is clean and deterministic when it is done.<br>
+ * Note: since v2.7.6 a single instance of each implementation is shared by all
+ * incoming messages (see
+ * {@link com.helger.phase4.incoming.mgr.AS4IncomingMessageProcessingStatusManager}).
+ * Implementations must therefore be thread-safe and must not keep per-message
+ * state in fields. Information that is needed in
+ * {@link #onMessageProcessingEnded(IAS4IncomingMessageMetadata, Exception)}
+ * must be looked up via the message metadata, e.g. its incoming unique ID.
  *
  * @author Philip Helger
  * @since 2.5.0
@@ -16,6 +16,8 @@
  */
 package com.helger.phase4.messaging.crypto;
 
+import java.io.IOException;
+
 import javax.annotation.Nonnull;
 import javax.annotation.WillNotClose;
 import javax.annotation.concurrent.Immutable;
@@ -36,6 +38,8 @@ import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.mime.CMimeType;
 import com.helger.mail.cte.EContentTransferEncoding;
+import com.helger.phase4.attachment.AS4ParallelAttachmentHelper;
+import com.helger.phase4.attachment.AS4ReproducibleAttachmentEncryption;
 import com.helger.phase4.attachment.WSS4JAttachment;
 import com.helger.phase4.attachment.WSS4JAttachmentCallbackHandler;
 import com.helger.phase4.config.AS4Configuration;
@@ -258,6 +262,19 @@ public final class AS4Encryptor
       throw new IllegalStateException ("Failed to create a symmetric session key from " +
                                        aCryptParams.getSessionKeyProvider ());
 
+    if (aCryptParams.isReproducibleAttachmentEncryption ())
+    {
+      // Allow repeatable encrypted attachments without temporary files
+      final String sAlgorithmURI = aBuilder.getSymmetricEncAlgorithm ();
+      if (AS4ReproducibleAttachmentEncryption.isSupportedAlgorithm (sAlgorithmURI))
+        aAttachmentCallbackHandler.setReproducibleEncryption (new AS4ReproducibleAttachmentEncryption (aSymmetricKey,
+                                                                                                       sAlgorithmURI));
+      else
+        LOGGER.warn ("Reproducible attachment encryption is not possible with algorithm '" +
+                     sAlgorithmURI +
+                     "' - using one-time encryption");
+    }
+
     // Main sign and/or encrypt
     final Document aEncryptedDoc = aBuilder.build (aCryptoFactoryCrypt.getCrypto (ECryptoMode.ENCRYPT_SIGN),
                                                    aSymmetricKey);
@@ -272,6 +289,21 @@ public final class AS4Encryptor
       aAttachment.setContentTransferEncoding (EContentTransferEncoding.BINARY);
     }
 
+    if (aCryptParams.hasAttachmentExecutor () && aEncryptedAttachments.size () > 1)
+    {
+      // Perform the symmetric encryption of all attachments in parallel
+      try
+      {
+        AS4ParallelAttachmentHelper.storeEncryptedAttachments (aEncryptedAttachments,
+                                                               aResHelper,
+                                                               aCryptParams.getAttachmentExecutor ());
+      }
+      catch (final IOException ex)
+      {
+        throw new WSSecurityException (ErrorCode.FAILURE, ex, "Failed to encrypt attachments in parallel");
+      }
+    }
+
     // Use the encrypted attachments!
     try
     {
@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.messaging.domain;
+
+import java.time.OffsetDateTime;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.concurrent.SimpleLock;
+import com.helger.commons.datetime.XMLOffsetDateTime;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.jaxb.adapter.AdapterXMLOffsetDateTime;
+import com.helger.phase4.CAS4;
+import com.helger.phase4.ebms3header.Ebms3CollaborationInfo;
+import com.helger.phase4.ebms3header.Ebms3MessageProperties;
+import com.helger.phase4.ebms3header.Ebms3PartInfo;
+import com.helger.phase4.ebms3header.Ebms3PartyInfo;
+import com.helger.phase4.ebms3header.Ebms3PayloadInfo;
+import com.helger.phase4.ebms3header.Ebms3Property;
+import com.helger.phase4.ebms3header.Ebms3UserMessage;
+import com.helger.phase4.soap.ESoapVersion;
+import com.helger.xml.XMLHelper;
+
+/**
+ * A pre-marshalled SOAP envelope of an AS4 User Message. It contains all the
+ * header elements that are usually constant for a PMode and leg (PartyInfo,
+ * CollaborationInfo and MessageProperties). For each message only the
+ * MessageInfo (MessageId, Timestamp and RefToMessageId), the ConversationId,
+ * the PayloadInfo and the SOAP Body payload are filled in on a DOM copy of the
+ * template, so that the JAXB object creation and marshalling is only needed
+ * once.<br>
+ * The created documents are identical to the ones created by
+ * {@link AS4UserMessage#getAsSoapDocument(Node)}.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@ThreadSafe
+public final class AS4UserMessageHeaderTemplate
+{
+  private static final String PLACEHOLDER = "phase4-template";
+
+  private final ESoapVersion m_eSoapVersion;
+  private final Ebms3UserMessage m_aSkeleton;
+  // Only accessed under the lock, as DOM reads are not thread-safe
+  private final SimpleLock m_aLock = new SimpleLock ();
+  private final Document m_aTemplateDoc;
+
+  /**
+   * Constructor
+   *
+   * @param eSoapVersion
+   *        The SOAP version to use. May not be <code>null</code>.
+   * @param aSkeleton
+   *        The constant part of the User Message as created by
+   *        {@link #createSkeleton(Ebms3PartyInfo, Ebms3CollaborationInfo, Ebms3MessageProperties, String)}.
+   *        May not be <code>null</code>.
+   */
+  public AS4UserMessageHeaderTemplate (@Nonnull final ESoapVersion eSoapVersion,
+                                       @Nonnull final Ebms3UserMessage aSkeleton)
+  {
+    ValueEnforcer.notNull (eSoapVersion, "SoapVersion");
+    ValueEnforcer.notNull (aSkeleton, "Skeleton");
+    ValueEnforcer.isTrue (aSkeleton.getMessageInfo () == null, "Skeleton may not contain a MessageInfo");
+    ValueEnforcer.isTrue (aSkeleton.getPayloadInfo () == null, "Skeleton may not contain a PayloadInfo");
+
+    m_eSoapVersion = eSoapVersion;
+    m_aSkeleton = aSkeleton.clone ();
+
+    // Marshal once with placeholders
+    final Ebms3UserMessage aUserMessage = aSkeleton.clone ();
+    aUserMessage.setMessageInfo (MessageHelperMethods.createEbms3MessageInfo (PLACEHOLDER,
+                                                                              null,
+                                                                              OffsetDateTime.now ()));
+    if (aUserMessage.getCollaborationInfo () != null)
+      aUserMessage.getCollaborationInfo ().setConversationId ("");
+    m_aTemplateDoc = AS4UserMessage.create (eSoapVersion, aUserMessage).setMustUnderstand (true).getAsSoapDocument (null);
+  }
+
+  /**
+   * @return The SOAP version of this template. Never <code>null</code>.
+   */
+  @Nonnull
+  public ESoapVersion getSoapVersion ()
+  {
+    return m_eSoapVersion;
+  }
+
+  /**
+   * @return A copy of the constant part of the User Message. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public Ebms3UserMessage getSkeleton ()
+  {
+    return m_aSkeleton.clone ();
+  }
+
+  /**
+   * Check if this template was created for the provided parameters.
+   *
+   * @param eSoapVersion
+   *        SOAP version to check. May be <code>null</code>.
+   * @param aSkeleton
+   *        The skeleton to check. May be <code>null</code>.
+   * @return <code>true</code> if the parameters match.
+   */
+  public boolean matches (@Nullable final ESoapVersion eSoapVersion, @Nullable final Ebms3UserMessage aSkeleton)
+  {
+    return m_eSoapVersion == eSoapVersion && m_aSkeleton.equals (aSkeleton);
+  }
+
+  @Nonnull
+  private static Element _getChild (@Nonnull final Element aParent,
+                                    @Nonnull final String sNamespaceURI,
+                                    @Nonnull final String sLocalName)
+  {
+    final Element ret = XMLHelper.getFirstChildElementOfName (aParent, sNamespaceURI, sLocalName);
+    if (ret == null)
+      throw new IllegalStateException ("Template is missing element '" + sLocalName + "'");
+    return ret;
+  }
+
+  @Nonnull
+  private static Element _createEbmsElement (@Nonnull final Document aDoc,
+                                             @Nonnull final Element aSibling,
+                                             @Nonnull final String sLocalName)
+  {
+    final String sPrefix = aSibling.getPrefix ();
+    return aDoc.createElementNS (CAS4.EBMS_NS, StringHelper.hasText (sPrefix) ? sPrefix + ':' + sLocalName : sLocalName);
+  }
+
+  @Nonnull
+  private static Element _createPayloadInfo (@Nonnull final Document aDoc,
+                                             @Nonnull final Element aSibling,
+                                             @Nonnull final Ebms3PayloadInfo aPayloadInfo)
+  {
+    final Element ePayloadInfo = _createEbmsElement (aDoc, aSibling, "PayloadInfo");
+    for (final Ebms3PartInfo aPartInfo : aPayloadInfo.getPartInfo ())
+    {
+      if (aPartInfo.getSchema () != null || aPartInfo.getDescription () != null)
+        throw new IllegalArgumentException ("PartInfo Schema and Description are not supported by the template");
+
+      final Element ePartInfo = _createEbmsElement (aDoc, aSibling, "PartInfo");
+      if (aPartInfo.getHref () != null)
+        ePartInfo.setAttribute ("href", aPartInfo.getHref ());
+      if (aPartInfo.getPartProperties () != null)
+      {
+        final Element ePartProperties = _createEbmsElement (aDoc, aSibling, "PartProperties");
+        for (final Ebms3Property aProperty : aPartInfo.getPartProperties ().getProperty ())
+        {
+          final Element eProperty = _createEbmsElement (aDoc, aSibling, "Property");
+          eProperty.setAttribute ("name", aProperty.getName ());
+          if (aProperty.getType () != null)
+            eProperty.setAttribute ("type", aProperty.getType ());
+          eProperty.setTextContent (aProperty.getValue ());
+          ePartProperties.appendChild (eProperty);
+        }
+        ePartInfo.appendChild (ePartProperties);
+      }
+      ePayloadInfo.appendChild (ePartInfo);
+    }
+    return ePayloadInfo;
+  }
+
+  /**
+   * Create a new SOAP document based on this template.
+   *
+   * @param sMessagingID
+   *        The ID of the Messaging element, used for signing. May neither be
+   *        <code>null</code> nor empty.
+   * @param sMessageID
+   *        The AS4 message ID. May neither be <code>null</code> nor empty.
+   * @param sRefToMessageID
+   *        The optional referenced message ID. May be <code>null</code>.
+   * @param aDateTime
+   *        The timestamp of the message. May not be <code>null</code>.
+   * @param sConversationID
+   *        The conversation ID. May not be <code>null</code> but maybe empty.
+   * @param aPayloadInfo
+   *        The optional payload info. May be <code>null</code>.
+   * @param aSoapBodyPayload
+   *        The optional SOAP body payload. May be <code>null</code>.
+   * @return A new document that is not shared. Never <code>null</code>.
+   */
+  @Nonnull
+  public Document createSoapDocument (@Nonnull @Nonempty final String sMessagingID,
+                                      @Nonnull @Nonempty final String sMessageID,
+                                      @Nullable final String sRefToMessageID,
+                                      @Nonnull final OffsetDateTime aDateTime,
+                                      @Nonnull final String sConversationID,
+                                      @Nullable final Ebms3PayloadInfo aPayloadInfo,
+                                      @Nullable final Node aSoapBodyPayload)
+  {
+    ValueEnforcer.notEmpty (sMessagingID, "MessagingID");
+    ValueEnforcer.notEmpty (sMessageID, "MessageID");
+    ValueEnforcer.notNull (aDateTime, "DateTime");
+    ValueEnforcer.notNull (sConversationID, "ConversationID");
+
+    final Document ret = m_aLock.lockedGet ( () -> (Document) m_aTemplateDoc.cloneNode (true));
+
+    final String sSoapNS = m_eSoapVersion.getNamespaceURI ();
+    final Element eEnvelope = ret.getDocumentElement ();
+    final Element eMessaging = _getChild (_getChild (eEnvelope, sSoapNS, "Header"), CAS4.EBMS_NS, "Messaging");
+    final Element eUserMessage = _getChild (eMessaging, CAS4.EBMS_NS, "UserMessage");
+
+    // Messaging ID for signing
+    final Attr aIDAttr = eMessaging.getAttributeNodeNS (CAS4.WSU_NS, "Id");
+    if (aIDAttr == null)
+      throw new IllegalStateException ("Template is missing the Messaging ID");
+    aIDAttr.setValue (sMessagingID);
+
+    // MessageInfo
+    final Element eMessageInfo = _getChild (eUserMessage, CAS4.EBMS_NS, "MessageInfo");
+    _getChild (eMessageInfo, CAS4.EBMS_NS, "Timestamp").setTextContent (new AdapterXMLOffsetDateTime ().marshal (XMLOffsetDateTime.of (aDateTime)));
+    _getChild (eMessageInfo, CAS4.EBMS_NS, "MessageId").setTextContent (sMessageID);
+    if (StringHelper.hasText (sRefToMessageID))
+    {
+      final Element eRefToMessageId = _createEbmsElement (ret, eMessageInfo, "RefToMessageId");
+      eRefToMessageId.setTextContent (sRefToMessageID);
+      eMessageInfo.appendChild (eRefToMessageId);
+    }
+
+    // ConversationId
+    final Element eCollaborationInfo = XMLHelper.getFirstChildElementOfName (eUserMessage,
+                                                                            CAS4.EBMS_NS,
+                                                                            "CollaborationInfo");
+    if (eCollaborationInfo != null)
+      _getChild (eCollaborationInfo, CAS4.EBMS_NS, "ConversationId").setTextContent (sConversationID);
+
+    // PayloadInfo is the last element of the UserMessage
+    if (aPayloadInfo != null)
+      eUserMessage.appendChild (_createPayloadInfo (ret, eUserMessage, aPayloadInfo));
+
+    // SOAP Body
+    if (aSoapBodyPayload != null)
+    {
+      final Node aRealSoapBodyPayload = aSoapBodyPayload instanceof Document ? ((Document) aSoapBodyPayload).getDocumentElement ()
+                                                                             : aSoapBodyPayload;
+      _getChild (eEnvelope, sSoapNS, "Body").appendChild (ret.importNode (aRealSoapBodyPayload, true));
+    }
+    return ret;
+  }
+
+  /**
+   * Create the constant part of a User Message, that is used as the key of a
+   * template.
+   *
+   * @param aPartyInfo
+   *        Party information. May not be <code>null</code>.
+   * @param aCollaborationInfo
+   *        Collaboration information. The conversation ID is ignored. May not
+   *        be <code>null</code>.
+   * @param aMessageProperties
+   *        Optional message properties. May be <code>null</code>.
+   * @param sMPC
+   *        Optional MPC. May be <code>null</code>.
+   * @return A new skeleton. Never <code>null</code>.
+   */
+  @Nonnull
+  public static Ebms3UserMessage createSkeleton (@Nonnull final Ebms3PartyInfo aPartyInfo,
+                                                 @Nonnull final Ebms3CollaborationInfo aCollaborationInfo,
+                                                 @Nullable final Ebms3MessageProperties aMessageProperties,
+                                                 @Nullable final String sMPC)
+  {
+    ValueEnforcer.notNull (aPartyInfo, "PartyInfo");
+    ValueEnforcer.notNull (aCollaborationInfo, "CollaborationInfo");
+
+    final Ebms3CollaborationInfo aRealCollaborationInfo = aCollaborationInfo.clone ();
+    // Filled in per message
+    aRealCollaborationInfo.setConversationId ("");
+
+    final Ebms3UserMessage ret = new Ebms3UserMessage ();
+    ret.setPartyInfo (aPartyInfo);
+    ret.setCollaborationInfo (aRealCollaborationInfo);
+    ret.setMessageProperties (aMessageProperties);
+    ret.setMpc (sMPC);
+    return ret;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("SoapVersion", m_eSoapVersion)
+                                       .append ("Skeleton", m_aSkeleton)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.messaging.domain;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.map.LRUMap;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.hashcode.IHashCodeGenerator;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.ebms3header.Ebms3UserMessage;
+import com.helger.phase4.soap.ESoapVersion;
+
+/**
+ * A bounded cache for {@link AS4UserMessageHeaderTemplate} objects. A template
+ * is identified by the SOAP version and the constant part of the User Message
+ * (PMode ID, agreement, parties, service, action and message properties), so
+ * that different partners sharing the same PMode get their own templates.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@ThreadSafe
+public class AS4UserMessageHeaderTemplateCache
+{
+  public static final int DEFAULT_MAX_SIZE = 100;
+
+  private static final AS4UserMessageHeaderTemplateCache DEFAULT_INSTANCE = new AS4UserMessageHeaderTemplateCache ();
+
+  private static final class TemplateKey
+  {
+    private final ESoapVersion m_eSoapVersion;
+    private final Ebms3UserMessage m_aSkeleton;
+    // Status vars
+    private int m_nHashCode = IHashCodeGenerator.ILLEGAL_HASHCODE;
+
+    TemplateKey (@Nonnull final ESoapVersion eSoapVersion, @Nonnull final Ebms3UserMessage aSkeleton)
+    {
+      m_eSoapVersion = eSoapVersion;
+      m_aSkeleton = aSkeleton;
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (o == null || !getClass ().equals (o.getClass ()))
+        return false;
+      final TemplateKey rhs = (TemplateKey) o;
+      return m_eSoapVersion == rhs.m_eSoapVersion && m_aSkeleton.equals (rhs.m_aSkeleton);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      int ret = m_nHashCode;
+      if (ret == IHashCodeGenerator.ILLEGAL_HASHCODE)
+        ret = m_nHashCode = new HashCodeGenerator (this).append (m_eSoapVersion).append (m_aSkeleton).getHashCode ();
+      return ret;
+    }
+  }
+
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  @GuardedBy ("m_aRWLock")
+  private final LRUMap <TemplateKey, AS4UserMessageHeaderTemplate> m_aMap;
+
+  /**
+   * Constructor with the default maximum size.
+   */
+  public AS4UserMessageHeaderTemplateCache ()
+  {
+    this (DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param nMaxSize
+   *        The maximum number of templates to keep. Must be &gt; 0.
+   */
+  public AS4UserMessageHeaderTemplateCache (@Nonnegative final int nMaxSize)
+  {
+    ValueEnforcer.isGT0 (nMaxSize, "MaxSize");
+    m_aMap = new LRUMap <> (nMaxSize);
+  }
+
+  /**
+   * Get the template for the provided parameters, or create a new one.
+   *
+   * @param eSoapVersion
+   *        SOAP version to use. May not be <code>null</code>.
+   * @param aSkeleton
+   *        The constant part of the User Message as created by
+   *        {@link AS4UserMessageHeaderTemplate#createSkeleton(com.helger.phase4.ebms3header.Ebms3PartyInfo, com.helger.phase4.ebms3header.Ebms3CollaborationInfo, com.helger.phase4.ebms3header.Ebms3MessageProperties, String)}.
+   *        May not be <code>null</code>.
+   * @return The matching template. Never <code>null</code>.
+   */
+  @Nonnull
+  public AS4UserMessageHeaderTemplate getOrCreateTemplate (@Nonnull final ESoapVersion eSoapVersion,
+                                                           @Nonnull final Ebms3UserMessage aSkeleton)
+  {
+    ValueEnforcer.notNull (eSoapVersion, "SoapVersion");
+    ValueEnforcer.notNull (aSkeleton, "Skeleton");
+
+    final TemplateKey aKey = new TemplateKey (eSoapVersion, aSkeleton);
+    // LRUMap.get modifies the order
+    AS4UserMessageHeaderTemplate ret = m_aRWLock.writeLockedGet ( () -> m_aMap.get (aKey));
+    if (ret == null)
+    {
+      // Marshal outside of the lock
+      final AS4UserMessageHeaderTemplate aNewTemplate = new AS4UserMessageHeaderTemplate (eSoapVersion, aSkeleton);
+      ret = m_aRWLock.writeLockedGet ( () -> m_aMap.computeIfAbsent (new TemplateKey (eSoapVersion,
+                                                                                       aNewTemplate.getSkeleton ()),
+                                                                     k -> aNewTemplate));
+    }
+    return ret;
+  }
+
+  /**
+   * @return The number of cached templates. Always &ge; 0.
+   */
+  @Nonnegative
+  public int size ()
+  {
+    return m_aRWLock.readLockedInt (m_aMap::size);
+  }
+
+  /**
+   * Remove all cached templates.
+   */
+  public void clear ()
+  {
+    m_aRWLock.writeLocked (m_aMap::clear);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("Size", size ()).getToString ();
+  }
+
+  /**
+   * @return The default shared instance. Never <code>null</code>.
+   */
+  @Nonnull
+  public static AS4UserMessageHeaderTemplateCache getDefaultInstance ()
+  {
+    return DEFAULT_INSTANCE;
+  }
+}
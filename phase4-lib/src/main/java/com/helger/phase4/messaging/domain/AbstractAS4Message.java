@@ -18,9 +18,11 @@ package com.helger.phase4.messaging.domain;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.xml.XMLConstants;
 import javax.xml.namespace.QName;
 
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
 import com.helger.commons.ValueEnforcer;
@@ -30,15 +32,7 @@ import com.helger.commons.traits.IGenericImplTrait;
 import com.helger.phase4.CAS4;
 import com.helger.phase4.ebms3header.Ebms3Messaging;
 import com.helger.phase4.marshaller.Ebms3MessagingMarshaller;
-import com.helger.phase4.marshaller.Soap11EnvelopeMarshaller;
-import com.helger.phase4.marshaller.Soap12EnvelopeMarshaller;
 import com.helger.phase4.soap.ESoapVersion;
-import com.helger.phase4.soap11.Soap11Body;
-import com.helger.phase4.soap11.Soap11Envelope;
-import com.helger.phase4.soap11.Soap11Header;
-import com.helger.phase4.soap12.Soap12Body;
-import com.helger.phase4.soap12.Soap12Envelope;
-import com.helger.phase4.soap12.Soap12Header;
 
 /**
  * Abstract AS4 message implementation
@@ -102,50 +96,45 @@ public abstract class AbstractAS4Message <IMPLTYPE extends AbstractAS4Message <I
     return thisAsT ();
   }
 
+  @Nonnull
+  private Element _createSoapElement (@Nonnull final Document aDoc, @Nonnull final String sLocalName)
+  {
+    return aDoc.createElementNS (m_eSoapVersion.getNamespaceURI (),
+                                 m_eSoapVersion.getNamespacePrefix () + ':' + sLocalName);
+  }
+
   @Nonnull
   public final Document getAsSoapDocument (@Nullable final Node aSoapBodyPayload)
   {
-    // Convert to DOM Node
-    final Document aEbms3Document = new Ebms3MessagingMarshaller ().getAsDocument (m_aMessaging);
-    if (aEbms3Document == null)
+    // Convert to DOM Node - this is the only JAXB marshalling step
+    final Document ret = new Ebms3MessagingMarshaller ().getAsDocument (m_aMessaging);
+    if (ret == null)
       throw new IllegalStateException ("Failed to write EBMS3 Messaging to XML");
 
-    final Node aRealSoapBodyPayload = aSoapBodyPayload instanceof Document ? ((Document) aSoapBodyPayload).getDocumentElement ()
-                                                                           : aSoapBodyPayload;
+    // Build the SOAP envelope directly around the Messaging element in the
+    // same document
+    final Element eMessaging = ret.getDocumentElement ();
+    ret.removeChild (eMessaging);
 
-    switch (m_eSoapVersion)
+    final Element eEnvelope = _createSoapElement (ret, "Envelope");
+    eEnvelope.setAttributeNS (XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                              XMLConstants.XMLNS_ATTRIBUTE + ':' + m_eSoapVersion.getNamespacePrefix (),
+                              m_eSoapVersion.getNamespaceURI ());
+    ret.appendChild (eEnvelope);
+
+    final Element eHeader = _createSoapElement (ret, "Header");
+    eHeader.appendChild (eMessaging);
+    eEnvelope.appendChild (eHeader);
+
+    final Element eBody = _createSoapElement (ret, "Body");
+    if (aSoapBodyPayload != null)
     {
-      case SOAP_11:
-      {
-        // Creating SOAP 11 Envelope
-        final Soap11Envelope aSoapEnv = new Soap11Envelope ();
-        aSoapEnv.setHeader (new Soap11Header ());
-        aSoapEnv.setBody (new Soap11Body ());
-        aSoapEnv.getHeader ().addAny (aEbms3Document.getDocumentElement ());
-        if (aRealSoapBodyPayload != null)
-          aSoapEnv.getBody ().addAny (aRealSoapBodyPayload);
-        final Document ret = new Soap11EnvelopeMarshaller ().getAsDocument (aSoapEnv);
-        if (ret == null)
-          throw new IllegalStateException ("Failed to serialize SOAP 1.1 document");
-        return ret;
-      }
-      case SOAP_12:
-      {
-        // Creating SOAP 12 Envelope
-        final Soap12Envelope aSoapEnv = new Soap12Envelope ();
-        aSoapEnv.setHeader (new Soap12Header ());
-        aSoapEnv.setBody (new Soap12Body ());
-        aSoapEnv.getHeader ().addAny (aEbms3Document.getDocumentElement ());
-        if (aRealSoapBodyPayload != null)
-          aSoapEnv.getBody ().addAny (aRealSoapBodyPayload);
-        final Document ret = new Soap12EnvelopeMarshaller ().getAsDocument (aSoapEnv);
-        if (ret == null)
-          throw new IllegalStateException ("Failed to serialize SOAP 1.2 document");
-        return ret;
-      }
-      default:
-        throw new IllegalStateException ("Unsupported SOAP version " + m_eSoapVersion);
+      final Node aRealSoapBodyPayload = aSoapBodyPayload instanceof Document ? ((Document) aSoapBodyPayload).getDocumentElement ()
+                                                                             : aSoapBodyPayload;
+      eBody.appendChild (ret.importNode (aRealSoapBodyPayload, true));
     }
+    eEnvelope.appendChild (eBody);
+    return ret;
   }
 
   @Override
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.messaging.mime;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.ToStringGenerator;
+
+import jakarta.mail.Header;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetHeaders;
+import jakarta.mail.internet.MimeUtility;
+
+/**
+ * A single part of an incoming MIME message, where only the part headers were
+ * read. In contrast to {@link jakarta.mail.internet.MimeBodyPart} the body is
+ * not read into memory, but can be streamed exactly once from the underlying
+ * multipart stream. This allows to copy large attachments directly to their
+ * final storage.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@NotThreadSafe
+public class AS4IncomingMimePart
+{
+  /** The default content type, if none is present in the part headers */
+  public static final String DEFAULT_CONTENT_TYPE = "text/plain";
+
+  private final InternetHeaders m_aHeaders;
+  private final InputStream m_aRawBodyIS;
+  private boolean m_bBodyConsumed = false;
+
+  protected AS4IncomingMimePart (@Nonnull final InternetHeaders aHeaders, @Nonnull final InputStream aRawBodyIS)
+  {
+    m_aHeaders = aHeaders;
+    m_aRawBodyIS = aRawBodyIS;
+  }
+
+  /**
+   * @return The parsed MIME part headers. Never <code>null</code>.
+   */
+  @Nonnull
+  public final InternetHeaders getHeaders ()
+  {
+    return m_aHeaders;
+  }
+
+  /**
+   * @return All MIME part headers. Never <code>null</code>.
+   */
+  @Nonnull
+  public final Enumeration <Header> getAllHeaders ()
+  {
+    return m_aHeaders.getAllHeaders ();
+  }
+
+  /**
+   * Get the first value of the header with the provided name.
+   *
+   * @param sName
+   *        The header name. May not be <code>null</code>.
+   * @return <code>null</code> if no such header is present.
+   */
+  @Nullable
+  public final String getHeader (@Nonnull final String sName)
+  {
+    return m_aHeaders.getHeader (sName, null);
+  }
+
+  /**
+   * @return The content type of this part. Never <code>null</code>. Defaults to
+   *         {@link #DEFAULT_CONTENT_TYPE} like
+   *         {@link jakarta.mail.internet.MimeBodyPart} does.
+   */
+  @Nonnull
+  public final String getContentType ()
+  {
+    final String ret = getHeader (CHttpHeader.CONTENT_TYPE);
+    return StringHelper.hasText (ret) ? ret : DEFAULT_CONTENT_TYPE;
+  }
+
+  /**
+   * @return The Content-ID header value as-is (incl. angle brackets). May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public final String getContentID ()
+  {
+    return getHeader (CHttpHeader.CONTENT_ID);
+  }
+
+  /**
+   * @return The Content-Transfer-Encoding header value. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public final String getContentTransferEncoding ()
+  {
+    final String ret = getHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING);
+    return ret == null ? null : ret.trim ();
+  }
+
+  @Nonnull
+  private InputStream _consumeBody ()
+  {
+    if (m_bBodyConsumed)
+      throw new IllegalStateException ("The body of this MIME part was already consumed");
+    m_bBodyConsumed = true;
+    return m_aRawBodyIS;
+  }
+
+  /**
+   * Get the body stream as transmitted, without applying the
+   * Content-Transfer-Encoding. May only be called once, and is mutually
+   * exclusive with {@link #getDecodedBodyInputStream()}.
+   *
+   * @return The raw body stream. Never <code>null</code>. The caller is not
+   *         required to close it.
+   */
+  @Nonnull
+  public final InputStream getRawBodyInputStream ()
+  {
+    return _consumeBody ();
+  }
+
+  /**
+   * Get the body stream with the Content-Transfer-Encoding being applied. May
+   * only be called once, and is mutually exclusive with
+   * {@link #getRawBodyInputStream()}.
+   *
+   * @return The decoded body stream. Never <code>null</code>. The caller is
+   *         not required to close it.
+   * @throws MessagingException
+   *         In case the Content-Transfer-Encoding is unknown
+   */
+  @Nonnull
+  public final InputStream getDecodedBodyInputStream () throws MessagingException
+  {
+    final InputStream aRawIS = _consumeBody ();
+    final String sCTE = getContentTransferEncoding ();
+    return StringHelper.hasNoText (sCTE) ? aRawIS : MimeUtility.decode (aRawIS, sCTE);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("ContentType", getContentType ())
+                                       .append ("ContentID", getContentID ())
+                                       .append ("BodyConsumed", m_bBodyConsumed)
+                                       .getToString ();
+  }
+
+  /**
+   * Read the MIME part headers from the provided stream, leaving the stream
+   * positioned at the beginning of the body. The body itself is not read.
+   *
+   * @param aPartIS
+   *        The input stream of a single MIME part (headers and body). May not
+   *        be <code>null</code>. It is not closed by this method.
+   * @return The new MIME part. Never <code>null</code>.
+   * @throws MessagingException
+   *         In case the headers cannot be parsed
+   * @throws IOException
+   *         In case of an I/O error
+   */
+  @Nonnull
+  public static AS4IncomingMimePart read (@Nonnull @WillNotClose final InputStream aPartIS) throws MessagingException,
+                                                                                               IOException
+  {
+    ValueEnforcer.notNull (aPartIS, "PartIS");
+
+    // The header parser may need to push back a single byte, so make sure the
+    // body starts exactly after the headers
+    final InputStream aIS = aPartIS.markSupported () ? aPartIS : new BufferedInputStream (aPartIS);
+    final InternetHeaders aHeaders = new InternetHeaders (aIS);
+    return new AS4IncomingMimePart (aHeaders, aIS);
+  }
+}
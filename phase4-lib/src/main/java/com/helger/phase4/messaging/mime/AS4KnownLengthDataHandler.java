@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.messaging.mime;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.string.ToStringGenerator;
+
+import jakarta.activation.DataHandler;
+import jakarta.activation.DataSource;
+
+/**
+ * Special {@link DataHandler} for a {@link DataSource} with a known number of
+ * bytes. When writing to a {@link MimeLengthCountingOutputStream} the content
+ * is not read at all, and only the known length is added. This only works for
+ * identity content transfer encodings (binary, 7bit, 8bit), as otherwise the
+ * output stream is wrapped by JavaMail and the regular path is used.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+public class AS4KnownLengthDataHandler extends DataHandler
+{
+  private final long m_nLength;
+
+  public AS4KnownLengthDataHandler (@Nonnull final DataSource aDS, @Nonnegative final long nLength)
+  {
+    super (aDS);
+    ValueEnforcer.isGE0 (nLength, "Length");
+    m_nLength = nLength;
+  }
+
+  /**
+   * @return The known length of the data source in bytes. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getLength ()
+  {
+    return m_nLength;
+  }
+
+  @Override
+  public void writeTo (@Nonnull final OutputStream aOS) throws IOException
+  {
+    if (aOS instanceof MimeLengthCountingOutputStream)
+    {
+      // Length determination only - no need to read the source
+      ((MimeLengthCountingOutputStream) aOS).addSkippedBytes (m_nLength);
+    }
+    else
+      super.writeTo (aOS);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("DataSource", getDataSource ())
+                                       .append ("Length", m_nLength)
+                                       .getToString ();
+  }
+}
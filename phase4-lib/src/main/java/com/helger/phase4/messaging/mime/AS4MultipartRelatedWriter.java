@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.messaging.mime;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.CheckForSigned;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.w3c.dom.Document;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.http.HttpHeaderMap;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.io.stream.NonClosingOutputStream;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.mail.cte.EContentTransferEncoding;
+import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.soap.ESoapVersion;
+import com.helger.phase4.util.AS4XMLHelper;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeUtility;
+
+/**
+ * A purpose-built writer for outgoing AS4 <code>multipart/related</code>
+ * messages. In contrast to {@link MimeMessageCreator} it does not build a
+ * JavaMail object tree, but writes the boundaries, the part headers, the SOAP
+ * part and the attachments directly to the target stream. File based
+ * attachments are copied using {@link FileChannel#transferTo(long, long,
+ * WritableByteChannel)}, which avoids copying through the Java heap if the
+ * target is channel based.<br>
+ * The SOAP part is serialized only once and kept in memory, so that the exact
+ * content length can be determined without writing the message twice.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@NotThreadSafe
+public class AS4MultipartRelatedWriter
+{
+  /** The MIME version to use */
+  public static final String MIME_VERSION = "1.0";
+
+  private static final Charset HEADER_CHARSET = StandardCharsets.ISO_8859_1;
+  private static final byte [] CRLF = { '\r', '\n' };
+  private static final AtomicLong BOUNDARY_COUNTER = new AtomicLong (0);
+
+  private final ESoapVersion m_eSoapVersion;
+  private final Document m_aSoapEnvelope;
+  private final ICommonsList <WSS4JAttachment> m_aAttachments;
+  private final String m_sBoundary;
+  private final String m_sContentType;
+  // Lazily serialized
+  private byte [] m_aSoapPartHeaders;
+  private byte [] m_aSoapBytes;
+
+  /**
+   * Constructor
+   *
+   * @param eSoapVersion
+   *        SOAP version to use. May not be <code>null</code>.
+   * @param aSoapEnvelope
+   *        The (potentially signed and encrypted) SOAP envelope. May not be
+   *        <code>null</code>. Must not be modified afterwards.
+   * @param aAttachments
+   *        The (potentially encrypted) attachments. May be <code>null</code>.
+   */
+  public AS4MultipartRelatedWriter (@Nonnull final ESoapVersion eSoapVersion,
+                                    @Nonnull final Document aSoapEnvelope,
+                                    @Nullable final ICommonsList <WSS4JAttachment> aAttachments)
+  {
+    ValueEnforcer.notNull (eSoapVersion, "SoapVersion");
+    ValueEnforcer.notNull (aSoapEnvelope, "SoapEnvelope");
+    m_eSoapVersion = eSoapVersion;
+    m_aSoapEnvelope = aSoapEnvelope;
+    m_aAttachments = aAttachments == null ? new CommonsArrayList <> () : aAttachments.getClone ();
+    m_sBoundary = createUniqueBoundary ();
+
+    // type parameter is essential for Axis to work!
+    // Quote all values, as the boundary contains special characters
+    m_sContentType = "multipart/related; boundary=\"" +
+                     m_sBoundary +
+                     "\"; type=\"" +
+                     eSoapVersion.getMimeType ().getAsString () +
+                     "\"; charset=" +
+                     AS4XMLHelper.XWS.getCharset ().name ();
+  }
+
+  /**
+   * @return A new unique MIME boundary. Never <code>null</code>.
+   */
+  @Nonnull
+  @Nonempty
+  public static String createUniqueBoundary ()
+  {
+    return "----=_Part_" +
+           BOUNDARY_COUNTER.incrementAndGet () +
+           "_" +
+           Long.toHexString (ThreadLocalRandom.current ().nextLong ()) +
+           "." +
+           System.currentTimeMillis ();
+  }
+
+  /**
+   * @return The SOAP version used. Never <code>null</code>.
+   */
+  @Nonnull
+  public final ESoapVersion getSoapVersion ()
+  {
+    return m_eSoapVersion;
+  }
+
+  /**
+   * @return The MIME boundary used. Neither <code>null</code> nor empty.
+   */
+  @Nonnull
+  @Nonempty
+  public final String getBoundary ()
+  {
+    return m_sBoundary;
+  }
+
+  /**
+   * @return The full <code>multipart/related</code> content type including
+   *         all parameters. Neither <code>null</code> nor empty.
+   */
+  @Nonnull
+  @Nonempty
+  public final String getContentType ()
+  {
+    return m_sContentType;
+  }
+
+  /**
+   * @return The HTTP headers that must be sent together with this message.
+   *         Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public HttpHeaderMap getAllHttpHeaders ()
+  {
+    final HttpHeaderMap ret = new HttpHeaderMap ();
+    ret.setHeader (CHttpHeader.MIME_VERSION, MIME_VERSION);
+    ret.setHeader (CHttpHeader.CONTENT_TYPE, m_sContentType);
+    return ret;
+  }
+
+  /**
+   * @return <code>true</code> if the message can be written more than once,
+   *         <code>false</code> if at least one attachment can only be read
+   *         once.
+   */
+  public boolean isRepeatable ()
+  {
+    for (final WSS4JAttachment aAttachment : m_aAttachments)
+      if (!aAttachment.isRepeatable ())
+        return false;
+    return true;
+  }
+
+  private static boolean _isUnencoded (@Nonnull final EContentTransferEncoding eCTE)
+  {
+    return eCTE == EContentTransferEncoding.BINARY ||
+           eCTE == EContentTransferEncoding._8BIT ||
+           eCTE == EContentTransferEncoding._7BIT;
+  }
+
+  /**
+   * @return The exact number of bytes written by {@link #writeTo(OutputStream)}
+   *         or -1 if it cannot be determined without reading the attachments.
+   * @throws IOException
+   *         In case serializing the SOAP part fails
+   */
+  @CheckForSigned
+  public long getContentLength () throws IOException
+  {
+    final byte [] aDelimiter = _getDelimiter ();
+    long ret = aDelimiter.length + _getSoapPartHeaders ().length + _getSoapBytes ().length + CRLF.length;
+    for (final WSS4JAttachment aAttachment : m_aAttachments)
+    {
+      if (!aAttachment.hasSourceLength () || !_isUnencoded (aAttachment.getContentTransferEncoding ()))
+        return -1;
+      ret += aDelimiter.length + _getAttachmentHeaders (aAttachment).length + aAttachment.getSourceLength () + CRLF.length;
+    }
+    ret += _getCloseDelimiter ().length;
+    return ret;
+  }
+
+  @Nonnull
+  private byte [] _getDelimiter ()
+  {
+    return ("--" + m_sBoundary + "\r\n").getBytes (HEADER_CHARSET);
+  }
+
+  @Nonnull
+  private byte [] _getCloseDelimiter ()
+  {
+    return ("--" + m_sBoundary + "--\r\n").getBytes (HEADER_CHARSET);
+  }
+
+  @Nonnull
+  private static byte [] _getHeaderBytes (@Nonnull final HttpHeaderMap aHeaders)
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    aHeaders.forEachSingleHeader ( (sName, sValue) -> aSB.append (sName).append (": ").append (sValue).append ("\r\n"),
+                                   false);
+    // Empty line between headers and content
+    aSB.append ("\r\n");
+    return aSB.toString ().getBytes (HEADER_CHARSET);
+  }
+
+  @Nonnull
+  private byte [] _getSoapPartHeaders ()
+  {
+    if (m_aSoapPartHeaders == null)
+    {
+      final HttpHeaderMap aHeaders = new HttpHeaderMap ();
+      aHeaders.setHeader (CHttpHeader.CONTENT_TYPE,
+                          m_eSoapVersion.getMimeType (AS4XMLHelper.XWS.getCharset ()).getAsString ());
+      aHeaders.setHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING, EContentTransferEncoding.BINARY.getID ());
+      m_aSoapPartHeaders = _getHeaderBytes (aHeaders);
+    }
+    return m_aSoapPartHeaders;
+  }
+
+  @Nonnull
+  private byte [] _getSoapBytes () throws IOException
+  {
+    if (m_aSoapBytes == null)
+    {
+      try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+      {
+        AS4XMLHelper.serializeXML (m_aSoapEnvelope, aBAOS);
+        m_aSoapBytes = aBAOS.toByteArray ();
+      }
+    }
+    return m_aSoapBytes;
+  }
+
+  @Nonnull
+  private static byte [] _getAttachmentHeaders (@Nonnull final WSS4JAttachment aAttachment)
+  {
+    final HttpHeaderMap aHeaders = new HttpHeaderMap ();
+
+    // Add custom headers before the special ones
+    for (final Map.Entry <String, String> aEntry : aAttachment.getHeaders ().entrySet ())
+    {
+      final String sName = aEntry.getKey ();
+      if (!sName.equals (CHttpHeader.CONTENT_ID) &&
+          !sName.equals (CHttpHeader.CONTENT_TRANSFER_ENCODING) &&
+          !sName.equals (CHttpHeader.CONTENT_TYPE))
+        aHeaders.setHeader (sName, aEntry.getValue ());
+    }
+
+    // The CID must be enclosed in angle brackets - see
+    // WSS4JAttachment.addToMimeMultipart for details
+    String sContentID = aAttachment.getId ();
+    if (StringHelper.hasText (sContentID))
+    {
+      if (sContentID.charAt (0) != '<')
+        sContentID = '<' + sContentID + '>';
+      aHeaders.setHeader (CHttpHeader.CONTENT_ID, sContentID);
+    }
+    aHeaders.setHeader (CHttpHeader.CONTENT_TYPE, aAttachment.getMimeType ());
+    aHeaders.setHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING, aAttachment.getContentTransferEncoding ().getID ());
+    return _getHeaderBytes (aHeaders);
+  }
+
+  private static void _transferFile (@Nonnull final File aFile, @Nonnull @WillNotClose final OutputStream aOS) throws IOException
+  {
+    try (final FileChannel aSrc = FileChannel.open (aFile.toPath (), StandardOpenOption.READ))
+    {
+      // Don't close the target channel, as that would close the stream
+      final WritableByteChannel aDst = aOS instanceof FileOutputStream ? ((FileOutputStream) aOS).getChannel ()
+                                                                       : Channels.newChannel (aOS);
+      final long nSize = aSrc.size ();
+      long nPos = 0;
+      while (nPos < nSize)
+        nPos += aSrc.transferTo (nPos, nSize - nPos, aDst);
+    }
+  }
+
+  private static void _writeAttachmentContent (@Nonnull final WSS4JAttachment aAttachment,
+                                               @Nonnull @WillNotClose final OutputStream aOS) throws IOException
+  {
+    final EContentTransferEncoding eCTE = aAttachment.getContentTransferEncoding ();
+    if (_isUnencoded (eCTE))
+    {
+      if (aAttachment.hasSourceFile ())
+        _transferFile (aAttachment.getSourceFile (), aOS);
+      else
+        try (final InputStream aIS = aAttachment.getSourceStream ())
+        {
+          aIS.transferTo (aOS);
+        }
+    }
+    else
+    {
+      // Encoding is needed
+      final OutputStream aEncodingOS;
+      try
+      {
+        aEncodingOS = MimeUtility.encode (new NonClosingOutputStream (aOS), eCTE.getID ());
+      }
+      catch (final MessagingException ex)
+      {
+        throw new IOException ("Unsupported Content-Transfer-Encoding '" + eCTE.getID () + "'", ex);
+      }
+      // Closing writes the remaining encoded bytes
+      try (final InputStream aIS = aAttachment.getSourceStream (); final OutputStream aEOS = aEncodingOS)
+      {
+        aIS.transferTo (aEOS);
+      }
+    }
+  }
+
+  /**
+   * Write the complete MIME message body to the provided output stream. The
+   * stream is neither flushed nor closed.
+   *
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>.
+   * @throws IOException
+   *         In case of an I/O error
+   */
+  public void writeTo (@Nonnull @WillNotClose final OutputStream aOS) throws IOException
+  {
+    ValueEnforcer.notNull (aOS, "OutputStream");
+
+    final byte [] aDelimiter = _getDelimiter ();
+
+    // SOAP part
+    aOS.write (aDelimiter);
+    aOS.write (_getSoapPartHeaders ());
+    aOS.write (_getSoapBytes ());
+    aOS.write (CRLF);
+
+    // Attachments
+    for (final WSS4JAttachment aAttachment : m_aAttachments)
+    {
+      aOS.write (aDelimiter);
+      aOS.write (_getAttachmentHeaders (aAttachment));
+      _writeAttachmentContent (aAttachment, aOS);
+      aOS.write (CRLF);
+    }
+
+    aOS.write (_getCloseDelimiter ());
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("SoapVersion", m_eSoapVersion)
+                                       .append ("Attachments", m_aAttachments)
+                                       .append ("Boundary", m_sBoundary)
+                                       .getToString ();
+  }
+}
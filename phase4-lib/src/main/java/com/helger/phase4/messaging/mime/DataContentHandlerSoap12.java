@@ -22,16 +22,13 @@ import java.io.OutputStream;
 import javax.annotation.Nonnull;
 import javax.annotation.WillNotClose;
 import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
 import org.eclipse.angus.mail.handlers.text_plain;
 
 import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.phase4.soap.ESoapVersion;
+import com.helger.phase4.util.AS4XMLHelper;
 
 import jakarta.activation.ActivationDataFlavor;
 import jakarta.activation.DataSource;
@@ -75,18 +72,16 @@ public class DataContentHandlerSoap12 extends text_plain
   {
     try
     {
-      final Transformer transformer = TransformerFactory.newInstance ().newTransformer ();
-      final StreamResult result = new StreamResult (aOS);
       if (aObj instanceof DataSource)
       {
         // Streaming transform applies only to
         // javax.xml.transform.StreamSource
-        transformer.transform (new StreamSource (((DataSource) aObj).getInputStream ()), result);
+        AS4XMLHelper.serializeXML (new StreamSource (((DataSource) aObj).getInputStream ()), aOS);
       }
       else
         if (aObj instanceof Source)
         {
-          transformer.transform ((Source) aObj, result);
+          AS4XMLHelper.serializeXML ((Source) aObj, aOS);
         }
         else
         {
@@ -95,7 +90,7 @@ public class DataContentHandlerSoap12 extends text_plain
                                  ". DataContentHandlerSoap12 can only convert DataSource or Source to XML.");
         }
     }
-    catch (final TransformerException | RuntimeException ex)
+    catch (final RuntimeException ex)
     {
       throw new IOException ("Unable to run the JAXP transformer on a stream", ex);
     }
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.messaging.mime;
+
+import java.io.OutputStream;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * Special {@link OutputStream} that discards all content and only counts the
+ * number of bytes written. Parts with a known length (see
+ * {@link AS4KnownLengthDataHandler}) don't need to be read, but can add their
+ * length directly via {@link #addSkippedBytes(long)}. This is used to
+ * determine the exact length of a MIME message without materializing it.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@NotThreadSafe
+public final class MimeLengthCountingOutputStream extends OutputStream
+{
+  private long m_nBytesWritten = 0;
+
+  public MimeLengthCountingOutputStream ()
+  {}
+
+  @Override
+  public void write (final int b)
+  {
+    m_nBytesWritten++;
+  }
+
+  @Override
+  public void write (@Nonnull final byte [] aBuf, final int nOfs, final int nLen)
+  {
+    ValueEnforcer.isArrayOfsLen (aBuf, nOfs, nLen);
+    m_nBytesWritten += nLen;
+  }
+
+  /**
+   * Add bytes to the counter that were not physically written.
+   *
+   * @param nBytes
+   *        The number of bytes to add. Must be &ge; 0.
+   */
+  public void addSkippedBytes (@Nonnegative final long nBytes)
+  {
+    ValueEnforcer.isGE0 (nBytes, "Bytes");
+    m_nBytesWritten += nBytes;
+  }
+
+  /**
+   * @return The number of bytes written or skipped so far. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getBytesWritten ()
+  {
+    return m_nBytesWritten;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("BytesWritten", m_nBytesWritten).getToString ();
+  }
+}
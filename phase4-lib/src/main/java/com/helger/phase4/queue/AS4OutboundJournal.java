@@ -0,0 +1,682 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.queue;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.hc.core5.http.HttpEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.callback.IThrowingRunnable;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsNavigableMap;
+import com.helger.commons.concurrent.SimpleLock;
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.functional.IThrowingConsumer;
+import com.helger.commons.http.HttpHeaderMap;
+import com.helger.commons.io.stream.CountingInputStream;
+import com.helger.commons.io.stream.CountingOutputStream;
+import com.helger.commons.io.stream.NonClosingOutputStream;
+import com.helger.commons.io.stream.WrappedInputStream;
+import com.helger.commons.mutable.MutableInt;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.StringParser;
+
+/**
+ * The append-only on-disk journal of the {@link AS4OutboundQueue}. The journal
+ * consists of numbered segment files. Each segment contains a sequence of
+ * records with the layout
+ * <code>magic (int) | type (byte) | payload length (long) | payload | CRC32 of payload (long)</code>.
+ * The following record types exist:
+ * <ul>
+ * <li>Enqueue: ID, enqueue time, URL, message ID, content type, HTTP headers
+ * and the complete HTTP body</li>
+ * <li>Attempt: ID and the number of the started transmission attempt</li>
+ * <li>Done: ID and the success indicator</li>
+ * </ul>
+ * The index of pending entries, with the positions of their bodies, is kept in
+ * memory and is rebuilt by replaying all segments when the journal is opened.
+ * A torn or corrupt record ends the replay of its segment. After opening, new
+ * records are always appended to a new segment. Segments are deleted from the
+ * oldest one on, as soon as all entries they contain are done.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@ThreadSafe
+final class AS4OutboundJournal implements AutoCloseable
+{
+  public static final long DEFAULT_MAX_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4OutboundJournal.class);
+
+  private static final int RECORD_MAGIC = 0x50344a31;
+  private static final byte TYPE_ENQUEUE = 1;
+  private static final byte TYPE_ATTEMPT = 2;
+  private static final byte TYPE_DONE = 3;
+  // magic + type + payload length
+  private static final int RECORD_HEADER_SIZE = 4 + 1 + 8;
+  // CRC
+  private static final int RECORD_TRAILER_SIZE = 8;
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".jnl";
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * An input stream that ends after a fixed number of bytes.
+   */
+  private static final class BoundedInputStream extends WrappedInputStream
+  {
+    private long m_nRemaining;
+
+    BoundedInputStream (@Nonnull final InputStream aIS, final long nLength)
+    {
+      super (aIS);
+      m_nRemaining = nLength;
+    }
+
+    @Override
+    public int read () throws IOException
+    {
+      if (m_nRemaining <= 0)
+        return -1;
+      final int ret = super.read ();
+      if (ret >= 0)
+        m_nRemaining--;
+      return ret;
+    }
+
+    @Override
+    public int read (@Nonnull final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+    {
+      if (m_nRemaining <= 0)
+        return -1;
+      final int ret = super.read (aBuf, nOfs, (int) Math.min (nLen, m_nRemaining));
+      if (ret > 0)
+        m_nRemaining -= ret;
+      return ret;
+    }
+
+    @Override
+    public long skip (final long n) throws IOException
+    {
+      final long ret = super.skip (Math.min (n, m_nRemaining));
+      if (ret > 0)
+        m_nRemaining -= ret;
+      return ret;
+    }
+
+    @Override
+    public int available () throws IOException
+    {
+      return (int) Math.min (super.available (), m_nRemaining);
+    }
+  }
+
+  private final File m_aDirectory;
+  private final long m_nMaxSegmentSize;
+  private final boolean m_bSyncOnWrite;
+
+  private final SimpleLock m_aLock = new SimpleLock ();
+  @GuardedBy ("m_aLock")
+  private final ICommonsNavigableMap <Long, AS4OutboundQueueEntry> m_aPending = new CommonsTreeMap <> ();
+  @GuardedBy ("m_aLock")
+  private final ICommonsNavigableMap <Long, MutableInt> m_aPendingPerSegment = new CommonsTreeMap <> ();
+  @GuardedBy ("m_aLock")
+  private long m_nNextID = 1;
+  @GuardedBy ("m_aLock")
+  private long m_nActiveSegmentNumber;
+  @GuardedBy ("m_aLock")
+  private FileChannel m_aActiveChannel;
+  @GuardedBy ("m_aLock")
+  private long m_nActivePosition;
+
+  /**
+   * Open the journal in the provided directory and replay all existing
+   * segments.
+   *
+   * @param aDirectory
+   *        The journal directory. Is created if it does not exist. May not be
+   *        <code>null</code>.
+   * @param nMaxSegmentSize
+   *        The size in bytes after which a new segment is started. Must be
+   *        &gt; 0.
+   * @param bSyncOnWrite
+   *        <code>true</code> to force every record to the storage device
+   *        before returning.
+   * @throws IOException
+   *         In case the journal cannot be opened
+   */
+  AS4OutboundJournal (@Nonnull final File aDirectory,
+                      @Nonnegative final long nMaxSegmentSize,
+                      final boolean bSyncOnWrite) throws IOException
+  {
+    ValueEnforcer.notNull (aDirectory, "Directory");
+    ValueEnforcer.isGT0 (nMaxSegmentSize, "MaxSegmentSize");
+    m_aDirectory = aDirectory;
+    m_nMaxSegmentSize = nMaxSegmentSize;
+    m_bSyncOnWrite = bSyncOnWrite;
+
+    Files.createDirectories (aDirectory.toPath ());
+
+    long nLastSegmentNumber = 0;
+    for (final long nSegmentNumber : _getAllSegmentNumbers ())
+    {
+      m_aPendingPerSegment.put (Long.valueOf (nSegmentNumber), new MutableInt (0));
+      _replaySegment (nSegmentNumber);
+      nLastSegmentNumber = nSegmentNumber;
+    }
+    for (final AS4OutboundQueueEntry aEntry : m_aPending.values ())
+      m_aPendingPerSegment.get (Long.valueOf (aEntry.getSegmentNumber ())).inc ();
+
+    if (!m_aPending.isEmpty ())
+      LOGGER.info ("Recovered " + m_aPending.size () + " pending outbound message(s) from journal " + aDirectory);
+
+    // Never append to an existing segment, as its tail may be corrupt
+    _openSegment (nLastSegmentNumber + 1);
+    _deleteCompletedSegments ();
+  }
+
+  @Nonnull
+  private File _getSegmentFile (final long nSegmentNumber)
+  {
+    return new File (m_aDirectory,
+                     SEGMENT_PREFIX + StringHelper.getLeadingZero (nSegmentNumber, 10) + SEGMENT_SUFFIX);
+  }
+
+  @Nonnull
+  private long [] _getAllSegmentNumbers ()
+  {
+    final ICommonsList <Long> ret = new CommonsArrayList <> ();
+    final String [] aNames = m_aDirectory.list ();
+    if (aNames != null)
+      for (final String sName : aNames)
+        if (sName.startsWith (SEGMENT_PREFIX) && sName.endsWith (SEGMENT_SUFFIX))
+        {
+          final long nNumber = StringParser.parseLong (sName.substring (SEGMENT_PREFIX.length (),
+                                                                        sName.length () - SEGMENT_SUFFIX.length ()),
+                                                       -1);
+          if (nNumber > 0)
+            ret.add (Long.valueOf (nNumber));
+        }
+    return ret.getSortedInline (Long::compare).stream ().mapToLong (Long::longValue).toArray ();
+  }
+
+  private static void _skipFully (@Nonnull final InputStream aIS, final long nBytes) throws IOException
+  {
+    final byte [] aBuf = new byte [(int) Math.min (BUFFER_SIZE, Math.max (nBytes, 1))];
+    long nRemaining = nBytes;
+    while (nRemaining > 0)
+    {
+      final int nRead = aIS.read (aBuf, 0, (int) Math.min (aBuf.length, nRemaining));
+      if (nRead < 0)
+        throw new EOFException ();
+      nRemaining -= nRead;
+    }
+  }
+
+  private void _replaySegment (final long nSegmentNumber) throws IOException
+  {
+    final File aFile = _getSegmentFile (nSegmentNumber);
+    final long nFileSize = aFile.length ();
+    try (final DataInputStream aDIS = new DataInputStream (new BufferedInputStream (new FileInputStream (aFile),
+                                                                                    BUFFER_SIZE)))
+    {
+      long nPos = 0;
+      while (nPos < nFileSize)
+      {
+        final long nMaxPayloadLen = nFileSize - nPos - RECORD_HEADER_SIZE - RECORD_TRAILER_SIZE;
+        if (nMaxPayloadLen < 0)
+        {
+          LOGGER.warn ("Ignoring truncated record at position " + nPos + " of journal segment " + aFile);
+          break;
+        }
+
+        final int nMagic = aDIS.readInt ();
+        final byte nType = aDIS.readByte ();
+        final long nPayloadLen = aDIS.readLong ();
+        if (nMagic != RECORD_MAGIC || nPayloadLen < 0 || nPayloadLen > nMaxPayloadLen)
+        {
+          LOGGER.warn ("Ignoring corrupt record at position " + nPos + " of journal segment " + aFile);
+          break;
+        }
+
+        final long nPayloadPos = nPos + RECORD_HEADER_SIZE;
+        final CRC32 aCRC = new CRC32 ();
+        final CountingInputStream aCIS = new CountingInputStream (new CheckedInputStream (aDIS, aCRC));
+        final DataInputStream aPayloadDIS = new DataInputStream (aCIS);
+
+        // Parse the record but apply it only after the CRC was checked
+        IThrowingRunnable <RuntimeException> aApply = null;
+        try
+        {
+          final long nID = aPayloadDIS.readLong ();
+          switch (nType)
+          {
+            case TYPE_ENQUEUE:
+            {
+              final OffsetDateTime aEnqueueDT = PDTFactory.createOffsetDateTime (aPayloadDIS.readLong ());
+              final String sURL = aPayloadDIS.readUTF ();
+              final String sMessageID = aPayloadDIS.readUTF ();
+              final String sContentType = aPayloadDIS.readUTF ();
+              final int nHeaderCount = aPayloadDIS.readInt ();
+              final HttpHeaderMap aHeaders = new HttpHeaderMap ();
+              for (int i = 0; i < nHeaderCount; ++i)
+                aHeaders.addHeader (aPayloadDIS.readUTF (), aPayloadDIS.readUTF ());
+              final long nBodyPos = nPayloadPos + aCIS.getBytesRead ();
+              final long nBodyLen = nPayloadLen - aCIS.getBytesRead ();
+              final AS4OutboundQueueEntry aEntry = new AS4OutboundQueueEntry (nID,
+                                                                              aEnqueueDT,
+                                                                              sURL,
+                                                                              sMessageID,
+                                                                              StringHelper.getNotEmpty (sContentType,
+                                                                                                        (String) null),
+                                                                              aHeaders,
+                                                                              nSegmentNumber,
+                                                                              nBodyPos,
+                                                                              nBodyLen);
+              aApply = () -> {
+                m_aPending.put (Long.valueOf (nID), aEntry);
+                m_nNextID = Math.max (m_nNextID, nID + 1);
+              };
+              break;
+            }
+            case TYPE_ATTEMPT:
+            {
+              final int nAttempt = aPayloadDIS.readInt ();
+              aApply = () -> {
+                final AS4OutboundQueueEntry aEntry = m_aPending.get (Long.valueOf (nID));
+                if (aEntry != null)
+                  aEntry.setAttemptCount (Math.max (aEntry.getAttemptCount (), nAttempt));
+              };
+              break;
+            }
+            case TYPE_DONE:
+              aPayloadDIS.readBoolean ();
+              aApply = () -> m_aPending.remove (Long.valueOf (nID));
+              break;
+            default:
+              LOGGER.warn ("Ignoring unknown record type " + nType + " in journal segment " + aFile);
+              break;
+          }
+          // Skip the rest (e.g. the body) but include it in the CRC
+          _skipFully (aCIS, nPayloadLen - aCIS.getBytesRead ());
+        }
+        catch (final EOFException ex)
+        {
+          LOGGER.warn ("Ignoring truncated record at position " + nPos + " of journal segment " + aFile);
+          break;
+        }
+
+        if (aDIS.readLong () != aCRC.getValue ())
+        {
+          LOGGER.warn ("Ignoring record with CRC mismatch at position " + nPos + " of journal segment " + aFile);
+          break;
+        }
+        if (aApply != null)
+          aApply.run ();
+        nPos = nPayloadPos + nPayloadLen + RECORD_TRAILER_SIZE;
+      }
+    }
+  }
+
+  @GuardedBy ("m_aLock")
+  private void _openSegment (final long nSegmentNumber) throws IOException
+  {
+    m_aActiveChannel = FileChannel.open (_getSegmentFile (nSegmentNumber).toPath (),
+                                         StandardOpenOption.CREATE_NEW,
+                                         StandardOpenOption.WRITE);
+    m_nActiveSegmentNumber = nSegmentNumber;
+    m_nActivePosition = 0;
+    m_aPendingPerSegment.put (Long.valueOf (nSegmentNumber), new MutableInt (0));
+  }
+
+  @GuardedBy ("m_aLock")
+  private void _deleteCompletedSegments ()
+  {
+    // Only delete from the oldest segment on, so that no "done" record is lost
+    // that refers to an entry in a later segment
+    while (!m_aPendingPerSegment.isEmpty ())
+    {
+      final Map.Entry <Long, MutableInt> aFirst = m_aPendingPerSegment.firstEntry ();
+      final long nSegmentNumber = aFirst.getKey ().longValue ();
+      if (nSegmentNumber == m_nActiveSegmentNumber || aFirst.getValue ().intValue () > 0)
+        break;
+
+      m_aPendingPerSegment.remove (aFirst.getKey ());
+      final File aFile = _getSegmentFile (nSegmentNumber);
+      try
+      {
+        Files.deleteIfExists (aFile.toPath ());
+      }
+      catch (final IOException ex)
+      {
+        LOGGER.warn ("Failed to delete completed journal segment " + aFile, ex);
+      }
+    }
+  }
+
+  /**
+   * Append a single record to the active segment.
+   *
+   * @return The absolute position in the segment, directly after the metadata.
+   *         This is where the body starts.
+   */
+  @GuardedBy ("m_aLock")
+  private long _appendRecord (final byte nType,
+                              @Nonnull final IThrowingConsumer <DataOutputStream, IOException> aMetadataWriter,
+                              @Nullable final HttpEntity aBody) throws IOException
+  {
+    if (m_aActiveChannel == null)
+      throw new IOException ("The outbound journal is already closed");
+
+    if (m_nActivePosition >= m_nMaxSegmentSize)
+    {
+      // Roll over to the next segment
+      m_aActiveChannel.close ();
+      _openSegment (m_nActiveSegmentNumber + 1);
+    }
+
+    final long nRecordPos = m_nActivePosition;
+    try
+    {
+      // Payload length is written last, so a torn record is always detected
+      final ByteBuffer aHeader = ByteBuffer.allocate (RECORD_HEADER_SIZE);
+      aHeader.putInt (RECORD_MAGIC).put (nType).putLong (-1).flip ();
+      m_aActiveChannel.position (nRecordPos);
+      while (aHeader.hasRemaining ())
+        m_aActiveChannel.write (aHeader);
+
+      final CRC32 aCRC = new CRC32 ();
+      // Channels.newOutputStream closes the channel on close - so never close
+      final BufferedOutputStream aBOS = new BufferedOutputStream (Channels.newOutputStream (m_aActiveChannel),
+                                                                  BUFFER_SIZE);
+      final CountingOutputStream aCOS = new CountingOutputStream (new CheckedOutputStream (aBOS, aCRC));
+      final DataOutputStream aDOS = new DataOutputStream (aCOS);
+      aMetadataWriter.accept (aDOS);
+      final long nBodyPos = nRecordPos + RECORD_HEADER_SIZE + aCOS.getBytesWritten ();
+      if (aBody != null)
+        aBody.writeTo (new NonClosingOutputStream (aDOS));
+      aDOS.flush ();
+      final long nPayloadLen = aCOS.getBytesWritten ();
+
+      final ByteBuffer aTrailer = ByteBuffer.allocate (RECORD_TRAILER_SIZE);
+      aTrailer.putLong (aCRC.getValue ()).flip ();
+      while (aTrailer.hasRemaining ())
+        m_aActiveChannel.write (aTrailer);
+
+      final ByteBuffer aLength = ByteBuffer.allocate (8);
+      aLength.putLong (nPayloadLen).flip ();
+      long nLengthPos = nRecordPos + 4 + 1;
+      while (aLength.hasRemaining ())
+        nLengthPos += m_aActiveChannel.write (aLength, nLengthPos);
+
+      if (m_bSyncOnWrite)
+        m_aActiveChannel.force (false);
+      m_nActivePosition = nRecordPos + RECORD_HEADER_SIZE + nPayloadLen + RECORD_TRAILER_SIZE;
+      return nBodyPos;
+    }
+    catch (final IOException | RuntimeException ex)
+    {
+      // Remove the partial record
+      try
+      {
+        m_aActiveChannel.truncate (nRecordPos);
+      }
+      catch (final IOException ex2)
+      {
+        LOGGER.warn ("Failed to truncate partial journal record", ex2);
+      }
+      throw ex;
+    }
+  }
+
+  /**
+   * Durably append a new message to the journal.
+   *
+   * @param sURL
+   *        Destination URL. May neither be <code>null</code> nor empty.
+   * @param sMessageID
+   *        AS4 message ID. May neither be <code>null</code> nor empty.
+   * @param aHttpHeaders
+   *        Custom HTTP headers. May be <code>null</code>.
+   * @param aEntity
+   *        The HTTP entity to be stored. May not be <code>null</code>.
+   * @return The created entry. Never <code>null</code>.
+   * @throws IOException
+   *         In case writing failed
+   */
+  @Nonnull
+  AS4OutboundQueueEntry append (@Nonnull @Nonempty final String sURL,
+                                @Nonnull @Nonempty final String sMessageID,
+                                @Nullable final HttpHeaderMap aHttpHeaders,
+                                @Nonnull final HttpEntity aEntity) throws IOException
+  {
+    final HttpHeaderMap aHeaders = aHttpHeaders == null ? new HttpHeaderMap () : aHttpHeaders.getClone ();
+    final ICommonsList <String> aHeaderPairs = new CommonsArrayList <> ();
+    aHeaders.forEachSingleHeader ( (n, v) -> {
+      aHeaderPairs.add (n);
+      aHeaderPairs.add (v);
+    }, false);
+    final String sContentType = aEntity.getContentType ();
+    final OffsetDateTime aEnqueueDT = PDTFactory.getCurrentOffsetDateTime ().truncatedTo (ChronoUnit.MILLIS);
+
+    m_aLock.lock ();
+    try
+    {
+      final long nID = m_nNextID;
+      final long nBodyPos = _appendRecord (TYPE_ENQUEUE, aDOS -> {
+        aDOS.writeLong (nID);
+        aDOS.writeLong (aEnqueueDT.toInstant ().toEpochMilli ());
+        aDOS.writeUTF (sURL);
+        aDOS.writeUTF (sMessageID);
+        aDOS.writeUTF (StringHelper.getNotNull (sContentType));
+        aDOS.writeInt (aHeaderPairs.size () / 2);
+        for (final String s : aHeaderPairs)
+          aDOS.writeUTF (s);
+      }, aEntity);
+      m_nNextID++;
+
+      final long nBodyLen = m_nActivePosition - RECORD_TRAILER_SIZE - nBodyPos;
+      final AS4OutboundQueueEntry ret = new AS4OutboundQueueEntry (nID,
+                                                                   aEnqueueDT,
+                                                                   sURL,
+                                                                   sMessageID,
+                                                                   StringHelper.getNotEmpty (sContentType,
+                                                                                             (String) null),
+                                                                   aHeaders,
+                                                                   m_nActiveSegmentNumber,
+                                                                   nBodyPos,
+                                                                   nBodyLen);
+      m_aPending.put (Long.valueOf (nID), ret);
+      m_aPendingPerSegment.get (Long.valueOf (m_nActiveSegmentNumber)).inc ();
+      return ret;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Durably record that a transmission attempt is started.
+   *
+   * @param aEntry
+   *        The entry to be sent. May not be <code>null</code>.
+   * @return The number of the started attempt, 1-based.
+   * @throws IOException
+   *         In case writing failed
+   */
+  @Nonnegative
+  int recordAttempt (@Nonnull final AS4OutboundQueueEntry aEntry) throws IOException
+  {
+    m_aLock.lock ();
+    try
+    {
+      final int nAttempt = aEntry.getAttemptCount () + 1;
+      _appendRecord (TYPE_ATTEMPT, aDOS -> {
+        aDOS.writeLong (aEntry.getID ());
+        aDOS.writeInt (nAttempt);
+      }, null);
+      aEntry.setAttemptCount (nAttempt);
+      return nAttempt;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Durably record that an entry is finished. Afterwards its body is no longer
+   * available.
+   *
+   * @param aEntry
+   *        The finished entry. May not be <code>null</code>.
+   * @param bSuccess
+   *        <code>true</code> if it was delivered, <code>false</code> if it
+   *        finally failed.
+   * @throws IOException
+   *         In case writing failed
+   */
+  void recordDone (@Nonnull final AS4OutboundQueueEntry aEntry, final boolean bSuccess) throws IOException
+  {
+    m_aLock.lock ();
+    try
+    {
+      if (m_aPending.remove (Long.valueOf (aEntry.getID ())) == null)
+        return;
+
+      _appendRecord (TYPE_DONE, aDOS -> {
+        aDOS.writeLong (aEntry.getID ());
+        aDOS.writeBoolean (bSuccess);
+      }, null);
+
+      m_aPendingPerSegment.get (Long.valueOf (aEntry.getSegmentNumber ())).dec ();
+      _deleteCompletedSegments ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Open the stored HTTP body of a pending entry.
+   *
+   * @param aEntry
+   *        The pending entry. May not be <code>null</code>.
+   * @return An input stream that contains exactly the body. It must be closed
+   *         by the caller.
+   * @throws IOException
+   *         In case reading failed
+   */
+  @Nonnull
+  InputStream openBody (@Nonnull final AS4OutboundQueueEntry aEntry) throws IOException
+  {
+    final FileChannel aChannel = FileChannel.open (_getSegmentFile (aEntry.getSegmentNumber ()).toPath (),
+                                                   StandardOpenOption.READ);
+    try
+    {
+      aChannel.position (aEntry.getBodyPosition ());
+      return new BoundedInputStream (new BufferedInputStream (Channels.newInputStream (aChannel), BUFFER_SIZE),
+                                     aEntry.getBodyLength ());
+    }
+    catch (final IOException ex)
+    {
+      aChannel.close ();
+      throw ex;
+    }
+  }
+
+  /**
+   * @return All entries that are neither delivered nor finally failed, ordered
+   *         by ID. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  ICommonsList <AS4OutboundQueueEntry> getAllPendingEntries ()
+  {
+    return m_aLock.lockedGet ( () -> new CommonsArrayList <> (m_aPending.values ()));
+  }
+
+  /**
+   * @return The number of pending entries. Always &ge; 0.
+   */
+  @Nonnegative
+  int getPendingCount ()
+  {
+    return m_aLock.lockedInt (m_aPending::size);
+  }
+
+  /**
+   * @return The number of existing segment files. Always &gt; 0.
+   */
+  @Nonnegative
+  int getSegmentCount ()
+  {
+    return m_aLock.lockedInt (m_aPendingPerSegment::size);
+  }
+
+  public void close () throws IOException
+  {
+    m_aLock.lock ();
+    try
+    {
+      if (m_aActiveChannel != null)
+      {
+        m_aActiveChannel.close ();
+        m_aActiveChannel = null;
+      }
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+}
@@ -0,0 +1,503 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.queue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.InputStreamEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.http.HttpHeaderMap;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.httpclient.response.ResponseHandlerByteArray;
+import com.helger.phase4.client.AS4ClientBuiltMessage;
+import com.helger.phase4.http.BasicHttpPoster;
+import com.helger.phase4.http.HttpRetrySettings;
+import com.helger.phase4.http.IHttpPoster;
+import com.helger.phase4.util.AS4ExecutionHelper;
+
+/**
+ * A durable store-and-forward queue for outbound AS4 messages. Enqueued
+ * messages are first written to an append-only {@link AS4OutboundJournal} and
+ * the enqueue call returns as soon as the data is on disk - the network is
+ * never touched by the producer. A configurable number of worker threads
+ * drains the queue, and failed transmissions are retried according to the
+ * {@link HttpRetrySettings} semantics of the HTTP posters (maximum number of
+ * retries, increasing and jittered durations). The attempt count is stored in
+ * the journal as well, so that after a process restart all pending messages
+ * are resumed with the remaining retries.<br>
+ * The fully built HTTP message (incl. signature and encryption) is stored, so
+ * each retry sends exactly the same bytes. The HTTP response is handed to the
+ * {@link IAS4OutboundQueueCallback} as a byte array, as the context to verify
+ * a signed receipt is not available after a restart.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@ThreadSafe
+public class AS4OutboundQueue implements AutoCloseable
+{
+  public static final int DEFAULT_WORKER_COUNT = 4;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4OutboundQueue.class);
+
+  private static final class ScheduledEntry implements Delayed
+  {
+    private final AS4OutboundQueueEntry m_aEntry;
+    private final long m_nDueNanos;
+
+    ScheduledEntry (@Nonnull final AS4OutboundQueueEntry aEntry, @Nonnull final Duration aDelay)
+    {
+      m_aEntry = aEntry;
+      m_nDueNanos = System.nanoTime () + aDelay.toNanos ();
+    }
+
+    public long getDelay (@Nonnull final TimeUnit eUnit)
+    {
+      return eUnit.convert (m_nDueNanos - System.nanoTime (), TimeUnit.NANOSECONDS);
+    }
+
+    public int compareTo (@Nonnull final Delayed aOther)
+    {
+      return Long.compare (m_nDueNanos, ((ScheduledEntry) aOther).m_nDueNanos);
+    }
+  }
+
+  private final AS4OutboundJournal m_aJournal;
+  private final DelayQueue <ScheduledEntry> m_aScheduled = new DelayQueue <> ();
+  private final HttpRetrySettings m_aRetrySettings = new HttpRetrySettings ();
+  private final AtomicBoolean m_aStarted = new AtomicBoolean (false);
+  private final AtomicBoolean m_aClosed = new AtomicBoolean (false);
+  private final ICommonsList <Thread> m_aWorkers = new CommonsArrayList <> ();
+  private volatile IHttpPoster m_aHttpPoster = new BasicHttpPoster ();
+  private volatile IAS4OutboundQueueCallback m_aCallback;
+  private volatile int m_nWorkerCount = DEFAULT_WORKER_COUNT;
+
+  /**
+   * Constructor with the default segment size and with syncing on every write.
+   *
+   * @param aDirectory
+   *        The journal directory. Is created if it does not exist. May not be
+   *        <code>null</code>.
+   * @throws IOException
+   *         In case the journal cannot be opened
+   */
+  public AS4OutboundQueue (@Nonnull final File aDirectory) throws IOException
+  {
+    this (aDirectory, AS4OutboundJournal.DEFAULT_MAX_SEGMENT_SIZE, true);
+  }
+
+  /**
+   * Constructor. All pending messages of an existing journal are recovered,
+   * but sending only starts after {@link #start()} was called.
+   *
+   * @param aDirectory
+   *        The journal directory. Is created if it does not exist. May not be
+   *        <code>null</code>.
+   * @param nMaxSegmentSize
+   *        The size in bytes after which a new journal segment is started.
+   *        Must be &gt; 0.
+   * @param bSyncOnWrite
+   *        <code>true</code> to force every journal record to the storage
+   *        device before returning. Only disable this, if the loss of recently
+   *        enqueued messages on a power failure is acceptable.
+   * @throws IOException
+   *         In case the journal cannot be opened
+   */
+  public AS4OutboundQueue (@Nonnull final File aDirectory,
+                           @Nonnegative final long nMaxSegmentSize,
+                           final boolean bSyncOnWrite) throws IOException
+  {
+    m_aJournal = new AS4OutboundJournal (aDirectory, nMaxSegmentSize, bSyncOnWrite);
+    for (final AS4OutboundQueueEntry aEntry : m_aJournal.getAllPendingEntries ())
+      m_aScheduled.add (new ScheduledEntry (aEntry, Duration.ZERO));
+  }
+
+  /**
+   * @return The mutable retry settings. They should only be modified before
+   *         {@link #start()} is called. Never <code>null</code>.
+   */
+  @Nonnull
+  public final HttpRetrySettings retrySettings ()
+  {
+    return m_aRetrySettings;
+  }
+
+  /**
+   * @return The HTTP poster used for transmission. Never <code>null</code>.
+   */
+  @Nonnull
+  public final IHttpPoster getHttpPoster ()
+  {
+    return m_aHttpPoster;
+  }
+
+  /**
+   * Set the HTTP poster to be used. Retries are handled by this queue, so the
+   * retry settings of the poster are not used.
+   *
+   * @param aHttpPoster
+   *        The HTTP poster to use. May not be <code>null</code>.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4OutboundQueue setHttpPoster (@Nonnull final IHttpPoster aHttpPoster)
+  {
+    ValueEnforcer.notNull (aHttpPoster, "HttpPoster");
+    m_aHttpPoster = aHttpPoster;
+    return this;
+  }
+
+  /**
+   * @return The status callback. May be <code>null</code>.
+   */
+  @Nullable
+  public final IAS4OutboundQueueCallback getCallback ()
+  {
+    return m_aCallback;
+  }
+
+  /**
+   * Set the status callback.
+   *
+   * @param aCallback
+   *        The callback to use. May be <code>null</code>.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4OutboundQueue setCallback (@Nullable final IAS4OutboundQueueCallback aCallback)
+  {
+    m_aCallback = aCallback;
+    return this;
+  }
+
+  /**
+   * @return The number of worker threads. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getWorkerCount ()
+  {
+    return m_nWorkerCount;
+  }
+
+  /**
+   * Set the number of worker threads. Must be called before {@link #start()}.
+   * Defaults to {@link #DEFAULT_WORKER_COUNT}.
+   *
+   * @param nWorkerCount
+   *        The number of worker threads. Must be &gt; 0.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4OutboundQueue setWorkerCount (@Nonnegative final int nWorkerCount)
+  {
+    ValueEnforcer.isGT0 (nWorkerCount, "WorkerCount");
+    m_nWorkerCount = nWorkerCount;
+    return this;
+  }
+
+  /**
+   * @return The number of messages that are neither delivered nor finally
+   *         failed. Always &ge; 0.
+   */
+  @Nonnegative
+  public final int getPendingCount ()
+  {
+    return m_aJournal.getPendingCount ();
+  }
+
+  /**
+   * @return All messages that are neither delivered nor finally failed.
+   *         Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public final ICommonsList <AS4OutboundQueueEntry> getAllPendingEntries ()
+  {
+    return m_aJournal.getAllPendingEntries ();
+  }
+
+  private void _notify (@Nonnull final AS4OutboundQueueEntry aEntry,
+                        @Nonnull final EAS4OutboundQueueStatus eStatus,
+                        @Nullable final byte [] aResponse,
+                        @Nullable final Exception aException)
+  {
+    final IAS4OutboundQueueCallback aCallback = m_aCallback;
+    if (aCallback != null)
+      try
+      {
+        aCallback.onStatusChange (aEntry, eStatus, aResponse, aException);
+      }
+      catch (final RuntimeException ex)
+      {
+        LOGGER.error ("Failed to invoke IAS4OutboundQueueCallback", ex);
+      }
+  }
+
+  /**
+   * Durably enqueue a message for sending. This method only writes to the
+   * journal and never blocks on the network.
+   *
+   * @param sURL
+   *        The destination URL. May neither be <code>null</code> nor empty.
+   * @param sMessageID
+   *        The AS4 message ID. May neither be <code>null</code> nor empty.
+   * @param aHttpHeaders
+   *        Custom HTTP headers. May be <code>null</code>.
+   * @param aHttpEntity
+   *        The HTTP entity to be sent. It is fully read. May not be
+   *        <code>null</code>.
+   * @return The created queue entry. Never <code>null</code>.
+   * @throws IOException
+   *         In case the message could not be stored.
+   */
+  @Nonnull
+  public AS4OutboundQueueEntry enqueue (@Nonnull @Nonempty final String sURL,
+                                        @Nonnull @Nonempty final String sMessageID,
+                                        @Nullable final HttpHeaderMap aHttpHeaders,
+                                        @Nonnull final HttpEntity aHttpEntity) throws IOException
+  {
+    ValueEnforcer.notEmpty (sURL, "URL");
+    ValueEnforcer.notEmpty (sMessageID, "MessageID");
+    ValueEnforcer.notNull (aHttpEntity, "HttpEntity");
+    if (m_aClosed.get ())
+      throw new IllegalStateException ("The outbound queue is already closed");
+
+    final AS4OutboundQueueEntry ret = m_aJournal.append (sURL, sMessageID, aHttpHeaders, aHttpEntity);
+    _notify (ret, EAS4OutboundQueueStatus.ENQUEUED, null, null);
+    m_aScheduled.add (new ScheduledEntry (ret, Duration.ZERO));
+    return ret;
+  }
+
+  /**
+   * Durably enqueue a built AS4 message for sending.
+   *
+   * @param sURL
+   *        The destination URL. May neither be <code>null</code> nor empty.
+   * @param aBuiltMsg
+   *        The built message. May not be <code>null</code>.
+   * @return The created queue entry. Never <code>null</code>.
+   * @throws IOException
+   *         In case the message could not be stored.
+   * @see #enqueue(String, String, HttpHeaderMap, HttpEntity)
+   */
+  @Nonnull
+  public AS4OutboundQueueEntry enqueue (@Nonnull @Nonempty final String sURL,
+                                        @Nonnull final AS4ClientBuiltMessage aBuiltMsg) throws IOException
+  {
+    ValueEnforcer.notNull (aBuiltMsg, "BuiltMsg");
+    return enqueue (sURL, aBuiltMsg.getMessageID (), aBuiltMsg.getCustomHeaders (), aBuiltMsg.getHttpEntity ());
+  }
+
+  /**
+   * Get the waiting time before the next attempt, the same way the HTTP
+   * posters do it.
+   *
+   * @param nFailedAttempts
+   *        The number of failed attempts so far. Must be &gt; 0.
+   * @return The jittered duration. Never <code>null</code>.
+   */
+  @Nonnull
+  private Duration _getDurationBeforeRetry (@Nonnegative final int nFailedAttempts)
+  {
+    Duration ret = m_aRetrySettings.getDurationBeforeRetry ();
+    // After the first retry, increase the waiting time
+    for (int nTry = 2; nTry < nFailedAttempts; ++nTry)
+      ret = HttpRetrySettings.getIncreased (ret, m_aRetrySettings.getRetryIncreaseFactor ());
+    return HttpRetrySettings.getJittered (ret, m_aRetrySettings.getRetryJitterFactor ());
+  }
+
+  private void _send (@Nonnull final AS4OutboundQueueEntry aEntry) throws IOException
+  {
+    final int nAttempt = m_aJournal.recordAttempt (aEntry);
+    final int nMaxTries = 1 + m_aRetrySettings.getMaxRetries ();
+
+    byte [] aResponse = null;
+    Exception aException = null;
+    try (final InputStream aBodyIS = m_aJournal.openBody (aEntry))
+    {
+      final String sContentType = aEntry.getContentType ();
+      final HttpEntity aEntity = new InputStreamEntity (aBodyIS,
+                                                        aEntry.getBodyLength (),
+                                                        sContentType == null ? null : ContentType.parse (sContentType));
+      aResponse = m_aHttpPoster.sendGenericMessage (aEntry.getURL (),
+                                                    aEntry.getAllHttpHeaders (),
+                                                    aEntity,
+                                                    new ResponseHandlerByteArray ());
+    }
+    catch (final IOException | RuntimeException ex)
+    {
+      // Runtime exceptions (e.g. an invalid URL) are failed attempts as well,
+      // so that the entry is not stuck until the next restart
+      aException = ex;
+    }
+
+    if (aException == null)
+    {
+      m_aJournal.recordDone (aEntry, true);
+      _notify (aEntry, EAS4OutboundQueueStatus.DELIVERED, aResponse, null);
+      return;
+    }
+
+    if (nAttempt >= nMaxTries || m_aClosed.get ())
+    {
+      if (nAttempt >= nMaxTries)
+      {
+        LOGGER.warn ("Finally failed to send queued message '" +
+                     aEntry.getMessageID () +
+                     "' to '" +
+                     aEntry.getURL () +
+                     "' after " +
+                     nAttempt +
+                     " attempt(s): " +
+                     aException.getMessage ());
+        m_aJournal.recordDone (aEntry, false);
+        _notify (aEntry, EAS4OutboundQueueStatus.FAILED, null, aException);
+      }
+      // else: closing - it is resumed on the next start
+      return;
+    }
+
+    final Duration aDelay = _getDurationBeforeRetry (nAttempt);
+    LOGGER.warn ("Error sending queued message '" +
+                 aEntry.getMessageID () +
+                 "' to '" +
+                 aEntry.getURL () +
+                 "': " +
+                 aException.getClass ().getSimpleName () +
+                 " - " +
+                 aException.getMessage () +
+                 " - waiting " +
+                 aDelay.toMillis () +
+                 " ms, than retrying");
+    m_aScheduled.add (new ScheduledEntry (aEntry, aDelay));
+    _notify (aEntry, EAS4OutboundQueueStatus.RETRY_SCHEDULED, null, aException);
+  }
+
+  private void _runWorker ()
+  {
+    while (!m_aClosed.get ())
+    {
+      final ScheduledEntry aScheduled;
+      try
+      {
+        aScheduled = m_aScheduled.take ();
+      }
+      catch (final InterruptedException ex)
+      {
+        // Closing
+        Thread.currentThread ().interrupt ();
+        break;
+      }
+
+      try
+      {
+        _send (aScheduled.m_aEntry);
+      }
+      catch (final IOException | RuntimeException ex)
+      {
+        // Journal error - the entry stays pending and is resumed on restart
+        LOGGER.error ("Failed to update the outbound journal for message '" +
+                      aScheduled.m_aEntry.getMessageID () +
+                      "'",
+                      ex);
+      }
+    }
+  }
+
+  /**
+   * Start the worker threads. Calling this method more than once has no
+   * effect.
+   *
+   * @return this for chaining
+   */
+  @Nonnull
+  public AS4OutboundQueue start ()
+  {
+    if (m_aClosed.get ())
+      throw new IllegalStateException ("The outbound queue is already closed");
+    if (m_aStarted.compareAndSet (false, true))
+    {
+      for (int i = 0; i < m_nWorkerCount; ++i)
+      {
+        final Thread aWorker = AS4ExecutionHelper.newThread ("phase4-AS4OutboundQueue-" + i, this::_runWorker);
+        m_aWorkers.add (aWorker);
+        aWorker.start ();
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Stop the worker threads and close the journal. Running transmissions are
+   * finished first. All pending messages are resumed when a new queue is
+   * created on the same directory.
+   *
+   * @throws IOException
+   *         In case closing the journal failed
+   */
+  public void close () throws IOException
+  {
+    if (m_aClosed.compareAndSet (false, true))
+    {
+      for (final Thread aWorker : m_aWorkers)
+        aWorker.interrupt ();
+      for (final Thread aWorker : m_aWorkers)
+        try
+        {
+          aWorker.join ();
+        }
+        catch (final InterruptedException ex)
+        {
+          Thread.currentThread ().interrupt ();
+        }
+      m_aJournal.close ();
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("RetrySettings", m_aRetrySettings)
+                                       .append ("HttpPoster", m_aHttpPoster)
+                                       .append ("Callback", m_aCallback)
+                                       .append ("WorkerCount", m_nWorkerCount)
+                                       .append ("Started", m_aStarted.get ())
+                                       .append ("Closed", m_aClosed.get ())
+                                       .getToString ();
+  }
+}
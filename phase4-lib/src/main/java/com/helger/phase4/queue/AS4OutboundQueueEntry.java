@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.queue;
+
+import java.time.OffsetDateTime;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.http.HttpHeaderMap;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * A single message of the {@link AS4OutboundQueue}. It references the fully
+ * built message body in the journal.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@ThreadSafe
+public final class AS4OutboundQueueEntry
+{
+  private final long m_nID;
+  private final OffsetDateTime m_aEnqueueDT;
+  private final String m_sURL;
+  private final String m_sMessageID;
+  private final String m_sContentType;
+  private final HttpHeaderMap m_aHttpHeaders;
+  // Location of the body in the journal
+  private final long m_nSegmentNumber;
+  private final long m_nBodyPosition;
+  private final long m_nBodyLength;
+  private volatile int m_nAttemptCount;
+
+  AS4OutboundQueueEntry (final long nID,
+                         @Nonnull final OffsetDateTime aEnqueueDT,
+                         @Nonnull @Nonempty final String sURL,
+                         @Nonnull @Nonempty final String sMessageID,
+                         @Nullable final String sContentType,
+                         @Nonnull final HttpHeaderMap aHttpHeaders,
+                         final long nSegmentNumber,
+                         final long nBodyPosition,
+                         final long nBodyLength)
+  {
+    m_nID = nID;
+    m_aEnqueueDT = aEnqueueDT;
+    m_sURL = sURL;
+    m_sMessageID = sMessageID;
+    m_sContentType = sContentType;
+    m_aHttpHeaders = aHttpHeaders;
+    m_nSegmentNumber = nSegmentNumber;
+    m_nBodyPosition = nBodyPosition;
+    m_nBodyLength = nBodyLength;
+  }
+
+  /**
+   * @return The journal internal ID of this entry. Unique per journal
+   *         directory.
+   */
+  public long getID ()
+  {
+    return m_nID;
+  }
+
+  /**
+   * @return The date time when the entry was enqueued. Never <code>null</code>.
+   */
+  @Nonnull
+  public OffsetDateTime getEnqueueDateTime ()
+  {
+    return m_aEnqueueDT;
+  }
+
+  /**
+   * @return The destination URL. Neither <code>null</code> nor empty.
+   */
+  @Nonnull
+  @Nonempty
+  public String getURL ()
+  {
+    return m_sURL;
+  }
+
+  /**
+   * @return The AS4 message ID. Neither <code>null</code> nor empty.
+   */
+  @Nonnull
+  @Nonempty
+  public String getMessageID ()
+  {
+    return m_sMessageID;
+  }
+
+  /**
+   * @return The HTTP content type of the body. May be <code>null</code>.
+   */
+  @Nullable
+  public String getContentType ()
+  {
+    return m_sContentType;
+  }
+
+  /**
+   * @return A copy of the custom HTTP headers to be sent. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public HttpHeaderMap getAllHttpHeaders ()
+  {
+    return m_aHttpHeaders.getClone ();
+  }
+
+  long getSegmentNumber ()
+  {
+    return m_nSegmentNumber;
+  }
+
+  long getBodyPosition ()
+  {
+    return m_nBodyPosition;
+  }
+
+  /**
+   * @return The number of bytes of the message body. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getBodyLength ()
+  {
+    return m_nBodyLength;
+  }
+
+  /**
+   * @return The number of transmission attempts that were started so far,
+   *         including the ones before a restart. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getAttemptCount ()
+  {
+    return m_nAttemptCount;
+  }
+
+  void setAttemptCount (@Nonnegative final int nAttemptCount)
+  {
+    m_nAttemptCount = nAttemptCount;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("ID", m_nID)
+                                       .append ("EnqueueDT", m_aEnqueueDT)
+                                       .append ("URL", m_sURL)
+                                       .append ("MessageID", m_sMessageID)
+                                       .append ("ContentType", m_sContentType)
+                                       .append ("HttpHeaders", m_aHttpHeaders)
+                                       .append ("SegmentNumber", m_nSegmentNumber)
+                                       .append ("BodyPosition", m_nBodyPosition)
+                                       .append ("BodyLength", m_nBodyLength)
+                                       .append ("AttemptCount", m_nAttemptCount)
+                                       .getToString ();
+  }
+}
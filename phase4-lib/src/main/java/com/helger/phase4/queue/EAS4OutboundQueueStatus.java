@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.queue;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.lang.EnumHelper;
+
+/**
+ * The status changes of an {@link AS4OutboundQueueEntry} that are reported to
+ * the {@link IAS4OutboundQueueCallback}.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+public enum EAS4OutboundQueueStatus implements IHasID <String>
+{
+  /**
+   * The message was durably stored in the journal.
+   */
+  ENQUEUED ("enqueued"),
+  /**
+   * A transmission attempt failed and another attempt is scheduled.
+   */
+  RETRY_SCHEDULED ("retry-scheduled"),
+  /**
+   * The message was successfully transmitted. This is a final state.
+   */
+  DELIVERED ("delivered"),
+  /**
+   * All transmission attempts failed. This is a final state.
+   */
+  FAILED ("failed");
+
+  private final String m_sID;
+
+  EAS4OutboundQueueStatus (@Nonnull @Nonempty final String sID)
+  {
+    m_sID = sID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  /**
+   * @return <code>true</code> if no further status change will happen for the
+   *         entry.
+   */
+  public boolean isFinal ()
+  {
+    return this == DELIVERED || this == FAILED;
+  }
+
+  @Nullable
+  public static EAS4OutboundQueueStatus getFromIDOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDOrNull (EAS4OutboundQueueStatus.class, sID);
+  }
+}
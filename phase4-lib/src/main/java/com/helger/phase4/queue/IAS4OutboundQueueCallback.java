@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.queue;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Callback interface for status changes of the entries of an
+ * {@link AS4OutboundQueue}.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@FunctionalInterface
+public interface IAS4OutboundQueueCallback
+{
+  /**
+   * Invoked on every status change of a queue entry. This method may be
+   * invoked concurrently from different worker threads and should return
+   * quickly.
+   *
+   * @param aEntry
+   *        The affected entry. Never <code>null</code>.
+   * @param eStatus
+   *        The new status. Never <code>null</code>.
+   * @param aResponse
+   *        The bytes of the HTTP response. Only present for
+   *        {@link EAS4OutboundQueueStatus#DELIVERED}. May be <code>null</code>.
+   * @param aException
+   *        The exception of the last transmission attempt. Only present for
+   *        {@link EAS4OutboundQueueStatus#RETRY_SCHEDULED} and
+   *        {@link EAS4OutboundQueueStatus#FAILED}. May be <code>null</code>.
+   */
+  void onStatusChange (@Nonnull AS4OutboundQueueEntry aEntry,
+                       @Nonnull EAS4OutboundQueueStatus eStatus,
+                       @Nullable byte [] aResponse,
+                       @Nullable Exception aException);
+}
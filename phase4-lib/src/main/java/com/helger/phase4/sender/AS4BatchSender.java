@@ -0,0 +1,528 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.sender;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.concurrent.SimpleLock;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.sender.AbstractAS4UserMessageBuilder.ESimpleUserMessageSendResult;
+import com.helger.phase4.sender.AbstractAS4UserMessageBuilderMIMEPayload.BatchBuiltMessage;
+import com.helger.phase4.util.AS4ExecutionHelper;
+import com.helger.phase4.util.Phase4Exception;
+
+/**
+ * Pipelined sender for many AS4 user messages. Each message is handled in two
+ * stages:
+ * <ol>
+ * <li>The CPU bound stage checks the parameters and builds, signs and
+ * encrypts the message. It runs on the build executor.</li>
+ * <li>The I/O bound stage performs the HTTP transmission and handles the
+ * received signal message. It runs on the send executor.</li>
+ * </ol>
+ * So while messages are waiting for the response of the receiver, the next
+ * messages are already built. At most
+ * {@link #maxInFlightPerDestination(int)} messages are transmitted
+ * concurrently to the same endpoint URL, and at most
+ * {@link #maxPending(int)} messages are accepted but not yet finished -
+ * {@link #submit(AbstractAS4UserMessageBuilderMIMEPayload)} blocks if this
+ * limit is reached.<br>
+ * Each builder must be used for exactly one message and must not be modified
+ * after it was submitted. The configuration of this class must be performed
+ * before the first message is submitted. If no executors are provided, a
+ * fixed size thread pool owned by this object is used for building (which may
+ * include blocking lookups, e.g. SMP queries) and a cached thread pool owned by
+ * this object is used for sending. Call {@link #close()} to release them.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@ThreadSafe
+public class AS4BatchSender implements AutoCloseable
+{
+  public static final int DEFAULT_MAX_IN_FLIGHT_PER_DESTINATION = 4;
+  public static final int DEFAULT_MAX_PENDING = 64;
+  public static final int DEFAULT_BUILD_THREAD_COUNT = Math.max (2, Runtime.getRuntime ().availableProcessors ());
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4BatchSender.class);
+
+  /**
+   * A built message waiting for its transmission.
+   */
+  private static final class PendingSend
+  {
+    private final AbstractAS4UserMessageBuilderMIMEPayload <?> m_aBuilder;
+    private final BatchBuiltMessage m_aBuilt;
+    private final CompletableFuture <ESimpleUserMessageSendResult> m_aFuture;
+
+    PendingSend (@Nonnull final AbstractAS4UserMessageBuilderMIMEPayload <?> aBuilder,
+                 @Nonnull final BatchBuiltMessage aBuilt,
+                 @Nonnull final CompletableFuture <ESimpleUserMessageSendResult> aFuture)
+    {
+      m_aBuilder = aBuilder;
+      m_aBuilt = aBuilt;
+      m_aFuture = aFuture;
+    }
+  }
+
+  /**
+   * The concurrency state of a single endpoint URL.
+   */
+  private static final class Destination
+  {
+    private int m_nInFlight;
+    private final Deque <PendingSend> m_aWaiting = new ArrayDeque <> ();
+  }
+
+  private Executor m_aBuildExecutor;
+  private Executor m_aSendExecutor;
+  private int m_nMaxInFlightPerDestination = DEFAULT_MAX_IN_FLIGHT_PER_DESTINATION;
+  private int m_nMaxPending = DEFAULT_MAX_PENDING;
+  private IAS4BatchResultConsumer m_aResultConsumer;
+
+  private final SimpleLock m_aLock = new SimpleLock ();
+  @GuardedBy ("m_aLock")
+  private Semaphore m_aPendingLimit;
+  @GuardedBy ("m_aLock")
+  private ExecutorService m_aOwnedBuildExecutor;
+  @GuardedBy ("m_aLock")
+  private ExecutorService m_aOwnedSendExecutor;
+  @GuardedBy ("m_aLock")
+  private final ICommonsMap <String, Destination> m_aDestinations = new CommonsHashMap <> ();
+
+  public AS4BatchSender ()
+  {}
+
+  /**
+   * @return The executor for building, signing and encrypting. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public final Executor buildExecutor ()
+  {
+    return m_aBuildExecutor;
+  }
+
+  /**
+   * Set the executor for the CPU bound building, signing and encrypting.
+   *
+   * @param a
+   *        The executor to use. May be <code>null</code> to use a fixed size
+   *        thread pool owned by this object.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4BatchSender buildExecutor (@Nullable final Executor a)
+  {
+    m_aBuildExecutor = a;
+    return this;
+  }
+
+  /**
+   * @return The executor for transmission and response handling. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public final Executor sendExecutor ()
+  {
+    return m_aSendExecutor;
+  }
+
+  /**
+   * Set the executor for the I/O bound transmission and response handling.
+   *
+   * @param a
+   *        The executor to use. May be <code>null</code> to use the shared
+   *        virtual thread executor if configured, or an internal cached thread
+   *        pool otherwise.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4BatchSender sendExecutor (@Nullable final Executor a)
+  {
+    m_aSendExecutor = a;
+    return this;
+  }
+
+  /**
+   * @return The maximum number of concurrent transmissions to the same
+   *         endpoint URL. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int maxInFlightPerDestination ()
+  {
+    return m_nMaxInFlightPerDestination;
+  }
+
+  /**
+   * Set the maximum number of concurrent transmissions to the same endpoint
+   * URL. Defaults to {@link #DEFAULT_MAX_IN_FLIGHT_PER_DESTINATION}.
+   *
+   * @param n
+   *        The maximum number. Must be &gt; 0.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4BatchSender maxInFlightPerDestination (@Nonnegative final int n)
+  {
+    ValueEnforcer.isGT0 (n, "MaxInFlightPerDestination");
+    m_nMaxInFlightPerDestination = n;
+    return this;
+  }
+
+  /**
+   * @return The maximum number of submitted but not yet finished messages.
+   *         Always &gt; 0.
+   */
+  @Nonnegative
+  public final int maxPending ()
+  {
+    return m_nMaxPending;
+  }
+
+  /**
+   * Set the maximum number of submitted but not yet finished messages. This
+   * limits the number of built messages that are kept in memory or on disk.
+   * Defaults to {@link #DEFAULT_MAX_PENDING}.
+   *
+   * @param n
+   *        The maximum number. Must be &gt; 0.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4BatchSender maxPending (@Nonnegative final int n)
+  {
+    ValueEnforcer.isGT0 (n, "MaxPending");
+    m_nMaxPending = n;
+    return this;
+  }
+
+  /**
+   * @return The per message result consumer. May be <code>null</code>.
+   */
+  @Nullable
+  public final IAS4BatchResultConsumer resultConsumer ()
+  {
+    return m_aResultConsumer;
+  }
+
+  /**
+   * Set the consumer that is invoked for every message result.
+   *
+   * @param a
+   *        The consumer to use. May be <code>null</code>.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4BatchSender resultConsumer (@Nullable final IAS4BatchResultConsumer a)
+  {
+    m_aResultConsumer = a;
+    return this;
+  }
+
+  @Nonnull
+  private Semaphore _getPendingLimit ()
+  {
+    return m_aLock.lockedGet ( () -> {
+      if (m_aPendingLimit == null)
+        m_aPendingLimit = new Semaphore (m_nMaxPending);
+      return m_aPendingLimit;
+    });
+  }
+
+  @Nonnull
+  private Executor _getBuildExecutor ()
+  {
+    final Executor ret = m_aBuildExecutor;
+    if (ret != null)
+      return ret;
+    return m_aLock.lockedGet ( () -> {
+      if (m_aOwnedBuildExecutor == null)
+        m_aOwnedBuildExecutor = Executors.newFixedThreadPool (DEFAULT_BUILD_THREAD_COUNT,
+                                                              new BasicThreadFactory.Builder ().namingPattern ("phase4-batch-build-%d")
+                                                                                               .daemon (true)
+                                                                                               .build ());
+      return m_aOwnedBuildExecutor;
+    });
+  }
+
+  @Nonnull
+  private Executor _getSendExecutor ()
+  {
+    final Executor ret = m_aSendExecutor;
+    if (ret != null)
+      return ret;
+    // Transmissions are blocking I/O - ideal for virtual threads
+    final Executor aVirtual = AS4ExecutionHelper.getVirtualThreadExecutorOrNull ();
+    if (aVirtual != null)
+      return aVirtual;
+    return m_aLock.lockedGet ( () -> {
+      if (m_aOwnedSendExecutor == null)
+        m_aOwnedSendExecutor = Executors.newCachedThreadPool (new BasicThreadFactory.Builder ().namingPattern ("phase4-batch-send-%d")
+                                                                                              .daemon (true)
+                                                                                              .build ());
+      return m_aOwnedSendExecutor;
+    });
+  }
+
+  private void _onFinished (@Nonnull final AbstractAS4UserMessageBuilderMIMEPayload <?> aBuilder,
+                            @Nonnull final CompletableFuture <ESimpleUserMessageSendResult> aFuture,
+                            @Nonnull final ESimpleUserMessageSendResult eResult,
+                            @Nullable final Phase4Exception aException)
+  {
+    final IAS4BatchResultConsumer aResultConsumer = m_aResultConsumer;
+    if (aResultConsumer != null)
+      try
+      {
+        aResultConsumer.onResult (aBuilder, eResult, aException);
+      }
+      catch (final RuntimeException ex)
+      {
+        LOGGER.error ("Failed to invoke IAS4BatchResultConsumer", ex);
+      }
+    aFuture.complete (eResult);
+  }
+
+  private void _runOnDestination (@Nonnull final String sDestination, @Nonnull final PendingSend aPending)
+  {
+    final boolean bRunNow = m_aLock.lockedBoolean ( () -> {
+      final Destination aDest = m_aDestinations.computeIfAbsent (sDestination, k -> new Destination ());
+      if (aDest.m_nInFlight < m_nMaxInFlightPerDestination)
+      {
+        aDest.m_nInFlight++;
+        return true;
+      }
+      // Wait until a running transmission finished
+      aDest.m_aWaiting.add (aPending);
+      return false;
+    });
+    if (bRunNow)
+      _executeOnDestination (sDestination, aPending);
+  }
+
+  /**
+   * Release a slot of the provided destination.
+   *
+   * @return The next waiting transmission that takes over the slot or
+   *         <code>null</code> if the slot was given back.
+   */
+  @Nullable
+  private PendingSend _releaseSlot (@Nonnull final String sDestination)
+  {
+    return m_aLock.lockedGet ( () -> {
+      final Destination aDest = m_aDestinations.get (sDestination);
+      final PendingSend ret = aDest.m_aWaiting.poll ();
+      if (ret == null)
+      {
+        aDest.m_nInFlight--;
+        if (aDest.m_nInFlight == 0)
+          m_aDestinations.remove (sDestination);
+      }
+      return ret;
+    });
+  }
+
+  private void _executeOnDestination (@Nonnull final String sDestination, @Nonnull final PendingSend aPending)
+  {
+    PendingSend aCurrent = aPending;
+    while (aCurrent != null)
+    {
+      final PendingSend aToSend = aCurrent;
+      try
+      {
+        _getSendExecutor ().execute ( () -> {
+          try
+          {
+            _send (aToSend);
+          }
+          finally
+          {
+            // Start the next waiting transmission on the same slot
+            final PendingSend aNext = _releaseSlot (sDestination);
+            if (aNext != null)
+              _executeOnDestination (sDestination, aNext);
+          }
+        });
+        aCurrent = null;
+      }
+      catch (final RuntimeException ex)
+      {
+        // E.g. the executor was shut down or is saturated - don't leak the slot
+        LOGGER.error ("Failed to schedule the transmission to '" + sDestination + "'", ex);
+        _onFinished (aToSend.m_aBuilder,
+                     aToSend.m_aFuture,
+                     ESimpleUserMessageSendResult.TRANSPORT_ERROR,
+                     new Phase4Exception ("Wrapped Phase4Exception", ex));
+        aCurrent = _releaseSlot (sDestination);
+      }
+    }
+  }
+
+  private void _send (@Nonnull final PendingSend aPending)
+  {
+    final AbstractAS4UserMessageBuilderMIMEPayload <?> aBuilder = aPending.m_aBuilder;
+    final CompletableFuture <ESimpleUserMessageSendResult> aFuture = aPending.m_aFuture;
+    try
+    {
+      _onFinished (aBuilder, aFuture, aBuilder.batchSendBuiltMessage (aPending.m_aBuilt), null);
+    }
+    catch (final Phase4Exception ex)
+    {
+      _onFinished (aBuilder, aFuture, ESimpleUserMessageSendResult.TRANSPORT_ERROR, ex);
+    }
+    catch (final RuntimeException ex)
+    {
+      _onFinished (aBuilder, aFuture, ESimpleUserMessageSendResult.TRANSPORT_ERROR, new Phase4Exception ("Wrapped Phase4Exception", ex));
+    }
+  }
+
+  private void _build (@Nonnull final AbstractAS4UserMessageBuilderMIMEPayload <?> aBuilder,
+                       @Nonnull final CompletableFuture <ESimpleUserMessageSendResult> aFuture)
+  {
+    try
+    {
+      final BatchBuiltMessage aBuilt = aBuilder.batchBuildMessage ();
+      if (aBuilt == null)
+      {
+        // Parameters are missing/incorrect
+        _onFinished (aBuilder, aFuture, ESimpleUserMessageSendResult.INVALID_PARAMETERS, null);
+      }
+      else
+        _runOnDestination (aBuilder.m_sEndpointURL, new PendingSend (aBuilder, aBuilt, aFuture));
+    }
+    catch (final Phase4Exception ex)
+    {
+      _onFinished (aBuilder, aFuture, ESimpleUserMessageSendResult.TRANSPORT_ERROR, ex);
+    }
+    catch (final RuntimeException ex)
+    {
+      _onFinished (aBuilder, aFuture, ESimpleUserMessageSendResult.TRANSPORT_ERROR, new Phase4Exception ("Wrapped Phase4Exception", ex));
+    }
+  }
+
+  /**
+   * Submit a single message for sending. If the maximum number of pending
+   * messages is reached, this method blocks until a previously submitted
+   * message finished.
+   *
+   * @param aBuilder
+   *        The fully configured builder of the message to be send. May not be
+   *        <code>null</code>. It must not be modified afterwards.
+   * @return A future that is completed with the send result after the result
+   *         consumer was invoked. It is never completed exceptionally. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public CompletableFuture <ESimpleUserMessageSendResult> submit (@Nonnull final AbstractAS4UserMessageBuilderMIMEPayload <?> aBuilder)
+  {
+    ValueEnforcer.notNull (aBuilder, "Builder");
+
+    final Semaphore aPendingLimit = _getPendingLimit ();
+    aPendingLimit.acquireUninterruptibly ();
+
+    final CompletableFuture <ESimpleUserMessageSendResult> ret = new CompletableFuture <> ();
+    ret.whenComplete ( (x, t) -> aPendingLimit.release ());
+    try
+    {
+      _getBuildExecutor ().execute ( () -> _build (aBuilder, ret));
+    }
+    catch (final RuntimeException ex)
+    {
+      _onFinished (aBuilder, ret, ESimpleUserMessageSendResult.TRANSPORT_ERROR, new Phase4Exception ("Wrapped Phase4Exception", ex));
+    }
+    return ret;
+  }
+
+  /**
+   * Submit all messages of the provided stream for sending. The stream is
+   * consumed in the calling thread, respecting the maximum number of pending
+   * messages.
+   *
+   * @param aBuilders
+   *        The fully configured builders of the messages to be send. May not
+   *        be <code>null</code>.
+   * @return A future that is completed after all messages were handled. The
+   *         individual results are provided to the result consumer. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public CompletableFuture <Void> sendAll (@Nonnull final Stream <? extends AbstractAS4UserMessageBuilderMIMEPayload <?>> aBuilders)
+  {
+    ValueEnforcer.notNull (aBuilders, "Builders");
+
+    final CompletableFuture <?> [] aFutures = aBuilders.map (this::submit).toArray (CompletableFuture []::new);
+    return CompletableFuture.allOf (aFutures);
+  }
+
+  /**
+   * Shutdown the internally created build and send executors, after all
+   * running builds and transmissions finished. Externally provided executors
+   * are not touched.
+   */
+  public void close ()
+  {
+    // Shutdown the build executor first, as builds hand over to the send
+    // executor
+    final ExecutorService aOwnedBuild = m_aLock.lockedGet ( () -> {
+      final ExecutorService ret = m_aOwnedBuildExecutor;
+      m_aOwnedBuildExecutor = null;
+      return ret;
+    });
+    if (aOwnedBuild != null)
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aOwnedBuild);
+
+    final ExecutorService aOwnedSend = m_aLock.lockedGet ( () -> {
+      final ExecutorService ret = m_aOwnedSendExecutor;
+      m_aOwnedSendExecutor = null;
+      return ret;
+    });
+    if (aOwnedSend != null)
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aOwnedSend);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("BuildExecutor", m_aBuildExecutor)
+                                       .append ("SendExecutor", m_aSendExecutor)
+                                       .append ("MaxInFlightPerDestination", m_nMaxInFlightPerDestination)
+                                       .append ("MaxPending", m_nMaxPending)
+                                       .append ("ResultConsumer", m_aResultConsumer)
+                                       .getToString ();
+  }
+}
@@ -18,25 +18,27 @@ package com.helger.phase4.sender;
 
 import java.io.IOException;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.HttpResponse;
 import org.apache.hc.core5.http.io.HttpClientResponseHandler;
-import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.wrapper.Wrapper;
-import com.helger.httpclient.response.ResponseHandlerHttpEntity;
 import com.helger.phase4.attachment.IAS4IncomingAttachmentFactory;
 import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.client.AS4ClientBuiltMessage;
 import com.helger.phase4.client.AS4ClientPullRequestMessage;
 import com.helger.phase4.client.AS4ClientSentMessage;
 import com.helger.phase4.client.AS4ClientUserMessage;
+import com.helger.phase4.client.AbstractAS4Client;
 import com.helger.phase4.client.IAS4ClientBuildMessageCallback;
 import com.helger.phase4.client.IAS4RawResponseConsumer;
 import com.helger.phase4.client.IAS4RetryCallback;
@@ -47,6 +49,8 @@ import com.helger.phase4.crypto.IAS4IncomingSecurityConfiguration;
 import com.helger.phase4.dump.IAS4IncomingDumper;
 import com.helger.phase4.dump.IAS4OutgoingDumper;
 import com.helger.phase4.ebms3header.Ebms3Property;
+import com.helger.phase4.http.ResponseHandlerSpooled;
+import com.helger.phase4.http.SpooledResponsePayload;
 import com.helger.phase4.messaging.IAS4IncomingMessageMetadata;
 import com.helger.phase4.model.pmode.resolve.IPModeResolver;
 import com.helger.phase4.servlet.AS4IncomingHandler;
@@ -68,24 +72,7 @@ public final class AS4BidirectionalClientHelper
   private AS4BidirectionalClientHelper ()
   {}
 
-  public static void sendAS4UserMessageAndReceiveAS4SignalMessage (@Nonnull final IAS4CryptoFactory aCryptoFactorySign,
-                                                                   @Nonnull final IAS4CryptoFactory aCryptoFactoryCrypt,
-                                                                   @Nonnull final IPModeResolver aPModeResolver,
-                                                                   @Nonnull final IAS4IncomingAttachmentFactory aIAF,
-                                                                   @Nonnull final IAS4IncomingProfileSelector aIncomingProfileSelector,
-                                                                   @Nonnull final AS4ClientUserMessage aClientUserMsg,
-                                                                   @Nonnull final Locale aLocale,
-                                                                   @Nonnull final String sURL,
-                                                                   @Nullable final IAS4ClientBuildMessageCallback aBuildMessageCallback,
-                                                                   @Nullable final IAS4OutgoingDumper aOutgoingDumper,
-                                                                   @Nullable final IAS4IncomingDumper aIncomingDumper,
-                                                                   @Nonnull final IAS4IncomingSecurityConfiguration aIncomingSecurityConfiguration,
-                                                                   @Nullable final IAS4RetryCallback aRetryCallback,
-                                                                   @Nullable final IAS4RawResponseConsumer aRawResponseConsumer,
-                                                                   @Nullable final IAS4SignalMessageConsumer aSignalMsgConsumer) throws IOException,
-                                                                                                                                 Phase4Exception,
-                                                                                                                                 WSSecurityException,
-                                                                                                                                 MessagingException
+  private static void _logUserMessage (@Nonnull final AS4ClientUserMessage aClientUserMsg, @Nonnull final String sURL)
   {
     LOGGER.info ("Sending AS4 UserMessage to '" +
                  sURL +
@@ -118,27 +105,42 @@ public final class AS4BidirectionalClientHelper
                       "]");
       }
     }
+  }
 
-    final Wrapper <HttpResponse> aWrappedHttpResponse = new Wrapper <> ();
-    final HttpClientResponseHandler <byte []> aHttpResponseHdl = aHttpResponse -> {
+  @Nonnull
+  private static HttpClientResponseHandler <SpooledResponsePayload> _createResponseHandler (@Nonnull final AbstractAS4Client <?> aClientMsg,
+                                                                                           @Nonnull final Wrapper <HttpResponse> aWrappedHttpResponse)
+  {
+    // Small responses stay in memory, large ones are spooled to disk
+    final ResponseHandlerSpooled aSpooledHandler = new ResponseHandlerSpooled (aClientMsg.getAS4ResourceHelper (),
+                                                                               aClientMsg.httpResponseSettings ());
+    return aHttpResponse -> {
       // throws an ExtendedHttpResponseException on exception
-      final HttpEntity aEntity = ResponseHandlerHttpEntity.INSTANCE.handleResponse (aHttpResponse);
-      if (aEntity == null)
-        return null;
-
-      // Remember source response object
-      aWrappedHttpResponse.set (aHttpResponse);
-
-      // Read response payload
-      return EntityUtils.toByteArray (aEntity);
+      final SpooledResponsePayload ret = aSpooledHandler.handleResponse (aHttpResponse);
+      if (ret != null)
+      {
+        // Remember source response object
+        aWrappedHttpResponse.set (aHttpResponse);
+      }
+      return ret;
     };
+  }
 
-    // Main HTTP sending
-    final AS4ClientSentMessage <byte []> aResponseEntity = aClientUserMsg.sendMessageWithRetries (sURL,
-                                                                                                  aHttpResponseHdl,
-                                                                                                  aBuildMessageCallback,
-                                                                                                  aOutgoingDumper,
-                                                                                                  aRetryCallback);
+  private static void _handleSignalMessageResponse (@Nonnull final IAS4CryptoFactory aCryptoFactorySign,
+                                                    @Nonnull final IAS4CryptoFactory aCryptoFactoryCrypt,
+                                                    @Nonnull final IPModeResolver aPModeResolver,
+                                                    @Nonnull final IAS4IncomingAttachmentFactory aIAF,
+                                                    @Nonnull final IAS4IncomingProfileSelector aIncomingProfileSelector,
+                                                    @Nonnull final AS4ClientUserMessage aClientUserMsg,
+                                                    @Nonnull final Locale aLocale,
+                                                    @Nonnull @Nonempty final String sURL,
+                                                    @Nullable final IAS4IncomingDumper aIncomingDumper,
+                                                    @Nonnull final IAS4IncomingSecurityConfiguration aIncomingSecurityConfiguration,
+                                                    @Nullable final IAS4RawResponseConsumer aRawResponseConsumer,
+                                                    @Nullable final IAS4SignalMessageConsumer aSignalMsgConsumer,
+                                                    @Nonnull final AS4ClientSentMessage <SpooledResponsePayload> aResponseEntity,
+                                                    @Nullable final HttpResponse aHttpResponse) throws Phase4Exception
+  {
     final String sRequestMessageID = aResponseEntity.getMessageID ();
     LOGGER.info ("Successfully transmitted AS4 UserMessage with message ID '" +
                  sRequestMessageID +
@@ -147,10 +149,13 @@ public final class AS4BidirectionalClientHelper
                  "'");
 
     if (aRawResponseConsumer != null)
-      aRawResponseConsumer.handleResponse (aResponseEntity);
+    {
+      // The raw response consumer requires the payload as a byte array
+      aRawResponseConsumer.handleResponse (aResponseEntity.getWithMappedResponse (SpooledResponsePayload::getAsByteArray));
+    }
 
     // Try interpret result as SignalMessage
-    if (aResponseEntity.hasResponse () && aResponseEntity.getResponse ().length > 0)
+    if (aResponseEntity.hasResponse () && !aResponseEntity.getResponse ().isEmpty ())
     {
       final IAS4IncomingMessageMetadata aMessageMetadata = AS4IncomingMessageMetadata.createForResponse (sRequestMessageID)
                                                                                      .setRemoteAddr (sURL);
@@ -166,8 +171,8 @@ public final class AS4BidirectionalClientHelper
                                              aClientUserMsg.getPMode (),
                                              aLocale,
                                              aMessageMetadata,
-                                             aWrappedHttpResponse.get (),
-                                             aResponseEntity.getResponse (),
+                                             aHttpResponse,
+                                             aResponseEntity.getResponse ().getInputStream (),
                                              aIncomingDumper,
                                              aIncomingSecurityConfiguration,
                                              aSignalMsgConsumer);
@@ -176,50 +181,194 @@ public final class AS4BidirectionalClientHelper
       LOGGER.info ("AS4 ResponseEntity is empty");
   }
 
-  public static void sendAS4PullRequestAndReceiveAS4UserMessage (@Nonnull final IAS4CryptoFactory aCryptoFactorySign,
-                                                                 @Nonnull final IAS4CryptoFactory aCryptoFactoryCrypt,
-                                                                 @Nonnull final IPModeResolver aPModeResolver,
-                                                                 @Nonnull final IAS4IncomingAttachmentFactory aIAF,
-                                                                 @Nonnull final IAS4IncomingProfileSelector aIncomingProfileSelector,
-                                                                 @Nonnull final AS4ClientPullRequestMessage aClientPullRequest,
-                                                                 @Nonnull final Locale aLocale,
-                                                                 @Nonnull final String sURL,
-                                                                 @Nullable final IAS4ClientBuildMessageCallback aBuildMessageCallback,
-                                                                 @Nullable final IAS4OutgoingDumper aOutgoingDumper,
-                                                                 @Nullable final IAS4IncomingDumper aIncomingDumper,
-                                                                 @Nonnull final IAS4IncomingSecurityConfiguration aIncomingSecurityConfiguration,
-                                                                 @Nullable final IAS4RetryCallback aRetryCallback,
-                                                                 @Nullable final IAS4RawResponseConsumer aResponseConsumer,
-                                                                 @Nullable final IAS4UserMessageConsumer aUserMsgConsumer) throws IOException,
-                                                                                                                           Phase4Exception,
-                                                                                                                           WSSecurityException,
-                                                                                                                           MessagingException
+  public static void sendAS4UserMessageAndReceiveAS4SignalMessage (@Nonnull final IAS4CryptoFactory aCryptoFactorySign,
+                                                                   @Nonnull final IAS4CryptoFactory aCryptoFactoryCrypt,
+                                                                   @Nonnull final IPModeResolver aPModeResolver,
+                                                                   @Nonnull final IAS4IncomingAttachmentFactory aIAF,
+                                                                   @Nonnull final IAS4IncomingProfileSelector aIncomingProfileSelector,
+                                                                   @Nonnull final AS4ClientUserMessage aClientUserMsg,
+                                                                   @Nonnull final Locale aLocale,
+                                                                   @Nonnull final String sURL,
+                                                                   @Nullable final IAS4ClientBuildMessageCallback aBuildMessageCallback,
+                                                                   @Nullable final IAS4OutgoingDumper aOutgoingDumper,
+                                                                   @Nullable final IAS4IncomingDumper aIncomingDumper,
+                                                                   @Nonnull final IAS4IncomingSecurityConfiguration aIncomingSecurityConfiguration,
+                                                                   @Nullable final IAS4RetryCallback aRetryCallback,
+                                                                   @Nullable final IAS4RawResponseConsumer aRawResponseConsumer,
+                                                                   @Nullable final IAS4SignalMessageConsumer aSignalMsgConsumer) throws IOException,
+                                                                                                                                        Phase4Exception,
+                                                                                                                                        WSSecurityException,
+                                                                                                                                        MessagingException
   {
-    LOGGER.info ("Sending AS4 PullRequest to '" +
-                 sURL +
-                 "' with max. " +
-                 aClientPullRequest.httpRetrySettings ().getMaxRetries () +
-                 " retries");
+    _logUserMessage (aClientUserMsg, sURL);
 
-    if (LOGGER.isDebugEnabled ())
-      LOGGER.debug ("  MPC = '" + aClientPullRequest.getMPC () + "'");
+    final Wrapper <HttpResponse> aWrappedHttpResponse = new Wrapper <> ();
 
-    final Wrapper <HttpResponse> aWrappedResponse = new Wrapper <> ();
-    final HttpClientResponseHandler <byte []> aResponseHdl = aHttpResponse -> {
-      // May throw an ExtendedHttpResponseException
-      final HttpEntity aEntity = ResponseHandlerHttpEntity.INSTANCE.handleResponse (aHttpResponse);
-      if (aEntity == null)
-        return null;
-
-      // Remember HTTP Response
-      aWrappedResponse.set (aHttpResponse);
-      return EntityUtils.toByteArray (aEntity);
-    };
-    final AS4ClientSentMessage <byte []> aResponseEntity = aClientPullRequest.sendMessageWithRetries (sURL,
-                                                                                                      aResponseHdl,
-                                                                                                      aBuildMessageCallback,
-                                                                                                      aOutgoingDumper,
-                                                                                                      aRetryCallback);
+    // Main HTTP sending
+    final AS4ClientSentMessage <SpooledResponsePayload> aResponseEntity = aClientUserMsg.sendMessageWithRetries (sURL,
+                                                                                                  _createResponseHandler (aClientUserMsg, aWrappedHttpResponse),
+                                                                                                  aBuildMessageCallback,
+                                                                                                  aOutgoingDumper,
+                                                                                                  aRetryCallback);
+    _handleSignalMessageResponse (aCryptoFactorySign,
+                                  aCryptoFactoryCrypt,
+                                  aPModeResolver,
+                                  aIAF,
+                                  aIncomingProfileSelector,
+                                  aClientUserMsg,
+                                  aLocale,
+                                  sURL,
+                                  aIncomingDumper,
+                                  aIncomingSecurityConfiguration,
+                                  aRawResponseConsumer,
+                                  aSignalMsgConsumer,
+                                  aResponseEntity,
+                                  aWrappedHttpResponse.get ());
+  }
+
+  /**
+   * Variant of
+   * {@link #sendAS4UserMessageAndReceiveAS4SignalMessage(IAS4CryptoFactory, IAS4CryptoFactory, IPModeResolver, IAS4IncomingAttachmentFactory, IAS4IncomingProfileSelector, AS4ClientUserMessage, Locale, String, IAS4ClientBuildMessageCallback, IAS4OutgoingDumper, IAS4IncomingDumper, IAS4IncomingSecurityConfiguration, IAS4RetryCallback, IAS4RawResponseConsumer, IAS4SignalMessageConsumer)}
+   * for a message that was already built via
+   * {@link AS4ClientUserMessage#buildMessage(String, IAS4ClientBuildMessageCallback)}.
+   * This allows to build and send the message in different threads.
+   *
+   * @throws IOException
+   *         In case of error sending the message
+   * @throws Phase4Exception
+   *         In case of error handling the response
+   * @since 2.7.6
+   */
+  public static void sendBuiltAS4UserMessageAndReceiveAS4SignalMessage (@Nonnull final IAS4CryptoFactory aCryptoFactorySign,
+                                                                        @Nonnull final IAS4CryptoFactory aCryptoFactoryCrypt,
+                                                                        @Nonnull final IPModeResolver aPModeResolver,
+                                                                        @Nonnull final IAS4IncomingAttachmentFactory aIAF,
+                                                                        @Nonnull final IAS4IncomingProfileSelector aIncomingProfileSelector,
+                                                                        @Nonnull final AS4ClientUserMessage aClientUserMsg,
+                                                                        @Nonnull final AS4ClientBuiltMessage aBuiltMsg,
+                                                                        @Nonnull final Locale aLocale,
+                                                                        @Nonnull final String sURL,
+                                                                        @Nullable final IAS4OutgoingDumper aOutgoingDumper,
+                                                                        @Nullable final IAS4IncomingDumper aIncomingDumper,
+                                                                        @Nonnull final IAS4IncomingSecurityConfiguration aIncomingSecurityConfiguration,
+                                                                        @Nullable final IAS4RetryCallback aRetryCallback,
+                                                                        @Nullable final IAS4RawResponseConsumer aRawResponseConsumer,
+                                                                        @Nullable final IAS4SignalMessageConsumer aSignalMsgConsumer) throws IOException,
+                                                                                                                                             Phase4Exception
+  {
+    _logUserMessage (aClientUserMsg, sURL);
+
+    final Wrapper <HttpResponse> aWrappedHttpResponse = new Wrapper <> ();
+
+    // Main HTTP sending
+    final AS4ClientSentMessage <SpooledResponsePayload> aResponseEntity = aClientUserMsg.sendBuiltMessageWithRetries (sURL,
+                                                                                                       aBuiltMsg,
+                                                                                                       _createResponseHandler (aClientUserMsg, aWrappedHttpResponse),
+                                                                                                       aOutgoingDumper,
+                                                                                                       aRetryCallback);
+    _handleSignalMessageResponse (aCryptoFactorySign,
+                                  aCryptoFactoryCrypt,
+                                  aPModeResolver,
+                                  aIAF,
+                                  aIncomingProfileSelector,
+                                  aClientUserMsg,
+                                  aLocale,
+                                  sURL,
+                                  aIncomingDumper,
+                                  aIncomingSecurityConfiguration,
+                                  aRawResponseConsumer,
+                                  aSignalMsgConsumer,
+                                  aResponseEntity,
+                                  aWrappedHttpResponse.get ());
+  }
+
+  /**
+   * Asynchronous version of
+   * {@link #sendAS4UserMessageAndReceiveAS4SignalMessage(IAS4CryptoFactory, IAS4CryptoFactory, IPModeResolver, IAS4IncomingAttachmentFactory, IAS4IncomingProfileSelector, AS4ClientUserMessage, Locale, String, IAS4ClientBuildMessageCallback, IAS4OutgoingDumper, IAS4IncomingDumper, IAS4IncomingSecurityConfiguration, IAS4RetryCallback, IAS4RawResponseConsumer, IAS4SignalMessageConsumer)}.
+   * The message is built in the calling thread. The transmission is performed
+   * by the HTTP poster of the client message and the response is parsed in the
+   * thread that completes the transmission. A {@link Phase4Exception} from
+   * response parsing is contained in a {@link CompletionException}.
+   *
+   * @return The future that is completed after the response was handled.
+   *         Never <code>null</code>.
+   * @throws IOException
+   *         In case of error building the message
+   * @throws WSSecurityException
+   *         In case of signing/encryption error
+   * @throws MessagingException
+   *         In case of MIME error
+   * @since 2.7.6
+   */
+  @Nonnull
+  public static CompletableFuture <Void> sendAS4UserMessageAndReceiveAS4SignalMessageAsync (@Nonnull final IAS4CryptoFactory aCryptoFactorySign,
+                                                                                            @Nonnull final IAS4CryptoFactory aCryptoFactoryCrypt,
+                                                                                            @Nonnull final IPModeResolver aPModeResolver,
+                                                                                            @Nonnull final IAS4IncomingAttachmentFactory aIAF,
+                                                                                            @Nonnull final IAS4IncomingProfileSelector aIncomingProfileSelector,
+                                                                                            @Nonnull final AS4ClientUserMessage aClientUserMsg,
+                                                                                            @Nonnull final Locale aLocale,
+                                                                                            @Nonnull final String sURL,
+                                                                                            @Nullable final IAS4ClientBuildMessageCallback aBuildMessageCallback,
+                                                                                            @Nullable final IAS4OutgoingDumper aOutgoingDumper,
+                                                                                            @Nullable final IAS4IncomingDumper aIncomingDumper,
+                                                                                            @Nonnull final IAS4IncomingSecurityConfiguration aIncomingSecurityConfiguration,
+                                                                                            @Nullable final IAS4RetryCallback aRetryCallback,
+                                                                                            @Nullable final IAS4RawResponseConsumer aRawResponseConsumer,
+                                                                                            @Nullable final IAS4SignalMessageConsumer aSignalMsgConsumer) throws IOException,
+                                                                                                                                                                 WSSecurityException,
+                                                                                                                                                                 MessagingException
+  {
+    _logUserMessage (aClientUserMsg, sURL);
+
+    final Wrapper <HttpResponse> aWrappedHttpResponse = new Wrapper <> ();
+
+    // Main HTTP sending
+    return aClientUserMsg.sendMessageWithRetriesAsync (sURL,
+                                                       _createResponseHandler (aClientUserMsg, aWrappedHttpResponse),
+                                                       aBuildMessageCallback,
+                                                       aOutgoingDumper,
+                                                       aRetryCallback)
+                         .thenAccept (aResponseEntity -> {
+                           try
+                           {
+                             _handleSignalMessageResponse (aCryptoFactorySign,
+                                                           aCryptoFactoryCrypt,
+                                                           aPModeResolver,
+                                                           aIAF,
+                                                           aIncomingProfileSelector,
+                                                           aClientUserMsg,
+                                                           aLocale,
+                                                           sURL,
+                                                           aIncomingDumper,
+                                                           aIncomingSecurityConfiguration,
+                                                           aRawResponseConsumer,
+                                                           aSignalMsgConsumer,
+                                                           aResponseEntity,
+                                                           aWrappedHttpResponse.get ());
+                           }
+                           catch (final Phase4Exception ex)
+                           {
+                             throw new CompletionException (ex);
+                           }
+                         });
+  }
+
+  private static void _handleUserMessageResponse (@Nonnull final IAS4CryptoFactory aCryptoFactorySign,
+                                                  @Nonnull final IAS4CryptoFactory aCryptoFactoryCrypt,
+                                                  @Nonnull final IPModeResolver aPModeResolver,
+                                                  @Nonnull final IAS4IncomingAttachmentFactory aIAF,
+                                                  @Nonnull final IAS4IncomingProfileSelector aIncomingProfileSelector,
+                                                  @Nonnull final AS4ClientPullRequestMessage aClientPullRequest,
+                                                  @Nonnull final Locale aLocale,
+                                                  @Nonnull @Nonempty final String sURL,
+                                                  @Nullable final IAS4IncomingDumper aIncomingDumper,
+                                                  @Nonnull final IAS4IncomingSecurityConfiguration aIncomingSecurityConfiguration,
+                                                  @Nullable final IAS4RawResponseConsumer aResponseConsumer,
+                                                  @Nullable final IAS4UserMessageConsumer aUserMsgConsumer,
+                                                  @Nonnull final AS4ClientSentMessage <SpooledResponsePayload> aResponseEntity,
+                                                  @Nullable final HttpResponse aHttpResponse) throws Phase4Exception
+  {
     final String sRequestMessageID = aResponseEntity.getMessageID ();
     LOGGER.info ("Successfully transmitted AS4 PullRequest with message ID '" +
                  sRequestMessageID +
@@ -228,10 +377,13 @@ public final class AS4BidirectionalClientHelper
                  "'");
 
     if (aResponseConsumer != null)
-      aResponseConsumer.handleResponse (aResponseEntity);
+    {
+      // The raw response consumer requires the payload as a byte array
+      aResponseConsumer.handleResponse (aResponseEntity.getWithMappedResponse (SpooledResponsePayload::getAsByteArray));
+    }
 
     // Try interpret result as SignalMessage
-    if (aResponseEntity.hasResponse () && aResponseEntity.getResponse ().length > 0)
+    if (aResponseEntity.hasResponse () && !aResponseEntity.getResponse ().isEmpty ())
     {
       final IAS4IncomingMessageMetadata aMessageMetadata = AS4IncomingMessageMetadata.createForResponse (sRequestMessageID)
                                                                                      .setRemoteAddr (sURL);
@@ -247,8 +399,8 @@ public final class AS4BidirectionalClientHelper
                                            null,
                                            aLocale,
                                            aMessageMetadata,
-                                           aWrappedResponse.get (),
-                                           aResponseEntity.getResponse (),
+                                           aHttpResponse,
+                                           aResponseEntity.getResponse ().getInputStream (),
                                            aIncomingDumper,
                                            aIncomingSecurityConfiguration,
                                            aUserMsgConsumer);
@@ -256,4 +408,131 @@ public final class AS4BidirectionalClientHelper
     else
       LOGGER.info ("AS4 ResponseEntity is empty");
   }
+
+  public static void sendAS4PullRequestAndReceiveAS4UserMessage (@Nonnull final IAS4CryptoFactory aCryptoFactorySign,
+                                                                 @Nonnull final IAS4CryptoFactory aCryptoFactoryCrypt,
+                                                                 @Nonnull final IPModeResolver aPModeResolver,
+                                                                 @Nonnull final IAS4IncomingAttachmentFactory aIAF,
+                                                                 @Nonnull final IAS4IncomingProfileSelector aIncomingProfileSelector,
+                                                                 @Nonnull final AS4ClientPullRequestMessage aClientPullRequest,
+                                                                 @Nonnull final Locale aLocale,
+                                                                 @Nonnull final String sURL,
+                                                                 @Nullable final IAS4ClientBuildMessageCallback aBuildMessageCallback,
+                                                                 @Nullable final IAS4OutgoingDumper aOutgoingDumper,
+                                                                 @Nullable final IAS4IncomingDumper aIncomingDumper,
+                                                                 @Nonnull final IAS4IncomingSecurityConfiguration aIncomingSecurityConfiguration,
+                                                                 @Nullable final IAS4RetryCallback aRetryCallback,
+                                                                 @Nullable final IAS4RawResponseConsumer aResponseConsumer,
+                                                                 @Nullable final IAS4UserMessageConsumer aUserMsgConsumer) throws IOException,
+                                                                                                                                  Phase4Exception,
+                                                                                                                                  WSSecurityException,
+                                                                                                                                  MessagingException
+  {
+    LOGGER.info ("Sending AS4 PullRequest to '" +
+                 sURL +
+                 "' with max. " +
+                 aClientPullRequest.httpRetrySettings ().getMaxRetries () +
+                 " retries");
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("  MPC = '" + aClientPullRequest.getMPC () + "'");
+
+    final Wrapper <HttpResponse> aWrappedResponse = new Wrapper <> ();
+    final AS4ClientSentMessage <SpooledResponsePayload> aResponseEntity = aClientPullRequest.sendMessageWithRetries (sURL,
+                                                                                                      _createResponseHandler (aClientPullRequest, aWrappedResponse),
+                                                                                                      aBuildMessageCallback,
+                                                                                                      aOutgoingDumper,
+                                                                                                      aRetryCallback);
+    _handleUserMessageResponse (aCryptoFactorySign,
+                                aCryptoFactoryCrypt,
+                                aPModeResolver,
+                                aIAF,
+                                aIncomingProfileSelector,
+                                aClientPullRequest,
+                                aLocale,
+                                sURL,
+                                aIncomingDumper,
+                                aIncomingSecurityConfiguration,
+                                aResponseConsumer,
+                                aUserMsgConsumer,
+                                aResponseEntity,
+                                aWrappedResponse.get ());
+  }
+
+  /**
+   * Asynchronous version of
+   * {@link #sendAS4PullRequestAndReceiveAS4UserMessage(IAS4CryptoFactory, IAS4CryptoFactory, IPModeResolver, IAS4IncomingAttachmentFactory, IAS4IncomingProfileSelector, AS4ClientPullRequestMessage, Locale, String, IAS4ClientBuildMessageCallback, IAS4OutgoingDumper, IAS4IncomingDumper, IAS4IncomingSecurityConfiguration, IAS4RetryCallback, IAS4RawResponseConsumer, IAS4UserMessageConsumer)}.
+   * The message is built in the calling thread. The transmission is performed
+   * by the HTTP poster of the client message and the response is parsed in the
+   * thread that completes the transmission. A {@link Phase4Exception} from
+   * response parsing is contained in a {@link CompletionException}.
+   *
+   * @return The future that is completed after the response was handled.
+   *         Never <code>null</code>.
+   * @throws IOException
+   *         In case of error building the message
+   * @throws WSSecurityException
+   *         In case of signing/encryption error
+   * @throws MessagingException
+   *         In case of MIME error
+   * @since 2.7.6
+   */
+  @Nonnull
+  public static CompletableFuture <Void> sendAS4PullRequestAndReceiveAS4UserMessageAsync (@Nonnull final IAS4CryptoFactory aCryptoFactorySign,
+                                                                                          @Nonnull final IAS4CryptoFactory aCryptoFactoryCrypt,
+                                                                                          @Nonnull final IPModeResolver aPModeResolver,
+                                                                                          @Nonnull final IAS4IncomingAttachmentFactory aIAF,
+                                                                                          @Nonnull final IAS4IncomingProfileSelector aIncomingProfileSelector,
+                                                                                          @Nonnull final AS4ClientPullRequestMessage aClientPullRequest,
+                                                                                          @Nonnull final Locale aLocale,
+                                                                                          @Nonnull final String sURL,
+                                                                                          @Nullable final IAS4ClientBuildMessageCallback aBuildMessageCallback,
+                                                                                          @Nullable final IAS4OutgoingDumper aOutgoingDumper,
+                                                                                          @Nullable final IAS4IncomingDumper aIncomingDumper,
+                                                                                          @Nonnull final IAS4IncomingSecurityConfiguration aIncomingSecurityConfiguration,
+                                                                                          @Nullable final IAS4RetryCallback aRetryCallback,
+                                                                                          @Nullable final IAS4RawResponseConsumer aResponseConsumer,
+                                                                                          @Nullable final IAS4UserMessageConsumer aUserMsgConsumer) throws IOException,
+                                                                                                                                                           WSSecurityException,
+                                                                                                                                                           MessagingException
+  {
+    LOGGER.info ("Sending AS4 PullRequest to '" +
+                 sURL +
+                 "' with max. " +
+                 aClientPullRequest.httpRetrySettings ().getMaxRetries () +
+                 " retries");
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("  MPC = '" + aClientPullRequest.getMPC () + "'");
+
+    final Wrapper <HttpResponse> aWrappedResponse = new Wrapper <> ();
+    return aClientPullRequest.sendMessageWithRetriesAsync (sURL,
+                                                           _createResponseHandler (aClientPullRequest, aWrappedResponse),
+                                                           aBuildMessageCallback,
+                                                           aOutgoingDumper,
+                                                           aRetryCallback)
+                             .thenAccept (aResponseEntity -> {
+                               try
+                               {
+                                 _handleUserMessageResponse (aCryptoFactorySign,
+                                                             aCryptoFactoryCrypt,
+                                                             aPModeResolver,
+                                                             aIAF,
+                                                             aIncomingProfileSelector,
+                                                             aClientPullRequest,
+                                                             aLocale,
+                                                             sURL,
+                                                             aIncomingDumper,
+                                                             aIncomingSecurityConfiguration,
+                                                             aResponseConsumer,
+                                                             aUserMsgConsumer,
+                                                             aResponseEntity,
+                                                             aWrappedResponse.get ());
+                               }
+                               catch (final Phase4Exception ex)
+                               {
+                                 throw new CompletionException (ex);
+                               }
+                             });
+  }
 }
@@ -57,6 +57,17 @@ public final class AS4Sender
     return new BuilderPullRequest ();
   }
 
+  /**
+   * @return Create a new pipelined batch sender for many User Messages. It
+   *         should be closed after usage. Never <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nonnull
+  public static AS4BatchSender batch ()
+  {
+    return new AS4BatchSender ();
+  }
+
   /**
    * This sending builder enforces the creation of a MIME message by putting the
    * payload as a MIME part.
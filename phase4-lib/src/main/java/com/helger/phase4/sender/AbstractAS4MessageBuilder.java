@@ -18,6 +18,7 @@ package com.helger.phase4.sender;
 
 import java.time.OffsetDateTime;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 import javax.annotation.Nonnull;
@@ -46,8 +47,12 @@ import com.helger.phase4.crypto.IAS4CryptoFactory;
 import com.helger.phase4.crypto.IAS4DecryptParameterModifier;
 import com.helger.phase4.dump.IAS4IncomingDumper;
 import com.helger.phase4.dump.IAS4OutgoingDumper;
+import com.helger.phase4.http.HttpConnectionPool;
+import com.helger.phase4.http.HttpEndpointHealthManager;
+import com.helger.phase4.http.HttpResponseSettings;
 import com.helger.phase4.http.HttpRetrySettings;
 import com.helger.phase4.http.IHttpPoster;
+import com.helger.phase4.http.TlsSessionCachingHttpClientFactory;
 import com.helger.phase4.model.pmode.resolve.DefaultPModeResolver;
 import com.helger.phase4.model.pmode.resolve.IPModeResolver;
 import com.helger.phase4.servlet.AS4IncomingProfileSelectorFromGlobal;
@@ -73,6 +78,8 @@ public abstract class AbstractAS4MessageBuilder <IMPLTYPE extends AbstractAS4Mes
 
   protected IHttpPoster m_aCustomHttpPoster;
   protected HttpClientFactory m_aHttpClientFactory;
+  protected HttpConnectionPool m_aHttpConnectionPool;
+  protected HttpEndpointHealthManager m_aEndpointHealthManager;
   protected IAS4CryptoFactory m_aCryptoFactorySign;
   protected IAS4CryptoFactory m_aCryptoFactoryCrypt;
   protected final AS4SigningParams m_aSigningParams = new AS4SigningParams ();
@@ -82,6 +89,7 @@ public abstract class AbstractAS4MessageBuilder <IMPLTYPE extends AbstractAS4Mes
   protected OffsetDateTime m_aSendingDateTime;
   protected ESoapVersion m_eSoapVersion;
   protected HttpRetrySettings m_aHttpRetrySettings;
+  protected HttpResponseSettings m_aHttpResponseSettings;
   protected Locale m_aLocale = DEFAULT_LOCALE;
 
   private IPModeResolver m_aPModeResolver;
@@ -168,7 +176,10 @@ public abstract class AbstractAS4MessageBuilder <IMPLTYPE extends AbstractAS4Mes
   /**
    * Set the HTTP client factory to be used. If the passed settings are
    * non-<code>null</code>, a new {@link HttpClientFactory} is created with
-   * them, else a <code>null</code>-{@link HttpClientFactory} is set.
+   * them, else a <code>null</code>-{@link HttpClientFactory} is set. To reuse
+   * TLS sessions across transmissions, pass a
+   * {@link TlsSessionCachingHttpClientFactory} to
+   * {@link #httpClientFactory(HttpClientFactory)} instead.
    *
    * @param aHttpClientSettings
    *        The new HTTP client settings to be used. May be <code>null</code>.
@@ -196,6 +207,71 @@ public abstract class AbstractAS4MessageBuilder <IMPLTYPE extends AbstractAS4Mes
     return thisAsT ();
   }
 
+  /**
+   * @return The currently set shared {@link HttpConnectionPool}. May be
+   *         <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nullable
+  public final HttpConnectionPool httpConnectionPool ()
+  {
+    return m_aHttpConnectionPool;
+  }
+
+  /**
+   * Set a shared HTTP connection pool to be used for sending. If set, the pool
+   * is used instead of the {@link #httpClientFactory()} so that keep-alive
+   * connections to the same receivers can be reused across messages. The pool
+   * should be created once and shared between all builders. It is not closed
+   * by the builder.<br>
+   * Note: if a custom HTTP poster is set via
+   * {@link #customHttpPoster(IHttpPoster)} this setting is ignored.
+   *
+   * @param aHttpConnectionPool
+   *        The shared connection pool to be used. May be <code>null</code>.
+   * @return this for chaining
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final IMPLTYPE httpConnectionPool (@Nullable final HttpConnectionPool aHttpConnectionPool)
+  {
+    m_aHttpConnectionPool = aHttpConnectionPool;
+    return thisAsT ();
+  }
+
+  /**
+   * @return The currently set shared {@link HttpEndpointHealthManager}. May be
+   *         <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nullable
+  public final HttpEndpointHealthManager endpointHealthManager ()
+  {
+    return m_aEndpointHealthManager;
+  }
+
+  /**
+   * Set a shared endpoint health manager to be used for sending. If set, a
+   * circuit breaker and an adaptive concurrency limit are applied per
+   * destination URL, so that slow or unavailable receivers don't bind all
+   * sending capacity. The manager should be created once and shared between
+   * all builders.<br>
+   * Note: if a custom HTTP poster is set via
+   * {@link #customHttpPoster(IHttpPoster)} this setting is ignored.
+   *
+   * @param aEndpointHealthManager
+   *        The shared endpoint health manager to be used. May be
+   *        <code>null</code>.
+   * @return this for chaining
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final IMPLTYPE endpointHealthManager (@Nullable final HttpEndpointHealthManager aEndpointHealthManager)
+  {
+    m_aEndpointHealthManager = aEndpointHealthManager;
+    return thisAsT ();
+  }
+
   /**
    * Due to the fact, that the crypto factory was split for signing and
    * crypting, this API is no longer feasible. It returns the crypto factory
@@ -453,6 +529,23 @@ public abstract class AbstractAS4MessageBuilder <IMPLTYPE extends AbstractAS4Mes
     return thisAsT ();
   }
 
+  /**
+   * Set the HTTP response settings to be used for reading synchronous
+   * responses (e.g. the maximum response size). If none are set, the default
+   * values are used.
+   *
+   * @param a
+   *        The HTTP response settings to be used. May be <code>null</code>.
+   * @return this for chaining
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final IMPLTYPE httpResponseSettings (@Nullable final HttpResponseSettings a)
+  {
+    m_aHttpResponseSettings = a;
+    return thisAsT ();
+  }
+
   /**
    * Set the locale to use. The main purpose is to use the correct language for
    * processing error message in response messages. This field must be set. The
@@ -706,6 +799,8 @@ public abstract class AbstractAS4MessageBuilder <IMPLTYPE extends AbstractAS4Mes
       LOGGER.warn ("The field 'httpClientFactory' is not set");
       return false;
     }
+    // m_aHttpConnectionPool may be null
+    // m_aEndpointHealthManager may be null
     // m_aCryptoFactorySign may be null
     // m_aCryptoFactoryCrypt may be null
     // m_sMessageID is optional
@@ -717,6 +812,7 @@ public abstract class AbstractAS4MessageBuilder <IMPLTYPE extends AbstractAS4Mes
       return false;
     }
     // m_aHttpRetrySettings may be null
+    // m_aHttpResponseSettings may be null
     if (m_aLocale == null)
     {
       LOGGER.warn ("The field 'locale' is not set");
@@ -788,6 +884,33 @@ public abstract class AbstractAS4MessageBuilder <IMPLTYPE extends AbstractAS4Mes
    */
   protected abstract void mainSendMessage () throws Phase4Exception;
 
+  /**
+   * Asynchronously send the AS4 message. This method may only be called by
+   * {@link #sendMessageAsync()}. The default implementation calls
+   * {@link #mainSendMessage()} in the calling thread and returns a completed
+   * future. Builders that support asynchronous transmission override this
+   * method.
+   *
+   * @return The future that is completed when sending finished. Never
+   *         <code>null</code>. Errors are reported as exceptionally completed
+   *         future.
+   * @since 2.7.6
+   */
+  @Nonnull
+  @OverrideOnDemand
+  protected CompletableFuture <Void> mainSendMessageAsync ()
+  {
+    try
+    {
+      mainSendMessage ();
+      return CompletableFuture.completedFuture (null);
+    }
+    catch (final Phase4Exception | RuntimeException ex)
+    {
+      return CompletableFuture.failedFuture (ex);
+    }
+  }
+
   /**
    * Internal method that is invoked after successful sending took place. This
    * can e.g. be used to fulfill reporting requirements etc. This method must
@@ -800,33 +923,15 @@ public abstract class AbstractAS4MessageBuilder <IMPLTYPE extends AbstractAS4Mes
   {}
 
   /**
-   * Synchronously send the AS4 message. First the internal "finishFields"
-   * method is called, to ensure all dynamic fields are filled - on failure this
-   * methods exits. Afterwards {@link #isEveryRequiredFieldSet()} is called to
-   * check that all mandatory elements are set - on failure this methods exits.
-   * Afterwards "customizeBeforeSending" is called to make final adjustments to
-   * the message. As the very last step, the customizable sender interrupt is
-   * invoked which may prevent the main message sending. As the last step
-   * "mainSendMessage" is invoked and "SUCCESS" is returned.<br>
-   * Note: since 0.13.0 this common implementation is in place.
+   * Perform all the checks and customizations before the main sending.
    *
-   * @return {@link ESuccess#FAILURE} if not all mandatory parameters are set or
-   *         if sending failed, {@link ESuccess#SUCCESS} upon success. Never
-   *         <code>null</code>. This result code does not reflect the semantics
-   *         of a semantically correct message exchange or not. It just states,
-   *         if the message was sent or nor. The rest needs to be determined
-   *         separately.
+   * @return {@link ESuccess#SUCCESS} if sending can take place.
    * @throws Phase4Exception
    *         In case of any error
-   * @see #isEveryRequiredFieldSet()
-   * @see #senderInterrupt()
    */
   @Nonnull
-  public final ESuccess sendMessage () throws Phase4Exception
+  final ESuccess prepareSending () throws Phase4Exception
   {
-    if (LOGGER.isDebugEnabled ())
-      LOGGER.debug ("About to send the AS4 message");
-
     // Pre required field check
     if (finishFields ().isFailure ())
     {
@@ -852,6 +957,40 @@ public abstract class AbstractAS4MessageBuilder <IMPLTYPE extends AbstractAS4Mes
         return ESuccess.FAILURE;
       }
 
+    return ESuccess.SUCCESS;
+  }
+
+  /**
+   * Synchronously send the AS4 message. First the internal "finishFields"
+   * method is called, to ensure all dynamic fields are filled - on failure this
+   * methods exits. Afterwards {@link #isEveryRequiredFieldSet()} is called to
+   * check that all mandatory elements are set - on failure this methods exits.
+   * Afterwards "customizeBeforeSending" is called to make final adjustments to
+   * the message. As the very last step, the customizable sender interrupt is
+   * invoked which may prevent the main message sending. As the last step
+   * "mainSendMessage" is invoked and "SUCCESS" is returned.<br>
+   * Note: since 0.13.0 this common implementation is in place.
+   *
+   * @return {@link ESuccess#FAILURE} if not all mandatory parameters are set or
+   *         if sending failed, {@link ESuccess#SUCCESS} upon success. Never
+   *         <code>null</code>. This result code does not reflect the semantics
+   *         of a semantically correct message exchange or not. It just states,
+   *         if the message was sent or nor. The rest needs to be determined
+   *         separately.
+   * @throws Phase4Exception
+   *         In case of any error
+   * @see #isEveryRequiredFieldSet()
+   * @see #senderInterrupt()
+   */
+  @Nonnull
+  public final ESuccess sendMessage () throws Phase4Exception
+  {
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("About to send the AS4 message");
+
+    if (prepareSending ().isFailure ())
+      return ESuccess.FAILURE;
+
     // Main sending
     mainSendMessage ();
 
@@ -863,4 +1002,51 @@ public abstract class AbstractAS4MessageBuilder <IMPLTYPE extends AbstractAS4Mes
 
     return ESuccess.SUCCESS;
   }
+
+  /**
+   * Asynchronously send the AS4 message. The same checks as in
+   * {@link #sendMessage()} are performed in the calling thread, and the message
+   * is also built in the calling thread. Only the transmission and the response
+   * handling happen asynchronously. To really use non-blocking I/O, an
+   * {@link com.helger.phase4.http.AsyncHttpPoster} must be provided via
+   * {@link #customHttpPoster(IHttpPoster)} - otherwise the transmission happens
+   * in the calling thread as well.<br>
+   * Note: the builder must not be modified until the returned future is
+   * completed.
+   *
+   * @return A future that is completed with {@link ESuccess#FAILURE} if not all
+   *         mandatory parameters are set, or with {@link ESuccess#SUCCESS} upon
+   *         success. Errors are reported as exceptionally completed future
+   *         (usually containing a {@link Phase4Exception}). Never
+   *         <code>null</code>.
+   * @see #sendMessage()
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final CompletableFuture <ESuccess> sendMessageAsync ()
+  {
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("About to asynchronously send the AS4 message");
+
+    try
+    {
+      if (prepareSending ().isFailure ())
+        return CompletableFuture.completedFuture (ESuccess.FAILURE);
+    }
+    catch (final Phase4Exception | RuntimeException ex)
+    {
+      return CompletableFuture.failedFuture (ex);
+    }
+
+    // Main sending
+    return mainSendMessageAsync ().thenApply (x -> {
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Finished main asynchronous AS4 message sending without exception");
+
+      // Post sending callback
+      afterSuccessfulSending ();
+
+      return ESuccess.SUCCESS;
+    });
+  }
 }
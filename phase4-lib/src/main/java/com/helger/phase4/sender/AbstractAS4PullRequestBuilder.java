@@ -16,6 +16,9 @@
  */
 package com.helger.phase4.sender;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.OverridingMethodsMustInvokeSuper;
@@ -24,6 +27,7 @@ import javax.annotation.concurrent.NotThreadSafe;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.helger.commons.io.stream.StreamHelper;
 import com.helger.commons.string.StringHelper;
 import com.helger.phase4.client.AS4ClientPullRequestMessage;
 import com.helger.phase4.client.IAS4UserMessageConsumer;
@@ -142,6 +146,10 @@ public abstract class AbstractAS4PullRequestBuilder <IMPLTYPE extends AbstractAS
     else
     {
       aPullRequestMsg.getHttpPoster ().setHttpClientFactory (m_aHttpClientFactory);
+      // Optional shared connection pool
+      aPullRequestMsg.getHttpPoster ().setConnectionPool (m_aHttpConnectionPool);
+      // Optional shared endpoint health tracking
+      aPullRequestMsg.getHttpPoster ().setEndpointHealthManager (m_aEndpointHealthManager);
       // Otherwise Oxalis dies
       aPullRequestMsg.getHttpPoster ().setQuoteHttpHeaders (false);
     }
@@ -158,6 +166,8 @@ public abstract class AbstractAS4PullRequestBuilder <IMPLTYPE extends AbstractAS
 
     if (m_aHttpRetrySettings != null)
       aPullRequestMsg.httpRetrySettings ().assignFrom (m_aHttpRetrySettings);
+    if (m_aHttpResponseSettings != null)
+      aPullRequestMsg.httpResponseSettings ().assignFrom (m_aHttpResponseSettings);
 
     if (StringHelper.hasText (m_sMessageID))
       aPullRequestMsg.setMessageID (m_sMessageID);
@@ -167,35 +177,47 @@ public abstract class AbstractAS4PullRequestBuilder <IMPLTYPE extends AbstractAS
     aPullRequestMsg.setMPC (m_sMPC);
   }
 
+  @Nonnull
+  private AS4ClientPullRequestMessage _createPullRequest (@Nonnull final AS4ResourceHelper aResHelper)
+  {
+    // Start building AS4 User Message
+    final AS4ClientPullRequestMessage aPullRequestMsg = new AS4ClientPullRequestMessage (aResHelper);
+    applyToPullRequest (aPullRequestMsg);
+
+    if (m_aSendingDTConsumer != null)
+    {
+      try
+      {
+        // Eventually this call will determine the sendingDateTime if none is
+        // set yet
+        m_aSendingDTConsumer.onEffectiveSendingDateTime (aPullRequestMsg.ensureSendingDateTime ()
+                                                                        .getSendingDateTime ());
+      }
+      catch (final Exception ex)
+      {
+        LOGGER.error ("Failed to invoke IAS4SendingDateTimeConsumer", ex);
+      }
+    }
+    return aPullRequestMsg;
+  }
+
+  @Nonnull
+  private AS4IncomingSecurityConfiguration _createIncomingSecurityConfiguration ()
+  {
+    // Create on demand with all necessary parameters
+    return new AS4IncomingSecurityConfiguration ().setSigningParams (m_aSigningParams.getClone ())
+                                                  .setCryptParams (m_aCryptParams.getClone ())
+                                                  .setDecryptParameterModifier (m_aDecryptParameterModifier);
+  }
+
   @Override
   protected final void mainSendMessage () throws Phase4Exception
   {
     // Temporary file manager
     try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
     {
-      // Start building AS4 User Message
-      final AS4ClientPullRequestMessage aPullRequestMsg = new AS4ClientPullRequestMessage (aResHelper);
-      applyToPullRequest (aPullRequestMsg);
-
-      if (m_aSendingDTConsumer != null)
-      {
-        try
-        {
-          // Eventually this call will determine the sendingDateTime if none is
-          // set yet
-          m_aSendingDTConsumer.onEffectiveSendingDateTime (aPullRequestMsg.ensureSendingDateTime ()
-                                                                          .getSendingDateTime ());
-        }
-        catch (final Exception ex)
-        {
-          LOGGER.error ("Failed to invoke IAS4SendingDateTimeConsumer", ex);
-        }
-      }
-
-      // Create on demand with all necessary parameters
-      final AS4IncomingSecurityConfiguration aIncomingSecurityConfiguration = new AS4IncomingSecurityConfiguration ().setSigningParams (m_aSigningParams.getClone ())
-                                                                                                                     .setCryptParams (m_aCryptParams.getClone ())
-                                                                                                                     .setDecryptParameterModifier (m_aDecryptParameterModifier);
+      final AS4ClientPullRequestMessage aPullRequestMsg = _createPullRequest (aResHelper);
+      final AS4IncomingSecurityConfiguration aIncomingSecurityConfiguration = _createIncomingSecurityConfiguration ();
 
       // Main sending
       AS4BidirectionalClientHelper.sendAS4PullRequestAndReceiveAS4UserMessage (m_aCryptoFactorySign,
@@ -225,4 +247,50 @@ public abstract class AbstractAS4PullRequestBuilder <IMPLTYPE extends AbstractAS
       throw new Phase4Exception ("Wrapped Phase4Exception", ex);
     }
   }
+
+  @Override
+  @Nonnull
+  protected final CompletableFuture <Void> mainSendMessageAsync ()
+  {
+    // Temporary file manager - closed after the response was handled
+    final AS4ResourceHelper aResHelper = new AS4ResourceHelper ();
+    CompletableFuture <Void> ret;
+    try
+    {
+      final AS4ClientPullRequestMessage aPullRequestMsg = _createPullRequest (aResHelper);
+
+      // Main sending
+      ret = AS4BidirectionalClientHelper.sendAS4PullRequestAndReceiveAS4UserMessageAsync (m_aCryptoFactorySign,
+                                                                                          m_aCryptoFactoryCrypt,
+                                                                                          pmodeResolver (),
+                                                                                          incomingAttachmentFactory (),
+                                                                                          incomingProfileSelector (),
+                                                                                          aPullRequestMsg,
+                                                                                          m_aLocale,
+                                                                                          m_sEndpointURL,
+                                                                                          m_aBuildMessageCallback,
+                                                                                          m_aOutgoingDumper,
+                                                                                          m_aIncomingDumper,
+                                                                                          _createIncomingSecurityConfiguration (),
+                                                                                          m_aRetryCallback,
+                                                                                          m_aResponseConsumer,
+                                                                                          m_aUserMsgConsumer);
+    }
+    catch (final Exception ex)
+    {
+      ret = CompletableFuture.failedFuture (ex);
+    }
+
+    return ret.handle ( (x, t) -> {
+      StreamHelper.close (aResHelper);
+      if (t == null)
+        return null;
+
+      final Throwable aCause = t instanceof CompletionException && t.getCause () != null ? t.getCause () : t;
+      if (aCause instanceof Phase4Exception)
+        throw new CompletionException (aCause);
+      // wrap
+      throw new CompletionException (new Phase4Exception ("Wrapped Phase4Exception", aCause));
+    });
+  }
 }
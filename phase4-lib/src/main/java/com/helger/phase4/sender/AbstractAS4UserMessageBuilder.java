@@ -17,6 +17,7 @@
 package com.helger.phase4.sender;
 
 import java.security.cert.X509Certificate;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
 import javax.annotation.Nonnull;
@@ -35,11 +36,13 @@ import com.helger.commons.lang.EnumHelper;
 import com.helger.commons.state.ISuccessIndicator;
 import com.helger.commons.string.StringHelper;
 import com.helger.commons.wrapper.Wrapper;
+import com.helger.phase4.attachment.AS4CompressionPolicy;
 import com.helger.phase4.attachment.AS4OutgoingAttachment;
 import com.helger.phase4.client.AS4ClientUserMessage;
 import com.helger.phase4.client.IAS4SignalMessageConsumer;
 import com.helger.phase4.ebms3header.Ebms3Property;
 import com.helger.phase4.ebms3header.Ebms3SignalMessage;
+import com.helger.phase4.messaging.domain.AS4UserMessageHeaderTemplateCache;
 import com.helger.phase4.messaging.domain.MessageHelperMethods;
 import com.helger.phase4.model.MessageProperty;
 import com.helger.phase4.model.pmode.IPMode;
@@ -83,6 +86,9 @@ public abstract class AbstractAS4UserMessageBuilder <IMPLTYPE extends AbstractAS
 
   protected final ICommonsList <AS4OutgoingAttachment> m_aAttachments = new CommonsArrayList <> ();
   protected boolean m_bForceMimeMessage = AS4ClientUserMessage.DEFAULT_FORCE_MIME_MESSAGE;
+  protected Executor m_aAttachmentExecutor;
+  protected AS4CompressionPolicy m_aCompressionPolicy;
+  protected AS4UserMessageHeaderTemplateCache m_aHeaderTemplateCache;
 
   protected IAS4SignalMessageConsumer m_aSignalMsgConsumer;
 
@@ -521,6 +527,102 @@ public abstract class AbstractAS4UserMessageBuilder <IMPLTYPE extends AbstractAS
     return thisAsT ();
   }
 
+  /**
+   * @return The executor used to compress and encrypt multiple attachments in
+   *         parallel. May be <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nullable
+  public final Executor attachmentExecutor ()
+  {
+    return m_aAttachmentExecutor;
+  }
+
+  /**
+   * Set an optional executor to compress and encrypt multiple attachments in
+   * parallel. This is only beneficial for messages with multiple large
+   * attachments. Independent of the executor, the attachments are always
+   * contained in the MIME message in the order they were added. If an executor
+   * is set, the attachment creation methods of derived classes may be invoked
+   * concurrently. A bounded executor (e.g. a fixed thread pool or a
+   * {@link java.util.concurrent.ForkJoinPool}) should be used. The executor is
+   * not shut down by the builder.
+   *
+   * @param a
+   *        The executor to be used. May be <code>null</code> to process all
+   *        attachments sequentially (default).
+   * @return this for chaining
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final IMPLTYPE attachmentExecutor (@Nullable final Executor a)
+  {
+    m_aAttachmentExecutor = a;
+    return thisAsT ();
+  }
+
+  /**
+   * @return The compression policy applied to all attachments. May be
+   *         <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nullable
+  public final AS4CompressionPolicy compressionPolicy ()
+  {
+    return m_aCompressionPolicy;
+  }
+
+  /**
+   * Set a compression policy that decides for all attachments of this message
+   * whether they are compressed and how. Attachments with their own compression
+   * policy (see
+   * {@link AS4OutgoingAttachment.Builder#compressionPolicy(AS4CompressionPolicy)})
+   * use their own policy instead. An explicit compression mode of an
+   * attachment is never overridden by the policy.
+   *
+   * @param a
+   *        The compression policy to use. May be <code>null</code> to use the
+   *        compression mode of each attachment (default).
+   * @return this for chaining
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final IMPLTYPE compressionPolicy (@Nullable final AS4CompressionPolicy a)
+  {
+    m_aCompressionPolicy = a;
+    return thisAsT ();
+  }
+
+  /**
+   * @return The ebMS header template cache to use. May be <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nullable
+  public final AS4UserMessageHeaderTemplateCache headerTemplateCache ()
+  {
+    return m_aHeaderTemplateCache;
+  }
+
+  /**
+   * Set the cache for pre-marshalled ebMS header templates. This is useful for
+   * high volume flows to the same partners, because the constant parts of the
+   * ebMS header are only marshalled once. The cache is not used if a build
+   * message callback is set.
+   *
+   * @param a
+   *        The cache to use. May be <code>null</code> to marshal every message
+   *        completely (default).
+   * @return this for chaining
+   * @since 2.7.6
+   * @see AS4UserMessageHeaderTemplateCache#getDefaultInstance()
+   */
+  @Nonnull
+  public final IMPLTYPE headerTemplateCache (@Nullable final AS4UserMessageHeaderTemplateCache a)
+  {
+    m_aHeaderTemplateCache = a;
+    return thisAsT ();
+  }
+
   /**
    * Set an optional Ebms3 Signal Message Consumer. If this consumer is set, the
    * response is trying to be parsed as a Signal Message. This method is
@@ -620,6 +722,10 @@ public abstract class AbstractAS4UserMessageBuilder <IMPLTYPE extends AbstractAS
     {
       // Default HTTP poster
       aUserMsg.getHttpPoster ().setHttpClientFactory (m_aHttpClientFactory);
+      // Optional shared connection pool
+      aUserMsg.getHttpPoster ().setConnectionPool (m_aHttpConnectionPool);
+      // Optional shared endpoint health tracking
+      aUserMsg.getHttpPoster ().setEndpointHealthManager (m_aEndpointHealthManager);
       // Otherwise Oxalis dies
       aUserMsg.getHttpPoster ().setQuoteHttpHeaders (false);
     }
@@ -633,12 +739,16 @@ public abstract class AbstractAS4UserMessageBuilder <IMPLTYPE extends AbstractAS
     // Copy all values
     m_aCryptParams.cloneTo (aUserMsg.cryptParams ());
     m_aSigningParams.cloneTo (aUserMsg.signingParams ());
+    if (m_aAttachmentExecutor != null)
+      aUserMsg.cryptParams ().setAttachmentExecutor (m_aAttachmentExecutor);
 
     aUserMsg.setPMode (m_aPMode, true);
 
     // Set after PMode
     if (m_aHttpRetrySettings != null)
       aUserMsg.httpRetrySettings ().assignFrom (m_aHttpRetrySettings);
+    if (m_aHttpResponseSettings != null)
+      aUserMsg.httpResponseSettings ().assignFrom (m_aHttpResponseSettings);
 
     aUserMsg.setAgreementRefValue (m_sAgreementRef);
     if (StringHelper.hasText (m_sPModeID))
@@ -668,6 +778,7 @@ public abstract class AbstractAS4UserMessageBuilder <IMPLTYPE extends AbstractAS
       aUserMsg.ebms3Properties ().add (aItem.getAsEbms3Property ());
 
     aUserMsg.setForceMimeMessage (m_bForceMimeMessage);
+    aUserMsg.setHeaderTemplateCache (m_aHeaderTemplateCache);
   }
 
   /**
@@ -744,6 +855,51 @@ public abstract class AbstractAS4UserMessageBuilder <IMPLTYPE extends AbstractAS
     {
       return EnumHelper.getFromIDOrNull (ESimpleUserMessageSendResult.class, sID);
     }
+
+    /**
+     * Determine the send result from the received signal message. This
+     * assumes that the HTTP transmission itself was successful.
+     *
+     * @param aSignalMsg
+     *        The received signal message. May be <code>null</code> if none
+     *        was received.
+     * @return The matching send result. Never <code>null</code>.
+     * @since 2.7.6
+     */
+    @Nonnull
+    public static ESimpleUserMessageSendResult getFromSignalMessage (@Nullable final Ebms3SignalMessage aSignalMsg)
+    {
+      if (aSignalMsg == null)
+      {
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Failed to get a SignalMessage as the response");
+
+        // Unexpected response - invalid XML or at least no Ebms3 signal message
+        return NO_SIGNAL_MESSAGE_RECEIVED;
+      }
+
+      if (aSignalMsg.hasErrorEntries ())
+      {
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("The received SignalMessage contains at lease one error");
+
+        // An error was returned from the other side
+        // Errors have precedence over receipts
+        return AS4_ERROR_MESSAGE_RECEIVED;
+      }
+
+      if (aSignalMsg.getReceipt () != null)
+      {
+        // A receipt was returned - this is deemed success
+        return SUCCESS;
+      }
+
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("The SignalMessage contains neither Errors nor a Receipt - unexpected SignalMessage layout.");
+
+      // Neither an error nor a receipt was returned - this is weird
+      return INVALID_SIGNAL_MESSAGE_RECEIVED;
+    }
   }
 
   /**
@@ -801,37 +957,7 @@ public abstract class AbstractAS4UserMessageBuilder <IMPLTYPE extends AbstractAS
         return ESimpleUserMessageSendResult.INVALID_PARAMETERS;
       }
 
-      final Ebms3SignalMessage aSignalMsg = aSignalMsgKeeper.get ();
-      if (aSignalMsg == null)
-      {
-        if (LOGGER.isDebugEnabled ())
-          LOGGER.debug ("Failed to get a SignalMessage as the response");
-
-        // Unexpected response - invalid XML or at least no Ebms3 signal message
-        return ESimpleUserMessageSendResult.NO_SIGNAL_MESSAGE_RECEIVED;
-      }
-
-      if (aSignalMsg.hasErrorEntries ())
-      {
-        if (LOGGER.isDebugEnabled ())
-          LOGGER.debug ("The received SignalMessage contains at lease one error");
-
-        // An error was returned from the other side
-        // Errors have precedence over receipts
-        return ESimpleUserMessageSendResult.AS4_ERROR_MESSAGE_RECEIVED;
-      }
-
-      if (aSignalMsg.getReceipt () != null)
-      {
-        // A receipt was returned - this is deemed success
-        return ESimpleUserMessageSendResult.SUCCESS;
-      }
-
-      if (LOGGER.isDebugEnabled ())
-        LOGGER.debug ("The SignalMessage contains neither Errors nor a Receipt - unexpected SignalMessage layout.");
-
-      // Neither an error nor a receipt was returned - this is weird
-      return ESimpleUserMessageSendResult.INVALID_SIGNAL_MESSAGE_RECEIVED;
+      return ESimpleUserMessageSendResult.getFromSignalMessage (aSignalMsgKeeper.get ());
     }
     catch (final Phase4Exception ex)
     {
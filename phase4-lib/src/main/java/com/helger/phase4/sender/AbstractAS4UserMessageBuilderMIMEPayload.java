@@ -17,6 +17,8 @@
 package com.helger.phase4.sender;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
@@ -27,11 +29,22 @@ import javax.annotation.concurrent.NotThreadSafe;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.OverrideOnDemand;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.state.ESuccess;
+import com.helger.commons.wrapper.Wrapper;
 import com.helger.phase4.attachment.AS4OutgoingAttachment;
+import com.helger.phase4.attachment.AS4ParallelAttachmentHelper;
 import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.client.AS4ClientBuiltMessage;
 import com.helger.phase4.client.AS4ClientUserMessage;
+import com.helger.phase4.client.IAS4SignalMessageConsumer;
 import com.helger.phase4.crypto.AS4IncomingSecurityConfiguration;
+import com.helger.phase4.ebms3header.Ebms3SignalMessage;
+import com.helger.phase4.queue.AS4OutboundQueue;
 import com.helger.phase4.util.AS4ResourceHelper;
 import com.helger.phase4.util.Phase4Exception;
 
@@ -108,7 +121,10 @@ public abstract class AbstractAS4UserMessageBuilderMIMEPayload <IMPLTYPE extends
 
   /**
    * Create the main attachment. This is mainly intended for ENTSOG/BDEW to add
-   * some custom properties.
+   * some custom properties. If an
+   * {@link #attachmentExecutor(java.util.concurrent.Executor)} is set, this
+   * method may be invoked concurrently with
+   * {@link #createOtherAttachment(AS4OutgoingAttachment, AS4ResourceHelper, int)}.
    *
    * @param aPayload
    *        The outgoing main attachment as provided to the builder. Never
@@ -126,12 +142,14 @@ public abstract class AbstractAS4UserMessageBuilderMIMEPayload <IMPLTYPE extends
   protected WSS4JAttachment createMainAttachment (@Nonnull final AS4OutgoingAttachment aPayload,
                                                   @Nonnull final AS4ResourceHelper aResHelper) throws IOException
   {
-    return WSS4JAttachment.createOutgoingFileAttachment (aPayload, aResHelper);
+    return WSS4JAttachment.createOutgoingFileAttachment (aPayload, m_aCompressionPolicy, aResHelper);
   }
 
   /**
    * Create another attachment that is not "main". This is mainly intended for
-   * ENTSOG to add some custom properties.
+   * ENTSOG to add some custom properties. If an
+   * {@link #attachmentExecutor(java.util.concurrent.Executor)} is set, this
+   * method may be invoked concurrently for different attachments.
    *
    * @param aPayload
    *        The outgoing main attachment as provided to the builder. Never
@@ -152,60 +170,76 @@ public abstract class AbstractAS4UserMessageBuilderMIMEPayload <IMPLTYPE extends
                                                    @Nonnull final AS4ResourceHelper aResHelper,
                                                    @Nonnegative final int nAttachmentIndex) throws IOException
   {
-    return WSS4JAttachment.createOutgoingFileAttachment (aPayload, aResHelper);
+    return WSS4JAttachment.createOutgoingFileAttachment (aPayload, m_aCompressionPolicy, aResHelper);
   }
 
-  @Override
-  protected final void mainSendMessage () throws Phase4Exception
+  @Nonnull
+  private AS4ClientUserMessage _createUserMessage (@Nonnull final AS4ResourceHelper aResHelper) throws IOException
   {
-    // Temporary file manager
-    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
-    {
-      // Start building AS4 User Message
-      final AS4ClientUserMessage aUserMsg = new AS4ClientUserMessage (aResHelper);
-      applyToUserMessage (aUserMsg);
+    // Start building AS4 User Message
+    final AS4ClientUserMessage aUserMsg = new AS4ClientUserMessage (aResHelper);
+    applyToUserMessage (aUserMsg);
 
-      if (m_aSendingDTConsumer != null)
+    if (m_aSendingDTConsumer != null)
+    {
+      try
       {
-        try
-        {
-          // Eventually this call will determine the sendingDateTime if none is
-          // set yet
-          m_aSendingDTConsumer.onEffectiveSendingDateTime (aUserMsg.ensureSendingDateTime ().getSendingDateTime ());
-        }
-        catch (final Exception ex)
-        {
-          LOGGER.error ("Failed to invoke IAS4SendingDateTimeConsumer", ex);
-        }
+        // Eventually this call will determine the sendingDateTime if none is
+        // set yet
+        m_aSendingDTConsumer.onEffectiveSendingDateTime (aUserMsg.ensureSendingDateTime ().getSendingDateTime ());
       }
-
-      // No payload - only one attachment
-      aUserMsg.setPayload (null);
-
-      // Add main attachment
-      if (m_aPayload != null)
+      catch (final Exception ex)
       {
-        final WSS4JAttachment aMainAttachment = createMainAttachment (m_aPayload, aResHelper);
-        if (aMainAttachment != null)
-          aUserMsg.addAttachment (aMainAttachment);
+        LOGGER.error ("Failed to invoke IAS4SendingDateTimeConsumer", ex);
       }
+    }
 
-      // Add other attachments
-      {
-        int nIndex = 0;
-        for (final AS4OutgoingAttachment aAttachment : m_aAttachments)
-        {
-          final WSS4JAttachment aOtherAttachment = createOtherAttachment (aAttachment, aResHelper, nIndex);
-          if (aOtherAttachment != null)
-            aUserMsg.addAttachment (aOtherAttachment);
-          nIndex++;
-        }
-      }
+    // No payload - only one attachment
+    aUserMsg.setPayload (null);
+
+    // Collect all attachments - main attachment first
+    final ICommonsList <AS4OutgoingAttachment> aAllPayloads = new CommonsArrayList <> ();
+    if (m_aPayload != null)
+      aAllPayloads.add (m_aPayload);
+    aAllPayloads.addAll (m_aAttachments);
+    final int nOtherOffset = m_aPayload != null ? 1 : 0;
+
+    // Create all attachments, optionally in parallel, but keep the order
+    final ICommonsList <Integer> aIndices = new CommonsArrayList <> (aAllPayloads.size ());
+    for (int i = 0; i < aAllPayloads.size (); ++i)
+      aIndices.add (Integer.valueOf (i));
+    final ICommonsList <WSS4JAttachment> aCreated = AS4ParallelAttachmentHelper.getAllMappedInOrder (aIndices, x -> {
+      final int nIndex = x.intValue ();
+      final AS4OutgoingAttachment aPayload = aAllPayloads.get (nIndex);
+      if (nIndex < nOtherOffset)
+        return createMainAttachment (aPayload, aResHelper);
+      return createOtherAttachment (aPayload, aResHelper, nIndex - nOtherOffset);
+    }, m_aAttachmentExecutor);
 
-      // Create on demand with all necessary parameters
-      final AS4IncomingSecurityConfiguration aIncomingSecurityConfiguration = new AS4IncomingSecurityConfiguration ().setSigningParams (m_aSigningParams.getClone ())
-                                                                                                                     .setCryptParams (m_aCryptParams.getClone ())
-                                                                                                                     .setDecryptParameterModifier (m_aDecryptParameterModifier);
+    // null means "don't use"
+    for (final WSS4JAttachment aAttachment : aCreated)
+      if (aAttachment != null)
+        aUserMsg.addAttachment (aAttachment);
+    return aUserMsg;
+  }
+
+  @Nonnull
+  private AS4IncomingSecurityConfiguration _createIncomingSecurityConfiguration ()
+  {
+    // Create on demand with all necessary parameters
+    return new AS4IncomingSecurityConfiguration ().setSigningParams (m_aSigningParams.getClone ())
+                                                  .setCryptParams (m_aCryptParams.getClone ())
+                                                  .setDecryptParameterModifier (m_aDecryptParameterModifier);
+  }
+
+  @Override
+  protected final void mainSendMessage () throws Phase4Exception
+  {
+    // Temporary file manager
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final AS4ClientUserMessage aUserMsg = _createUserMessage (aResHelper);
+      final AS4IncomingSecurityConfiguration aIncomingSecurityConfiguration = _createIncomingSecurityConfiguration ();
 
       // Main sending
       AS4BidirectionalClientHelper.sendAS4UserMessageAndReceiveAS4SignalMessage (m_aCryptoFactorySign,
@@ -237,4 +271,224 @@ public abstract class AbstractAS4UserMessageBuilderMIMEPayload <IMPLTYPE extends
       throw new Phase4Exception ("Wrapped Phase4Exception", ex);
     }
   }
+
+  @Override
+  @Nonnull
+  protected final CompletableFuture <Void> mainSendMessageAsync ()
+  {
+    // Temporary file manager - closed after the response was handled
+    final AS4ResourceHelper aResHelper = new AS4ResourceHelper ();
+    CompletableFuture <Void> ret;
+    try
+    {
+      final AS4ClientUserMessage aUserMsg = _createUserMessage (aResHelper);
+
+      // Main sending
+      ret = AS4BidirectionalClientHelper.sendAS4UserMessageAndReceiveAS4SignalMessageAsync (m_aCryptoFactorySign,
+                                                                                            m_aCryptoFactoryCrypt,
+                                                                                            pmodeResolver (),
+                                                                                            incomingAttachmentFactory (),
+                                                                                            incomingProfileSelector (),
+                                                                                            aUserMsg,
+                                                                                            m_aLocale,
+                                                                                            m_sEndpointURL,
+                                                                                            m_aBuildMessageCallback,
+                                                                                            m_aOutgoingDumper,
+                                                                                            m_aIncomingDumper,
+                                                                                            _createIncomingSecurityConfiguration (),
+                                                                                            m_aRetryCallback,
+                                                                                            m_aResponseConsumer,
+                                                                                            m_aSignalMsgConsumer);
+    }
+    catch (final Exception ex)
+    {
+      ret = CompletableFuture.failedFuture (ex);
+    }
+
+    return ret.handle ( (x, t) -> {
+      StreamHelper.close (aResHelper);
+      if (t == null)
+        return null;
+
+      final Throwable aCause = t instanceof CompletionException && t.getCause () != null ? t.getCause () : t;
+      if (aCause instanceof Phase4Exception)
+        throw new CompletionException (aCause);
+      // Wrap in phase4 Exception
+      throw new CompletionException (new Phase4Exception ("Wrapped Phase4Exception", aCause));
+    });
+  }
+
+  /**
+   * A user message that was built by
+   * {@link AbstractAS4UserMessageBuilderMIMEPayload#batchBuildMessage()} and
+   * that is ready to be sent via
+   * {@link AbstractAS4UserMessageBuilderMIMEPayload#batchSendBuiltMessage(BatchBuiltMessage)}.
+   * The contained resource helper is closed after sending.
+   *
+   * @author Philip Helger
+   * @since 2.7.6
+   */
+  static final class BatchBuiltMessage
+  {
+    private final AS4ResourceHelper m_aResHelper;
+    private final AS4ClientUserMessage m_aUserMsg;
+    private final AS4ClientBuiltMessage m_aBuiltMsg;
+
+    BatchBuiltMessage (@Nonnull final AS4ResourceHelper aResHelper,
+                       @Nonnull final AS4ClientUserMessage aUserMsg,
+                       @Nonnull final AS4ClientBuiltMessage aBuiltMsg)
+    {
+      m_aResHelper = aResHelper;
+      m_aUserMsg = aUserMsg;
+      m_aBuiltMsg = aBuiltMsg;
+    }
+
+    void close ()
+    {
+      StreamHelper.close (m_aResHelper);
+    }
+  }
+
+  /**
+   * First stage of the batch sending: perform all the checks of
+   * {@link #sendMessage()} and build, sign and encrypt the message. This stage
+   * is CPU bound.
+   *
+   * @return <code>null</code> if the message cannot be sent because of missing
+   *         or invalid parameters.
+   * @throws Phase4Exception
+   *         In case building failed
+   * @since 2.7.6
+   */
+  @Nullable
+  final BatchBuiltMessage batchBuildMessage () throws Phase4Exception
+  {
+    if (prepareSending ().isFailure ())
+      return null;
+
+    // Temporary file manager - closed after sending
+    final AS4ResourceHelper aResHelper = new AS4ResourceHelper ();
+    try
+    {
+      final AS4ClientUserMessage aUserMsg = _createUserMessage (aResHelper);
+      final AS4ClientBuiltMessage aBuiltMsg = aUserMsg.buildMessage (aUserMsg.createMessageID (),
+                                                                     m_aBuildMessageCallback);
+      return new BatchBuiltMessage (aResHelper, aUserMsg, aBuiltMsg);
+    }
+    catch (final Exception ex)
+    {
+      StreamHelper.close (aResHelper);
+      if (ex instanceof Phase4Exception)
+        throw (Phase4Exception) ex;
+      // Wrap in phase4 Exception
+      throw new Phase4Exception ("Wrapped Phase4Exception", ex);
+    }
+  }
+
+  /**
+   * Second stage of the batch sending: send the message built by
+   * {@link #batchBuildMessage()}, handle the response and evaluate the
+   * received signal message like {@link #sendMessageAndCheckForReceipt()}.
+   * This stage is I/O bound.
+   *
+   * @param aBuilt
+   *        The built message. May not be <code>null</code>. It is closed by
+   *        this method.
+   * @return The send result. Never <code>null</code>.
+   * @throws Phase4Exception
+   *         In case sending failed
+   * @since 2.7.6
+   */
+  @Nonnull
+  final ESimpleUserMessageSendResult batchSendBuiltMessage (@Nonnull final BatchBuiltMessage aBuilt) throws Phase4Exception
+  {
+    // Store the received signal message
+    final Wrapper <Ebms3SignalMessage> aSignalMsgKeeper = new Wrapper <> ();
+    final IAS4SignalMessageConsumer aOld = m_aSignalMsgConsumer;
+    final IAS4SignalMessageConsumer aSignalMsgConsumer = (aSignalMsg, aMMD, aState) -> {
+      aSignalMsgKeeper.set (aSignalMsg);
+      if (aOld != null)
+        aOld.handleSignalMessage (aSignalMsg, aMMD, aState);
+    };
+
+    try
+    {
+      // Main sending
+      AS4BidirectionalClientHelper.sendBuiltAS4UserMessageAndReceiveAS4SignalMessage (m_aCryptoFactorySign,
+                                                                                      m_aCryptoFactoryCrypt,
+                                                                                      pmodeResolver (),
+                                                                                      incomingAttachmentFactory (),
+                                                                                      incomingProfileSelector (),
+                                                                                      aBuilt.m_aUserMsg,
+                                                                                      aBuilt.m_aBuiltMsg,
+                                                                                      m_aLocale,
+                                                                                      m_sEndpointURL,
+                                                                                      m_aOutgoingDumper,
+                                                                                      m_aIncomingDumper,
+                                                                                      _createIncomingSecurityConfiguration (),
+                                                                                      m_aRetryCallback,
+                                                                                      m_aResponseConsumer,
+                                                                                      aSignalMsgConsumer);
+    }
+    catch (final Phase4Exception ex)
+    {
+      // Re-throw
+      throw ex;
+    }
+    catch (final Exception ex)
+    {
+      // Wrap in phase4 Exception
+      throw new Phase4Exception ("Wrapped Phase4Exception", ex);
+    }
+    finally
+    {
+      aBuilt.close ();
+    }
+
+    // Post sending callback
+    afterSuccessfulSending ();
+
+    return ESimpleUserMessageSendResult.getFromSignalMessage (aSignalMsgKeeper.get ());
+  }
+
+  /**
+   * Build the message like {@link #sendMessage()} but instead of sending it,
+   * durably store it in the provided outbound queue. The transmission and all
+   * retries are performed by the queue afterwards. Because of that, the
+   * signal message consumer, the raw response consumer and the retry callback
+   * of this builder are not used. The HTTP response is provided to the
+   * callback of the queue.
+   *
+   * @param aQueue
+   *        The outbound queue to be used. May not be <code>null</code>.
+   * @return {@link ESuccess#FAILURE} if not all mandatory parameters are set,
+   *         {@link ESuccess#SUCCESS} if the message was enqueued. Never
+   *         <code>null</code>.
+   * @throws Phase4Exception
+   *         In case building or storing failed
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final ESuccess enqueueMessage (@Nonnull final AS4OutboundQueue aQueue) throws Phase4Exception
+  {
+    ValueEnforcer.notNull (aQueue, "Queue");
+
+    final BatchBuiltMessage aBuilt = batchBuildMessage ();
+    if (aBuilt == null)
+      return ESuccess.FAILURE;
+
+    try
+    {
+      aQueue.enqueue (m_sEndpointURL, aBuilt.m_aBuiltMsg);
+    }
+    catch (final IOException ex)
+    {
+      throw new Phase4Exception ("Failed to enqueue AS4 message", ex);
+    }
+    finally
+    {
+      aBuilt.close ();
+    }
+    return ESuccess.SUCCESS;
+  }
 }
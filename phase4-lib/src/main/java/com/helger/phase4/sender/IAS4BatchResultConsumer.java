@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.sender;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.phase4.sender.AbstractAS4UserMessageBuilder.ESimpleUserMessageSendResult;
+import com.helger.phase4.util.Phase4Exception;
+
+/**
+ * Callback interface for the per message results of an
+ * {@link AS4BatchSender}.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@FunctionalInterface
+public interface IAS4BatchResultConsumer
+{
+  /**
+   * Invoked once for every message of the batch, after sending finished. This
+   * method may be invoked concurrently from different threads.
+   *
+   * @param aBuilder
+   *        The builder of the message that was sent. Never <code>null</code>.
+   * @param eResult
+   *        The send result. Never <code>null</code>.
+   * @param aException
+   *        The exception that occurred while building or sending the message.
+   *        Only set if the result is
+   *        {@link ESimpleUserMessageSendResult#TRANSPORT_ERROR}. May be
+   *        <code>null</code>.
+   */
+  void onResult (@Nonnull AbstractAS4UserMessageBuilderMIMEPayload <?> aBuilder,
+                 @Nonnull ESimpleUserMessageSendResult eResult,
+                 @Nullable Phase4Exception aException);
+}
@@ -16,9 +16,11 @@
  */
 package com.helger.phase4.servlet;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Locale;
 import java.util.Map;
@@ -49,9 +51,12 @@ import com.helger.commons.http.HttpHeaderMap;
 import com.helger.commons.io.IHasInputStream;
 import com.helger.commons.io.stream.HasInputStream;
 import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
-import com.helger.commons.lang.ServiceLoaderHelper;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.io.stream.NonClosingInputStream;
 import com.helger.commons.mime.IMimeType;
 import com.helger.commons.mime.MimeTypeParser;
+import com.helger.commons.mutable.MutableBoolean;
+import com.helger.commons.state.EContinue;
 import com.helger.commons.string.StringHelper;
 import com.helger.commons.wrapper.Wrapper;
 import com.helger.phase4.attachment.AS4DecompressException;
@@ -72,9 +77,11 @@ import com.helger.phase4.ebms3header.Ebms3Receipt;
 import com.helger.phase4.ebms3header.Ebms3SignalMessage;
 import com.helger.phase4.ebms3header.Ebms3UserMessage;
 import com.helger.phase4.error.EEbmsError;
+import com.helger.phase4.incoming.mgr.AS4IncomingMessageProcessingStatusManager;
 import com.helger.phase4.incoming.spi.IAS4IncomingMessageProcessingStatusSPI;
 import com.helger.phase4.messaging.IAS4IncomingMessageMetadata;
 import com.helger.phase4.messaging.domain.MessageHelperMethods;
+import com.helger.phase4.messaging.mime.AS4IncomingMimePart;
 import com.helger.phase4.mgr.MetaAS4Manager;
 import com.helger.phase4.model.AS4Helper;
 import com.helger.phase4.model.pmode.IPMode;
@@ -97,7 +104,6 @@ import com.helger.xml.XMLHelper;
 import com.helger.xml.serialize.read.DOMReader;
 
 import jakarta.mail.MessagingException;
-import jakarta.mail.internet.MimeBodyPart;
 
 /**
  * Utility methods for incoming AS4 messages.
@@ -140,16 +146,166 @@ public final class AS4IncomingHandler
                                                                                Phase4Exception;
   }
 
+  /**
+   * Callback interface for the optional streaming pre-scan of the ebMS header.
+   * It is invoked before the SOAP document is read into a DOM and before any
+   * attachment is read.
+   *
+   * @author Philip Helger
+   * @since 2.7.6
+   */
+  public interface IAS4IncomingPreScanCallback
+  {
+    /**
+     * Callback method
+     *
+     * @param aHttpHeaders
+     *        Incoming HTTP headers. Never <code>null</code> but maybe empty.
+     * @param aPreScanResult
+     *        The unverified values of the ebMS header. Never
+     *        <code>null</code>.
+     * @param eSoapVersion
+     *        SOAP version in use. Never <code>null</code>.
+     * @return {@link EContinue#CONTINUE} to continue with the full processing.
+     *         {@link EContinue#BREAK} if the message was rejected and the
+     *         callback took care of the response. In that case neither the DOM
+     *         is built nor the {@link IAS4ParsedMessageCallback} is invoked.
+     */
+    @Nonnull
+    EContinue onPreScan (@Nonnull HttpHeaderMap aHttpHeaders,
+                         @Nonnull AS4IncomingPreScanResult aPreScanResult,
+                         @Nonnull ESoapVersion eSoapVersion);
+  }
+
   private static final Logger LOGGER = LoggerFactory.getLogger (AS4IncomingHandler.class);
 
   private AS4IncomingHandler ()
   {}
 
+  /**
+   * Read the SOAP document from the provided stream. If a pre-scan callback is
+   * present, the ebMS header is scanned first. All bytes consumed by the
+   * scanner are recorded and replayed to the DOM reader, so that the stream is
+   * only read once.
+   *
+   * @return <code>null</code> if the document could not be parsed or if the
+   *         pre-scan callback rejected the message.
+   */
+  @Nullable
+  private static Document _readSoapDocument (@Nonnull @WillNotClose final InputStream aIS,
+                                             @Nonnull final HttpHeaderMap aHttpHeaders,
+                                             @Nullable final ESoapVersion eFallbackSoapVersion,
+                                             @Nullable final IAS4IncomingPreScanCallback aPreScanCallback,
+                                             @Nonnull final MutableBoolean aRejected)
+  {
+    if (aPreScanCallback == null)
+      return DOMReader.readXMLDOM (aIS);
+
+    final NonBlockingByteArrayOutputStream aRecorded = new NonBlockingByteArrayOutputStream ();
+    final AS4IncomingPreScanResult aPreScanResult = AS4IncomingPreScanner.scan (new FilterInputStream (aIS)
+    {
+      @Override
+      public int read () throws IOException
+      {
+        final int ret = super.read ();
+        if (ret >= 0)
+          aRecorded.write (ret);
+        return ret;
+      }
+
+      @Override
+      public int read (@Nonnull final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+      {
+        final int ret = super.read (aBuf, nOfs, nLen);
+        if (ret > 0)
+          aRecorded.write (aBuf, nOfs, ret);
+        return ret;
+      }
+
+      @Override
+      public boolean markSupported ()
+      {
+        return false;
+      }
+    });
+
+    if (aPreScanResult != null)
+    {
+      ESoapVersion eSoapVersion = aPreScanResult.getSoapVersion ();
+      if (eSoapVersion == null)
+        eSoapVersion = eFallbackSoapVersion;
+      if (eSoapVersion != null && aPreScanCallback.onPreScan (aHttpHeaders, aPreScanResult, eSoapVersion).isBreak ())
+      {
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Incoming message was rejected by the pre-scan");
+        aRejected.set (true);
+        return null;
+      }
+    }
+
+    // Replay the already consumed bytes
+    return DOMReader.readXMLDOM (new SequenceInputStream (aRecorded.getAsInputStream (), aIS));
+  }
+
+  public static void parseAS4Message (@Nonnull final IAS4IncomingAttachmentFactory aIAF,
+                                      @Nonnull @WillNotClose final AS4ResourceHelper aResHelper,
+                                      @Nonnull final IAS4IncomingMessageMetadata aMessageMetadata,
+                                      @Nonnull @WillClose final InputStream aPayloadIS,
+                                      @Nonnull final HttpHeaderMap aHttpHeaders,
+                                      @Nonnull final IAS4ParsedMessageCallback aCallback,
+                                      @Nullable final IAS4IncomingDumper aIncomingDumper) throws Phase4Exception,
+                                                                                          IOException,
+                                                                                          MessagingException,
+                                                                                          WSSecurityException
+  {
+    parseAS4Message (aIAF,
+                     aResHelper,
+                     aMessageMetadata,
+                     aPayloadIS,
+                     aHttpHeaders,
+                     (IAS4IncomingPreScanCallback) null,
+                     aCallback,
+                     aIncomingDumper);
+  }
+
+  /**
+   * Parse an incoming AS4 message.
+   *
+   * @param aIAF
+   *        The incoming attachment factory. May not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper to use. May not be <code>null</code>.
+   * @param aMessageMetadata
+   *        The incoming message metadata. May not be <code>null</code>.
+   * @param aPayloadIS
+   *        The incoming payload. Will be closed. May not be <code>null</code>.
+   * @param aHttpHeaders
+   *        The incoming HTTP headers. May not be <code>null</code>.
+   * @param aPreScanCallback
+   *        The optional callback for the streaming pre-scan of the ebMS
+   *        header. If <code>null</code> no pre-scan happens.
+   * @param aCallback
+   *        The callback for the fully parsed message. May not be
+   *        <code>null</code>.
+   * @param aIncomingDumper
+   *        The incoming dumper to use. If <code>null</code> the global one is
+   *        used.
+   * @throws Phase4Exception
+   *         In case of a processing error
+   * @throws IOException
+   *         In case of IO errors
+   * @throws MessagingException
+   *         In case of MIME errors
+   * @throws WSSecurityException
+   *         In case of WSS4J errors
+   * @since 2.7.6
+   */
   public static void parseAS4Message (@Nonnull final IAS4IncomingAttachmentFactory aIAF,
                                       @Nonnull @WillNotClose final AS4ResourceHelper aResHelper,
                                       @Nonnull final IAS4IncomingMessageMetadata aMessageMetadata,
                                       @Nonnull @WillClose final InputStream aPayloadIS,
                                       @Nonnull final HttpHeaderMap aHttpHeaders,
+                                      @Nullable final IAS4IncomingPreScanCallback aPreScanCallback,
                                       @Nonnull final IAS4ParsedMessageCallback aCallback,
                                       @Nullable final IAS4IncomingDumper aIncomingDumper) throws Phase4Exception,
                                                                                           IOException,
@@ -178,10 +334,11 @@ public final class AS4IncomingHandler
     ESoapVersion eSoapVersion = null;
     final ICommonsList <WSS4JAttachment> aIncomingAttachments = new CommonsArrayList <> ();
     final Wrapper <OutputStream> aDumpOSHolder = new Wrapper <> ();
+    final MutableBoolean aRejected = new MutableBoolean (false);
     Exception aCaughtException = null;
 
-    // Load all SPIs
-    final ICommonsList <IAS4IncomingMessageProcessingStatusSPI> aStatusSPIs = ServiceLoaderHelper.getAllSPIImplementations (IAS4IncomingMessageProcessingStatusSPI.class);
+    // Get all SPIs from the cached snapshot
+    final ICommonsList <IAS4IncomingMessageProcessingStatusSPI> aStatusSPIs = AS4IncomingMessageProcessingStatusManager.getAllSPIs ();
     for (final IAS4IncomingMessageProcessingStatusSPI aStatusSPI : aStatusSPIs)
       try
       {
@@ -238,8 +395,8 @@ public final class AS4IncomingHandler
 
             try (final MultipartItemInputStream aBodyPartIS = aMulti.createInputStream ())
             {
-              // Read headers AND content
-              final MimeBodyPart aBodyPart = new MimeBodyPart (aBodyPartIS);
+              // Read only the headers - the body is streamed afterwards
+              final AS4IncomingMimePart aMimePart = AS4IncomingMimePart.read (aBodyPartIS);
 
               if (nIndex == 0)
               {
@@ -247,13 +404,22 @@ public final class AS4IncomingHandler
                 if (LOGGER.isDebugEnabled ())
                   LOGGER.debug ("Parsing first MIME part as SOAP document");
 
-                // Read SOAP document
-                aSoapDocument = DOMReader.readXMLDOM (aBodyPart.getInputStream ());
-
-                IMimeType aPlainPartMT = MimeTypeParser.safeParseMimeType (aBodyPart.getContentType ());
+                IMimeType aPlainPartMT = MimeTypeParser.safeParseMimeType (aMimePart.getContentType ());
                 if (aPlainPartMT != null)
                   aPlainPartMT = aPlainPartMT.getCopyWithoutParameters ();
 
+                // Read SOAP document
+                aSoapDocument = _readSoapDocument (new NonClosingInputStream (aMimePart.getDecodedBodyInputStream ()),
+                                                   aHttpHeaders,
+                                                   ESoapVersion.getFromMimeTypeOrNull (aPlainPartMT),
+                                                   aPreScanCallback,
+                                                   aRejected);
+                if (aRejected.booleanValue ())
+                {
+                  // Don't read the attachments
+                  break;
+                }
+
                 // Determine SOAP version from MIME part content type
                 eSoapVersion = ESoapVersion.getFromMimeTypeOrNull (aPlainPartMT);
                 if (eSoapVersion != null && LOGGER.isDebugEnabled ())
@@ -273,7 +439,7 @@ public final class AS4IncomingHandler
                 if (LOGGER.isDebugEnabled ())
                   LOGGER.debug ("Parsing MIME part #" + nIndex + " as attachment");
 
-                final WSS4JAttachment aAttachment = aIAF.createAttachment (aBodyPart, aResHelper);
+                final WSS4JAttachment aAttachment = aIAF.createAttachment (aMimePart, aResHelper);
                 aIncomingAttachments.add (aAttachment);
               }
             }
@@ -293,11 +459,18 @@ public final class AS4IncomingHandler
         // Note: this may require a huge amount of memory for large requests
         // Note: This closes the incoming dump stream, when InputStream is
         // closed
-        aSoapDocument = DOMReader.readXMLDOM (AS4DumpManager.getIncomingDumpAwareInputStream (aRealIncomingDumper,
-                                                                                              aPayloadIS,
-                                                                                              aMessageMetadata,
-                                                                                              aHttpHeaders,
-                                                                                              aDumpOSHolder));
+        try (final InputStream aRequestIS = AS4DumpManager.getIncomingDumpAwareInputStream (aRealIncomingDumper,
+                                                                                            aPayloadIS,
+                                                                                            aMessageMetadata,
+                                                                                            aHttpHeaders,
+                                                                                            aDumpOSHolder))
+        {
+          aSoapDocument = _readSoapDocument (aRequestIS,
+                                             aHttpHeaders,
+                                             ESoapVersion.getFromMimeTypeOrNull (aPlainContentType),
+                                             aPreScanCallback,
+                                             aRejected);
+        }
 
         if (LOGGER.isDebugEnabled ())
         {
@@ -347,6 +520,14 @@ public final class AS4IncomingHandler
         }
       }
 
+      if (aRejected.booleanValue ())
+      {
+        // The pre-scan callback already handled everything
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Skipping the main processing of the rejected message");
+        return;
+      }
+
       if (aSoapDocument == null)
       {
         // We don't have a SOAP document
@@ -819,7 +1000,7 @@ public final class AS4IncomingHandler
                                                  @Nonnull final Locale aLocale,
                                                  @Nonnull final IAS4IncomingMessageMetadata aMessageMetadata,
                                                  @Nonnull final HttpResponse aHttpResponse,
-                                                 @Nonnull final byte [] aResponsePayload,
+                                                 @Nonnull @WillClose final InputStream aPayloadIS,
                                                  @Nullable final IAS4IncomingDumper aIncomingDumper,
                                                  @Nonnull final IAS4IncomingSecurityConfiguration aIncomingSecurityConfiguration) throws Phase4Exception
   {
@@ -866,9 +1047,9 @@ public final class AS4IncomingHandler
     for (final Header aHeader : aHttpResponse.getHeaders ())
       aHttpHeaders.addHeader (aHeader.getName (), aHeader.getValue ());
 
-    try (final NonBlockingByteArrayInputStream aPayloadIS = new NonBlockingByteArrayInputStream (aResponsePayload))
+    try
     {
-      // Parse incoming message
+      // Parse incoming message (closes the stream)
       parseAS4Message (aIAF, aResHelper, aMessageMetadata, aPayloadIS, aHttpHeaders, aCallback, aIncomingDumper);
     }
     catch (final Phase4Exception ex)
@@ -901,6 +1082,45 @@ public final class AS4IncomingHandler
                                                        @Nullable final IAS4IncomingDumper aIncomingDumper,
                                                        @Nonnull final IAS4IncomingSecurityConfiguration aIncomingSecurityConfiguration,
                                                        @Nullable final IAS4SignalMessageConsumer aSignalMsgConsumer) throws Phase4Exception
+  {
+    return parseSignalMessage (aCryptoFactorySign,
+                               aCryptoFactoryCrypt,
+                               aPModeResolver,
+                               aIAF,
+                               aAS4ProfileSelector,
+                               aResHelper,
+                               aSendingPMode,
+                               aLocale,
+                               aMessageMetadata,
+                               aHttpResponse,
+                               new NonBlockingByteArrayInputStream (aResponsePayload),
+                               aIncomingDumper,
+                               aIncomingSecurityConfiguration,
+                               aSignalMsgConsumer);
+  }
+
+  /**
+   * Same as the version with the byte array parameter, but reading the
+   * response payload from an {@link InputStream}. This avoids that large
+   * responses need to be kept in memory.
+   *
+   * @since 2.7.6
+   */
+  @Nullable
+  public static Ebms3SignalMessage parseSignalMessage (@Nonnull final IAS4CryptoFactory aCryptoFactorySign,
+                                                       @Nonnull final IAS4CryptoFactory aCryptoFactoryCrypt,
+                                                       @Nonnull final IPModeResolver aPModeResolver,
+                                                       @Nonnull final IAS4IncomingAttachmentFactory aIAF,
+                                                       @Nonnull final IAS4IncomingProfileSelector aAS4ProfileSelector,
+                                                       @Nonnull @WillNotClose final AS4ResourceHelper aResHelper,
+                                                       @Nullable final IPMode aSendingPMode,
+                                                       @Nonnull final Locale aLocale,
+                                                       @Nonnull final IAS4IncomingMessageMetadata aMessageMetadata,
+                                                       @Nonnull final HttpResponse aHttpResponse,
+                                                       @Nonnull @WillClose final InputStream aResponsePayloadIS,
+                                                       @Nullable final IAS4IncomingDumper aIncomingDumper,
+                                                       @Nonnull final IAS4IncomingSecurityConfiguration aIncomingSecurityConfiguration,
+                                                       @Nullable final IAS4SignalMessageConsumer aSignalMsgConsumer) throws Phase4Exception
   {
     final IAS4MessageState aState = _parseMessage (aCryptoFactorySign,
                                                    aCryptoFactoryCrypt,
@@ -912,7 +1132,7 @@ public final class AS4IncomingHandler
                                                    aLocale,
                                                    aMessageMetadata,
                                                    aHttpResponse,
-                                                   aResponsePayload,
+                                                   aResponsePayloadIS,
                                                    aIncomingDumper,
                                                    aIncomingSecurityConfiguration);
     if (aState == null)
@@ -954,6 +1174,45 @@ public final class AS4IncomingHandler
                                                    @Nullable final IAS4IncomingDumper aIncomingDumper,
                                                    @Nonnull final IAS4IncomingSecurityConfiguration aIncomingSecurityConfiguration,
                                                    @Nullable final IAS4UserMessageConsumer aUserMsgConsumer) throws Phase4Exception
+  {
+    return parseUserMessage (aCryptoFactorySign,
+                             aCryptoFactoryCrypt,
+                             aPModeResolver,
+                             aIAF,
+                             aAS4ProfileSelector,
+                             aResHelper,
+                             aSendingPMode,
+                             aLocale,
+                             aMessageMetadata,
+                             aHttpResponse,
+                             new NonBlockingByteArrayInputStream (aResponsePayload),
+                             aIncomingDumper,
+                             aIncomingSecurityConfiguration,
+                             aUserMsgConsumer);
+  }
+
+  /**
+   * Same as the version with the byte array parameter, but reading the
+   * response payload from an {@link InputStream}. This avoids that large
+   * responses need to be kept in memory.
+   *
+   * @since 2.7.6
+   */
+  @Nullable
+  public static Ebms3UserMessage parseUserMessage (@Nonnull final IAS4CryptoFactory aCryptoFactorySign,
+                                                   @Nonnull final IAS4CryptoFactory aCryptoFactoryCrypt,
+                                                   @Nonnull final IPModeResolver aPModeResolver,
+                                                   @Nonnull final IAS4IncomingAttachmentFactory aIAF,
+                                                   @Nonnull final IAS4IncomingProfileSelector aAS4ProfileSelector,
+                                                   @Nonnull @WillNotClose final AS4ResourceHelper aResHelper,
+                                                   @Nullable final IPMode aSendingPMode,
+                                                   @Nonnull final Locale aLocale,
+                                                   @Nonnull final IAS4IncomingMessageMetadata aMessageMetadata,
+                                                   @Nonnull final HttpResponse aHttpResponse,
+                                                   @Nonnull @WillClose final InputStream aResponsePayloadIS,
+                                                   @Nullable final IAS4IncomingDumper aIncomingDumper,
+                                                   @Nonnull final IAS4IncomingSecurityConfiguration aIncomingSecurityConfiguration,
+                                                   @Nullable final IAS4UserMessageConsumer aUserMsgConsumer) throws Phase4Exception
   {
     final IAS4MessageState aState = _parseMessage (aCryptoFactorySign,
                                                    aCryptoFactoryCrypt,
@@ -965,7 +1224,7 @@ public final class AS4IncomingHandler
                                                    aLocale,
                                                    aMessageMetadata,
                                                    aHttpResponse,
-                                                   aResponsePayload,
+                                                   aResponsePayloadIS,
                                                    aIncomingDumper,
                                                    aIncomingSecurityConfiguration);
     if (aState == null)
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.servlet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.helger.commons.annotation.ReturnsMutableObject;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.soap.ESoapVersion;
+
+/**
+ * The ebMS header values extracted by {@link AS4IncomingPreScanner} without
+ * building a DOM. All values are unverified, as no signature check happened
+ * yet. They may only be used to reject messages early - never to accept them.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@NotThreadSafe
+public class AS4IncomingPreScanResult
+{
+  private String m_sEnvelopeNamespaceURI;
+  private boolean m_bUserMessage;
+  private boolean m_bSignalMessage;
+  private String m_sMessageID;
+  private String m_sRefToMessageID;
+  private String m_sPModeID;
+  private String m_sAgreementRef;
+  private final ICommonsList <String> m_aFromPartyIDs = new CommonsArrayList <> ();
+  private final ICommonsList <String> m_aToPartyIDs = new CommonsArrayList <> ();
+  private String m_sService;
+  private String m_sAction;
+
+  AS4IncomingPreScanResult ()
+  {}
+
+  /**
+   * @return The namespace URI of the SOAP Envelope element. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public final String getEnvelopeNamespaceURI ()
+  {
+    return m_sEnvelopeNamespaceURI;
+  }
+
+  final void setEnvelopeNamespaceURI (@Nullable final String s)
+  {
+    m_sEnvelopeNamespaceURI = s;
+  }
+
+  /**
+   * @return The SOAP version derived from the Envelope namespace URI. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public final ESoapVersion getSoapVersion ()
+  {
+    return ESoapVersion.getFromNamespaceURIOrNull (m_sEnvelopeNamespaceURI);
+  }
+
+  /**
+   * @return <code>true</code> if an <code>eb:UserMessage</code> was found.
+   */
+  public final boolean isUserMessage ()
+  {
+    return m_bUserMessage;
+  }
+
+  final void setUserMessage (final boolean b)
+  {
+    m_bUserMessage = b;
+  }
+
+  /**
+   * @return <code>true</code> if an <code>eb:SignalMessage</code> was found.
+   */
+  public final boolean isSignalMessage ()
+  {
+    return m_bSignalMessage;
+  }
+
+  final void setSignalMessage (final boolean b)
+  {
+    m_bSignalMessage = b;
+  }
+
+  /**
+   * @return The first <code>eb:MessageId</code>. May be <code>null</code>.
+   */
+  @Nullable
+  public final String getMessageID ()
+  {
+    return m_sMessageID;
+  }
+
+  public final boolean hasMessageID ()
+  {
+    return StringHelper.hasText (m_sMessageID);
+  }
+
+  final void setMessageID (@Nullable final String s)
+  {
+    m_sMessageID = s;
+  }
+
+  /**
+   * @return The first <code>eb:RefToMessageId</code>. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public final String getRefToMessageID ()
+  {
+    return m_sRefToMessageID;
+  }
+
+  final void setRefToMessageID (@Nullable final String s)
+  {
+    m_sRefToMessageID = s;
+  }
+
+  /**
+   * @return The <code>pmode</code> attribute of <code>eb:AgreementRef</code>.
+   *         May be <code>null</code>.
+   */
+  @Nullable
+  public final String getPModeID ()
+  {
+    return m_sPModeID;
+  }
+
+  final void setPModeID (@Nullable final String s)
+  {
+    m_sPModeID = s;
+  }
+
+  /**
+   * @return The value of <code>eb:AgreementRef</code>. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public final String getAgreementRef ()
+  {
+    return m_sAgreementRef;
+  }
+
+  final void setAgreementRef (@Nullable final String s)
+  {
+    m_sAgreementRef = s;
+  }
+
+  /**
+   * @return All <code>eb:From/eb:PartyId</code> values. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableObject
+  public final ICommonsList <String> fromPartyIDs ()
+  {
+    return m_aFromPartyIDs;
+  }
+
+  /**
+   * @return All <code>eb:To/eb:PartyId</code> values. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableObject
+  public final ICommonsList <String> toPartyIDs ()
+  {
+    return m_aToPartyIDs;
+  }
+
+  /**
+   * @return The value of <code>eb:Service</code>. May be <code>null</code>.
+   */
+  @Nullable
+  public final String getService ()
+  {
+    return m_sService;
+  }
+
+  final void setService (@Nullable final String s)
+  {
+    m_sService = s;
+  }
+
+  /**
+   * @return The value of <code>eb:Action</code>. May be <code>null</code>.
+   */
+  @Nullable
+  public final String getAction ()
+  {
+    return m_sAction;
+  }
+
+  final void setAction (@Nullable final String s)
+  {
+    m_sAction = s;
+  }
+
+  /**
+   * @return <code>true</code> if all values needed for PMode resolution are
+   *         present exactly like in a valid user message.
+   */
+  public final boolean hasPModeResolutionData ()
+  {
+    return m_bUserMessage &&
+           StringHelper.hasText (m_sService) &&
+           StringHelper.hasText (m_sAction) &&
+           m_aFromPartyIDs.size () == 1 &&
+           StringHelper.hasText (m_aFromPartyIDs.getFirstOrNull ()) &&
+           m_aToPartyIDs.size () == 1 &&
+           StringHelper.hasText (m_aToPartyIDs.getFirstOrNull ());
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("EnvelopeNamespaceURI", m_sEnvelopeNamespaceURI)
+                                       .append ("UserMessage", m_bUserMessage)
+                                       .append ("SignalMessage", m_bSignalMessage)
+                                       .append ("MessageID", m_sMessageID)
+                                       .append ("RefToMessageID", m_sRefToMessageID)
+                                       .append ("PModeID", m_sPModeID)
+                                       .append ("AgreementRef", m_sAgreementRef)
+                                       .append ("FromPartyIDs", m_aFromPartyIDs)
+                                       .append ("ToPartyIDs", m_aToPartyIDs)
+                                       .append ("Service", m_sService)
+                                       .append ("Action", m_sAction)
+                                       .getToString ();
+  }
+}
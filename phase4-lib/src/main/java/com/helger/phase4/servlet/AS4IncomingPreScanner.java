@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.servlet;
+
+import java.io.InputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.Immutable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.phase4.CAS4;
+
+/**
+ * A streaming pre-scanner for the <code>eb:Messaging</code> SOAP header. It
+ * reads the incoming SOAP document only until the end of the ebMS header (or
+ * the start of the SOAP Body) and extracts the values needed to reject obvious
+ * failures (e.g. duplicates or unknown PModes) before the DOM is built and
+ * before any WSS4J processing happens.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@Immutable
+public final class AS4IncomingPreScanner
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4IncomingPreScanner.class);
+  private static final XMLInputFactory XIF;
+
+  static
+  {
+    final XMLInputFactory aXIF = XMLInputFactory.newInstance ();
+    // No DTDs and no external entities - same as for the DOM reading
+    aXIF.setProperty (XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    aXIF.setProperty (XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    aXIF.setProperty (XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+    aXIF.setProperty (XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    XIF = aXIF;
+  }
+
+  private AS4IncomingPreScanner ()
+  {}
+
+  /**
+   * Scan the ebMS header of the provided SOAP document. Reading stops after
+   * the <code>eb:Messaging</code> element or at the start of the SOAP Body,
+   * whatever comes first. Because of the internal read ahead of the parser,
+   * more bytes than that may be consumed from the provided stream.
+   *
+   * @param aIS
+   *        The input stream to read from. May not be <code>null</code>. The
+   *        stream is not closed.
+   * @return <code>null</code> if the document could not be parsed or if no
+   *         <code>eb:Messaging</code> element was found.
+   */
+  @Nullable
+  public static AS4IncomingPreScanResult scan (@Nonnull @WillNotClose final InputStream aIS)
+  {
+    final AS4IncomingPreScanResult ret = new AS4IncomingPreScanResult ();
+    boolean bFoundMessaging = false;
+    XMLStreamReader aReader = null;
+    try
+    {
+      aReader = XIF.createXMLStreamReader (aIS);
+
+      int nDepth = 0;
+      boolean bInFrom = false;
+      boolean bInTo = false;
+      main: while (aReader.hasNext ())
+      {
+        switch (aReader.next ())
+        {
+          case XMLStreamConstants.START_ELEMENT:
+          {
+            nDepth++;
+            final String sNamespaceURI = aReader.getNamespaceURI ();
+            final String sLocalName = aReader.getLocalName ();
+            if (nDepth == 1)
+            {
+              ret.setEnvelopeNamespaceURI (sNamespaceURI);
+              break;
+            }
+
+            if (nDepth == 2 &&
+                "Body".equals (sLocalName) &&
+                sNamespaceURI != null &&
+                sNamespaceURI.equals (ret.getEnvelopeNamespaceURI ()))
+            {
+              // No need to read the payload
+              break main;
+            }
+
+            if (!CAS4.EBMS_NS.equals (sNamespaceURI))
+              break;
+
+            switch (sLocalName)
+            {
+              case "Messaging":
+                bFoundMessaging = true;
+                break;
+              case "UserMessage":
+                ret.setUserMessage (true);
+                break;
+              case "SignalMessage":
+                ret.setSignalMessage (true);
+                break;
+              case "From":
+                bInFrom = true;
+                break;
+              case "To":
+                bInTo = true;
+                break;
+              case "MessageId":
+                if (ret.getMessageID () == null)
+                  ret.setMessageID (aReader.getElementText ());
+                else
+                  aReader.getElementText ();
+                nDepth--;
+                break;
+              case "RefToMessageId":
+                if (ret.getRefToMessageID () == null)
+                  ret.setRefToMessageID (aReader.getElementText ());
+                else
+                  aReader.getElementText ();
+                nDepth--;
+                break;
+              case "AgreementRef":
+                ret.setPModeID (aReader.getAttributeValue (null, "pmode"));
+                ret.setAgreementRef (aReader.getElementText ());
+                nDepth--;
+                break;
+              case "PartyId":
+              {
+                final String sPartyID = aReader.getElementText ();
+                if (bInFrom)
+                  ret.fromPartyIDs ().add (sPartyID);
+                else
+                  if (bInTo)
+                    ret.toPartyIDs ().add (sPartyID);
+                nDepth--;
+                break;
+              }
+              case "Service":
+                ret.setService (aReader.getElementText ());
+                nDepth--;
+                break;
+              case "Action":
+                ret.setAction (aReader.getElementText ());
+                nDepth--;
+                break;
+              default:
+                break;
+            }
+            break;
+          }
+          case XMLStreamConstants.END_ELEMENT:
+          {
+            nDepth--;
+            if (CAS4.EBMS_NS.equals (aReader.getNamespaceURI ()))
+            {
+              final String sLocalName = aReader.getLocalName ();
+              if ("From".equals (sLocalName))
+                bInFrom = false;
+              else
+                if ("To".equals (sLocalName))
+                  bInTo = false;
+                else
+                  if ("Messaging".equals (sLocalName))
+                  {
+                    // Everything we need was read
+                    break main;
+                  }
+            }
+            break;
+          }
+          default:
+            break;
+        }
+      }
+    }
+    catch (final XMLStreamException | RuntimeException ex)
+    {
+      // The full DOM parsing will report the details
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Failed to pre-scan the incoming SOAP document: " + ex.getMessage ());
+      return null;
+    }
+    finally
+    {
+      if (aReader != null)
+        try
+        {
+          // Does not close the underlying stream
+          aReader.close ();
+        }
+        catch (final XMLStreamException ex)
+        {
+          // Ignore
+        }
+    }
+
+    if (!bFoundMessaging)
+    {
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("No ebMS Messaging header found in pre-scan");
+      return null;
+    }
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Pre-scan result: " + ret);
+    return ret;
+  }
+}
@@ -49,6 +49,7 @@ import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
 import com.helger.commons.io.stream.StreamHelper;
 import com.helger.commons.mime.EMimeContentType;
 import com.helger.commons.mime.IMimeType;
+import com.helger.commons.state.EContinue;
 import com.helger.commons.state.ISuccessIndicator;
 import com.helger.commons.string.StringHelper;
 import com.helger.httpclient.response.ResponseHandlerXml;
@@ -57,6 +58,7 @@ import com.helger.phase4.attachment.AS4DecompressException;
 import com.helger.phase4.attachment.IAS4IncomingAttachmentFactory;
 import com.helger.phase4.attachment.WSS4JAttachment;
 import com.helger.phase4.client.IAS4RetryCallback;
+import com.helger.phase4.config.AS4Configuration;
 import com.helger.phase4.crypto.AS4CryptParams;
 import com.helger.phase4.crypto.AS4SigningParams;
 import com.helger.phase4.crypto.IAS4CryptoFactory;
@@ -99,6 +101,7 @@ import com.helger.phase4.model.pmode.leg.PModeLeg;
 import com.helger.phase4.model.pmode.leg.PModeLegSecurity;
 import com.helger.phase4.model.pmode.resolve.IPModeResolver;
 import com.helger.phase4.profile.IAS4Profile;
+import com.helger.phase4.servlet.AS4IncomingHandler.IAS4IncomingPreScanCallback;
 import com.helger.phase4.servlet.AS4IncomingHandler.IAS4ParsedMessageCallback;
 import com.helger.phase4.servlet.mgr.AS4ServletMessageProcessorManager;
 import com.helger.phase4.servlet.soap.SOAPHeaderElementProcessorRegistry;
@@ -106,10 +109,10 @@ import com.helger.phase4.servlet.spi.AS4MessageProcessorResult;
 import com.helger.phase4.servlet.spi.AS4SignalMessageProcessorResult;
 import com.helger.phase4.servlet.spi.IAS4ServletMessageProcessorSPI;
 import com.helger.phase4.soap.ESoapVersion;
+import com.helger.phase4.util.AS4ExecutionHelper;
 import com.helger.phase4.util.AS4ResourceHelper;
 import com.helger.phase4.util.AS4XMLHelper;
 import com.helger.phase4.util.Phase4Exception;
-import com.helger.photon.io.PhotonWorkerPool;
 import com.helger.web.scope.IRequestWebScopeWithoutResponse;
 import com.helger.xml.serialize.write.XMLWriter;
 
@@ -170,9 +173,8 @@ public class AS4RequestHandler implements AutoCloseable
     public void applyToResponse (@Nonnull final IAS4ResponseAbstraction aHttpResponse,
                                  @Nullable final IAS4OutgoingDumper aOutgoingDumper)
     {
-      final String sXML = AS4XMLHelper.serializeXML (m_aDoc);
       final Charset aCharset = AS4XMLHelper.XWS.getCharset ();
-      final byte [] aXMLBytes = sXML.getBytes (aCharset);
+      final byte [] aXMLBytes = AS4XMLHelper.serializeXMLToBytes (m_aDoc);
       aHttpResponse.setContent (aXMLBytes, aCharset);
       aHttpResponse.setMimeType (m_aMimeType);
 
@@ -377,6 +379,7 @@ public class AS4RequestHandler implements AutoCloseable
   /** By default get all message processors from the global SPI registry */
   private Supplier <? extends ICommonsList <IAS4ServletMessageProcessorSPI>> m_aProcessorSupplier = AS4ServletMessageProcessorManager::getAllProcessors;
   private IAS4RequestHandlerErrorConsumer m_aErrorConsumer;
+  private boolean m_bPreScanEnabled = AS4Configuration.isIncomingPreScanEnabled ();
 
   public AS4RequestHandler (@Nonnull final IAS4CryptoFactory aCryptoFactorySign,
                             @Nonnull final IAS4CryptoFactory aCryptoFactoryCrypt,
@@ -620,6 +623,88 @@ public class AS4RequestHandler implements AutoCloseable
     return this;
   }
 
+  /**
+   * @return <code>true</code> if the streaming pre-scan of the ebMS header is
+   *         enabled, <code>false</code> if not. The default is taken from
+   *         {@link AS4Configuration#isIncomingPreScanEnabled()}.
+   * @since 2.7.6
+   */
+  public final boolean isPreScanEnabled ()
+  {
+    return m_bPreScanEnabled;
+  }
+
+  /**
+   * Enable or disable the streaming pre-scan of the ebMS header. If enabled,
+   * duplicate message IDs and unresolvable PModes are rejected before the DOM
+   * is built, before any WSS4J processing happens and before the attachments
+   * are read. The pre-scan never registers a message ID, that only happens in
+   * the full processing.
+   *
+   * @param bPreScanEnabled
+   *        <code>true</code> to enable it, <code>false</code> to disable it.
+   * @return this for chaining
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final AS4RequestHandler setPreScanEnabled (final boolean bPreScanEnabled)
+  {
+    m_bPreScanEnabled = bPreScanEnabled;
+    return this;
+  }
+
+  /**
+   * Check the unverified values of the ebMS header pre-scan for obvious
+   * failures.
+   *
+   * @param aPreScanResult
+   *        The pre-scan result. May not be <code>null</code>.
+   * @param aEbmsErrorMessagesTarget
+   *        The list to add the errors to. May not be <code>null</code>.
+   */
+  private void _checkPreScanResult (@Nonnull final AS4IncomingPreScanResult aPreScanResult,
+                                    @Nonnull final ICommonsList <Ebms3Error> aEbmsErrorMessagesTarget)
+  {
+    final String sMessageID = aPreScanResult.getMessageID ();
+
+    // Read-only duplicate check - registration happens in the full processing
+    if (MetaAS4Manager.getIncomingDuplicateMgr ().getItemOfMessageID (sMessageID) != null)
+    {
+      final String sDetails = "Not invoking SPIs, because message with Message ID '" +
+                              sMessageID +
+                              "' was already handled (this is a duplicate)";
+      LOGGER.error (sDetails);
+      aEbmsErrorMessagesTarget.add (EEbmsError.EBMS_OTHER.errorBuilder (m_aLocale)
+                                                         .refToMessageInError (sMessageID)
+                                                         .errorDetail (sDetails)
+                                                         .build ());
+      return;
+    }
+
+    // Only if all values are present - everything else is reported by the
+    // full processing
+    if (aPreScanResult.hasPModeResolutionData ())
+    {
+      final String sPModeID = aPreScanResult.getPModeID ();
+      final IPMode aPMode = m_aPModeResolver.getPModeOfID (sPModeID,
+                                                           aPreScanResult.getService (),
+                                                           aPreScanResult.getAction (),
+                                                           aPreScanResult.fromPartyIDs ().getFirstOrNull (),
+                                                           aPreScanResult.toPartyIDs ().getFirstOrNull (),
+                                                           aPreScanResult.getAgreementRef (),
+                                                           AS4Configuration.getThisEndpointAddress ());
+      if (aPMode == null)
+      {
+        final String sDetails = "Failed to resolve PMode '" + sPModeID + "' using resolver " + m_aPModeResolver;
+        LOGGER.error (sDetails);
+        aEbmsErrorMessagesTarget.add (EEbmsError.EBMS_PROCESSING_MODE_MISMATCH.errorBuilder (m_aLocale)
+                                                                            .refToMessageInError (sMessageID)
+                                                                            .errorDetail (sDetails)
+                                                                            .build ());
+      }
+    }
+  }
+
   /**
    * Invoke custom SPI message processors
    *
@@ -1637,8 +1722,7 @@ public class AS4RequestHandler implements AutoCloseable
                                                                                           AS4HttpDebug.getDebugXMLWriterSettings ())));
         };
 
-        final CompletableFuture <Void> aFuture = PhotonWorkerPool.getInstance ()
-                                                                 .runThrowing (CAS4.LIB_NAME + " async processing", r);
+        final CompletableFuture <Void> aFuture = AS4ExecutionHelper.runAsync (CAS4.LIB_NAME + " async processing", r);
 
         if (m_aSoapProcessingFinalizedCB != null)
         {
@@ -1862,11 +1946,39 @@ public class AS4RequestHandler implements AutoCloseable
       }
       AS4HttpDebug.debug ( () -> "RECEIVE-END with " + (aResponder != null ? "EBMS message" : "no content"));
     };
+
+    IAS4IncomingPreScanCallback aPreScanCallback = null;
+    if (m_bPreScanEnabled)
+    {
+      aPreScanCallback = (aHttpHeaders, aPreScanResult, eSoapVersion) -> {
+        final ICommonsList <Ebms3Error> aErrorMessages = new CommonsArrayList <> ();
+        _checkPreScanResult (aPreScanResult, aErrorMessages);
+        if (aErrorMessages.isEmpty ())
+          return EContinue.CONTINUE;
+
+        // Reject early - the PMode is not known, so always respond
+        final AS4MessageState aState = new AS4MessageState (eSoapVersion, m_aResHelper, m_aLocale);
+        aState.setMessageID (aPreScanResult.getMessageID ());
+        aState.setRefToMessageID (aPreScanResult.getRefToMessageID ());
+        final IAS4ResponseFactory aResponder = _createResponseErrorMessage (aState,
+                                                                            eSoapVersion,
+                                                                            MessageHelperMethods.createRandomMessageID (),
+                                                                            (PModeLeg) null,
+                                                                            aErrorMessages);
+        final IAS4OutgoingDumper aRealOutgoingDumper = m_aOutgoingDumper != null ? m_aOutgoingDumper
+                                                                                 : AS4DumpManager.getOutgoingDumper ();
+        aResponder.applyToResponse (aHttpResponse, aRealOutgoingDumper);
+        AS4HttpDebug.debug ( () -> "RECEIVE-END with EBMS error message from pre-scan");
+        return EContinue.BREAK;
+      };
+    }
+
     AS4IncomingHandler.parseAS4Message (m_aIncomingAttachmentFactory,
                                         m_aResHelper,
                                         m_aMessageMetadata,
                                         aServletRequestIS,
                                         aRequestHttpHeaders,
+                                        aPreScanCallback,
                                         aCallback,
                                         m_aIncomingDumper);
   }
@@ -44,6 +44,8 @@ public final class AS4ServletMessageProcessorManager
   private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
   @GuardedBy ("RW_LOCK")
   private static final ICommonsList <IAS4ServletMessageProcessorSPI> s_aProcessors = new CommonsArrayList <> ();
+  // Immutable snapshot of s_aProcessors for lock free reading
+  private static volatile IAS4ServletMessageProcessorSPI [] s_aSnapshot = new IAS4ServletMessageProcessorSPI [0];
 
   private AS4ServletMessageProcessorManager ()
   {}
@@ -60,7 +62,10 @@ public final class AS4ServletMessageProcessorManager
       if (LOGGER.isDebugEnabled ())
         LOGGER.debug ("Found " + aProcessorSPIs.size () + " AS4 message processors");
 
-    RW_LOCK.writeLocked ( () -> s_aProcessors.setAll (aProcessorSPIs));
+    RW_LOCK.writeLocked ( () -> {
+      s_aProcessors.setAll (aProcessorSPIs);
+      s_aSnapshot = s_aProcessors.toArray (new IAS4ServletMessageProcessorSPI [s_aProcessors.size ()]);
+    });
   }
 
   static
@@ -77,6 +82,6 @@ public final class AS4ServletMessageProcessorManager
   @ReturnsMutableCopy
   public static ICommonsList <IAS4ServletMessageProcessorSPI> getAllProcessors ()
   {
-    return RW_LOCK.readLockedGet (s_aProcessors::getClone);
+    return new CommonsArrayList <> (s_aSnapshot);
   }
 }
@@ -48,7 +48,6 @@ import com.helger.commons.collection.impl.CommonsHashSet;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsSet;
 import com.helger.commons.io.file.FileHelper;
-import com.helger.commons.io.stream.HasInputStream;
 import com.helger.commons.io.stream.StreamHelper;
 import com.helger.commons.regex.RegExCache;
 import com.helger.commons.state.ESuccess;
@@ -247,7 +246,7 @@ public class SOAPHeaderElementProcessorWSS4J implements ISOAPHeaderElementProces
         {
           LOGGER.error ("Failed to write response attachment to temporary file '" + aTempFile.getAbsolutePath () + "'");
         }
-        aResponseAttachment.setSourceStreamProvider (HasInputStream.multiple ( () -> FileHelper.getBufferedInputStream (aTempFile)));
+        aResponseAttachment.setSourceFile (aTempFile);
       }
 
       // Remember in State
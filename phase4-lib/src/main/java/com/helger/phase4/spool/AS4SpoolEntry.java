@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.spool;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.annotation.ReturnsMutableObject;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.io.IHasInputStream;
+import com.helger.commons.io.file.FileHelper;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * The result of writing an {@link AS4SpoolOutputStream}. The content can be
+ * read any number of times, as long as the owning resource helper is not
+ * closed. Memory based content uses either pooled chunks that are reused
+ * afterwards, or - if pooled memory was disabled - an exact-size heap byte
+ * array (see {@link #getHeapBytes()}) that may outlive the resource helper.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@Immutable
+public final class AS4SpoolEntry implements IHasInputStream
+{
+  private final EAS4SpoolTier m_eTier;
+  private final long m_nLength;
+  private final File m_aFile;
+  private final ICommonsList <ByteBuffer> m_aChunks;
+  private final byte [] m_aHeapBytes;
+
+  AS4SpoolEntry (@Nonnull final EAS4SpoolTier eTier,
+                 @Nonnegative final long nLength,
+                 @Nullable final File aFile,
+                 @Nullable final ICommonsList <ByteBuffer> aChunks,
+                 @Nullable final byte [] aHeapBytes)
+  {
+    m_eTier = eTier;
+    m_nLength = nLength;
+    m_aFile = aFile;
+    m_aChunks = aChunks;
+    m_aHeapBytes = aHeapBytes;
+  }
+
+  /**
+   * @return The tier in which the content is stored. Never <code>null</code>.
+   */
+  @Nonnull
+  public EAS4SpoolTier getTier ()
+  {
+    return m_eTier;
+  }
+
+  /**
+   * @return The number of bytes stored. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getLength ()
+  {
+    return m_nLength;
+  }
+
+  /**
+   * @return The file holding the content if the tier is file based,
+   *         <code>null</code> otherwise.
+   */
+  @Nullable
+  public File getFile ()
+  {
+    return m_aFile;
+  }
+
+  /**
+   * @return <code>true</code> if the content is stored in a file.
+   */
+  public boolean hasFile ()
+  {
+    return m_aFile != null;
+  }
+
+  /**
+   * @return The exact-size heap byte array holding the content, if it was
+   *         spooled to memory with pooled memory disabled. <code>null</code>
+   *         otherwise. The array is not copied and must not be modified. It
+   *         stays valid after the owning resource helper was closed.
+   */
+  @Nullable
+  @ReturnsMutableObject
+  public byte [] getHeapBytes ()
+  {
+    return m_aHeapBytes;
+  }
+
+  @Nonnull
+  public InputStream getInputStream ()
+  {
+    if (m_aFile != null)
+      return FileHelper.getBufferedInputStream (m_aFile);
+    if (m_aHeapBytes != null)
+      return new NonBlockingByteArrayInputStream (m_aHeapBytes);
+    return new ChunkInputStream (m_aChunks);
+  }
+
+  public boolean isReadMultiple ()
+  {
+    return true;
+  }
+
+  /**
+   * @return A private copy of the complete content, that stays valid after the
+   *         owning resource helper was closed. Never <code>null</code>.
+   * @throws IOException
+   *         In case reading the content fails
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public byte [] getAllBytes () throws IOException
+  {
+    try (final InputStream aIS = getInputStream ())
+    {
+      if (aIS == null)
+        throw new IOException ("Failed to open spooled content " + toString ());
+      return aIS.readAllBytes ();
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("Tier", m_eTier)
+                                       .append ("Length", m_nLength)
+                                       .appendIfNotNull ("File", m_aFile)
+                                       .getToString ();
+  }
+
+  /**
+   * Reads the memory chunks sequentially. Each instance works on its own
+   * duplicates of the chunks, so that multiple readers are possible.
+   *
+   * @author Philip Helger
+   */
+  private static final class ChunkInputStream extends InputStream
+  {
+    private final ICommonsList <ByteBuffer> m_aChunks;
+    private int m_nIndex = 0;
+    private ByteBuffer m_aCurrent;
+
+    ChunkInputStream (@Nonnull final ICommonsList <ByteBuffer> aChunks)
+    {
+      m_aChunks = aChunks;
+    }
+
+    @Nullable
+    private ByteBuffer _current ()
+    {
+      while (m_aCurrent == null || !m_aCurrent.hasRemaining ())
+      {
+        if (m_nIndex >= m_aChunks.size ())
+          return null;
+        // The stored chunks are flipped read-only buffers
+        m_aCurrent = m_aChunks.get (m_nIndex++).duplicate ();
+      }
+      return m_aCurrent;
+    }
+
+    @Override
+    public int read ()
+    {
+      final ByteBuffer aBuf = _current ();
+      return aBuf == null ? -1 : aBuf.get () & 0xff;
+    }
+
+    @Override
+    public int read (@Nonnull final byte [] aBuf, final int nOfs, final int nLen)
+    {
+      if (nLen == 0)
+        return 0;
+      final ByteBuffer aCur = _current ();
+      if (aCur == null)
+        return -1;
+      final int nRead = Math.min (nLen, aCur.remaining ());
+      aCur.get (aBuf, nOfs, nRead);
+      return nRead;
+    }
+
+    @Override
+    public int available ()
+    {
+      return m_aCurrent == null ? 0 : m_aCurrent.remaining ();
+    }
+  }
+}
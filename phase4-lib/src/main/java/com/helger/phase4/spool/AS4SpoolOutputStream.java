@@ -0,0 +1,415 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.spool;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.io.EAppend;
+import com.helger.commons.io.file.FileHelper;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.util.AS4IOHelper;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * An output stream that writes into the tiers of an {@link AS4SpoolStore}.
+ * Writing starts in memory and moves to the next tier as soon as the threshold
+ * of the current tier is exceeded or the memory budget is exhausted. After
+ * {@link #close()} the content is available via {@link #getSpoolEntry()}.<br>
+ * Instances are created via
+ * {@link AS4ResourceHelper#createSpoolOutputStream(boolean)}. The memory chunks
+ * and files are released when that resource helper is closed. If pooled memory
+ * is disabled, the memory tier uses a heap byte array instead, that is trimmed
+ * to the exact size on {@link #close()} and may outlive the resource helper.
+ * Its share of the memory budget is returned when the array is garbage
+ * collected.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@NotThreadSafe
+public class AS4SpoolOutputStream extends OutputStream
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4SpoolOutputStream.class);
+
+  private final AS4ResourceHelper m_aResHelper;
+  private final AS4SpoolStore m_aStore;
+  private final long m_nMemoryThreshold;
+  private final long m_nFastFileThreshold;
+  private final boolean m_bPooledMemory;
+  private final ICommonsList <ByteBuffer> m_aChunks = new CommonsArrayList <> ();
+  // Only used if pooled memory is disabled
+  private byte [] m_aHeapBuf;
+  private long m_nHeapReserved = 0;
+  private EAS4SpoolTier m_eTier = EAS4SpoolTier.MEMORY;
+  private File m_aFile;
+  private OutputStream m_aFileOS;
+  private long m_nLength = 0;
+  private boolean m_bClosed = false;
+  private boolean m_bReleased = false;
+  private AS4SpoolEntry m_aEntry;
+
+  /**
+   * Constructor using pooled memory chunks. The caller is responsible for
+   * registering {@link #release()} for postponed closing.
+   *
+   * @param aResHelper
+   *        The resource helper used to create temporary files. May not be
+   *        <code>null</code>.
+   * @param aStore
+   *        The spool store to use. May not be <code>null</code>.
+   */
+  public AS4SpoolOutputStream (@Nonnull final AS4ResourceHelper aResHelper, @Nonnull final AS4SpoolStore aStore)
+  {
+    this (aResHelper, aStore, true);
+  }
+
+  /**
+   * Constructor. The caller is responsible for registering {@link #release()}
+   * for postponed closing.
+   *
+   * @param aResHelper
+   *        The resource helper used to create temporary files. May not be
+   *        <code>null</code>.
+   * @param aStore
+   *        The spool store to use. May not be <code>null</code>.
+   * @param bPooledMemory
+   *        <code>true</code> to use pooled memory chunks that are reused after
+   *        {@link #release()}, <code>false</code> to use a private heap byte
+   *        array, so that the spooled content may outlive the resource helper.
+   */
+  public AS4SpoolOutputStream (@Nonnull final AS4ResourceHelper aResHelper,
+                               @Nonnull final AS4SpoolStore aStore,
+                               final boolean bPooledMemory)
+  {
+    ValueEnforcer.notNull (aResHelper, "ResHelper");
+    ValueEnforcer.notNull (aStore, "Store");
+    m_aResHelper = aResHelper;
+    m_aStore = aStore;
+    m_bPooledMemory = bPooledMemory;
+    // Settings may change concurrently
+    // A heap byte array cannot hold more than Integer.MAX_VALUE bytes
+    m_nMemoryThreshold = bPooledMemory ? aStore.getMemoryThreshold ()
+                                       : Math.min (aStore.getMemoryThreshold (), Integer.MAX_VALUE - 8);
+    m_nFastFileThreshold = aStore.isFastFileTierEnabled () ? aStore.getFastFileThreshold () : -1;
+  }
+
+  private void _ensureOpen () throws IOException
+  {
+    if (m_bClosed)
+      throw new IOException ("The spool output stream is already closed");
+  }
+
+  private void _releaseChunks ()
+  {
+    for (final ByteBuffer aChunk : m_aChunks)
+      m_aStore.releaseChunk (aChunk);
+    m_aChunks.clear ();
+  }
+
+  private void _releaseHeap ()
+  {
+    m_aStore.releaseMemory (m_nHeapReserved);
+    m_nHeapReserved = 0;
+    m_aHeapBuf = null;
+  }
+
+  private void _openFile (@Nonnull final EAS4SpoolTier eTier) throws IOException
+  {
+    m_aFile = m_aResHelper.createTempFile (eTier);
+    m_aFileOS = FileHelper.getBufferedOutputStream (m_aFile);
+    if (m_aFileOS == null)
+      throw new IOException ("Failed to open temporary file '" + m_aFile.getAbsolutePath () + "' for writing");
+    m_eTier = eTier;
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Spooling to " + eTier + " file '" + m_aFile.getAbsolutePath () + "'");
+  }
+
+  private void _spillMemory (final long nNewLength) throws IOException
+  {
+    final boolean bFastFile = m_nFastFileThreshold >= 0 && nNewLength <= m_nFastFileThreshold;
+    _openFile (bFastFile ? EAS4SpoolTier.FAST_FILE : EAS4SpoolTier.FILE);
+
+    if (m_aHeapBuf != null)
+      m_aFileOS.write (m_aHeapBuf, 0, (int) m_nLength);
+    _releaseHeap ();
+
+    for (final ByteBuffer aChunk : m_aChunks)
+    {
+      aChunk.flip ();
+      if (aChunk.hasArray ())
+        m_aFileOS.write (aChunk.array (), aChunk.arrayOffset (), aChunk.limit ());
+      else
+      {
+        final byte [] aTmp = new byte [aChunk.remaining ()];
+        aChunk.get (aTmp);
+        m_aFileOS.write (aTmp);
+      }
+    }
+    _releaseChunks ();
+  }
+
+  private void _moveFastFileToFile () throws IOException
+  {
+    final File aFastFile = m_aFile;
+    m_aFileOS.close ();
+    m_aFileOS = null;
+
+    m_aFile = m_aResHelper.createTempFile (EAS4SpoolTier.FILE);
+    m_eTier = EAS4SpoolTier.FILE;
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Moving spooled content to file '" + m_aFile.getAbsolutePath () + "'");
+
+    try (final FileChannel aSrc = FileChannel.open (aFastFile.toPath (), StandardOpenOption.READ);
+         final FileChannel aDst = FileChannel.open (m_aFile.toPath (), StandardOpenOption.WRITE))
+    {
+      final long nSize = aSrc.size ();
+      long nPos = 0;
+      while (nPos < nSize)
+        nPos += aSrc.transferTo (nPos, nSize - nPos, aDst);
+    }
+
+    // Continue writing at the end
+    m_aFileOS = FileHelper.getBufferedOutputStream (m_aFile, EAppend.APPEND);
+    if (m_aFileOS == null)
+      throw new IOException ("Failed to reopen temporary file '" + m_aFile.getAbsolutePath () + "' for writing");
+
+    // Free the fast storage early
+    AS4IOHelper.getFileOperationManager ().deleteFileIfExisting (aFastFile);
+  }
+
+  /**
+   * Write as much as possible into memory chunks.
+   *
+   * @return The number of bytes written. Less than the requested length if the
+   *         memory budget is exhausted.
+   */
+  private int _writeToMemory (@Nonnull final byte [] aBuf, final int nOfs, final int nLen)
+  {
+    int nWritten = 0;
+    while (nWritten < nLen)
+    {
+      ByteBuffer aChunk = m_aChunks.getLastOrNull ();
+      if (aChunk == null || !aChunk.hasRemaining ())
+      {
+        aChunk = m_aStore.acquireChunk ();
+        if (aChunk == null)
+        {
+          if (LOGGER.isDebugEnabled ())
+            LOGGER.debug ("Spool memory budget is exhausted");
+          break;
+        }
+        m_aChunks.add (aChunk);
+      }
+      final int nCount = Math.min (nLen - nWritten, aChunk.remaining ());
+      aChunk.put (aBuf, nOfs + nWritten, nCount);
+      nWritten += nCount;
+    }
+    return nWritten;
+  }
+
+  /**
+   * Write into the private heap byte array, that grows exponentially up to the
+   * memory threshold. Each growth is reserved in the memory budget.
+   *
+   * @return The number of bytes written. Either 0 if the memory budget is
+   *         exhausted or the requested length.
+   */
+  private int _writeToHeap (@Nonnull final byte [] aBuf, final int nOfs, final int nLen)
+  {
+    // Caller ensured that the memory threshold is not exceeded
+    final int nPos = (int) m_nLength;
+    final int nNeeded = nPos + nLen;
+    if (m_aHeapBuf == null || nNeeded > m_aHeapBuf.length)
+    {
+      final long nGrown = m_aHeapBuf == null ? AS4SpoolStore.CHUNK_SIZE : 2L * m_aHeapBuf.length;
+      final int nNewCapacity = (int) Math.min (Math.max (nNeeded, nGrown), m_nMemoryThreshold);
+      if (!m_aStore.tryReserveMemory (nNewCapacity - m_nHeapReserved))
+      {
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Spool memory budget is exhausted");
+        return 0;
+      }
+      m_nHeapReserved = nNewCapacity;
+      m_aHeapBuf = m_aHeapBuf == null ? new byte [nNewCapacity] : Arrays.copyOf (m_aHeapBuf, nNewCapacity);
+    }
+    System.arraycopy (aBuf, nOfs, m_aHeapBuf, nPos, nLen);
+    return nLen;
+  }
+
+  @Override
+  public void write (final int b) throws IOException
+  {
+    write (new byte [] { (byte) b }, 0, 1);
+  }
+
+  @Override
+  public void write (@Nonnull final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+  {
+    ValueEnforcer.isArrayOfsLen (aBuf, nOfs, nLen);
+    _ensureOpen ();
+    if (nLen == 0)
+      return;
+
+    final long nNewLength = m_nLength + nLen;
+    int nWritten = 0;
+    if (m_eTier == EAS4SpoolTier.MEMORY)
+    {
+      if (nNewLength <= m_nMemoryThreshold)
+        nWritten = m_bPooledMemory ? _writeToMemory (aBuf, nOfs, nLen) : _writeToHeap (aBuf, nOfs, nLen);
+      if (nWritten < nLen)
+      {
+        // Threshold exceeded or memory budget exhausted
+        _spillMemory (nNewLength);
+      }
+    }
+    else
+      if (m_eTier == EAS4SpoolTier.FAST_FILE && nNewLength > m_nFastFileThreshold)
+        _moveFastFileToFile ();
+
+    if (nWritten < nLen)
+      m_aFileOS.write (aBuf, nOfs + nWritten, nLen - nWritten);
+    m_nLength = nNewLength;
+  }
+
+  @Override
+  public void flush () throws IOException
+  {
+    if (m_aFileOS != null)
+      m_aFileOS.flush ();
+  }
+
+  @Override
+  public void close () throws IOException
+  {
+    if (m_bClosed)
+      return;
+    m_bClosed = true;
+
+    if (m_aFileOS != null)
+    {
+      m_aFileOS.close ();
+      m_aFileOS = null;
+      m_aEntry = new AS4SpoolEntry (m_eTier, m_nLength, m_aFile, null, null);
+    }
+    else
+      if (!m_bPooledMemory)
+      {
+        byte [] aBytes = m_aHeapBuf;
+        if (aBytes == null)
+          aBytes = new byte [0];
+        else
+          if (aBytes.length != m_nLength)
+            aBytes = Arrays.copyOf (aBytes, (int) m_nLength);
+        // Keep only the exact size reserved, until the array is collected
+        m_aStore.releaseMemory (m_nHeapReserved - aBytes.length);
+        m_aStore.releaseMemoryWhenUnreachable (aBytes);
+        m_nHeapReserved = 0;
+        m_aHeapBuf = null;
+        m_aEntry = new AS4SpoolEntry (EAS4SpoolTier.MEMORY, m_nLength, null, null, aBytes);
+      }
+      else
+      {
+        // Make the chunks readable
+        final ICommonsList <ByteBuffer> aReadOnly = new CommonsArrayList <> (m_aChunks.size ());
+        for (final ByteBuffer aChunk : m_aChunks)
+        {
+          final ByteBuffer aDup = aChunk.duplicate ();
+          aDup.flip ();
+          aReadOnly.add (aDup.asReadOnlyBuffer ());
+        }
+        m_aEntry = new AS4SpoolEntry (EAS4SpoolTier.MEMORY, m_nLength, null, aReadOnly, null);
+      }
+    m_aStore.onSpooled (m_eTier, m_nLength);
+  }
+
+  /**
+   * @return The tier that is currently written to. Never <code>null</code>.
+   */
+  @Nonnull
+  public final EAS4SpoolTier getTier ()
+  {
+    return m_eTier;
+  }
+
+  /**
+   * @return The number of bytes written so far.
+   */
+  public final long getLength ()
+  {
+    return m_nLength;
+  }
+
+  /**
+   * @return The spooled content. Never <code>null</code>.
+   * @throws IllegalStateException
+   *         if the stream was not yet closed
+   */
+  @Nonnull
+  public final AS4SpoolEntry getSpoolEntry ()
+  {
+    if (m_aEntry == null)
+      throw new IllegalStateException ("The spool output stream must be closed first");
+    return m_aEntry;
+  }
+
+  /**
+   * Close this stream if necessary and return all memory chunks to the store.
+   * Afterwards the spool entry must no longer be used, unless pooled memory is
+   * disabled and the content is kept in memory. This is called automatically
+   * when the owning resource helper is closed.
+   */
+  public void release ()
+  {
+    if (!m_bReleased)
+    {
+      m_bReleased = true;
+      m_bClosed = true;
+      StreamHelper.close (m_aFileOS);
+      m_aFileOS = null;
+      _releaseChunks ();
+      // Only an unfinished heap buffer is released here
+      _releaseHeap ();
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("Tier", m_eTier)
+                                       .append ("Length", m_nLength)
+                                       .appendIfNotNull ("File", m_aFile)
+                                       .append ("Closed", m_bClosed)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,452 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.spool;
+
+import java.io.File;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * The global spool store that decides where temporary payloads (e.g. incoming
+ * attachments) are kept. Three tiers are supported (see
+ * {@link EAS4SpoolTier}):
+ * <ol>
+ * <li>Payloads up to the memory threshold are kept in memory, as long as the
+ * global memory budget is not exhausted. Short-lived payloads use pooled
+ * memory chunks (heap or off-heap), payloads that must outlive the resource
+ * helper use exact-size heap byte arrays, whose share of the budget is
+ * returned when they are garbage collected.</li>
+ * <li>Larger payloads up to the fast file threshold are written to the fast
+ * file directory (e.g. a tmpfs), if one is configured.</li>
+ * <li>All other payloads are written to the regular file directory.</li>
+ * </ol>
+ * The number of payloads and bytes spooled per tier are recorded. Use
+ * {@link AS4ResourceHelper#createSpoolOutputStream(boolean)} to write to the
+ * store.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@ThreadSafe
+public class AS4SpoolStore
+{
+  /** The size of a single memory chunk */
+  public static final int CHUNK_SIZE = 16 * CGlobal.BYTES_PER_KILOBYTE;
+  public static final long DEFAULT_MEMORY_THRESHOLD = 64 * CGlobal.BYTES_PER_KILOBYTE;
+  public static final long DEFAULT_MEMORY_BUDGET = 64 * CGlobal.BYTES_PER_MEGABYTE;
+  public static final boolean DEFAULT_DIRECT_MEMORY = false;
+  public static final long DEFAULT_FAST_FILE_THRESHOLD = 16 * CGlobal.BYTES_PER_MEGABYTE;
+
+  private static final AS4SpoolStore DEFAULT_INSTANCE = new AS4SpoolStore ();
+  private static final Cleaner CLEANER = Cleaner.create (new BasicThreadFactory.Builder ().namingPattern ("phase4-spool-cleaner-%d")
+                                                                                          .daemon (true)
+                                                                                          .build ());
+
+  private volatile long m_nMemoryThreshold = DEFAULT_MEMORY_THRESHOLD;
+  private volatile long m_nMemoryBudget = DEFAULT_MEMORY_BUDGET;
+  private volatile boolean m_bDirectMemory = DEFAULT_DIRECT_MEMORY;
+  private volatile File m_aFastFileDir;
+  private volatile long m_nFastFileThreshold = DEFAULT_FAST_FILE_THRESHOLD;
+  private volatile File m_aFileDir;
+
+  // Idle chunks - they count towards the allocated memory
+  private final Queue <ByteBuffer> m_aChunkPool = new ConcurrentLinkedQueue <> ();
+  private final AtomicLong m_aMemoryAllocated = new AtomicLong (0);
+  private final AtomicLong m_aMemoryInUse = new AtomicLong (0);
+  private final AtomicLong [] m_aSpoolCount = new AtomicLong [EAS4SpoolTier.values ().length];
+  private final AtomicLong [] m_aSpoolBytes = new AtomicLong [EAS4SpoolTier.values ().length];
+
+  public AS4SpoolStore ()
+  {
+    for (int i = 0; i < m_aSpoolCount.length; ++i)
+    {
+      m_aSpoolCount[i] = new AtomicLong (0);
+      m_aSpoolBytes[i] = new AtomicLong (0);
+    }
+  }
+
+  /**
+   * @return The global default instance that is used by all
+   *         {@link AS4ResourceHelper} instances if not explicitly configured
+   *         otherwise. Never <code>null</code>.
+   */
+  @Nonnull
+  public static AS4SpoolStore getDefaultInstance ()
+  {
+    return DEFAULT_INSTANCE;
+  }
+
+  /**
+   * @return The maximum number of bytes of a single payload that is kept in
+   *         memory. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getMemoryThreshold ()
+  {
+    return m_nMemoryThreshold;
+  }
+
+  /**
+   * @param nMemoryThreshold
+   *        The maximum number of bytes of a single payload that is kept in
+   *        memory. Must be &ge; 0. Use 0 to disable the memory tier.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4SpoolStore setMemoryThreshold (@Nonnegative final long nMemoryThreshold)
+  {
+    ValueEnforcer.isGE0 (nMemoryThreshold, "MemoryThreshold");
+    m_nMemoryThreshold = nMemoryThreshold;
+    return this;
+  }
+
+  /**
+   * @return The maximum number of bytes used for memory chunks and heap byte
+   *         arrays over all payloads. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getMemoryBudget ()
+  {
+    return m_nMemoryBudget;
+  }
+
+  /**
+   * @param nMemoryBudget
+   *        The maximum number of bytes used for memory chunks and heap byte
+   *        arrays over all payloads. Must be &ge; 0. If the budget is
+   *        exhausted, payloads are spooled to files.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4SpoolStore setMemoryBudget (@Nonnegative final long nMemoryBudget)
+  {
+    ValueEnforcer.isGE0 (nMemoryBudget, "MemoryBudget");
+    m_nMemoryBudget = nMemoryBudget;
+    return this;
+  }
+
+  /**
+   * @return <code>true</code> if memory chunks are allocated off-heap,
+   *         <code>false</code> if they are allocated on the heap.
+   */
+  public final boolean isDirectMemory ()
+  {
+    return m_bDirectMemory;
+  }
+
+  /**
+   * @param bDirectMemory
+   *        <code>true</code> to allocate new memory chunks off-heap,
+   *        <code>false</code> to allocate them on the heap.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4SpoolStore setDirectMemory (final boolean bDirectMemory)
+  {
+    m_bDirectMemory = bDirectMemory;
+    return this;
+  }
+
+  /**
+   * @return The directory for the {@link EAS4SpoolTier#FAST_FILE} tier. May be
+   *         <code>null</code> if that tier is disabled.
+   */
+  @Nullable
+  public final File getFastFileDirectory ()
+  {
+    return m_aFastFileDir;
+  }
+
+  /**
+   * @param aFastFileDir
+   *        The existing directory for the {@link EAS4SpoolTier#FAST_FILE} tier,
+   *        e.g. on a tmpfs. May be <code>null</code> to disable that tier.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4SpoolStore setFastFileDirectory (@Nullable final File aFastFileDir)
+  {
+    if (aFastFileDir != null)
+      ValueEnforcer.isTrue (aFastFileDir.isDirectory (),
+                            () -> "Fast file directory '" + aFastFileDir.getAbsolutePath () + "' is not a directory");
+    m_aFastFileDir = aFastFileDir;
+    return this;
+  }
+
+  /**
+   * @return The maximum number of bytes of a single payload that is kept in the
+   *         {@link EAS4SpoolTier#FAST_FILE} tier. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getFastFileThreshold ()
+  {
+    return m_nFastFileThreshold;
+  }
+
+  /**
+   * @param nFastFileThreshold
+   *        The maximum number of bytes of a single payload that is kept in the
+   *        {@link EAS4SpoolTier#FAST_FILE} tier. Must be &ge; 0. Larger
+   *        payloads are moved to the {@link EAS4SpoolTier#FILE} tier.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4SpoolStore setFastFileThreshold (@Nonnegative final long nFastFileThreshold)
+  {
+    ValueEnforcer.isGE0 (nFastFileThreshold, "FastFileThreshold");
+    m_nFastFileThreshold = nFastFileThreshold;
+    return this;
+  }
+
+  /**
+   * @return The directory for the {@link EAS4SpoolTier#FILE} tier. May be
+   *         <code>null</code> to use {@link AS4ResourceHelper#getTempDir()}.
+   */
+  @Nullable
+  public final File getFileDirectory ()
+  {
+    return m_aFileDir;
+  }
+
+  /**
+   * @param aFileDir
+   *        The existing directory for the {@link EAS4SpoolTier#FILE} tier. May
+   *        be <code>null</code> to use {@link AS4ResourceHelper#getTempDir()}.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4SpoolStore setFileDirectory (@Nullable final File aFileDir)
+  {
+    if (aFileDir != null)
+      ValueEnforcer.isTrue (aFileDir.isDirectory (),
+                            () -> "File directory '" + aFileDir.getAbsolutePath () + "' is not a directory");
+    m_aFileDir = aFileDir;
+    return this;
+  }
+
+  /**
+   * @return <code>true</code> if the {@link EAS4SpoolTier#FAST_FILE} tier is
+   *         enabled.
+   */
+  public final boolean isFastFileTierEnabled ()
+  {
+    return m_aFastFileDir != null;
+  }
+
+  /**
+   * Get the directory in which temporary files of the provided tier are
+   * created.
+   *
+   * @param eTier
+   *        The file based tier. May not be <code>null</code>.
+   * @return <code>null</code> to use the system default temporary directory.
+   */
+  @Nullable
+  public File getDirectory (@Nonnull final EAS4SpoolTier eTier)
+  {
+    ValueEnforcer.notNull (eTier, "Tier");
+    ValueEnforcer.isTrue (eTier.isFileBased (), "Tier must be file based");
+
+    if (eTier == EAS4SpoolTier.FAST_FILE)
+    {
+      final File ret = m_aFastFileDir;
+      if (ret != null)
+        return ret;
+    }
+    final File ret = m_aFileDir;
+    return ret != null ? ret : AS4ResourceHelper.getTempDir ();
+  }
+
+  /**
+   * Get a memory chunk with a capacity of {@link #CHUNK_SIZE} bytes, if the
+   * memory budget allows it.
+   *
+   * @return <code>null</code> if the memory budget is exhausted.
+   */
+  @Nullable
+  ByteBuffer acquireChunk ()
+  {
+    ByteBuffer ret = m_aChunkPool.poll ();
+    if (ret == null)
+    {
+      // Allocate a new chunk, if the budget allows it
+      final long nBudget = m_nMemoryBudget;
+      long nAllocated;
+      do
+      {
+        nAllocated = m_aMemoryAllocated.get ();
+        if (nAllocated + CHUNK_SIZE > nBudget)
+          return null;
+      } while (!m_aMemoryAllocated.compareAndSet (nAllocated, nAllocated + CHUNK_SIZE));
+      ret = m_bDirectMemory ? ByteBuffer.allocateDirect (CHUNK_SIZE) : ByteBuffer.allocate (CHUNK_SIZE);
+    }
+    m_aMemoryInUse.addAndGet (CHUNK_SIZE);
+    return ret;
+  }
+
+  /**
+   * Return a chunk that was acquired via {@link #acquireChunk()}.
+   *
+   * @param aChunk
+   *        The chunk to return. May not be <code>null</code>.
+   */
+  void releaseChunk (@Nonnull final ByteBuffer aChunk)
+  {
+    m_aMemoryInUse.addAndGet (-CHUNK_SIZE);
+    if (m_aMemoryAllocated.get () > m_nMemoryBudget)
+    {
+      // The budget was reduced in the meantime - let the chunk be collected
+      m_aMemoryAllocated.addAndGet (-CHUNK_SIZE);
+    }
+    else
+    {
+      aChunk.clear ();
+      m_aChunkPool.offer (aChunk);
+    }
+  }
+
+  /**
+   * Reserve the provided number of bytes of the memory budget for heap byte
+   * arrays that are not pooled.
+   *
+   * @param nBytes
+   *        The number of bytes to reserve. Must be &ge; 0.
+   * @return <code>true</code> if the bytes were reserved, <code>false</code> if
+   *         the memory budget is exhausted.
+   * @see #releaseMemory(long)
+   */
+  boolean tryReserveMemory (@Nonnegative final long nBytes)
+  {
+    final long nBudget = m_nMemoryBudget;
+    long nAllocated;
+    do
+    {
+      nAllocated = m_aMemoryAllocated.get ();
+      if (nAllocated + nBytes > nBudget)
+        return false;
+    } while (!m_aMemoryAllocated.compareAndSet (nAllocated, nAllocated + nBytes));
+    m_aMemoryInUse.addAndGet (nBytes);
+    return true;
+  }
+
+  /**
+   * Return bytes reserved via {@link #tryReserveMemory(long)} to the memory
+   * budget.
+   *
+   * @param nBytes
+   *        The number of bytes to release. Must be &ge; 0.
+   */
+  void releaseMemory (@Nonnegative final long nBytes)
+  {
+    m_aMemoryInUse.addAndGet (-nBytes);
+    m_aMemoryAllocated.addAndGet (-nBytes);
+  }
+
+  /**
+   * Hand over the reservation of a heap byte array to the garbage collector:
+   * its length is returned to the memory budget, as soon as the array is no
+   * longer reachable.
+   *
+   * @param aBytes
+   *        The byte array, whose length was reserved via
+   *        {@link #tryReserveMemory(long)}. May not be <code>null</code>.
+   */
+  void releaseMemoryWhenUnreachable (@Nonnull final byte [] aBytes)
+  {
+    final int nLength = aBytes.length;
+    if (nLength > 0)
+      CLEANER.register (aBytes, () -> releaseMemory (nLength));
+  }
+
+  void onSpooled (@Nonnull final EAS4SpoolTier eTier, @Nonnegative final long nBytes)
+  {
+    m_aSpoolCount[eTier.ordinal ()].incrementAndGet ();
+    m_aSpoolBytes[eTier.ordinal ()].addAndGet (nBytes);
+  }
+
+  /**
+   * @return The number of bytes currently allocated for memory chunks
+   *         (including idle pooled chunks) and heap byte arrays. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getMemoryAllocated ()
+  {
+    return m_aMemoryAllocated.get ();
+  }
+
+  /**
+   * @return The number of bytes of memory chunks and heap byte arrays
+   *         currently holding payloads. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getMemoryInUse ()
+  {
+    return m_aMemoryInUse.get ();
+  }
+
+  /**
+   * @param eTier
+   *        The tier to query. May not be <code>null</code>.
+   * @return The number of payloads that were finally stored in the provided
+   *         tier. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getSpooledCount (@Nonnull final EAS4SpoolTier eTier)
+  {
+    return m_aSpoolCount[eTier.ordinal ()].get ();
+  }
+
+  /**
+   * @param eTier
+   *        The tier to query. May not be <code>null</code>.
+   * @return The number of payload bytes that were finally stored in the
+   *         provided tier. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getSpooledBytes (@Nonnull final EAS4SpoolTier eTier)
+  {
+    return m_aSpoolBytes[eTier.ordinal ()].get ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("MemoryThreshold", m_nMemoryThreshold)
+                                       .append ("MemoryBudget", m_nMemoryBudget)
+                                       .append ("DirectMemory", m_bDirectMemory)
+                                       .append ("FastFileDir", m_aFastFileDir)
+                                       .append ("FastFileThreshold", m_nFastFileThreshold)
+                                       .append ("FileDir", m_aFileDir)
+                                       .append ("MemoryAllocated", m_aMemoryAllocated.get ())
+                                       .append ("MemoryInUse", m_aMemoryInUse.get ())
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.spool;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.lang.EnumHelper;
+
+/**
+ * The storage tiers of the {@link AS4SpoolStore}, ordered from fastest to
+ * slowest.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+public enum EAS4SpoolTier implements IHasID <String>
+{
+  /**
+   * Pooled memory chunks, limited by the global memory budget.
+   */
+  MEMORY ("memory"),
+  /**
+   * Temporary files in a fast directory, e.g. on a tmpfs. Only used if such a
+   * directory is configured.
+   */
+  FAST_FILE ("fastfile"),
+  /**
+   * Temporary files in the regular temporary directory.
+   */
+  FILE ("file");
+
+  private final String m_sID;
+
+  EAS4SpoolTier (@Nonnull @Nonempty final String sID)
+  {
+    m_sID = sID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  /**
+   * @return <code>true</code> if this tier is backed by a file,
+   *         <code>false</code> if it is memory based.
+   */
+  public boolean isFileBased ()
+  {
+    return this != MEMORY;
+  }
+
+  @Nullable
+  public static EAS4SpoolTier getFromIDOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDOrNull (EAS4SpoolTier.class, sID);
+  }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.callback.IThrowingRunnable;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.phase4.config.AS4Configuration;
+import com.helger.phase4.config.EAS4ExecutionMode;
+import com.helger.photon.io.PhotonWorkerPool;
+
+/**
+ * Helper class to run tasks according to the configured
+ * {@link EAS4ExecutionMode}. Virtual threads are accessed via reflection, as
+ * phase4 is compiled for Java 11. If virtual threads are configured but not
+ * available at runtime, platform threads are used and a warning is emitted
+ * once.<br>
+ * Note for virtual threads: blocking inside a <code>synchronized</code> block
+ * pins the carrier thread. Therefore phase4 uses
+ * {@link java.util.concurrent.locks.Lock} implementations (e.g. in
+ * {@link com.helger.phase4.wss.WSSSynchronizer}) around crypto and I/O
+ * operations and avoids thread locals for expensive objects.
+ *
+ * @author Philip Helger
+ * @since 2.7.6
+ */
+@ThreadSafe
+public final class AS4ExecutionHelper
+{
+  /**
+   * The maximum number of threads of the shared platform thread pool for
+   * asynchronous tasks.
+   */
+  public static final int DEFAULT_ASYNC_POOL_SIZE = Math.max (4, 2 * Runtime.getRuntime ().availableProcessors ());
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4ExecutionHelper.class);
+
+  private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR;
+  private static final Method THREAD_OF_VIRTUAL;
+  private static final Method BUILDER_NAME;
+  private static final Method BUILDER_UNSTARTED;
+  static
+  {
+    Method aNewExecutor = null;
+    Method aOfVirtual = null;
+    Method aName = null;
+    Method aUnstarted = null;
+    try
+    {
+      aNewExecutor = Executors.class.getMethod ("newVirtualThreadPerTaskExecutor");
+      aOfVirtual = Thread.class.getMethod ("ofVirtual");
+      final Class <?> aBuilderClass = Class.forName ("java.lang.Thread$Builder");
+      aName = aBuilderClass.getMethod ("name", String.class);
+      aUnstarted = aBuilderClass.getMethod ("unstarted", Runnable.class);
+    }
+    catch (final ReflectiveOperationException ex)
+    {
+      // Java runtime before 21
+      aNewExecutor = null;
+    }
+    NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = aNewExecutor;
+    THREAD_OF_VIRTUAL = aOfVirtual;
+    BUILDER_NAME = aName;
+    BUILDER_UNSTARTED = aUnstarted;
+  }
+
+  private static final AtomicBoolean WARNED = new AtomicBoolean (false);
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  @GuardedBy ("RW_LOCK")
+  private static ExecutorService s_aVirtualThreadExecutor;
+  @GuardedBy ("RW_LOCK")
+  private static ExecutorService s_aPlatformThreadExecutor;
+
+  private AS4ExecutionHelper ()
+  {}
+
+  /**
+   * @return <code>true</code> if the Java runtime supports virtual threads.
+   */
+  public static boolean isVirtualThreadSupported ()
+  {
+    return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+  }
+
+  /**
+   * @return <code>true</code> if virtual threads are configured and supported
+   *         by the Java runtime.
+   * @see AS4Configuration#getExecutionMode()
+   */
+  public static boolean isUseVirtualThreads ()
+  {
+    if (AS4Configuration.getExecutionMode () != EAS4ExecutionMode.VIRTUAL_THREADS)
+      return false;
+    if (isVirtualThreadSupported ())
+      return true;
+    if (WARNED.compareAndSet (false, true))
+      LOGGER.warn ("Virtual threads are configured, but the Java runtime does not support them. Using platform threads instead.");
+    return false;
+  }
+
+  @Nonnull
+  private static ExecutorService _getVirtualThreadExecutor ()
+  {
+    ExecutorService ret = RW_LOCK.readLockedGet ( () -> s_aVirtualThreadExecutor);
+    if (ret == null)
+    {
+      ret = RW_LOCK.writeLockedGet ( () -> {
+        if (s_aVirtualThreadExecutor == null)
+          try
+          {
+            s_aVirtualThreadExecutor = (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke (null);
+          }
+          catch (final ReflectiveOperationException ex)
+          {
+            throw new IllegalStateException ("Failed to create virtual thread executor", ex);
+          }
+        return s_aVirtualThreadExecutor;
+      });
+    }
+    return ret;
+  }
+
+  /**
+   * @return The shared executor with one virtual thread per task if
+   *         {@link #isUseVirtualThreads()} is <code>true</code>,
+   *         <code>null</code> otherwise. The returned executor must not be shut
+   *         down.
+   */
+  @Nullable
+  public static Executor getVirtualThreadExecutorOrNull ()
+  {
+    return isUseVirtualThreads () ? _getVirtualThreadExecutor () : null;
+  }
+
+  @Nonnull
+  private static ExecutorService _getPlatformThreadExecutor ()
+  {
+    ExecutorService ret = RW_LOCK.readLockedGet ( () -> s_aPlatformThreadExecutor);
+    if (ret == null)
+    {
+      ret = RW_LOCK.writeLockedGet ( () -> {
+        if (s_aPlatformThreadExecutor == null)
+        {
+          // Bounded number of daemon threads that time out when idle
+          final ThreadPoolExecutor aExecutor = new ThreadPoolExecutor (DEFAULT_ASYNC_POOL_SIZE,
+                                                                       DEFAULT_ASYNC_POOL_SIZE,
+                                                                       60,
+                                                                       TimeUnit.SECONDS,
+                                                                       new LinkedBlockingQueue <> (),
+                                                                       new BasicThreadFactory.Builder ().namingPattern ("phase4-async-%d")
+                                                                                                        .daemon (true)
+                                                                                                        .build ());
+          aExecutor.allowCoreThreadTimeOut (true);
+          s_aPlatformThreadExecutor = aExecutor;
+        }
+        return s_aPlatformThreadExecutor;
+      });
+    }
+    return ret;
+  }
+
+  /**
+   * @return The shared platform thread pool owned by phase4 for asynchronous
+   *         tasks that are mainly blocking on I/O. It has at most
+   *         {@link #DEFAULT_ASYNC_POOL_SIZE} daemon threads. The returned
+   *         executor must not be shut down. Never <code>null</code>.
+   */
+  @Nonnull
+  public static Executor getPlatformThreadExecutor ()
+  {
+    return _getPlatformThreadExecutor ();
+  }
+
+  /**
+   * @return The executor to be used for asynchronous tasks that are mainly
+   *         blocking on I/O. This is the virtual thread executor if
+   *         {@link #isUseVirtualThreads()} is <code>true</code>, or the
+   *         {@link #getPlatformThreadExecutor() shared phase4 thread pool}
+   *         otherwise. The common fork join pool is never used, as blocking
+   *         tasks would starve all other users of it. Never <code>null</code>.
+   */
+  @Nonnull
+  public static Executor getDefaultAsyncExecutor ()
+  {
+    final Executor ret = getVirtualThreadExecutorOrNull ();
+    return ret != null ? ret : getPlatformThreadExecutor ();
+  }
+
+  /**
+   * Create a new thread that is not yet started. This is a virtual thread if
+   * {@link #isUseVirtualThreads()} is <code>true</code>, otherwise a platform
+   * daemon thread.
+   *
+   * @param sName
+   *        The thread name. May not be <code>null</code>.
+   * @param aRunnable
+   *        The runnable to execute. May not be <code>null</code>.
+   * @return The new unstarted thread. Never <code>null</code>.
+   */
+  @Nonnull
+  public static Thread newThread (@Nonnull final String sName, @Nonnull final Runnable aRunnable)
+  {
+    ValueEnforcer.notNull (sName, "Name");
+    ValueEnforcer.notNull (aRunnable, "Runnable");
+
+    if (isUseVirtualThreads ())
+      try
+      {
+        final Object aBuilder = BUILDER_NAME.invoke (THREAD_OF_VIRTUAL.invoke (null), sName);
+        return (Thread) BUILDER_UNSTARTED.invoke (aBuilder, aRunnable);
+      }
+      catch (final ReflectiveOperationException ex)
+      {
+        throw new IllegalStateException ("Failed to create virtual thread", ex);
+      }
+
+    final Thread ret = new Thread (aRunnable, sName);
+    ret.setDaemon (true);
+    return ret;
+  }
+
+  /**
+   * Run a task asynchronously. If {@link #isUseVirtualThreads()} is
+   * <code>true</code> it is run in a new virtual thread, otherwise it is run
+   * in the {@link PhotonWorkerPool}. Exceptions are logged.
+   *
+   * @param sActionName
+   *        The name of the action for logging. May not be <code>null</code>.
+   * @param aRunnable
+   *        The task to run. May not be <code>null</code>.
+   * @return The future that is completed after the task finished. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public static CompletableFuture <Void> runAsync (@Nonnull final String sActionName,
+                                                   @Nonnull final IThrowingRunnable <? extends Exception> aRunnable)
+  {
+    ValueEnforcer.notNull (sActionName, "ActionName");
+    ValueEnforcer.notNull (aRunnable, "Runnable");
+
+    final Executor aVirtualExecutor = getVirtualThreadExecutorOrNull ();
+    if (aVirtualExecutor == null)
+      return PhotonWorkerPool.getInstance ().runThrowing (sActionName, aRunnable);
+
+    return CompletableFuture.runAsync ( () -> {
+      try
+      {
+        aRunnable.run ();
+      }
+      catch (final Exception ex)
+      {
+        LOGGER.error ("Error running '" + sActionName + "'", ex);
+      }
+    }, aVirtualExecutor);
+  }
+}
@@ -41,6 +41,9 @@ import com.helger.commons.io.file.FileHelper;
 import com.helger.commons.io.file.FileIOError;
 import com.helger.commons.io.stream.StreamHelper;
 import com.helger.phase4.CAS4;
+import com.helger.phase4.spool.AS4SpoolOutputStream;
+import com.helger.phase4.spool.AS4SpoolStore;
+import com.helger.phase4.spool.EAS4SpoolTier;
 
 /**
  * A resource manager that keeps track of temporary files and other closables
@@ -85,6 +88,7 @@ public class AS4ResourceHelper implements Closeable
     s_aTempDir = aTempDir;
   }
 
+  private final AS4SpoolStore m_aSpoolStore;
   private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
   private final AtomicBoolean m_aInClose = new AtomicBoolean (false);
   @GuardedBy ("m_aRWLock")
@@ -93,11 +97,38 @@ public class AS4ResourceHelper implements Closeable
   private final ICommonsList <Closeable> m_aCloseables = new CommonsArrayList <> ();
 
   public AS4ResourceHelper ()
-  {}
+  {
+    this (AS4SpoolStore.getDefaultInstance ());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aSpoolStore
+   *        The spool store to use. May not be <code>null</code>.
+   * @since 2.7.6
+   */
+  public AS4ResourceHelper (@Nonnull final AS4SpoolStore aSpoolStore)
+  {
+    ValueEnforcer.notNull (aSpoolStore, "SpoolStore");
+    m_aSpoolStore = aSpoolStore;
+  }
+
+  /**
+   * @return The spool store used by this resource helper. Never
+   *         <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nonnull
+  public final AS4SpoolStore getSpoolStore ()
+  {
+    return m_aSpoolStore;
+  }
 
   /**
    * @return A new temporary {@link File} that will be deleted when
-   *         {@link #close()} is called.
+   *         {@link #close()} is called. It is created in the directory of the
+   *         {@link EAS4SpoolTier#FILE} tier.
    * @throws IOException
    *         When temp file creation fails.
    * @throws IllegalStateException
@@ -105,12 +136,31 @@ public class AS4ResourceHelper implements Closeable
    */
   @Nonnull
   public File createTempFile () throws IOException
+  {
+    return createTempFile (EAS4SpoolTier.FILE);
+  }
+
+  /**
+   * Create a new temporary file in the directory of the provided spool tier.
+   *
+   * @param eTier
+   *        The file based spool tier. May not be <code>null</code>.
+   * @return A new temporary {@link File} that will be deleted when
+   *         {@link #close()} is called.
+   * @throws IOException
+   *         When temp file creation fails.
+   * @throws IllegalStateException
+   *         If {@link #close()} was already called before
+   * @since 2.7.6
+   */
+  @Nonnull
+  public File createTempFile (@Nonnull final EAS4SpoolTier eTier) throws IOException
   {
     if (m_aInClose.get ())
       throw new IllegalStateException ("ResourceManager is already closing/closed!");
 
     // Create
-    final File ret = File.createTempFile ("phase4-res-", ".tmp", s_aTempDir);
+    final File ret = File.createTempFile ("phase4-res-", ".tmp", m_aSpoolStore.getDirectory (eTier));
     // And remember
     m_aRWLock.writeLocked ( () -> m_aTempFiles.add (ret));
 
@@ -120,6 +170,47 @@ public class AS4ResourceHelper implements Closeable
     return ret;
   }
 
+  /**
+   * Create a new output stream that keeps the written content in memory or in
+   * temporary files, depending on the size and the settings of the spool
+   * store. Pooled memory chunks and files are released when {@link #close()}
+   * is called.
+   *
+   * @return A new spool output stream. Never <code>null</code>.
+   * @throws IllegalStateException
+   *         If {@link #close()} was already called before
+   * @since 2.7.6
+   * @see #createSpoolOutputStream(boolean)
+   */
+  @Nonnull
+  public AS4SpoolOutputStream createSpoolOutputStream ()
+  {
+    return createSpoolOutputStream (true);
+  }
+
+  /**
+   * Create a new output stream that keeps the written content in memory or in
+   * temporary files, depending on the size and the settings of the spool
+   * store. Files are released when {@link #close()} is called.
+   *
+   * @param bPooledMemory
+   *        <code>true</code> to keep memory content in pooled chunks that are
+   *        reused when {@link #close()} is called, <code>false</code> to keep
+   *        it in an exact-size heap byte array that may outlive this resource
+   *        helper.
+   * @return A new spool output stream. Never <code>null</code>.
+   * @throws IllegalStateException
+   *         If {@link #close()} was already called before
+   * @since 2.7.6
+   */
+  @Nonnull
+  public AS4SpoolOutputStream createSpoolOutputStream (final boolean bPooledMemory)
+  {
+    final AS4SpoolOutputStream ret = new AS4SpoolOutputStream (this, m_aSpoolStore, bPooledMemory);
+    addCloseable (ret::release);
+    return ret;
+  }
+
   /**
    * @return A list of all known temp files. Never <code>null</code> but maybe
    *         empty.
@@ -147,7 +238,9 @@ public class AS4ResourceHelper implements Closeable
     if (m_aInClose.get ())
       throw new IllegalStateException ("AS4ResourceHelper is already closing/closed!");
 
-    m_aCloseables.add (aCloseable);
+    // May be called from multiple threads when attachments are processed in
+    // parallel
+    m_aRWLock.writeLocked ( () -> m_aCloseables.add (aCloseable));
   }
 
   /**
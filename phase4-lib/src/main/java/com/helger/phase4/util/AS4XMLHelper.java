@@ -16,9 +16,20 @@
  */
 package com.helger.phase4.util;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.annotation.Nonnull;
 import javax.xml.XMLConstants;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
@@ -27,6 +38,8 @@ import javax.xml.transform.stream.StreamResult;
 import org.w3c.dom.Node;
 
 import com.helger.commons.ValueEnforcer;
+import com.helger.commons.concurrent.SimpleLock;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
 import com.helger.commons.io.stream.NonBlockingStringWriter;
 import com.helger.phase4.marshaller.Ebms3NamespaceHandler;
 import com.helger.xml.serialize.write.EXMLSerializeIndent;
@@ -59,25 +72,110 @@ public final class AS4XMLHelper
   }
 
   @Nonnull
-  private static String _serializeRT (@Nonnull final Node aNode)
+  private static TransformerFactory _createTransformerFactory ()
   {
-    try
-    {
-      final TransformerFactory tf = TransformerFactory.newInstance ();
-      tf.setAttribute (XMLConstants.ACCESS_EXTERNAL_DTD, "");
-      tf.setAttribute (XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
-      final Transformer aTransformer = tf.newTransformer ();
+    final TransformerFactory tf = TransformerFactory.newInstance ();
+    tf.setAttribute (XMLConstants.ACCESS_EXTERNAL_DTD, "");
+    tf.setAttribute (XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+    return tf;
+  }
+
+  /**
+   * Creating a {@link TransformerFactory} requires a service loader lookup, so
+   * it is done only once. Access is locked, as factories are not guaranteed to
+   * be thread-safe. A lock is used instead of <code>synchronized</code> so that
+   * virtual threads are not pinned.
+   */
+  private static final TransformerFactory TRANSFORMER_FACTORY = _createTransformerFactory ();
+  private static final SimpleLock TRANSFORMER_FACTORY_LOCK = new SimpleLock ();
+
+  /**
+   * The maximum number of idle Transformers kept in the pool.
+   */
+  private static final int MAX_POOLED_TRANSFORMERS = 64;
 
-      try (final NonBlockingStringWriter aSW = new NonBlockingStringWriter ())
+  /**
+   * Transformers are not thread-safe but may be reused sequentially, so idle
+   * instances are pooled. A pool is used instead of a thread local, because
+   * with short-lived (virtual) threads a thread local would never be reused.
+   */
+  private static final Queue <Transformer> TRANSFORMER_POOL = new ConcurrentLinkedQueue <> ();
+  private static final AtomicInteger TRANSFORMER_POOL_SIZE = new AtomicInteger (0);
+
+  @Nonnull
+  private static Transformer _createRuntimeTransformer ()
+  {
+    return TRANSFORMER_FACTORY_LOCK.lockedGet ( () -> {
+      try
       {
-        aTransformer.transform (new DOMSource (aNode), new StreamResult (aSW));
-        return aSW.getAsString ();
+        return TRANSFORMER_FACTORY.newTransformer ();
       }
+      catch (final TransformerConfigurationException ex)
+      {
+        throw new IllegalStateException ("Failed to create XML Transformer", ex);
+      }
+    });
+  }
+
+  @Nonnull
+  private static Transformer _acquireRuntimeTransformer ()
+  {
+    Transformer aTransformer = TRANSFORMER_POOL.poll ();
+    if (aTransformer == null)
+      aTransformer = _createRuntimeTransformer ();
+    else
+    {
+      TRANSFORMER_POOL_SIZE.decrementAndGet ();
+      // Remove all output properties from a previous run
+      aTransformer.reset ();
+    }
+    aTransformer.setOutputProperty (OutputKeys.ENCODING, XWS.getCharset ().name ());
+    return aTransformer;
+  }
+
+  private static void _releaseRuntimeTransformer (@Nonnull final Transformer aTransformer)
+  {
+    if (TRANSFORMER_POOL_SIZE.incrementAndGet () <= MAX_POOLED_TRANSFORMERS)
+      TRANSFORMER_POOL.offer (aTransformer);
+    else
+      TRANSFORMER_POOL_SIZE.decrementAndGet ();
+  }
+
+  private static void _transform (@Nonnull final Source aSource, @Nonnull final Result aResult) throws IOException
+  {
+    final Transformer aTransformer = _acquireRuntimeTransformer ();
+    try
+    {
+      // Use runtime serialization otherwise XMLDsig signature wont work
+      aTransformer.transform (aSource, aResult);
     }
     catch (final TransformerException ex)
     {
+      // Unwrap I/O errors from the underlying stream
+      final Throwable aCause = ex.getException ();
+      if (aCause instanceof IOException)
+        throw (IOException) aCause;
       throw new IllegalStateException ("Failed to serialize XML", ex);
     }
+    finally
+    {
+      _releaseRuntimeTransformer (aTransformer);
+    }
+  }
+
+  @Nonnull
+  private static String _serializeRT (@Nonnull final Node aNode)
+  {
+    try (final NonBlockingStringWriter aSW = new NonBlockingStringWriter ())
+    {
+      _transform (new DOMSource (aNode), new StreamResult (aSW));
+      return aSW.getAsString ();
+    }
+    catch (final IOException ex)
+    {
+      // Cannot happen for a StringWriter
+      throw new UncheckedIOException (ex);
+    }
   }
 
   @Nonnull
@@ -89,4 +187,70 @@ public final class AS4XMLHelper
       return _serializeRT (aNode);
     return _serializePh (aNode);
   }
+
+  /**
+   * Serialize the provided node directly to the provided output stream, using
+   * the charset of {@link #XWS}. No intermediate String or byte array is
+   * created. The output stream is flushed but not closed.
+   *
+   * @param aNode
+   *        The node to be serialized. May not be <code>null</code>.
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>.
+   * @throws IOException
+   *         In case writing to the stream fails
+   * @since 2.7.6
+   */
+  public static void serializeXML (@Nonnull final Node aNode, @Nonnull final OutputStream aOS) throws IOException
+  {
+    ValueEnforcer.notNull (aNode, "Node");
+    ValueEnforcer.notNull (aOS, "OutputStream");
+    _transform (new DOMSource (aNode), new StreamResult (aOS));
+    aOS.flush ();
+  }
+
+  /**
+   * Serialize the provided node to a byte array, using the charset of
+   * {@link #XWS}.
+   *
+   * @param aNode
+   *        The node to be serialized. May not be <code>null</code>.
+   * @return The serialized bytes and never <code>null</code>.
+   * @since 2.7.6
+   */
+  @Nonnull
+  public static byte [] serializeXMLToBytes (@Nonnull final Node aNode)
+  {
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+    {
+      serializeXML (aNode, aBAOS);
+      return aBAOS.getBufferOrCopy ();
+    }
+    catch (final IOException ex)
+    {
+      // Cannot happen for a byte array
+      throw new UncheckedIOException (ex);
+    }
+  }
+
+  /**
+   * Serialize the provided XML source directly to the provided output stream,
+   * using the charset of {@link #XWS}. The output stream is flushed but not
+   * closed.
+   *
+   * @param aSource
+   *        The XML source to be serialized. May not be <code>null</code>.
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>.
+   * @throws IOException
+   *         In case reading or writing fails
+   * @since 2.7.6
+   */
+  public static void serializeXML (@Nonnull final Source aSource, @Nonnull final OutputStream aOS) throws IOException
+  {
+    ValueEnforcer.notNull (aSource, "Source");
+    ValueEnforcer.notNull (aOS, "OutputStream");
+    _transform (aSource, new StreamResult (aOS));
+    aOS.flush ();
+  }
 }
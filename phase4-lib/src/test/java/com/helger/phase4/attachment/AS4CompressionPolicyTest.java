@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.mime.CMimeType;
+import com.helger.commons.mime.MimeTypeParser;
+
+/**
+ * Test class for class {@link AS4CompressionPolicy}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4CompressionPolicyTest
+{
+  @Test
+  public void testDecision ()
+  {
+    final AS4CompressionPolicy aPolicy = AS4CompressionPolicy.builder ().minSize (100).build ();
+    // Too small
+    assertNull (aPolicy.getCompressionModeToUse (CMimeType.APPLICATION_XML, 99));
+    assertEquals (EAS4CompressionMode.GZIP, aPolicy.getCompressionModeToUse (CMimeType.APPLICATION_XML, 100));
+    // Unknown size
+    assertEquals (EAS4CompressionMode.GZIP, aPolicy.getCompressionModeToUse (CMimeType.APPLICATION_XML, -1));
+    // Already compressed
+    assertNull (aPolicy.getCompressionModeToUse (CMimeType.APPLICATION_ZIP, 1_000_000));
+    assertNull (aPolicy.getCompressionModeToUse (CMimeType.IMAGE_PNG, 1_000_000));
+    assertTrue (aPolicy.isIncompressibleMimeType (MimeTypeParser.safeParseMimeType ("video/mp4")));
+    assertFalse (aPolicy.isIncompressibleMimeType (CMimeType.TEXT_PLAIN));
+
+    // No compression at all
+    assertNull (AS4CompressionPolicy.builder ()
+                                    .compressionMode (null)
+                                    .build ()
+                                    .getCompressionModeToUse (CMimeType.APPLICATION_XML, 1_000_000));
+
+    // Custom skip list
+    final AS4CompressionPolicy aPolicy2 = AS4CompressionPolicy.builder ()
+                                                              .removeAllIncompressibleMimeTypes ()
+                                                              .addIncompressibleMimeType ("Application/PDF")
+                                                              .build ();
+    assertTrue (aPolicy2.isIncompressibleMimeType (CMimeType.APPLICATION_PDF));
+    assertFalse (aPolicy2.isIncompressibleMimeType (CMimeType.APPLICATION_ZIP));
+  }
+
+  @Test
+  public void testCompressWithPooledDeflater () throws Exception
+  {
+    final AS4CompressionPolicy aPolicy = AS4CompressionPolicy.builder ()
+                                                             .compressionLevel (Deflater.BEST_COMPRESSION)
+                                                             .maxPooledDeflaters (1)
+                                                             .build ();
+    // Run multiple times to ensure the reused Deflater works
+    for (int i = 0; i < 3; ++i)
+    {
+      final String sPlain = "<root>" + ("<elem>value " + i + "</elem>").repeat (1000 + i) + "</root>";
+      final byte [] aPlain = sPlain.getBytes (StandardCharsets.UTF_8);
+      final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+      try (final OutputStream aOS = aPolicy.getCompressStream (EAS4CompressionMode.GZIP, aBAOS))
+      {
+        aOS.write (aPlain, 0, 10);
+        aOS.write (aPlain[10]);
+        aOS.write (aPlain, 11, aPlain.length - 11);
+      }
+      assertTrue (aBAOS.size () < aPlain.length);
+
+      try (final InputStream aIS = new GZIPInputStream (new NonBlockingByteArrayInputStream (aBAOS.toByteArray ())))
+      {
+        assertArrayEquals (aPlain, StreamHelper.getAllBytes (aIS));
+      }
+    }
+  }
+}
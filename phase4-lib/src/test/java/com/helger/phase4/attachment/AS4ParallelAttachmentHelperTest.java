@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.concurrent.ThreadHelper;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * Test class for class {@link AS4ParallelAttachmentHelper}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4ParallelAttachmentHelperTest
+{
+  private static ExecutorService s_aExecutor;
+
+  @BeforeClass
+  public static void beforeClass ()
+  {
+    s_aExecutor = Executors.newFixedThreadPool (4);
+  }
+
+  @AfterClass
+  public static void afterClass ()
+  {
+    s_aExecutor.shutdownNow ();
+  }
+
+  @Test
+  public void testOrderIsKept () throws IOException
+  {
+    final ICommonsList <Integer> aSrc = new CommonsArrayList <> ();
+    for (int i = 0; i < 20; ++i)
+      aSrc.add (Integer.valueOf (i));
+
+    final ICommonsList <String> aResult = AS4ParallelAttachmentHelper.getAllMappedInOrder (aSrc, x -> {
+      // Let the first ones finish last
+      ThreadHelper.sleep (20 - x.intValue ());
+      return x.intValue () == 5 ? null : "v" + x;
+    }, s_aExecutor);
+
+    assertEquals (aSrc.size (), aResult.size ());
+    for (int i = 0; i < aSrc.size (); ++i)
+      if (i == 5)
+        assertNull (aResult.get (i));
+      else
+        assertEquals ("v" + i, aResult.get (i));
+  }
+
+  @Test
+  public void testExceptionIsPropagated ()
+  {
+    final ICommonsList <Integer> aSrc = new CommonsArrayList <> (Integer.valueOf (1),
+                                                                Integer.valueOf (2),
+                                                                Integer.valueOf (3));
+    try
+    {
+      AS4ParallelAttachmentHelper.getAllMappedInOrder (aSrc, x -> {
+        if (x.intValue () >= 2)
+          throw new IOException ("Failed " + x);
+        return x;
+      }, s_aExecutor);
+      fail ();
+    }
+    catch (final IOException ex)
+    {
+      // The first error in source order
+      assertEquals ("Failed 2", ex.getMessage ());
+    }
+  }
+
+  @Test
+  public void testParallelCompression () throws IOException
+  {
+    final ICommonsList <AS4OutgoingAttachment> aSrc = new CommonsArrayList <> ();
+    for (int i = 0; i < 8; ++i)
+    {
+      final byte [] aData = new byte [100_000 + i];
+      for (int j = 0; j < aData.length; ++j)
+        aData[j] = (byte) (j % (i + 7));
+      aSrc.add (AS4OutgoingAttachment.builder ()
+                                     .data (aData)
+                                     .mimeTypeXML ()
+                                     .compressionGZIP ()
+                                     .contentID ("cid" + i)
+                                     .build ());
+    }
+
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final ICommonsList <WSS4JAttachment> aAttachments = AS4ParallelAttachmentHelper.createAllOutgoingAttachments (aSrc,
+                                                                                                                   aResHelper,
+                                                                                                                   s_aExecutor);
+      assertEquals (aSrc.size (), aAttachments.size ());
+      for (int i = 0; i < aSrc.size (); ++i)
+      {
+        final WSS4JAttachment aAttachment = aAttachments.get (i);
+        assertEquals ("cid" + i, aAttachment.getId ());
+        try (final InputStream aIS = EAS4CompressionMode.GZIP.getDecompressStream (aAttachment.getSourceStream ()))
+        {
+          assertArrayEquals (aSrc.get (i).getDataBytes ().bytes (), StreamHelper.getAllBytes (aIS));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.apache.wss4j.common.WSS4JConstants;
+import org.apache.xml.security.Init;
+import org.apache.xml.security.algorithms.JCEMapper;
+import org.apache.xml.security.encryption.XMLCipherUtil;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.StreamHelper;
+
+/**
+ * Test class for class {@link AS4ReproducibleAttachmentEncryption}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4ReproducibleAttachmentEncryptionTest
+{
+  @BeforeClass
+  public static void beforeClass ()
+  {
+    // Required for the JCEMapper
+    Init.init ();
+  }
+
+  private static void _testAlgorithm (final String sAlgorithmURI) throws Exception
+  {
+    final KeyGenerator aKeyGen = KeyGenerator.getInstance ("AES");
+    aKeyGen.init (sAlgorithmURI.equals (WSS4JConstants.AES_256_GCM) ? 256 : 128);
+    final SecretKey aKey = aKeyGen.generateKey ();
+
+    final byte [] aPlain = new byte [10_001];
+    for (int i = 0; i < aPlain.length; ++i)
+      aPlain[i] = (byte) (i * 7);
+
+    final AS4ReproducibleAttachmentEncryption aEnc = new AS4ReproducibleAttachmentEncryption (aKey, sAlgorithmURI);
+    final byte [] aIV = new byte [aEnc.getIVLength ()];
+    Arrays.fill (aIV, (byte) 3);
+
+    final byte [] aEncrypted1;
+    try (final InputStream aIS = aEnc.createEncryptedStream (new NonBlockingByteArrayInputStream (aPlain), aIV))
+    {
+      aEncrypted1 = StreamHelper.getAllBytes (aIS);
+    }
+    final byte [] aEncrypted2;
+    try (final InputStream aIS = aEnc.createEncryptedStream (new NonBlockingByteArrayInputStream (aPlain), aIV))
+    {
+      aEncrypted2 = StreamHelper.getAllBytes (aIS);
+    }
+    // Reproducible
+    assertArrayEquals (aEncrypted1, aEncrypted2);
+    assertEquals (aEncrypted1.length, aEnc.getEncryptedLength (aPlain.length));
+    assertArrayEquals (aIV, aEnc.readIV (new NonBlockingByteArrayInputStream (aEncrypted1)));
+
+    // Decrypt
+    final Cipher aCipher = Cipher.getInstance (JCEMapper.translateURItoJCEID (sAlgorithmURI));
+    aCipher.init (Cipher.DECRYPT_MODE, aKey, XMLCipherUtil.constructBlockCipherParameters (sAlgorithmURI, aIV));
+    final byte [] aDecrypted = aCipher.doFinal (aEncrypted1, aIV.length, aEncrypted1.length - aIV.length);
+    assertArrayEquals (aPlain, aDecrypted);
+  }
+
+  @Test
+  public void testRoundtrip () throws Exception
+  {
+    _testAlgorithm (WSS4JConstants.AES_128_GCM);
+    _testAlgorithm (WSS4JConstants.AES_256_GCM);
+
+    // Random padding
+    assertFalse (AS4ReproducibleAttachmentEncryption.isSupportedAlgorithm (WSS4JConstants.AES_128));
+  }
+}
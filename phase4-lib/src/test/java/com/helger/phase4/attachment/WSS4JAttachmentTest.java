@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import javax.annotation.Nonnull;
+import javax.crypto.KeyGenerator;
+import javax.security.auth.callback.Callback;
+
+import org.apache.wss4j.common.WSS4JConstants;
+import org.apache.wss4j.common.ext.Attachment;
+import org.apache.wss4j.common.ext.AttachmentResultCallback;
+import org.apache.xml.security.Init;
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.io.file.SimpleFileIO;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.mime.CMimeType;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * Test class for class {@link WSS4JAttachment}.
+ *
+ * @author Philip Helger
+ */
+public final class WSS4JAttachmentTest
+{
+  @Test
+  public void testFileAccess () throws Exception
+  {
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final File aFile = aResHelper.createTempFile ();
+      final byte [] aContent = new byte [200_000];
+      for (int i = 0; i < aContent.length; ++i)
+        aContent[i] = (byte) (i * 7);
+      SimpleFileIO.writeFile (aFile, aContent);
+
+      final WSS4JAttachment aAttachment = WSS4JAttachment.createOutgoingFileAttachment (aFile,
+                                                                                        null,
+                                                                                        "file.bin",
+                                                                                        CMimeType.APPLICATION_OCTET_STREAM,
+                                                                                        null,
+                                                                                        null,
+                                                                                        aResHelper);
+
+      final ByteBuffer aBuffer = aAttachment.getSourceFileMappedBuffer ();
+      assertNotNull (aBuffer);
+      assertEquals (aContent.length, aBuffer.remaining ());
+      final byte [] aMapped = new byte [aBuffer.remaining ()];
+      aBuffer.get (aMapped);
+      assertArrayEquals (aContent, aMapped);
+
+      try (final FileChannel aChannel = aAttachment.openSourceFileChannel ())
+      {
+        assertNotNull (aChannel);
+        assertEquals (aContent.length, aChannel.size ());
+      }
+
+      final File aTarget = aResHelper.createTempFile ();
+      try (final FileChannel aDst = FileChannel.open (aTarget.toPath (),
+                                                      StandardOpenOption.CREATE,
+                                                      StandardOpenOption.WRITE))
+      {
+        assertEquals (aContent.length, aAttachment.transferSourceTo (aDst));
+      }
+      assertArrayEquals (aContent, SimpleFileIO.getAllFileBytes (aTarget));
+    }
+  }
+
+  @Test
+  public void testInMemory () throws Exception
+  {
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final byte [] aContent = "Hello".getBytes (StandardCharsets.UTF_8);
+      final WSS4JAttachment aAttachment = WSS4JAttachment.createOutgoingFileAttachment (aContent,
+                                                                                        null,
+                                                                                        null,
+                                                                                        CMimeType.TEXT_PLAIN,
+                                                                                        null,
+                                                                                        StandardCharsets.UTF_8,
+                                                                                        aResHelper);
+      assertNull (aAttachment.getSourceFileMappedBuffer ());
+      assertNull (aAttachment.openSourceFileChannel ());
+
+      try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+      {
+        assertEquals (aContent.length, aAttachment.transferSourceTo (Channels.newChannel (aBAOS)));
+        assertArrayEquals (aContent, aBAOS.toByteArray ());
+      }
+    }
+  }
+
+  @Test
+  public void testPolicyDoesNotOverrideExplicitCompression () throws Exception
+  {
+    // The policy would not compress such a small payload
+    final AS4CompressionPolicy aPolicy = AS4CompressionPolicy.builder ().minSize (1024).build ();
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final byte [] aContent = "<root/>".getBytes (StandardCharsets.UTF_8);
+
+      // Explicit compression is kept
+      WSS4JAttachment aAttachment = WSS4JAttachment.createOutgoingFileAttachment (AS4OutgoingAttachment.builder ()
+                                                                                                       .data (aContent)
+                                                                                                       .mimeTypeXML ()
+                                                                                                       .compressionGZIP ()
+                                                                                                       .build (),
+                                                                                  aPolicy,
+                                                                                  aResHelper);
+      assertEquals (EAS4CompressionMode.GZIP, aAttachment.getCompressionMode ());
+
+      // Without explicit compression, the policy decides
+      aAttachment = WSS4JAttachment.createOutgoingFileAttachment (AS4OutgoingAttachment.builder ()
+                                                                                       .data (aContent)
+                                                                                       .mimeTypeXML ()
+                                                                                       .build (),
+                                                                  aPolicy,
+                                                                  aResHelper);
+      assertNull (aAttachment.getCompressionMode ());
+    }
+  }
+
+  /**
+   * Simulate the result of WSS4J encrypting the provided attachment and return
+   * the effective encrypted attachment.
+   */
+  @Nonnull
+  private static WSS4JAttachment _encrypt (@Nonnull final WSS4JAttachment aSrcAttachment,
+                                           @Nonnull final AS4ResourceHelper aResHelper) throws Exception
+  {
+    final KeyGenerator aKeyGen = KeyGenerator.getInstance ("AES");
+    aKeyGen.init (128);
+    final AS4ReproducibleAttachmentEncryption aEnc = new AS4ReproducibleAttachmentEncryption (aKeyGen.generateKey (),
+                                                                                              WSS4JConstants.AES_128_GCM);
+    final WSS4JAttachmentCallbackHandler aHandler = new WSS4JAttachmentCallbackHandler (new CommonsArrayList <> (aSrcAttachment),
+                                                                                        aResHelper).setReproducibleEncryption (aEnc);
+
+    final Attachment aEncrypted = new Attachment ();
+    aEncrypted.setId (aSrcAttachment.getId ());
+    aEncrypted.setMimeType (CMimeType.APPLICATION_OCTET_STREAM.getAsString ());
+    aEncrypted.setSourceStream (new NonBlockingByteArrayInputStream (new byte [aEnc.getIVLength () + 16]));
+    final AttachmentResultCallback aCallback = new AttachmentResultCallback ();
+    aCallback.setAttachmentId (aSrcAttachment.getId ());
+    aCallback.setAttachment (aEncrypted);
+    aHandler.handle (new Callback [] { aCallback });
+    return aHandler.responseAttachments ().get (aSrcAttachment.getId ());
+  }
+
+  @Test
+  public void testReproducibleEncryptionOnlyForImmutableSources () throws Exception
+  {
+    // Required for the JCEMapper
+    Init.init ();
+
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final File aFile = aResHelper.createTempFile ();
+      SimpleFileIO.writeFile (aFile, "<root/>".getBytes (StandardCharsets.UTF_8));
+
+      // Caller file may change between two reads - never encrypt it twice
+      final WSS4JAttachment aCallerFile = WSS4JAttachment.createOutgoingFileAttachment (aFile,
+                                                                                        null,
+                                                                                        null,
+                                                                                        CMimeType.APPLICATION_XML,
+                                                                                        null,
+                                                                                        null,
+                                                                                        aResHelper);
+      assertTrue (aCallerFile.isRepeatable ());
+      assertFalse (aCallerFile.isSourceImmutable ());
+      assertFalse (_encrypt (aCallerFile, aResHelper).isRepeatable ());
+
+      // Compressed content is in our own temporary file
+      final WSS4JAttachment aCompressedFile = WSS4JAttachment.createOutgoingFileAttachment (aFile,
+                                                                                            null,
+                                                                                            null,
+                                                                                            CMimeType.APPLICATION_XML,
+                                                                                            EAS4CompressionMode.GZIP,
+                                                                                            null,
+                                                                                            aResHelper);
+      assertTrue (aCompressedFile.isSourceImmutable ());
+      assertTrue (_encrypt (aCompressedFile, aResHelper).isRepeatable ());
+
+      // Caller byte array may be modified as well
+      final byte [] aBytes = "<root/>".getBytes (StandardCharsets.UTF_8);
+      assertFalse (WSS4JAttachment.createOutgoingFileAttachment (aBytes,
+                                                                 null,
+                                                                 null,
+                                                                 CMimeType.APPLICATION_XML,
+                                                                 null,
+                                                                 null,
+                                                                 aResHelper)
+                                  .isSourceImmutable ());
+      assertTrue (WSS4JAttachment.createOutgoingFileAttachment (aBytes,
+                                                                null,
+                                                                null,
+                                                                CMimeType.APPLICATION_XML,
+                                                                EAS4CompressionMode.GZIP,
+                                                                null,
+                                                                aResHelper)
+                                 .isSourceImmutable ());
+    }
+  }
+}
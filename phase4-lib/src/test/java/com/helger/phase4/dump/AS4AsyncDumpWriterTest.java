@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.dump;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+
+/**
+ * Test class for class {@link AS4AsyncDumpWriter}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4AsyncDumpWriterTest
+{
+  @Test
+  public void testWriteAndFlushOnClose () throws IOException
+  {
+    final byte [] aData = new byte [10_000];
+    for (int i = 0; i < aData.length; ++i)
+      aData[i] = (byte) i;
+
+    final NonBlockingByteArrayOutputStream aTarget = new NonBlockingByteArrayOutputStream ();
+    final AtomicBoolean aCallbackRun = new AtomicBoolean (false);
+    try (final AS4AsyncDumpWriter aWriter = new AS4AsyncDumpWriter (100,
+                                                                    4,
+                                                                    EAS4DumpOverflowPolicy.BLOCK,
+                                                                    Duration.ofSeconds (10)))
+    {
+      try (final OutputStream aOS = aWriter.wrap (aTarget))
+      {
+        aOS.write (aData[0]);
+        aOS.write (aData, 1, aData.length - 1);
+      }
+      aWriter.runAfterPendingWrites ( () -> aCallbackRun.set (aTarget.size () == aData.length));
+    }
+    assertArrayEquals (aData, aTarget.toByteArray ());
+    assertTrue (aCallbackRun.get ());
+  }
+
+  @Test
+  public void testDropWhenFull () throws Exception
+  {
+    final CountDownLatch aBlock = new CountDownLatch (1);
+    final NonBlockingByteArrayOutputStream aTarget = new NonBlockingByteArrayOutputStream ()
+    {
+      @Override
+      public void write (@Nonnull final byte [] aBuf, final int nOfs, final int nLen)
+      {
+        try
+        {
+          aBlock.await ();
+        }
+        catch (final InterruptedException ex)
+        {
+          Thread.currentThread ().interrupt ();
+        }
+        super.write (aBuf, nOfs, nLen);
+      }
+    };
+
+    try (final AS4AsyncDumpWriter aWriter = new AS4AsyncDumpWriter (4,
+                                                                    1,
+                                                                    EAS4DumpOverflowPolicy.DROP,
+                                                                    Duration.ofSeconds (10)))
+    {
+      try (final OutputStream aOS = aWriter.wrap (aTarget))
+      {
+        // Fills the only buffer, which is handed over to the blocked writer
+        aOS.write (new byte [] { 1, 2, 3, 4 });
+        // No buffer left
+        aOS.write (new byte [] { 5, 6, 7, 8 });
+      }
+      assertEquals (1, aWriter.getDroppedDumpCount ());
+      aBlock.countDown ();
+    }
+    assertArrayEquals (new byte [] { 1, 2, 3, 4 }, aTarget.toByteArray ());
+  }
+
+  @Test
+  public void testShutdownTimeout () throws Exception
+  {
+    final CountDownLatch aBlock = new CountDownLatch (1);
+    final OutputStream aBlockingTarget = new OutputStream ()
+    {
+      @Override
+      public void write (final int b)
+      {}
+
+      @Override
+      public void write (@Nonnull final byte [] aBuf, final int nOfs, final int nLen)
+      {
+        // Ignore interrupts, like a stuck disk
+        while (true)
+          try
+          {
+            aBlock.await ();
+            return;
+          }
+          catch (final InterruptedException ex)
+          {
+            // ignore
+          }
+      }
+    };
+    final AtomicBoolean aTargetClosed = new AtomicBoolean (false);
+    final NonBlockingByteArrayOutputStream aTarget = new NonBlockingByteArrayOutputStream ()
+    {
+      @Override
+      public void close ()
+      {
+        aTargetClosed.set (true);
+      }
+    };
+    final AtomicBoolean aCallbackRun = new AtomicBoolean (false);
+
+    final AS4AsyncDumpWriter aWriter = new AS4AsyncDumpWriter (4,
+                                                               2,
+                                                               EAS4DumpOverflowPolicy.BLOCK,
+                                                               Duration.ofMillis (100));
+    try
+    {
+      final OutputStream aBlockedOS = aWriter.wrap (aBlockingTarget);
+      // The first buffer blocks the writer thread
+      aBlockedOS.write (new byte [] { 1, 2, 3, 4 });
+      try (final OutputStream aOS = aWriter.wrap (aTarget))
+      {
+        // The second buffer is queued
+        aOS.write (new byte [] { 5, 6, 7, 8 });
+      }
+      aWriter.runAfterPendingWrites ( () -> aCallbackRun.set (true));
+
+      aWriter.close ();
+      // Pending tasks were abandoned
+      assertTrue (aTargetClosed.get ());
+      assertTrue (aCallbackRun.get ());
+      assertEquals (0, aTarget.size ());
+
+      // The returned buffer is used and written synchronously
+      final OutputStream aOS1 = aWriter.wrap (new NonBlockingByteArrayOutputStream ());
+      aOS1.write (1);
+
+      // No buffer is available - must not block
+      try (final OutputStream aOS2 = aWriter.wrap (new NonBlockingByteArrayOutputStream ()))
+      {
+        aOS2.write (2);
+      }
+      assertEquals (1, aWriter.getDroppedDumpCount ());
+      aOS1.close ();
+      aBlockedOS.close ();
+    }
+    finally
+    {
+      aBlock.countDown ();
+    }
+  }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnull;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.junit.Test;
+
+import com.helger.commons.state.EContinue;
+import com.helger.commons.system.SystemProperties;
+import com.helger.httpclient.HttpClientFactory;
+import com.helger.httpclient.HttpClientSettings;
+import com.helger.httpclient.response.ResponseHandlerByteArray;
+import com.helger.phase4.util.AS4ResourceHelper;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test class for class {@link AsyncHttpPoster}.
+ *
+ * @author Philip Helger
+ */
+public final class AsyncHttpPosterTest
+{
+  @Test
+  public void testRetryOnConnectionError () throws Exception
+  {
+    try (final AsyncHttpPoster aPoster = new AsyncHttpPoster ().setIOThreadCount (1))
+    {
+      final AtomicInteger aRetries = new AtomicInteger (0);
+      final HttpRetrySettings aRetrySettings = new HttpRetrySettings ().setMaxRetries (2)
+                                                                       .setDurationBeforeRetry (Duration.ofMillis (10));
+      try
+      {
+        // Nobody is listening on port 1
+        aPoster.sendGenericMessageWithRetriesAsync ("http://localhost:1/as4",
+                                                    null,
+                                                    new ByteArrayEntity (new byte [] { 1, 2, 3 },
+                                                                         ContentType.APPLICATION_OCTET_STREAM),
+                                                    "msgid",
+                                                    aRetrySettings,
+                                                    new ResponseHandlerByteArray (),
+                                                    null,
+                                                    (sMessageID, sURL, nTry, nMaxTries, nRetryMS, ex) -> {
+                                                      aRetries.incrementAndGet ();
+                                                      return EContinue.CONTINUE;
+                                                    })
+               .get (30, TimeUnit.SECONDS);
+        fail ();
+      }
+      catch (final ExecutionException ex)
+      {
+        assertTrue (ex.getCause () instanceof IOException);
+      }
+      assertEquals (2, aRetries.get ());
+      assertFalse (aPoster.isClosed ());
+    }
+  }
+
+  @Nonnull
+  private static byte [] _createPayload (final int nSize)
+  {
+    final byte [] ret = new byte [nSize];
+    new Random (nSize).nextBytes (ret);
+    return ret;
+  }
+
+  /**
+   * Start a local HTTP server that answers with the request body (if aResponse
+   * is <code>null</code>) or with the provided response bytes.
+   */
+  @Nonnull
+  private static HttpServer _startServer (final byte [] aResponse, final boolean bChunked) throws IOException
+  {
+    final HttpServer aServer = HttpServer.create (new InetSocketAddress (InetAddress.getLoopbackAddress (), 0), 0);
+    aServer.createContext ("/", aExchange -> {
+      final byte [] aRequest;
+      try (final InputStream aIS = aExchange.getRequestBody ())
+      {
+        aRequest = aIS.readAllBytes ();
+      }
+      final byte [] aBody = aResponse != null ? aResponse : aRequest;
+      aExchange.sendResponseHeaders (200, bChunked ? 0 : aBody.length);
+      try (final OutputStream aOS = aExchange.getResponseBody ())
+      {
+        aOS.write (aBody);
+      }
+      catch (final IOException ex)
+      {
+        // Client aborted reading
+      }
+    });
+    aServer.start ();
+    return aServer;
+  }
+
+  @Nonnull
+  private static String _getURL (@Nonnull final HttpServer aServer)
+  {
+    return "http://localhost:" + aServer.getAddress ().getPort () + "/as4";
+  }
+
+  @Test
+  public void testStreamingRoundTrip () throws Exception
+  {
+    // Larger than the in-memory threshold and all internal buffers
+    final byte [] aPayload = _createPayload (1024 * 1024);
+    final HttpServer aServer = _startServer (null, true);
+    try (final AsyncHttpPoster aPoster = new AsyncHttpPoster ().setIOThreadCount (1);
+         final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final SpooledResponsePayload aResponse = aPoster.sendGenericMessageAsync (_getURL (aServer),
+                                                                                  null,
+                                                                                  new ByteArrayEntity (aPayload,
+                                                                                                       ContentType.APPLICATION_OCTET_STREAM),
+                                                                                  new ResponseHandlerSpooled (aResHelper,
+                                                                                                              new HttpResponseSettings ()))
+                                                      .get (30, TimeUnit.SECONDS);
+      assertNotNull (aResponse);
+      assertTrue (aResponse.isSpooled ());
+      assertEquals (aPayload.length, aResponse.getSize ());
+      assertArrayEquals (aPayload, aResponse.getAsByteArray ());
+
+      // Small responses stay in memory
+      final byte [] aSmall = _createPayload (100);
+      final SpooledResponsePayload aSmallResponse = aPoster.sendGenericMessageAsync (_getURL (aServer),
+                                                                                       null,
+                                                                                       new ByteArrayEntity (aSmall,
+                                                                                                            ContentType.APPLICATION_OCTET_STREAM),
+                                                                                       new ResponseHandlerSpooled (aResHelper,
+                                                                                                                   new HttpResponseSettings ()))
+                                                           .get (30, TimeUnit.SECONDS);
+      assertNotNull (aSmallResponse);
+      assertFalse (aSmallResponse.isSpooled ());
+      assertArrayEquals (aSmall, aSmallResponse.getAsByteArray ());
+    }
+    finally
+    {
+      aServer.stop (0);
+    }
+  }
+
+  @Test
+  public void testMaxResponseSize () throws Exception
+  {
+    final byte [] aResponse = _createPayload (1024 * 1024);
+    for (final boolean bChunked : new boolean [] { false, true })
+    {
+      final HttpServer aServer = _startServer (aResponse, bChunked);
+      try (final AsyncHttpPoster aPoster = new AsyncHttpPoster ().setIOThreadCount (1))
+      {
+        aPoster.responseSettings ().setMaxResponseSize (10_000);
+        try
+        {
+          // The response handler itself has no limit
+          aPoster.sendGenericMessageAsync (_getURL (aServer),
+                                           null,
+                                           new ByteArrayEntity (new byte [] { 1, 2, 3 }, ContentType.APPLICATION_OCTET_STREAM),
+                                           new ResponseHandlerByteArray ())
+                 .get (30, TimeUnit.SECONDS);
+          fail ();
+        }
+        catch (final ExecutionException ex)
+        {
+          assertTrue (ex.getCause () instanceof HttpResponseTooLargeException);
+          assertEquals (10_000, ((HttpResponseTooLargeException) ex.getCause ()).getMaxResponseSize ());
+        }
+      }
+      finally
+      {
+        aServer.stop (0);
+      }
+    }
+  }
+
+  @Test
+  @SuppressWarnings ("removal")
+  public void testUseSystemProperties () throws Exception
+  {
+    // The local server acts as the HTTP proxy
+    final AtomicReference <String> aRequestURI = new AtomicReference <> ();
+    final HttpServer aProxy = HttpServer.create (new InetSocketAddress (InetAddress.getLoopbackAddress (), 0), 0);
+    aProxy.createContext ("/", aExchange -> {
+      aRequestURI.set (aExchange.getRequestURI ().toString ());
+      aExchange.getRequestBody ().readAllBytes ();
+      aExchange.sendResponseHeaders (200, 2);
+      try (final OutputStream aOS = aExchange.getResponseBody ())
+      {
+        aOS.write (new byte [] { 'O', 'K' });
+      }
+    });
+    aProxy.start ();
+    SystemProperties.setPropertyValue ("http.proxyHost", "127.0.0.1");
+    SystemProperties.setPropertyValue ("http.proxyPort", aProxy.getAddress ().getPort ());
+    try (final AsyncHttpPoster aPoster = new AsyncHttpPoster ().setIOThreadCount (1))
+    {
+      aPoster.setHttpClientFactory (new HttpClientFactory (new HttpClientSettings ().setUseSystemProperties (true)));
+      final byte [] aResponse = aPoster.sendGenericMessageAsync ("http://phase4-proxy-test.invalid/as4",
+                                                                 null,
+                                                                 new ByteArrayEntity (new byte [] { 1, 2, 3 },
+                                                                                      ContentType.APPLICATION_OCTET_STREAM),
+                                                                 new ResponseHandlerByteArray ())
+                                       .get (30, TimeUnit.SECONDS);
+      assertArrayEquals (new byte [] { 'O', 'K' }, aResponse);
+      // Proxies receive the absolute URI
+      assertEquals ("http://phase4-proxy-test.invalid/as4", aRequestURI.get ());
+    }
+    finally
+    {
+      SystemProperties.removePropertyValue ("http.proxyHost");
+      SystemProperties.removePropertyValue ("http.proxyPort");
+      aProxy.stop (0);
+    }
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.net.ssl.SSLContext;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncServer;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.nio.AsyncRequestConsumer;
+import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
+import org.apache.hc.core5.http.nio.entity.BasicAsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.support.BasicRequestConsumer;
+import org.apache.hc.core5.http.nio.support.BasicResponseProducer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.impl.nio.bootstrap.H2ServerBootstrap;
+import org.apache.hc.core5.http2.ssl.H2ServerTlsStrategy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.ListenerEndpoint;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Test;
+
+import com.helger.commons.http.HttpHeaderMap;
+import com.helger.httpclient.HttpClientFactory;
+import com.helger.httpclient.HttpClientSettings;
+import com.helger.httpclient.response.ResponseHandlerString;
+
+/**
+ * Test class for class {@link Http2HttpPoster}.
+ *
+ * @author Philip Helger
+ */
+public final class Http2HttpPosterTest
+{
+  private static final char [] KEY_PASSWORD = "password".toCharArray ();
+
+  @Nonnull
+  private static SSLContext _createServerSSLContext () throws Exception
+  {
+    // Self-signed certificate for localhost
+    final KeyPairGenerator aKPG = KeyPairGenerator.getInstance ("RSA");
+    aKPG.initialize (2048);
+    final KeyPair aKeyPair = aKPG.generateKeyPair ();
+    final X500Name aName = new X500Name ("CN=localhost");
+    final long nNow = System.currentTimeMillis ();
+    final X509Certificate aCert = new JcaX509CertificateConverter ().getCertificate (new JcaX509v3CertificateBuilder (aName,
+                                                                                                                      BigInteger.valueOf (nNow),
+                                                                                                                      new Date (nNow -
+                                                                                                                                60_000),
+                                                                                                                      new Date (nNow +
+                                                                                                                                3_600_000),
+                                                                                                                      aName,
+                                                                                                                      aKeyPair.getPublic ()).build (new JcaContentSignerBuilder ("SHA256withRSA").build (aKeyPair.getPrivate ())));
+
+    final KeyStore aKeyStore = KeyStore.getInstance ("PKCS12");
+    aKeyStore.load (null, null);
+    aKeyStore.setKeyEntry ("server", aKeyPair.getPrivate (), KEY_PASSWORD, new Certificate [] { aCert });
+    return SSLContexts.custom ().loadKeyMaterial (aKeyStore, KEY_PASSWORD).build ();
+  }
+
+  /**
+   * Start a local TLS server that answers each request with the negotiated
+   * protocol version.
+   */
+  @Nonnull
+  private static HttpAsyncServer _startServer (@Nonnull final HttpVersionPolicy eServerPolicy) throws Exception
+  {
+    final HttpAsyncServer aServer = H2ServerBootstrap.bootstrap ()
+                                                     .setVersionPolicy (eServerPolicy)
+                                                     .setTlsStrategy (new H2ServerTlsStrategy (_createServerSSLContext ()))
+                                                     .register ("*",
+                                                                new AsyncServerRequestHandler <Message <HttpRequest, byte []>> ()
+                                                                {
+                                                                  public AsyncRequestConsumer <Message <HttpRequest, byte []>> prepare (final HttpRequest aRequest,
+                                                                                                                                    final EntityDetails aEntityDetails,
+                                                                                                                                    final HttpContext aContext)
+                                                                  {
+                                                                    return new BasicRequestConsumer <> (aEntityDetails == null ? null
+                                                                                                                               : new BasicAsyncEntityConsumer ());
+                                                                  }
+
+                                                                  public void handle (final Message <HttpRequest, byte []> aMessage,
+                                                                                      final ResponseTrigger aResponseTrigger,
+                                                                                      final HttpContext aContext) throws HttpException,
+                                                                                                                   IOException
+                                                                  {
+                                                                    aResponseTrigger.submitResponse (new BasicResponseProducer (HttpStatus.SC_OK,
+                                                                                                                                aContext.getProtocolVersion ()
+                                                                                                                                        .format (),
+                                                                                                                                ContentType.TEXT_PLAIN),
+                                                                                                     aContext);
+                                                                  }
+                                                                })
+                                                     .create ();
+    aServer.start ();
+    return aServer;
+  }
+
+  private static int _listen (@Nonnull final HttpAsyncServer aServer,
+                              @Nonnull final HttpVersionPolicy eServerPolicy) throws Exception
+  {
+    // The policy attachment controls the ALPN protocols offered by the server
+    final ListenerEndpoint aEndpoint = aServer.listen (new InetSocketAddress ("localhost", 0),
+                                                       URIScheme.HTTPS,
+                                                       eServerPolicy,
+                                                       null)
+                                              .get (10, TimeUnit.SECONDS);
+    return ((InetSocketAddress) aEndpoint.getAddress ()).getPort ();
+  }
+
+  @Nonnull
+  private static String _send (@Nonnull final Http2HttpPoster aPoster, final int nPort) throws Exception
+  {
+    // Connection specific headers must be dropped - they are illegal in HTTP/2
+    final HttpHeaderMap aHeaders = new HttpHeaderMap ();
+    aHeaders.addHeader ("Connection", "keep-alive");
+    aHeaders.addHeader ("Keep-Alive", "timeout=5");
+    aHeaders.addHeader ("X-Custom", "value");
+    return aPoster.sendGenericMessageAsync ("https://localhost:" + nPort + "/as4",
+                                           aHeaders,
+                                           new StringEntity ("<as4/>", ContentType.APPLICATION_XML),
+                                           new ResponseHandlerString (ContentType.TEXT_PLAIN.withCharset (StandardCharsets.UTF_8)))
+                  .get (30, TimeUnit.SECONDS);
+  }
+
+  @Nonnull
+  private static Http2HttpPoster _createPoster () throws Exception
+  {
+    // Trust the self-signed server certificate
+    final HttpClientSettings aSettings = new HttpClientSettings ().setSSLContextTrustAll ()
+                                                                  .setHostnameVerifierVerifyAll ();
+    final Http2HttpPoster ret = new Http2HttpPoster (new HttpClientFactory (aSettings));
+    ret.setIOThreadCount (1);
+    return ret;
+  }
+
+  @Test
+  public void testVersionPolicy ()
+  {
+    assertSame (HttpVersionPolicy.FORCE_HTTP_1, new AsyncHttpPoster ().getHttpVersionPolicy ());
+    try (final Http2HttpPoster aPoster = new Http2HttpPoster ())
+    {
+      assertSame (HttpVersionPolicy.NEGOTIATE, aPoster.getHttpVersionPolicy ());
+    }
+    try (final Http2HttpPoster aPoster = new Http2HttpPoster (new HttpClientFactory ()))
+    {
+      assertSame (HttpVersionPolicy.NEGOTIATE, aPoster.getHttpVersionPolicy ());
+    }
+  }
+
+  @Test
+  public void testNegotiateHttp2 () throws Exception
+  {
+    final HttpAsyncServer aServer = _startServer (HttpVersionPolicy.NEGOTIATE);
+    try (final Http2HttpPoster aPoster = _createPoster ())
+    {
+      final int nPort = _listen (aServer, HttpVersionPolicy.NEGOTIATE);
+      assertEquals ("HTTP/2.0", _send (aPoster, nPort));
+      // The connection is reused
+      assertEquals ("HTTP/2.0", _send (aPoster, nPort));
+    }
+    finally
+    {
+      aServer.close (CloseMode.IMMEDIATE);
+    }
+  }
+
+  @Test
+  public void testFallbackToHttp11 () throws Exception
+  {
+    // The server does not support HTTP/2
+    final HttpAsyncServer aServer = _startServer (HttpVersionPolicy.FORCE_HTTP_1);
+    try (final Http2HttpPoster aPoster = _createPoster ())
+    {
+      assertEquals ("HTTP/1.1", _send (aPoster, _listen (aServer, HttpVersionPolicy.FORCE_HTTP_1)));
+    }
+    finally
+    {
+      aServer.close (CloseMode.IMMEDIATE);
+    }
+  }
+}
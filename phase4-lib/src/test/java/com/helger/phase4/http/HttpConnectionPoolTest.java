@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.junit.Test;
+
+import com.helger.httpclient.HttpClientFactory;
+import com.helger.httpclient.response.ResponseHandlerByteArray;
+
+/**
+ * Test class for class {@link HttpConnectionPool}.
+ *
+ * @author Philip Helger
+ */
+public final class HttpConnectionPoolTest
+{
+  @Test
+  public void testBasic () throws IOException
+  {
+    final HttpConnectionPoolSettings aSettings = new HttpConnectionPoolSettings ().setMaxTotal (10)
+                                                                                  .setMaxPerRoute (5)
+                                                                                  .setIdleEvictionDuration (Duration.ofSeconds (5));
+    final HttpClientFactory aHCF = new HttpClientFactory ();
+    final HttpConnectionPool aPool = new HttpConnectionPool (aHCF, aSettings);
+    try
+    {
+      assertSame (aHCF, aPool.getHttpClientFactory ());
+      assertFalse (aPool.isClosed ());
+      assertEquals (aSettings, aPool.getPoolSettings ());
+      assertNotSame (aSettings, aPool.getPoolSettings ());
+      assertEquals (10, aPool.getTotalStats ().getMax ());
+      assertEquals (0, aPool.getTotalStats ().getLeased ());
+
+      final BasicHttpPoster aPoster = new BasicHttpPoster ().setConnectionPool (aPool);
+      assertSame (aPool, aPoster.getConnectionPool ());
+    }
+    finally
+    {
+      aPool.close ();
+    }
+    assertTrue (aPool.isClosed ());
+
+    // Closing twice is fine
+    aPool.close ();
+
+    try
+    {
+      aPool.execute (new HttpPost ("http://localhost:1"), new ResponseHandlerByteArray ());
+      fail ();
+    }
+    catch (final IllegalStateException ex)
+    {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.junit.Test;
+
+/**
+ * Test class for class {@link HttpEndpointHealth}.
+ *
+ * @author Philip Helger
+ */
+public final class HttpEndpointHealthTest
+{
+  private static final String URL = "http://localhost:1/as4";
+
+  @Test
+  public void testCircuitBreaker ()
+  {
+    final HttpEndpointHealthManager aMgr = new HttpEndpointHealthManager (new HttpEndpointHealthSettings ().setFailureThreshold (2)
+                                                                                                           .setOpenDuration (Duration.ZERO));
+    final HttpEndpointHealth aHealth = aMgr.getOrCreateHealth (URL);
+    assertSame (aHealth, aMgr.getOrCreateHealth (URL));
+    assertSame (EHttpCircuitState.CLOSED, aHealth.getCircuitState ());
+    assertEquals (HttpEndpointHealthSettings.DEFAULT_INITIAL_LIMIT, aHealth.getConcurrencyLimit ());
+
+    for (int i = 0; i < 2; ++i)
+    {
+      assertTrue (aHealth.tryAcquire ().isSuccess ());
+      aHealth.onTransmissionFinished (false, 10);
+    }
+    // Multiplicative decrease
+    assertEquals (HttpEndpointHealthSettings.DEFAULT_INITIAL_LIMIT / 4, aHealth.getConcurrencyLimit ());
+
+    // Open duration is 0 - so directly half-open with a single probe
+    assertSame (EHttpCircuitState.HALF_OPEN, aHealth.getCircuitState ());
+    assertEquals (1, aMgr.getAllHealthsInState (EHttpCircuitState.HALF_OPEN).size ());
+    assertTrue (aHealth.tryAcquire ().isSuccess ());
+    assertTrue (aHealth.tryAcquire ().isFailure ());
+    aHealth.onTransmissionFinished (true, 10);
+    assertSame (EHttpCircuitState.CLOSED, aHealth.getCircuitState ());
+    assertEquals (1, aHealth.getRejectedCount ());
+    assertEquals (0, aHealth.getInFlightCount ());
+  }
+
+  @Test
+  public void testPosterRejects () throws Exception
+  {
+    final HttpEndpointHealthManager aMgr = new HttpEndpointHealthManager (new HttpEndpointHealthSettings ().setInitialLimit (1));
+    final BasicHttpPoster aPoster = new BasicHttpPoster ().setEndpointHealthManager (aMgr);
+    // Occupy the only permit
+    assertTrue (aMgr.getOrCreateHealth (URL).tryAcquire ().isSuccess ());
+    try
+    {
+      aPoster.sendGenericMessage (URL, null, new StringEntity ("x"), x -> x);
+      fail ();
+    }
+    catch (final HttpEndpointUnavailableException ex)
+    {
+      assertSame (EHttpCircuitState.CLOSED, ex.getCircuitState ());
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.io.file.SimpleFileIO;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.mime.CMimeType;
+import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.messaging.domain.MessageHelperMethods;
+import com.helger.phase4.messaging.mime.AS4MimeMessage;
+import com.helger.phase4.messaging.mime.MimeMessageCreator;
+import com.helger.phase4.soap.ESoapVersion;
+import com.helger.phase4.util.AS4ResourceHelper;
+import com.helger.xml.XMLFactory;
+
+/**
+ * Test class for class {@link HttpMimeMessageEntity}.
+ *
+ * @author Philip Helger
+ */
+public final class HttpMimeMessageEntityTest
+{
+  @Test
+  public void testContentLength () throws Exception
+  {
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final Document aDoc = XMLFactory.newDocument ();
+      aDoc.appendChild (aDoc.createElementNS (ESoapVersion.SOAP_12.getNamespaceURI (), "S12:Envelope"));
+
+      final File aFile = aResHelper.createTempFile ();
+      final byte [] aContent = new byte [100_000];
+      for (int i = 0; i < aContent.length; ++i)
+        aContent[i] = (byte) i;
+      SimpleFileIO.writeFile (aFile, aContent);
+
+      final WSS4JAttachment aFileAttachment = WSS4JAttachment.createOutgoingFileAttachment (aFile,
+                                                                                            null,
+                                                                                            "file.bin",
+                                                                                            CMimeType.APPLICATION_OCTET_STREAM,
+                                                                                            null,
+                                                                                            null,
+                                                                                            aResHelper);
+      assertEquals (aContent.length, aFileAttachment.getSourceLength ());
+      final WSS4JAttachment aMemAttachment = WSS4JAttachment.createOutgoingFileAttachment ("Hällo".getBytes (StandardCharsets.UTF_8),
+                                                                                           null,
+                                                                                           null,
+                                                                                           CMimeType.TEXT_PLAIN,
+                                                                                           null,
+                                                                                           StandardCharsets.UTF_8,
+                                                                                           aResHelper);
+
+      final AS4MimeMessage aMimeMsg = MimeMessageCreator.generateMimeMessage (ESoapVersion.SOAP_12,
+                                                                              aDoc,
+                                                                              new CommonsArrayList <> (aFileAttachment,
+                                                                                                       aMemAttachment));
+      final HttpMimeMessageEntity aEntity = HttpMimeMessageEntity.create (aMimeMsg);
+      MessageHelperMethods.getAndRemoveAllHeaders (aMimeMsg);
+      assertTrue (aEntity.isRepeatable ());
+
+      try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+      {
+        aEntity.writeTo (aBAOS);
+        assertTrue (aBAOS.size () > aContent.length);
+        assertEquals (aBAOS.size (), aEntity.getContentLength ());
+      }
+
+      // Chunked
+      assertEquals (-1, HttpMimeMessageEntity.create (aMimeMsg, false).getContentLength ());
+    }
+  }
+}
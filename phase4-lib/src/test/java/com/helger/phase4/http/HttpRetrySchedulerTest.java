@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Test class for class {@link HttpRetryScheduler}.
+ *
+ * @author Philip Helger
+ */
+public final class HttpRetrySchedulerTest
+{
+  @Test
+  public void testScheduleAndBudget () throws Exception
+  {
+    try (final HttpRetryScheduler aScheduler = new HttpRetryScheduler (Duration.ofMillis (10), 8, 2))
+    {
+      final CountDownLatch aLatch = new CountDownLatch (2);
+      // Delay exceeds one wheel rotation
+      assertTrue (aScheduler.schedule (Duration.ofMillis (150), aLatch::countDown, Runnable::run).isSuccess ());
+      assertTrue (aScheduler.schedule (Duration.ZERO, aLatch::countDown, Runnable::run).isSuccess ());
+
+      // Budget exhausted
+      assertTrue (aScheduler.schedule (Duration.ZERO, aLatch::countDown, Runnable::run).isFailure ());
+      assertEquals (1, aScheduler.getRejectedRetryCount ());
+
+      assertTrue (aLatch.await (10, TimeUnit.SECONDS));
+      assertEquals (0, aScheduler.getPendingRetryCount ());
+    }
+  }
+
+  @Test
+  public void testCloseDispatchesPending () throws Exception
+  {
+    final CountDownLatch aLatch = new CountDownLatch (1);
+    final HttpRetryScheduler aScheduler = new HttpRetryScheduler ();
+    assertTrue (aScheduler.schedule (Duration.ofHours (1), aLatch::countDown, Runnable::run).isSuccess ());
+    aScheduler.close ();
+    assertTrue (aLatch.await (10, TimeUnit.SECONDS));
+    assertTrue (aScheduler.schedule (Duration.ZERO, aLatch::countDown, Runnable::run).isFailure ());
+  }
+
+  @Test
+  public void testJitter ()
+  {
+    final Duration aBase = Duration.ofSeconds (10);
+    assertEquals (aBase, HttpRetrySettings.getJittered (aBase, BigDecimal.ZERO));
+    for (int i = 0; i < 100; ++i)
+    {
+      final Duration aJittered = HttpRetrySettings.getJittered (aBase, new BigDecimal ("0.2"));
+      assertTrue (aJittered.toMillis () >= 8000 && aJittered.toMillis () <= 12000);
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.junit.Test;
+
+import com.helger.httpclient.HttpClientFactory;
+import com.helger.httpclient.HttpClientSettings;
+
+/**
+ * Test class for class {@link HttpTlsSessionCache}.
+ *
+ * @author Philip Helger
+ */
+public final class HttpTlsSessionCacheTest
+{
+  @Test
+  public void testReuse ()
+  {
+    final HttpTlsSessionCache aCache = new HttpTlsSessionCache ();
+
+    // Same default context for different settings instances
+    final SSLContext aDefault = aCache.getSSLContext (new HttpClientSettings ());
+    assertNotNull (aDefault);
+    assertSame (aDefault, aCache.getSSLContext (new HttpClientSettings ()));
+    assertSame (aCache.getSSLSocketFactory (new HttpClientSettings ()),
+                aCache.getSSLSocketFactory (new HttpClientSettings ()));
+    assertEquals (HttpTlsSessionCache.DEFAULT_SESSION_CACHE_SIZE,
+                  aDefault.getClientSessionContext ().getSessionCacheSize ());
+
+    // Explicit context is used as is
+    final SSLContext aCustom = SSLContexts.createDefault ();
+    final HttpClientSettings aSettings = new HttpClientSettings ().setSSLContext (aCustom);
+    assertSame (aCustom, aCache.getSSLContext (aSettings));
+    assertNotSame (aCache.getSSLSocketFactory (new HttpClientSettings ()), aCache.getSSLSocketFactory (aSettings));
+
+    // Factory delegates to the cache
+    final TlsSessionCachingHttpClientFactory aFactory = new TlsSessionCachingHttpClientFactory (aSettings, aCache);
+    assertSame (aCache.getSSLSocketFactory (aSettings), aFactory.createSSLFactory ());
+  }
+
+  @Test
+  public void testNotUsedByDefault ()
+  {
+    // TLS session caching is opt-in
+    assertSame (HttpClientFactory.class, BasicHttpPoster.createDefaultHttpClientFactory ().getClass ());
+    assertSame (HttpClientFactory.class, new BasicHttpPoster ().getHttpClientFactory ().getClass ());
+  }
+
+  @Test
+  public void testStats ()
+  {
+    final HttpTlsSessionCache aCache = new HttpTlsSessionCache ();
+    assertTrue (aCache.getAllHandshakeStats ().isEmpty ());
+    assertNull (aCache.getHandshakeStats ("ap.example.org"));
+
+    aCache.onHandshake ("ap.example.org", false, 100);
+    aCache.onHandshake ("ap.example.org", true, 10);
+    aCache.onHandshake ("ap.example.org", true, 20);
+
+    final HttpTlsHandshakeStats aStats = aCache.getHandshakeStats ("ap.example.org");
+    assertNotNull (aStats);
+    assertEquals (1, aStats.getFullHandshakeCount ());
+    assertEquals (100, aStats.getFullHandshakeMillis ());
+    assertEquals (2, aStats.getResumedHandshakeCount ());
+    assertEquals (30, aStats.getResumedHandshakeMillis ());
+    assertEquals (100, aStats.getMaxHandshakeMillis ());
+
+    aCache.clear ();
+    assertTrue (aCache.getAllHandshakeStats ().isEmpty ());
+  }
+}
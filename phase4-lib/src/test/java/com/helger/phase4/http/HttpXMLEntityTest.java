@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.mime.CMimeType;
+import com.helger.phase4.util.AS4XMLHelper;
+import com.helger.xml.XMLFactory;
+
+/**
+ * Test class for class {@link HttpXMLEntity}.
+ *
+ * @author Philip Helger
+ */
+public final class HttpXMLEntityTest
+{
+  @Test
+  public void testBasic () throws IOException
+  {
+    final Document aDoc = XMLFactory.newDocument ();
+    final Element eRoot = (Element) aDoc.appendChild (aDoc.createElementNS ("urn:test", "root"));
+    eRoot.appendChild (aDoc.createTextNode ("Grüße"));
+
+    final byte [] aExpected = AS4XMLHelper.serializeXML (aDoc).getBytes (AS4XMLHelper.XWS.getCharset ());
+
+    final HttpXMLEntity aEntity = new HttpXMLEntity (aDoc, CMimeType.APPLICATION_XML);
+    assertTrue (aEntity.isRepeatable ());
+    assertEquals (aExpected.length, aEntity.getContentLength ());
+
+    // Write twice - must be repeatable
+    for (int i = 0; i < 2; ++i)
+      try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+      {
+        aEntity.writeTo (aBAOS);
+        assertArrayEquals (aExpected, aBAOS.toByteArray ());
+      }
+    assertArrayEquals (aExpected, StreamHelper.getAllBytes (aEntity.getContent ()));
+
+    // Chunked
+    assertEquals (-1, new HttpXMLEntity (aDoc, CMimeType.APPLICATION_XML, false).getContentLength ());
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.InputStreamEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.junit.Test;
+
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * Test class for class {@link ResponseHandlerSpooled}.
+ *
+ * @author Philip Helger
+ */
+public final class ResponseHandlerSpooledTest
+{
+  @Nonnull
+  private static BasicClassicHttpResponse _createResponse (@Nonnull final byte [] aPayload)
+  {
+    final BasicClassicHttpResponse ret = new BasicClassicHttpResponse (200);
+    // Unknown length
+    ret.setEntity (new InputStreamEntity (new NonBlockingByteArrayInputStream (aPayload),
+                                          -1,
+                                          ContentType.APPLICATION_OCTET_STREAM));
+    return ret;
+  }
+
+  @Test
+  public void testBasic () throws IOException
+  {
+    final byte [] aPayload = new byte [10_000];
+    for (int i = 0; i < aPayload.length; ++i)
+      aPayload[i] = (byte) (i % 251);
+
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      // In memory
+      SpooledResponsePayload aResult = new ResponseHandlerSpooled (aResHelper,
+                                                                   new HttpResponseSettings ()).handleResponse (_createResponse (aPayload));
+      assertNotNull (aResult);
+      assertFalse (aResult.isSpooled ());
+      assertEquals (aPayload.length, aResult.getSize ());
+      assertArrayEquals (aPayload, aResult.getAsByteArray ());
+
+      // Spooled to disk
+      aResult = new ResponseHandlerSpooled (aResHelper,
+                                            new HttpResponseSettings ().setInMemoryThreshold (1000)).handleResponse (_createResponse (aPayload));
+      assertNotNull (aResult);
+      assertTrue (aResult.isSpooled ());
+      assertTrue (aResult.getSpoolFile ().isFile ());
+      assertEquals (aPayload.length, aResult.getSize ());
+      assertArrayEquals (aPayload, StreamHelper.getAllBytes (aResult.getInputStream ()));
+      // Read twice
+      assertArrayEquals (aPayload, StreamHelper.getAllBytes (aResult.getInputStream ()));
+
+      // Too large
+      try
+      {
+        new ResponseHandlerSpooled (aResHelper,
+                                    new HttpResponseSettings ().setInMemoryThreshold (1000)
+                                                               .setMaxResponseSize (5000)).handleResponse (_createResponse (aPayload));
+        fail ();
+      }
+      catch (final HttpResponseTooLargeException ex)
+      {
+        assertEquals (5000, ex.getMaxResponseSize ());
+      }
+    }
+  }
+}
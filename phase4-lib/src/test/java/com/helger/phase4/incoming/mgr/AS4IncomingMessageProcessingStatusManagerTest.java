@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.incoming.mgr;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Test;
+
+import com.helger.phase4.incoming.spi.IAS4IncomingMessageProcessingStatusSPI;
+import com.helger.phase4.messaging.IAS4IncomingMessageMetadata;
+
+/**
+ * Test class for class {@link AS4IncomingMessageProcessingStatusManager}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4IncomingMessageProcessingStatusManagerTest
+{
+  @Test
+  public void testRegisterAndReinit ()
+  {
+    final IAS4IncomingMessageProcessingStatusSPI aSPI = new IAS4IncomingMessageProcessingStatusSPI ()
+    {
+      public void onMessageProcessingStarted (@Nonnull final IAS4IncomingMessageMetadata aMessageMetadata)
+      {}
+
+      public void onMessageProcessingEnded (@Nonnull final IAS4IncomingMessageMetadata aMessageMetadata,
+                                            @Nullable final Exception aCaughtException)
+      {}
+    };
+
+    assertFalse (AS4IncomingMessageProcessingStatusManager.getAllSPIs ().contains (aSPI));
+    AS4IncomingMessageProcessingStatusManager.registerSPI (aSPI);
+    try
+    {
+      assertTrue (AS4IncomingMessageProcessingStatusManager.getAllSPIs ().contains (aSPI));
+      // Always a copy
+      assertNotSame (AS4IncomingMessageProcessingStatusManager.getAllSPIs (),
+                     AS4IncomingMessageProcessingStatusManager.getAllSPIs ());
+    }
+    finally
+    {
+      assertTrue (AS4IncomingMessageProcessingStatusManager.unregisterSPI (aSPI).isChanged ());
+    }
+    assertFalse (AS4IncomingMessageProcessingStatusManager.getAllSPIs ().contains (aSPI));
+    assertFalse (AS4IncomingMessageProcessingStatusManager.unregisterSPI (aSPI).isChanged ());
+
+    // Registered SPIs are removed by a reinit
+    AS4IncomingMessageProcessingStatusManager.registerSPI (aSPI);
+    AS4IncomingMessageProcessingStatusManager.reinit ();
+    assertFalse (AS4IncomingMessageProcessingStatusManager.getAllSPIs ().contains (aSPI));
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.messaging.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.mime.CMimeType;
+import com.helger.phase4.attachment.EAS4CompressionMode;
+import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.ebms3header.Ebms3CollaborationInfo;
+import com.helger.phase4.ebms3header.Ebms3MessageProperties;
+import com.helger.phase4.ebms3header.Ebms3PartyInfo;
+import com.helger.phase4.ebms3header.Ebms3PayloadInfo;
+import com.helger.phase4.soap.ESoapVersion;
+import com.helger.phase4.util.AS4ResourceHelper;
+import com.helger.xml.XMLFactory;
+import com.helger.xml.serialize.write.XMLWriter;
+
+/**
+ * Test class for class {@link AS4UserMessageHeaderTemplate} and
+ * {@link AS4UserMessageHeaderTemplateCache}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4UserMessageHeaderTemplateTest
+{
+  private static Ebms3CollaborationInfo _createCollaborationInfo (final String sConversationID)
+  {
+    return MessageHelperMethods.createEbms3CollaborationInfo ("pmode-1",
+                                                              "agreement",
+                                                              "stype",
+                                                              "service",
+                                                              "action",
+                                                              sConversationID);
+  }
+
+  private static Ebms3PartyInfo _createPartyInfo (final String sToParty)
+  {
+    return MessageHelperMethods.createEbms3PartyInfo ("fromrole", "type", "from", "torole", "type", sToParty);
+  }
+
+  private static void _compare (final ESoapVersion eSoapVersion,
+                                final String sRefToMessageID,
+                                final Ebms3PayloadInfo aPayloadInfo,
+                                final Document aBodyPayload)
+  {
+    final OffsetDateTime aNow = OffsetDateTime.now ();
+    final Ebms3PartyInfo aPartyInfo = _createPartyInfo ("to");
+    final Ebms3MessageProperties aProps = MessageHelperMethods.createEbms3MessageProperties (new CommonsArrayList <> (MessageHelperMethods.createEbms3Property ("originalSender",
+                                                                                                                                                             "sender")));
+
+    // Marshal everything
+    final AS4UserMessage aUserMsg = AS4UserMessage.create (MessageHelperMethods.createEbms3MessageInfo ("msg-id",
+                                                                                                        sRefToMessageID,
+                                                                                                        aNow),
+                                                           aPayloadInfo,
+                                                           _createCollaborationInfo ("conv-1"),
+                                                           aPartyInfo,
+                                                           aProps,
+                                                           null,
+                                                           eSoapVersion)
+                                                   .setMustUnderstand (true);
+    final String sExpected = XMLWriter.getNodeAsString (aUserMsg.getAsSoapDocument (aBodyPayload));
+
+    // Use a template that was created with different values
+    final AS4UserMessageHeaderTemplate aTemplate = new AS4UserMessageHeaderTemplate (eSoapVersion,
+                                                                                     AS4UserMessageHeaderTemplate.createSkeleton (aPartyInfo,
+                                                                                                                                  _createCollaborationInfo ("other"),
+                                                                                                                                  aProps,
+                                                                                                                                  null));
+    final String sActual = XMLWriter.getNodeAsString (aTemplate.createSoapDocument (aUserMsg.getMessagingID (),
+                                                                                    "msg-id",
+                                                                                    sRefToMessageID,
+                                                                                    aNow,
+                                                                                    "conv-1",
+                                                                                    aPayloadInfo,
+                                                                                    aBodyPayload));
+    assertEquals (sExpected, sActual);
+  }
+
+  @Test
+  public void testSameAsMarshalled () throws Exception
+  {
+    final Document aBodyPayload = XMLFactory.newDocument ();
+    aBodyPayload.appendChild (aBodyPayload.createElementNS ("urn:test", "Payload")).setTextContent ("content");
+
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final ICommonsList <WSS4JAttachment> aAttachments = new CommonsArrayList <> ();
+      aAttachments.add (WSS4JAttachment.createOutgoingFileAttachment ("abc".getBytes (StandardCharsets.ISO_8859_1),
+                                                                      "cid1",
+                                                                      "a.xml",
+                                                                      CMimeType.APPLICATION_XML,
+                                                                      EAS4CompressionMode.GZIP,
+                                                                      StandardCharsets.UTF_8,
+                                                                      aResHelper));
+      aAttachments.add (WSS4JAttachment.createOutgoingFileAttachment ("def".getBytes (StandardCharsets.ISO_8859_1),
+                                                                      "cid2",
+                                                                      null,
+                                                                      CMimeType.TEXT_PLAIN,
+                                                                      null,
+                                                                      null,
+                                                                      aResHelper));
+
+      for (final ESoapVersion eSoapVersion : ESoapVersion.values ())
+      {
+        _compare (eSoapVersion, null, null, null);
+        _compare (eSoapVersion, "ref-id", null, aBodyPayload);
+        _compare (eSoapVersion, null, MessageHelperMethods.createEbms3PayloadInfo (true, null), aBodyPayload);
+        _compare (eSoapVersion, "ref-id", MessageHelperMethods.createEbms3PayloadInfo (false, aAttachments), null);
+      }
+    }
+  }
+
+  @Test
+  public void testCache ()
+  {
+    final AS4UserMessageHeaderTemplateCache aCache = new AS4UserMessageHeaderTemplateCache (2);
+    final AS4UserMessageHeaderTemplate t1 = aCache.getOrCreateTemplate (ESoapVersion.SOAP_12,
+                                                                        AS4UserMessageHeaderTemplate.createSkeleton (_createPartyInfo ("to1"),
+                                                                                                                     _createCollaborationInfo ("a"),
+                                                                                                                     null,
+                                                                                                                     null));
+    // Conversation ID is not part of the key
+    assertSame (t1,
+                aCache.getOrCreateTemplate (ESoapVersion.SOAP_12,
+                                            AS4UserMessageHeaderTemplate.createSkeleton (_createPartyInfo ("to1"),
+                                                                                         _createCollaborationInfo ("b"),
+                                                                                         null,
+                                                                                         null)));
+    // Different receiver
+    assertNotSame (t1,
+                   aCache.getOrCreateTemplate (ESoapVersion.SOAP_12,
+                                               AS4UserMessageHeaderTemplate.createSkeleton (_createPartyInfo ("to2"),
+                                                                                            _createCollaborationInfo ("a"),
+                                                                                            null,
+                                                                                            null)));
+    // Different SOAP version
+    assertNotSame (t1,
+                   aCache.getOrCreateTemplate (ESoapVersion.SOAP_11,
+                                               AS4UserMessageHeaderTemplate.createSkeleton (_createPartyInfo ("to1"),
+                                                                                            _createCollaborationInfo ("a"),
+                                                                                            null,
+                                                                                            null)));
+    assertEquals (2, aCache.size ());
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.messaging.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.time.OffsetDateTime;
+
+import javax.xml.XMLConstants;
+
+import org.junit.Test;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsSortedMap;
+import com.helger.phase4.CAS4;
+import com.helger.phase4.ebms3header.Ebms3Error;
+import com.helger.phase4.ebms3header.Ebms3Receipt;
+import com.helger.phase4.ebms3header.Ebms3SignalMessage;
+import com.helger.phase4.error.EEbmsError;
+import com.helger.phase4.marshaller.Ebms3MessagingMarshaller;
+import com.helger.phase4.marshaller.Soap11EnvelopeMarshaller;
+import com.helger.phase4.marshaller.Soap12EnvelopeMarshaller;
+import com.helger.phase4.soap.ESoapVersion;
+import com.helger.phase4.soap11.Soap11Body;
+import com.helger.phase4.soap11.Soap11Envelope;
+import com.helger.phase4.soap11.Soap11Header;
+import com.helger.phase4.soap12.Soap12Body;
+import com.helger.phase4.soap12.Soap12Envelope;
+import com.helger.phase4.soap12.Soap12Header;
+import com.helger.phase4.util.AS4XMLHelper;
+import com.helger.xml.XMLFactory;
+import com.helger.xml.XMLHelper;
+
+/**
+ * Test class for {@link AbstractAS4Message#getAsSoapDocument(Node)}.
+ *
+ * @author Philip Helger
+ */
+public final class AbstractAS4MessageTest
+{
+  /**
+   * The previous implementation, marshalling the Messaging and the SOAP
+   * envelope separately.
+   */
+  private static Document _getAsSoapDocumentJAXB (final AbstractAS4Message <?> aMsg, final Node aSoapBodyPayload)
+  {
+    final Document aEbms3Document = new Ebms3MessagingMarshaller ().getAsDocument (aMsg.m_aMessaging);
+    final Node aRealSoapBodyPayload = aSoapBodyPayload instanceof Document ? ((Document) aSoapBodyPayload).getDocumentElement ()
+                                                                           : aSoapBodyPayload;
+    if (aMsg.getSoapVersion () == ESoapVersion.SOAP_11)
+    {
+      final Soap11Envelope aSoapEnv = new Soap11Envelope ();
+      aSoapEnv.setHeader (new Soap11Header ());
+      aSoapEnv.setBody (new Soap11Body ());
+      aSoapEnv.getHeader ().addAny (aEbms3Document.getDocumentElement ());
+      if (aRealSoapBodyPayload != null)
+        aSoapEnv.getBody ().addAny (aRealSoapBodyPayload);
+      return new Soap11EnvelopeMarshaller ().getAsDocument (aSoapEnv);
+    }
+    final Soap12Envelope aSoapEnv = new Soap12Envelope ();
+    aSoapEnv.setHeader (new Soap12Header ());
+    aSoapEnv.setBody (new Soap12Body ());
+    aSoapEnv.getHeader ().addAny (aEbms3Document.getDocumentElement ());
+    if (aRealSoapBodyPayload != null)
+      aSoapEnv.getBody ().addAny (aRealSoapBodyPayload);
+    return new Soap12EnvelopeMarshaller ().getAsDocument (aSoapEnv);
+  }
+
+  private static ICommonsSortedMap <String, String> _getAttrs (final Element e)
+  {
+    final ICommonsSortedMap <String, String> ret = new CommonsTreeMap <> ();
+    final NamedNodeMap aAttrs = e.getAttributes ();
+    for (int i = 0; i < aAttrs.getLength (); ++i)
+    {
+      final Attr a = (Attr) aAttrs.item (i);
+      // Ignore namespace declarations - imported payload nodes only get them
+      // when serialized, so they are compared on the serialized form
+      if (!XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals (a.getNamespaceURI ()))
+        ret.put ("{" + a.getNamespaceURI () + "}" + a.getLocalName (), a.getValue ());
+    }
+    return ret;
+  }
+
+  /**
+   * Compare namespace URIs, namespace prefixes, local names, attributes and
+   * texts.
+   */
+  private static void _assertEquivalent (final Node aExpected, final Node aActual)
+  {
+    assertEquals (aExpected.getNodeType (), aActual.getNodeType ());
+    if (aExpected.getNodeType () == Node.ELEMENT_NODE)
+    {
+      assertEquals (aExpected.getNamespaceURI (), aActual.getNamespaceURI ());
+      assertEquals (aExpected.getPrefix (), aActual.getPrefix ());
+      assertEquals (aExpected.getLocalName (), aActual.getLocalName ());
+      assertEquals (_getAttrs ((Element) aExpected), _getAttrs ((Element) aActual));
+    }
+    else
+      assertEquals (aExpected.getNodeValue (), aActual.getNodeValue ());
+
+    final ICommonsList <Node> aExpectedChildren = new CommonsArrayList <> ();
+    XMLHelper.iterateChildren (aExpected, aExpectedChildren::add);
+    final ICommonsList <Node> aActualChildren = new CommonsArrayList <> ();
+    XMLHelper.iterateChildren (aActual, aActualChildren::add);
+    assertEquals (aExpectedChildren.size (), aActualChildren.size ());
+    for (int i = 0; i < aExpectedChildren.size (); ++i)
+      _assertEquivalent (aExpectedChildren.get (i), aActualChildren.get (i));
+  }
+
+  private static void _assertPrefix (final Element aElement,
+                                    final String sNamespaceURI,
+                                    final String sPrefix,
+                                    final String sLocalName)
+  {
+    assertEquals (sNamespaceURI, aElement.getNamespaceURI ());
+    assertEquals (sPrefix, aElement.getPrefix ());
+    assertEquals (sLocalName, aElement.getLocalName ());
+    assertEquals (sNamespaceURI, aElement.getAttributeNS (XMLConstants.XMLNS_ATTRIBUTE_NS_URI, sPrefix));
+  }
+
+  private static void _test (final AbstractAS4Message <?> aMsg, final Node aSoapBodyPayload)
+  {
+    final Document aExpected = _getAsSoapDocumentJAXB (aMsg, aSoapBodyPayload);
+    assertNotNull (aExpected);
+    final Document aActual = aMsg.getAsSoapDocument (aSoapBodyPayload);
+    _assertEquivalent (aExpected.getDocumentElement (), aActual.getDocumentElement ());
+
+    // Receivers expect the SOAP prefix declared on the Envelope and the ebMS
+    // prefix declared on the Messaging element
+    final ESoapVersion eSoapVersion = aMsg.getSoapVersion ();
+    final Element eEnvelope = aActual.getDocumentElement ();
+    _assertPrefix (eEnvelope, eSoapVersion.getNamespaceURI (), eSoapVersion.getNamespacePrefix (), "Envelope");
+    final Element eHeader = XMLHelper.getFirstChildElement (eEnvelope);
+    assertEquals (eSoapVersion.getNamespacePrefix (), eHeader.getPrefix ());
+    assertEquals ("Header", eHeader.getLocalName ());
+    _assertPrefix (XMLHelper.getFirstChildElement (eHeader), CAS4.EBMS_NS, "eb", "Messaging");
+
+    // The serialized form, including all namespace declarations, must be
+    // identical as well
+    assertEquals (AS4XMLHelper.serializeXML (aExpected), AS4XMLHelper.serializeXML (aActual));
+  }
+
+  @Test
+  public void testAllMessageTypes ()
+  {
+    final Document aBodyPayload = XMLFactory.newDocument ();
+    aBodyPayload.appendChild (aBodyPayload.createElementNS ("urn:test", "Payload")).setTextContent ("content");
+    final OffsetDateTime aNow = OffsetDateTime.now ();
+
+    for (final ESoapVersion eSoapVersion : ESoapVersion.values ())
+    {
+      // User Message
+      final AS4UserMessage aUserMsg = AS4UserMessage.create (MessageHelperMethods.createEbms3MessageInfo ("msg-id",
+                                                                                                          "ref-id",
+                                                                                                          aNow),
+                                                             MessageHelperMethods.createEbms3PayloadInfo (true, null),
+                                                             MessageHelperMethods.createEbms3CollaborationInfo ("pmode",
+                                                                                                               "agreement",
+                                                                                                               null,
+                                                                                                               "service",
+                                                                                                               "action",
+                                                                                                               "conv"),
+                                                             MessageHelperMethods.createEbms3PartyInfo ("fromrole",
+                                                                                                       null,
+                                                                                                       "from",
+                                                                                                       "torole",
+                                                                                                       "type",
+                                                                                                       "to"),
+                                                             null,
+                                                             null,
+                                                             eSoapVersion)
+                                                     .setMustUnderstand (true);
+      _test (aUserMsg, null);
+      _test (aUserMsg, aBodyPayload);
+      _test (aUserMsg, aBodyPayload.getDocumentElement ());
+
+      // Receipt
+      final Ebms3SignalMessage aReceiptSignal = new Ebms3SignalMessage ();
+      aReceiptSignal.setMessageInfo (MessageHelperMethods.createEbms3MessageInfo ("receipt-id", "msg-id", aNow));
+      aReceiptSignal.setReceipt (new Ebms3Receipt ());
+      aReceiptSignal.getReceipt ().addAny (aBodyPayload.getDocumentElement ().cloneNode (true));
+      _test (new AS4ReceiptMessage (eSoapVersion, aReceiptSignal).setMustUnderstand (true), null);
+
+      // Error
+      final Ebms3Error aError = EEbmsError.EBMS_INVALID_HEADER.errorBuilder (null).refToMessageInError ("msg-id").build ();
+      _test (AS4ErrorMessage.create (eSoapVersion,
+                                     MessageHelperMethods.createEbms3MessageInfo ("error-id", "msg-id", aNow),
+                                     new CommonsArrayList <> (aError)).setMustUnderstand (false),
+             null);
+
+      // Pull Request
+      _test (AS4PullRequestMessage.create (eSoapVersion,
+                                           MessageHelperMethods.createEbms3MessageInfo ("pull-id", null, aNow),
+                                           "urn:mpc",
+                                           null),
+             null);
+    }
+  }
+}
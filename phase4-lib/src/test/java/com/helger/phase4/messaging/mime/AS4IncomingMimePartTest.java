@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.messaging.mime;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.phase4.attachment.IAS4IncomingAttachmentFactory;
+import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.spool.AS4SpoolOutputStream;
+import com.helger.phase4.spool.AS4SpoolStore;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * Test class for class {@link AS4IncomingMimePart}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4IncomingMimePartTest
+{
+  @Nonnull
+  private static byte [] _createPart (@Nonnull final String sHeaders, @Nonnull final byte [] aBody) throws Exception
+  {
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+    {
+      aBAOS.write (sHeaders.getBytes (StandardCharsets.ISO_8859_1));
+      aBAOS.write ("\r\n".getBytes (StandardCharsets.ISO_8859_1));
+      aBAOS.write (aBody);
+      return aBAOS.toByteArray ();
+    }
+  }
+
+  @Test
+  public void testHeadersAndDecodedBody () throws Exception
+  {
+    final byte [] aContent = "Hello AS4 world".getBytes (StandardCharsets.UTF_8);
+    final byte [] aPart = _createPart ("Content-Type: text/plain\r\n" +
+                                       "Content-ID: <abc@phase4>\r\n" +
+                                       "Content-Transfer-Encoding: base64\r\n",
+                                       Base64.getEncoder ().encode (aContent));
+    final AS4IncomingMimePart aMimePart = AS4IncomingMimePart.read (new NonBlockingByteArrayInputStream (aPart));
+    assertEquals ("text/plain", aMimePart.getContentType ());
+    assertEquals ("<abc@phase4>", aMimePart.getContentID ());
+    assertEquals ("base64", aMimePart.getContentTransferEncoding ());
+    assertArrayEquals (aContent, StreamHelper.getAllBytes (aMimePart.getDecodedBodyInputStream ()));
+  }
+
+  @Test
+  public void testDefaultContentType () throws Exception
+  {
+    final byte [] aPart = _createPart ("Content-ID: <x>\r\n", new byte [] { 1, 2, 3 });
+    final AS4IncomingMimePart aMimePart = AS4IncomingMimePart.read (new NonBlockingByteArrayInputStream (aPart));
+    assertEquals (AS4IncomingMimePart.DEFAULT_CONTENT_TYPE, aMimePart.getContentType ());
+    assertNull (aMimePart.getContentTransferEncoding ());
+    assertArrayEquals (new byte [] { 1, 2, 3 }, StreamHelper.getAllBytes (aMimePart.getRawBodyInputStream ()));
+  }
+
+  @Test (expected = IllegalStateException.class)
+  public void testBodyCanBeConsumedOnlyOnce () throws Exception
+  {
+    final byte [] aPart = _createPart ("Content-Type: text/plain\r\n", new byte [] { 1 });
+    final AS4IncomingMimePart aMimePart = AS4IncomingMimePart.read (new NonBlockingByteArrayInputStream (aPart));
+    aMimePart.getRawBodyInputStream ();
+    aMimePart.getDecodedBodyInputStream ();
+  }
+
+  @Test
+  public void testStreamedAttachment () throws Exception
+  {
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      // Small attachment stays in memory
+      final byte [] aSmall = "small".getBytes (StandardCharsets.UTF_8);
+      WSS4JAttachment aAttachment = IAS4IncomingAttachmentFactory.DEFAULT_INSTANCE.createAttachment (AS4IncomingMimePart.read (new NonBlockingByteArrayInputStream (_createPart ("Content-Type: text/plain\r\nContent-ID: <small>\r\n",
+                                                                                                                                                                              aSmall))),
+                                                                                                      aResHelper);
+      assertEquals ("small", aAttachment.getId ());
+      assertNull (aAttachment.getSourceFile ());
+      assertEquals (aSmall.length, aAttachment.getSourceLength ());
+      assertArrayEquals (aSmall, StreamHelper.getAllBytes (aAttachment.getSourceStream ()));
+
+      // Large attachment is streamed to a file
+      final byte [] aLarge = new byte [500_000];
+      for (int i = 0; i < aLarge.length; ++i)
+        aLarge[i] = (byte) (i * 31);
+      aAttachment = IAS4IncomingAttachmentFactory.DEFAULT_INSTANCE.createAttachment (AS4IncomingMimePart.read (new NonBlockingByteArrayInputStream (_createPart ("Content-Type: application/octet-stream\r\nContent-ID: <large>\r\n",
+                                                                                                                                                                  aLarge))),
+                                                                                          aResHelper);
+      assertEquals ("large", aAttachment.getId ());
+      assertNotNull (aAttachment.getSourceFile ());
+      assertEquals (aLarge.length, aAttachment.getSourceFile ().length ());
+      assertArrayEquals (aLarge, StreamHelper.getAllBytes (aAttachment.getSourceStream ()));
+
+      // Legacy factories still work
+      final IAS4IncomingAttachmentFactory aLegacy = WSS4JAttachment::createIncomingFileAttachment;
+      aAttachment = aLegacy.createAttachment (AS4IncomingMimePart.read (new NonBlockingByteArrayInputStream (_createPart ("Content-Type: text/plain\r\nContent-ID: <legacy>\r\n",
+                                                                                                                          aSmall))),
+                                              aResHelper);
+      assertEquals ("legacy", aAttachment.getId ());
+      assertArrayEquals (aSmall, StreamHelper.getAllBytes (aAttachment.getSourceStream ()));
+    }
+  }
+
+  @Test
+  public void testSmallAttachmentOutlivesResourceHelper () throws Exception
+  {
+    final AS4SpoolStore aStore = new AS4SpoolStore ();
+    final byte [] aSmall = "payload of the first message".getBytes (StandardCharsets.UTF_8);
+    final WSS4JAttachment aAttachment;
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper (aStore))
+    {
+      aAttachment = IAS4IncomingAttachmentFactory.DEFAULT_INSTANCE.createAttachment (AS4IncomingMimePart.read (new NonBlockingByteArrayInputStream (_createPart ("Content-Type: text/plain\r\nContent-ID: <small>\r\n",
+                                                                                                                                                                 aSmall))),
+                                                                                     aResHelper);
+    }
+    // Still counted against the budget, although the resource helper is closed
+    assertEquals (aSmall.length, aStore.getMemoryInUse ());
+
+    // Another message reuses the pooled memory
+    try (final AS4ResourceHelper aResHelper2 = new AS4ResourceHelper (aStore))
+    {
+      final byte [] aOther = new byte [aSmall.length];
+      try (final AS4SpoolOutputStream aSpoolOS = aResHelper2.createSpoolOutputStream ())
+      {
+        aSpoolOS.write (aOther);
+      }
+
+      // The attachment is still intact - the original resource helper is
+      // closed, so the stream is bound to the new one
+      assertEquals (aSmall.length, aAttachment.getSourceLength ());
+      assertArrayEquals (aSmall, StreamHelper.getAllBytes (aAttachment.getSourceStream (aResHelper2)));
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.messaging.mime;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.io.file.SimpleFileIO;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.mime.CMimeType;
+import com.helger.mail.cte.EContentTransferEncoding;
+import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.soap.ESoapVersion;
+import com.helger.phase4.util.AS4ResourceHelper;
+import com.helger.xml.XMLFactory;
+
+import jakarta.mail.BodyPart;
+import jakarta.mail.internet.MimeMultipart;
+import jakarta.mail.util.ByteArrayDataSource;
+
+/**
+ * Test class for class {@link AS4MultipartRelatedWriter}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4MultipartRelatedWriterTest
+{
+  @Test
+  public void testWriteAndParse () throws Exception
+  {
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final Document aDoc = XMLFactory.newDocument ();
+      aDoc.appendChild (aDoc.createElementNS (ESoapVersion.SOAP_12.getNamespaceURI (), "S12:Envelope"));
+
+      final File aFile = aResHelper.createTempFile ();
+      final byte [] aContent = new byte [100_000];
+      for (int i = 0; i < aContent.length; ++i)
+        aContent[i] = (byte) i;
+      SimpleFileIO.writeFile (aFile, aContent);
+
+      final WSS4JAttachment aFileAttachment = WSS4JAttachment.createOutgoingFileAttachment (aFile,
+                                                                                            null,
+                                                                                            "file.bin",
+                                                                                            CMimeType.APPLICATION_OCTET_STREAM,
+                                                                                            null,
+                                                                                            null,
+                                                                                            aResHelper);
+      assertTrue (aFileAttachment.hasSourceFile ());
+      final byte [] aText = "Hällo".getBytes (StandardCharsets.UTF_8);
+      final WSS4JAttachment aMemAttachment = WSS4JAttachment.createOutgoingFileAttachment (aText,
+                                                                                           null,
+                                                                                           null,
+                                                                                           CMimeType.TEXT_PLAIN,
+                                                                                           null,
+                                                                                           StandardCharsets.UTF_8,
+                                                                                           aResHelper);
+      aMemAttachment.setContentTransferEncoding (EContentTransferEncoding.BASE64);
+
+      final AS4MultipartRelatedWriter aWriter = new AS4MultipartRelatedWriter (ESoapVersion.SOAP_12,
+                                                                               aDoc,
+                                                                               new CommonsArrayList <> (aFileAttachment,
+                                                                                                        aMemAttachment));
+      assertTrue (aWriter.isRepeatable ());
+      // Base64 has no known length
+      assertEquals (-1, aWriter.getContentLength ());
+
+      final byte [] aBytes;
+      try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+      {
+        aWriter.writeTo (aBAOS);
+        aBytes = aBAOS.toByteArray ();
+      }
+
+      // Parse it again with JavaMail
+      final MimeMultipart aMultipart = new MimeMultipart (new ByteArrayDataSource (aBytes, aWriter.getContentType ()));
+      assertEquals (3, aMultipart.getCount ());
+      assertTrue (aMultipart.getBodyPart (0).isMimeType (ESoapVersion.SOAP_12.getMimeType ().getAsStringWithoutParameters ()));
+
+      final BodyPart aFilePart = aMultipart.getBodyPart (1);
+      assertEquals ("<" + aFileAttachment.getId () + ">", aFilePart.getHeader ("Content-ID")[0]);
+      try (final InputStream aIS = aFilePart.getInputStream ())
+      {
+        assertArrayEquals (aContent, StreamHelper.getAllBytes (aIS));
+      }
+      try (final InputStream aIS = aMultipart.getBodyPart (2).getInputStream ())
+      {
+        assertArrayEquals (aText, StreamHelper.getAllBytes (aIS));
+      }
+
+      // Without encoding, the length is known
+      final AS4MultipartRelatedWriter aWriter2 = new AS4MultipartRelatedWriter (ESoapVersion.SOAP_12,
+                                                                                aDoc,
+                                                                                new CommonsArrayList <> (aFileAttachment));
+      try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+      {
+        aWriter2.writeTo (aBAOS);
+        assertEquals (aBAOS.size (), aWriter2.getContentLength ());
+      }
+    }
+  }
+}
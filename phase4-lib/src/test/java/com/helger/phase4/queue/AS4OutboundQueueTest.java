@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.queue;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.helger.commons.collection.impl.CommonsCopyOnWriteArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.http.HttpHeaderMap;
+import com.helger.phase4.http.BasicHttpPoster;
+
+/**
+ * Test class for class {@link AS4OutboundQueue}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4OutboundQueueTest
+{
+  @Rule
+  public final TemporaryFolder m_aTempFolder = new TemporaryFolder ();
+
+  /**
+   * HTTP poster that records the sent bodies and fails a configurable number
+   * of times first.
+   */
+  private static final class MockHttpPoster extends BasicHttpPoster
+  {
+    private final AtomicInteger m_aFailuresLeft;
+    private final ICommonsList <String> m_aBodies = new CommonsCopyOnWriteArrayList <> ();
+
+    MockHttpPoster (final int nFailures)
+    {
+      m_aFailuresLeft = new AtomicInteger (nFailures);
+    }
+
+    @Override
+    @SuppressWarnings ("unchecked")
+    public <T> T sendGenericMessage (final String sURL,
+                                     final HttpHeaderMap aCustomHttpHeaders,
+                                     final HttpEntity aHttpEntity,
+                                     final HttpClientResponseHandler <? extends T> aResponseHandler) throws IOException
+    {
+      final String sBody = new String (EntityUtils.toByteArray (aHttpEntity), StandardCharsets.UTF_8);
+      if (m_aFailuresLeft.getAndDecrement () > 0)
+        throw new IOException ("Simulated failure");
+      m_aBodies.add (sBody + "|" + aCustomHttpHeaders.getFirstHeaderValue ("X-Test"));
+      return (T) ("ok-" + sBody).getBytes (StandardCharsets.UTF_8);
+    }
+  }
+
+  @Nonnull
+  private static HttpEntity _entity (final String s)
+  {
+    return new ByteArrayEntity (s.getBytes (StandardCharsets.UTF_8), ContentType.TEXT_XML.withCharset (StandardCharsets.UTF_8));
+  }
+
+  @Nonnull
+  private static HttpHeaderMap _headers (final String s)
+  {
+    final HttpHeaderMap ret = new HttpHeaderMap ();
+    ret.addHeader ("X-Test", s);
+    return ret;
+  }
+
+  @Test
+  public void testRecoveryAfterRestart () throws Exception
+  {
+    final File aDir = m_aTempFolder.newFolder ();
+    try (final AS4OutboundQueue aQueue = new AS4OutboundQueue (aDir))
+    {
+      for (int i = 0; i < 3; ++i)
+        aQueue.enqueue ("http://localhost/as4", "msg" + i, _headers ("h" + i), _entity ("body" + i));
+      assertEquals (3, aQueue.getPendingCount ());
+    }
+
+    // Simulate a torn write at the end of the last segment
+    final File [] aSegments = aDir.listFiles ();
+    assertEquals (1, aSegments.length);
+    try (final RandomAccessFile aRAF = new RandomAccessFile (aSegments[0], "rw"))
+    {
+      aRAF.seek (aRAF.length ());
+      aRAF.write (new byte [] { 0x50, 0x34, 0x4a });
+    }
+
+    // Not started - nothing is sent
+    final MockHttpPoster aPoster = new MockHttpPoster (0);
+    final CountDownLatch aLatch = new CountDownLatch (3);
+    final ICommonsList <String> aResponses = new CommonsCopyOnWriteArrayList <> ();
+    try (final AS4OutboundQueue aQueue = new AS4OutboundQueue (aDir))
+    {
+      assertEquals (3, aQueue.getPendingCount ());
+      assertEquals ("msg0", aQueue.getAllPendingEntries ().getFirstOrNull ().getMessageID ());
+      assertEquals ("text/xml; charset=UTF-8", aQueue.getAllPendingEntries ().getFirstOrNull ().getContentType ());
+
+      aQueue.setHttpPoster (aPoster).setWorkerCount (1).setCallback ( (aEntry, eStatus, aResponse, aEx) -> {
+        if (eStatus == EAS4OutboundQueueStatus.DELIVERED)
+        {
+          aResponses.add (new String (aResponse, StandardCharsets.UTF_8));
+          aLatch.countDown ();
+        }
+      }).start ();
+      assertTrue (aLatch.await (10, TimeUnit.SECONDS));
+      assertEquals (0, aQueue.getPendingCount ());
+    }
+    assertEquals (3, aPoster.m_aBodies.size ());
+    assertTrue (aPoster.m_aBodies.containsAll (new CommonsCopyOnWriteArrayList <> ("body0|h0", "body1|h1", "body2|h2")));
+    assertTrue (aResponses.contains ("ok-body1"));
+
+    // All done - nothing left after another restart
+    try (final AS4OutboundQueue aQueue = new AS4OutboundQueue (aDir))
+    {
+      assertEquals (0, aQueue.getPendingCount ());
+    }
+    // Only the empty active segment is left
+    assertEquals (1, aDir.listFiles ().length);
+  }
+
+  @Test
+  public void testRetries () throws Exception
+  {
+    final File aDir = m_aTempFolder.newFolder ();
+    final MockHttpPoster aPoster = new MockHttpPoster (2);
+    final CountDownLatch aLatch = new CountDownLatch (1);
+    final ICommonsList <EAS4OutboundQueueStatus> aStates = new CommonsCopyOnWriteArrayList <> ();
+    try (final AS4OutboundQueue aQueue = new AS4OutboundQueue (aDir))
+    {
+      aQueue.retrySettings ().setMaxRetries (2).setDurationBeforeRetry (Duration.ofMillis (10));
+      aQueue.setHttpPoster (aPoster).setCallback ( (aEntry, eStatus, aResponse, aEx) -> {
+        aStates.add (eStatus);
+        if (eStatus.isFinal ())
+          aLatch.countDown ();
+      }).start ();
+
+      final AS4OutboundQueueEntry aEntry = aQueue.enqueue ("http://localhost/as4",
+                                                           "msg",
+                                                           null,
+                                                           _entity ("retried"));
+      assertTrue (aLatch.await (10, TimeUnit.SECONDS));
+      assertEquals (3, aEntry.getAttemptCount ());
+    }
+    assertArrayEquals (new EAS4OutboundQueueStatus [] { EAS4OutboundQueueStatus.ENQUEUED,
+                                                        EAS4OutboundQueueStatus.RETRY_SCHEDULED,
+                                                        EAS4OutboundQueueStatus.RETRY_SCHEDULED,
+                                                        EAS4OutboundQueueStatus.DELIVERED },
+                       aStates.toArray (new EAS4OutboundQueueStatus [0]));
+    assertEquals ("retried|null", aPoster.m_aBodies.getFirstOrNull ());
+  }
+
+  @Test
+  public void testFinalFailure () throws Exception
+  {
+    final File aDir = m_aTempFolder.newFolder ();
+    final CountDownLatch aLatch = new CountDownLatch (1);
+    final AtomicInteger aFailed = new AtomicInteger (0);
+    try (final AS4OutboundQueue aQueue = new AS4OutboundQueue (aDir))
+    {
+      // No retries
+      aQueue.setHttpPoster (new MockHttpPoster (5)).setCallback ( (aEntry, eStatus, aResponse, aEx) -> {
+        if (eStatus == EAS4OutboundQueueStatus.FAILED)
+        {
+          aFailed.incrementAndGet ();
+          aLatch.countDown ();
+        }
+      }).start ();
+      aQueue.enqueue ("http://localhost/as4", "msg", null, _entity ("x"));
+      assertTrue (aLatch.await (10, TimeUnit.SECONDS));
+      assertEquals (0, aQueue.getPendingCount ());
+    }
+    assertEquals (1, aFailed.get ());
+  }
+
+  @Test
+  public void testRuntimeExceptionIsRetried () throws Exception
+  {
+    final File aDir = m_aTempFolder.newFolder ();
+    final AtomicInteger aCalls = new AtomicInteger (0);
+    final BasicHttpPoster aPoster = new BasicHttpPoster ()
+    {
+      @Override
+      @SuppressWarnings ("unchecked")
+      public <T> T sendGenericMessage (final String sURL,
+                                       final HttpHeaderMap aCustomHttpHeaders,
+                                       final HttpEntity aHttpEntity,
+                                       final HttpClientResponseHandler <? extends T> aResponseHandler) throws IOException
+      {
+        if (aCalls.incrementAndGet () == 1)
+          throw new IllegalStateException ("Simulated runtime failure");
+        return (T) new byte [0];
+      }
+    };
+    final CountDownLatch aLatch = new CountDownLatch (1);
+    final ICommonsList <EAS4OutboundQueueStatus> aStates = new CommonsCopyOnWriteArrayList <> ();
+    final ICommonsList <Exception> aExceptions = new CommonsCopyOnWriteArrayList <> ();
+    try (final AS4OutboundQueue aQueue = new AS4OutboundQueue (aDir))
+    {
+      aQueue.retrySettings ().setMaxRetries (1).setDurationBeforeRetry (Duration.ofMillis (10));
+      aQueue.setHttpPoster (aPoster).setCallback ( (aEntry, eStatus, aResponse, aEx) -> {
+        aStates.add (eStatus);
+        if (aEx != null)
+          aExceptions.add (aEx);
+        if (eStatus.isFinal ())
+          aLatch.countDown ();
+      }).start ();
+      aQueue.enqueue ("http://localhost/as4", "msg", null, _entity ("x"));
+      assertTrue (aLatch.await (10, TimeUnit.SECONDS));
+      assertEquals (0, aQueue.getPendingCount ());
+    }
+    assertArrayEquals (new EAS4OutboundQueueStatus [] { EAS4OutboundQueueStatus.ENQUEUED,
+                                                        EAS4OutboundQueueStatus.RETRY_SCHEDULED,
+                                                        EAS4OutboundQueueStatus.DELIVERED },
+                       aStates.toArray (new EAS4OutboundQueueStatus [0]));
+    assertEquals (1, aExceptions.size ());
+    assertTrue (aExceptions.getFirstOrNull () instanceof IllegalStateException);
+  }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.sender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.concurrent.ThreadHelper;
+import com.helger.commons.mime.CMimeType;
+import com.helger.phase4.AS4TestRule;
+import com.helger.phase4.CAS4;
+import com.helger.phase4.attachment.AS4OutgoingAttachment;
+import com.helger.phase4.model.pmode.DefaultPMode;
+import com.helger.phase4.sender.AbstractAS4UserMessageBuilder.ESimpleUserMessageSendResult;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test class for class {@link AS4BatchSender}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4BatchSenderTest
+{
+  @Rule
+  public final TestRule m_aTestRule = new AS4TestRule ();
+
+  @Test
+  public void testInvalidParameters () throws Exception
+  {
+    final AtomicInteger aCount = new AtomicInteger (0);
+    try (final AS4BatchSender aSender = AS4Sender.batch ()
+                                                 .maxPending (2)
+                                                 .maxInFlightPerDestination (1)
+                                                 .resultConsumer ( (aBuilder, eResult, aEx) -> {
+                                                   assertSame (ESimpleUserMessageSendResult.INVALID_PARAMETERS,
+                                                               eResult);
+                                                   assertNull (aEx);
+                                                   aCount.incrementAndGet ();
+                                                 }))
+    {
+      // No fields are set - so nothing is sent. More messages than the
+      // pending limit must not block forever
+      aSender.sendAll (IntStream.range (0, 20).mapToObj (i -> AS4Sender.builderUserMessage ())).get ();
+      assertEquals (20, aCount.get ());
+
+      assertSame (ESimpleUserMessageSendResult.INVALID_PARAMETERS,
+                  aSender.submit (AS4Sender.builderUserMessage ()).get ());
+      assertEquals (21, aCount.get ());
+    }
+  }
+
+  /**
+   * A local HTTP endpoint that answers every POST with an empty response and
+   * remembers the concurrency per path.
+   */
+  private static final class LocalEndpoint implements AutoCloseable
+  {
+    private final ExecutorService m_aExecutor = Executors.newCachedThreadPool ();
+    private final HttpServer m_aServer;
+    private final AtomicInteger m_aReceived = new AtomicInteger (0);
+    private final Map <String, AtomicInteger> m_aCurrent = new ConcurrentHashMap <> ();
+    private final Map <String, AtomicInteger> m_aMax = new ConcurrentHashMap <> ();
+    private final CountDownLatch m_aRelease;
+
+    LocalEndpoint (@Nonnull final CountDownLatch aRelease) throws IOException
+    {
+      m_aRelease = aRelease;
+      m_aServer = HttpServer.create (new InetSocketAddress (InetAddress.getLoopbackAddress (), 0), 0);
+      m_aServer.createContext ("/", this::_handle);
+      m_aServer.setExecutor (m_aExecutor);
+      m_aServer.start ();
+    }
+
+    private void _handle (@Nonnull final HttpExchange aExchange) throws IOException
+    {
+      final String sPath = aExchange.getRequestURI ().getPath ();
+      final AtomicInteger aCurrent = m_aCurrent.computeIfAbsent (sPath, k -> new AtomicInteger (0));
+      final int nCurrent = aCurrent.incrementAndGet ();
+      m_aMax.computeIfAbsent (sPath, k -> new AtomicInteger (0)).accumulateAndGet (nCurrent, Math::max);
+      try (final InputStream aIS = aExchange.getRequestBody ())
+      {
+        aIS.readAllBytes ();
+      }
+      m_aReceived.incrementAndGet ();
+      try
+      {
+        // Keep the transmission open for a while
+        if (!m_aRelease.await (10, TimeUnit.SECONDS))
+          throw new IllegalStateException ("Endpoint was not released");
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+      }
+      finally
+      {
+        aCurrent.decrementAndGet ();
+      }
+      // No content - so no signal message
+      aExchange.sendResponseHeaders (200, -1);
+      aExchange.close ();
+    }
+
+    @Nonnull
+    String getURL (@Nonnull final String sPath)
+    {
+      return "http://localhost:" + m_aServer.getAddress ().getPort () + sPath;
+    }
+
+    int getReceived ()
+    {
+      return m_aReceived.get ();
+    }
+
+    int getMaxConcurrent (@Nonnull final String sPath)
+    {
+      final AtomicInteger ret = m_aMax.get (sPath);
+      return ret == null ? 0 : ret.get ();
+    }
+
+    public void close ()
+    {
+      m_aServer.stop (0);
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (m_aExecutor);
+    }
+  }
+
+  @Nonnull
+  private static AS4Sender.BuilderUserMessage _createBuilder (@Nonnull final String sURL)
+  {
+    return AS4Sender.builderUserMessage ()
+                    .pmode (DefaultPMode.getOrCreateDefaultPMode ("initiator", "responder", sURL, false))
+                    .fromPartyID ("initiator")
+                    .fromRole (CAS4.DEFAULT_INITIATOR_URL)
+                    .toPartyID ("responder")
+                    .toRole (CAS4.DEFAULT_RESPONDER_URL)
+                    .service ("urn:test:service")
+                    .action ("urn:test:action")
+                    .conversationID ("conv")
+                    .endpointURL (sURL)
+                    .payload (AS4OutgoingAttachment.builder ()
+                                                   .data ("Hello batch".getBytes (StandardCharsets.UTF_8))
+                                                   .mimeType (CMimeType.TEXT_PLAIN));
+  }
+
+  private static void _waitUntil (@Nonnull final BooleanSupplier aCondition)
+  {
+    final long nEnd = System.currentTimeMillis () + 10_000;
+    while (!aCondition.getAsBoolean () && System.currentTimeMillis () < nEnd)
+      ThreadHelper.sleep (10);
+    assertTrue (aCondition.getAsBoolean ());
+  }
+
+  @Test
+  public void testInFlightLimitAndResultDelivery () throws Exception
+  {
+    final CountDownLatch aRelease = new CountDownLatch (1);
+    try (final LocalEndpoint aEndpoint = new LocalEndpoint (aRelease))
+    {
+      final ICommonsList <ESimpleUserMessageSendResult> aResults = new CommonsArrayList <> ();
+      try (final AS4BatchSender aSender = AS4Sender.batch ()
+                                                   .maxPending (20)
+                                                   .maxInFlightPerDestination (2)
+                                                   .resultConsumer ( (aBuilder, eResult, aEx) -> {
+                                                     synchronized (aResults)
+                                                     {
+                                                       aResults.add (eResult);
+                                                     }
+                                                   }))
+      {
+        final CompletableFuture <Void> aAll = aSender.sendAll (Stream.concat (IntStream.range (0, 5)
+                                                                                      .mapToObj (i -> _createBuilder (aEndpoint.getURL ("/a"))),
+                                                                             IntStream.range (0, 5)
+                                                                                      .mapToObj (i -> _createBuilder (aEndpoint.getURL ("/b")))));
+
+        // Both destinations are saturated, but not more
+        _waitUntil ( () -> aEndpoint.getReceived () == 4);
+        ThreadHelper.sleep (200);
+        assertEquals (4, aEndpoint.getReceived ());
+
+        aRelease.countDown ();
+        aAll.get (30, TimeUnit.SECONDS);
+      }
+
+      assertEquals (10, aEndpoint.getReceived ());
+      assertEquals (2, aEndpoint.getMaxConcurrent ("/a"));
+      assertEquals (2, aEndpoint.getMaxConcurrent ("/b"));
+
+      // Every message is delivered to the result consumer - the endpoint does
+      // not answer with an AS4 message
+      assertEquals (10, aResults.size ());
+      for (final ESimpleUserMessageSendResult eResult : aResults)
+        assertSame (ESimpleUserMessageSendResult.NO_SIGNAL_MESSAGE_RECEIVED, eResult);
+    }
+  }
+
+  @Test
+  public void testMaxPendingBackPressure () throws Exception
+  {
+    final CountDownLatch aRelease = new CountDownLatch (1);
+    try (final LocalEndpoint aEndpoint = new LocalEndpoint (aRelease))
+    {
+      final AtomicInteger aResultCount = new AtomicInteger (0);
+      try (final AS4BatchSender aSender = AS4Sender.batch ()
+                                                   .maxPending (2)
+                                                   .maxInFlightPerDestination (4)
+                                                   .resultConsumer ( (aBuilder, eResult, aEx) -> aResultCount.incrementAndGet ()))
+      {
+        final AtomicInteger aSubmitted = new AtomicInteger (0);
+        final ICommonsList <CompletableFuture <ESimpleUserMessageSendResult>> aFutures = new CommonsArrayList <> ();
+        final Thread aSubmitter = new Thread ( () -> {
+          for (int i = 0; i < 5; ++i)
+          {
+            final CompletableFuture <ESimpleUserMessageSendResult> aFuture = aSender.submit (_createBuilder (aEndpoint.getURL ("/as4")));
+            synchronized (aFutures)
+            {
+              aFutures.add (aFuture);
+            }
+            aSubmitted.incrementAndGet ();
+          }
+        }, "batch-submitter");
+        aSubmitter.start ();
+
+        // Only the pending messages are transmitted, further submits block
+        _waitUntil ( () -> aEndpoint.getReceived () == 2);
+        ThreadHelper.sleep (200);
+        assertEquals (2, aSubmitted.get ());
+        assertEquals (2, aEndpoint.getReceived ());
+        assertTrue (aSubmitter.isAlive ());
+
+        aRelease.countDown ();
+        aSubmitter.join (30_000);
+        assertEquals (5, aSubmitted.get ());
+        for (final CompletableFuture <ESimpleUserMessageSendResult> aFuture : aFutures)
+          assertNotSame (ESimpleUserMessageSendResult.INVALID_PARAMETERS, aFuture.get (30, TimeUnit.SECONDS));
+      }
+      assertEquals (5, aEndpoint.getReceived ());
+      assertEquals (5, aResultCount.get ());
+      assertTrue (aEndpoint.getMaxConcurrent ("/as4") <= 2);
+    }
+  }
+
+  @Test
+  public void testRejectingSendExecutor () throws Exception
+  {
+    // Nothing is transmitted, but every message must finish and release its
+    // pending slot
+    final Executor aRejectAll = x -> {
+      throw new RejectedExecutionException ("Rejected for testing");
+    };
+    try (final AS4BatchSender aSender = AS4Sender.batch ()
+                                                 .sendExecutor (aRejectAll)
+                                                 .maxPending (2)
+                                                 .maxInFlightPerDestination (1))
+    {
+      final ICommonsList <CompletableFuture <ESimpleUserMessageSendResult>> aFutures = new CommonsArrayList <> ();
+      for (int i = 0; i < 5; ++i)
+        aFutures.add (aSender.submit (_createBuilder ("http://localhost:1/as4")));
+      for (final CompletableFuture <ESimpleUserMessageSendResult> aFuture : aFutures)
+        assertSame (ESimpleUserMessageSendResult.TRANSPORT_ERROR, aFuture.get (30, TimeUnit.SECONDS));
+    }
+
+    // Only the first transmission is accepted, the waiting ones are rejected
+    // when they take over the slot
+    final CountDownLatch aRelease = new CountDownLatch (1);
+    final ExecutorService aFirstOnly = Executors.newSingleThreadExecutor ();
+    final AtomicInteger aExecuteCount = new AtomicInteger (0);
+    try (final LocalEndpoint aEndpoint = new LocalEndpoint (aRelease);
+         final AS4BatchSender aSender = AS4Sender.batch ().sendExecutor (x -> {
+           if (aExecuteCount.incrementAndGet () > 1)
+             throw new RejectedExecutionException ("Rejected for testing");
+           aFirstOnly.execute (x);
+         }).maxInFlightPerDestination (1))
+    {
+      final ICommonsList <CompletableFuture <ESimpleUserMessageSendResult>> aFutures = new CommonsArrayList <> ();
+      for (int i = 0; i < 3; ++i)
+        aFutures.add (aSender.submit (_createBuilder (aEndpoint.getURL ("/as4"))));
+      _waitUntil ( () -> aEndpoint.getReceived () == 1);
+      aRelease.countDown ();
+
+      int nTransportErrors = 0;
+      for (final CompletableFuture <ESimpleUserMessageSendResult> aFuture : aFutures)
+        if (aFuture.get (30, TimeUnit.SECONDS) == ESimpleUserMessageSendResult.TRANSPORT_ERROR)
+          nTransportErrors++;
+      assertEquals (2, nTransportErrors);
+      assertEquals (1, aEndpoint.getReceived ());
+    }
+    finally
+    {
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aFirstOnly);
+    }
+  }
+}
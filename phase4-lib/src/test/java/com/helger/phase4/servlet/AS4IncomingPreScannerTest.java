@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.phase4.soap.ESoapVersion;
+
+/**
+ * Test class for class {@link AS4IncomingPreScanner}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4IncomingPreScannerTest
+{
+  @Test
+  public void testUserMessage () throws Exception
+  {
+    try (final InputStream aIS = ClassPathResource.getInputStream ("external/soap12test/UserMessage12.xml"))
+    {
+      final AS4IncomingPreScanResult aResult = AS4IncomingPreScanner.scan (aIS);
+      assertNotNull (aResult);
+      assertEquals (ESoapVersion.SOAP_12, aResult.getSoapVersion ());
+      assertTrue (aResult.isUserMessage ());
+      assertFalse (aResult.isSignalMessage ());
+      assertEquals ("2011-921@5209999001264.example.com", aResult.getMessageID ());
+      assertNull (aResult.getRefToMessageID ());
+      assertEquals (1, aResult.fromPartyIDs ().size ());
+      assertEquals ("5209999001264", aResult.fromPartyIDs ().getFirstOrNull ().trim ());
+      assertEquals (1, aResult.toPartyIDs ().size ());
+      assertEquals ("5209999001295", aResult.toPartyIDs ().getFirstOrNull ().trim ());
+      assertEquals ("http://docs.oasis-open.org/ebxml-msg/as4/200902/service", aResult.getService ().trim ());
+      assertEquals ("http://docs.oasis-open.org/ebxml-msg/as4/200902/action", aResult.getAction ().trim ());
+      assertTrue (aResult.hasPModeResolutionData ());
+    }
+  }
+
+  @Test
+  public void testReceipt () throws Exception
+  {
+    try (final InputStream aIS = ClassPathResource.getInputStream ("external/soap11test/ReceiptMessage.xml"))
+    {
+      final AS4IncomingPreScanResult aResult = AS4IncomingPreScanner.scan (aIS);
+      assertNotNull (aResult);
+      assertEquals (ESoapVersion.SOAP_11, aResult.getSoapVersion ());
+      assertFalse (aResult.isUserMessage ());
+      assertTrue (aResult.isSignalMessage ());
+      assertEquals ("uiwtoruiopwr2543890@b.example.com", aResult.getMessageID ());
+      assertEquals ("uiopfdsmnf4898965563434@a.example.com", aResult.getRefToMessageID ());
+      assertFalse (aResult.hasPModeResolutionData ());
+    }
+  }
+
+  @Test
+  public void testStopsBeforeBody () throws Exception
+  {
+    // The body is not well-formed, but is never reached
+    final String sXML = "<S12:Envelope xmlns:S12='http://www.w3.org/2003/05/soap-envelope'" +
+                        " xmlns:eb='http://docs.oasis-open.org/ebxml-msg/ebms/v3.0/ns/core/200704/'>" +
+                        "<S12:Header><eb:Messaging><eb:UserMessage><eb:MessageInfo>" +
+                        "<eb:MessageId>abc</eb:MessageId></eb:MessageInfo>" +
+                        "<eb:CollaborationInfo><eb:AgreementRef pmode='pm1'>ref</eb:AgreementRef>" +
+                        "</eb:CollaborationInfo></eb:UserMessage></eb:Messaging></S12:Header>" +
+                        "<S12:Body><unclosed>";
+    final byte [] aBytes = sXML.getBytes (StandardCharsets.UTF_8);
+    final AS4IncomingPreScanResult aResult = AS4IncomingPreScanner.scan (new NonBlockingByteArrayInputStream (aBytes));
+    assertNotNull (aResult);
+    assertEquals ("abc", aResult.getMessageID ());
+    assertEquals ("pm1", aResult.getPModeID ());
+    assertEquals ("ref", aResult.getAgreementRef ());
+    // No parties, service and action
+    assertFalse (aResult.hasPModeResolutionData ());
+  }
+
+  @Test
+  public void testNoMessaging () throws Exception
+  {
+    assertNull (AS4IncomingPreScanner.scan (new NonBlockingByteArrayInputStream ("<a/>".getBytes (StandardCharsets.UTF_8))));
+    assertNull (AS4IncomingPreScanner.scan (new NonBlockingByteArrayInputStream ("no xml".getBytes (StandardCharsets.UTF_8))));
+    try (final InputStream aIS = ClassPathResource.getInputStream ("external/soap11test/NoMessaging.xml"))
+    {
+      assertNull (AS4IncomingPreScanner.scan (aIS));
+    }
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.spool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * Test class for class {@link AS4SpoolStore}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4SpoolStoreTest
+{
+  @Nonnull
+  private static byte [] _createContent (final int nLength)
+  {
+    final byte [] ret = new byte [nLength];
+    for (int i = 0; i < nLength; ++i)
+      ret[i] = (byte) (i * 13);
+    return ret;
+  }
+
+  @Nonnull
+  private static AS4SpoolEntry _spool (@Nonnull final AS4ResourceHelper aResHelper,
+                                       @Nonnull final byte [] aContent) throws Exception
+  {
+    return _spool (aResHelper, aContent, true);
+  }
+
+  @Nonnull
+  private static AS4SpoolEntry _spool (@Nonnull final AS4ResourceHelper aResHelper,
+                                       @Nonnull final byte [] aContent,
+                                       final boolean bPooledMemory) throws Exception
+  {
+    final AS4SpoolOutputStream aSpoolOS = aResHelper.createSpoolOutputStream (bPooledMemory);
+    try
+    {
+      // Write in odd pieces to cover chunk boundaries
+      int nOfs = 0;
+      while (nOfs < aContent.length)
+      {
+        final int nLen = Math.min (1000, aContent.length - nOfs);
+        aSpoolOS.write (aContent, nOfs, nLen);
+        nOfs += nLen;
+      }
+    }
+    finally
+    {
+      aSpoolOS.close ();
+    }
+    final AS4SpoolEntry ret = aSpoolOS.getSpoolEntry ();
+    assertEquals (aContent.length, ret.getLength ());
+    // Read twice
+    assertArrayEquals (aContent, StreamHelper.getAllBytes (ret.getInputStream ()));
+    assertArrayEquals (aContent, StreamHelper.getAllBytes (ret.getInputStream ()));
+    return ret;
+  }
+
+  @Test
+  public void testMemoryAndFileTier () throws Exception
+  {
+    final AS4SpoolStore aStore = new AS4SpoolStore ().setMemoryThreshold (50_000);
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper (aStore))
+    {
+      AS4SpoolEntry aEntry = _spool (aResHelper, _createContent (40_000));
+      assertEquals (EAS4SpoolTier.MEMORY, aEntry.getTier ());
+      assertNull (aEntry.getFile ());
+      assertTrue (aStore.getMemoryInUse () > 0);
+
+      aEntry = _spool (aResHelper, _createContent (60_000));
+      assertEquals (EAS4SpoolTier.FILE, aEntry.getTier ());
+      assertTrue (aEntry.getFile ().isFile ());
+
+      assertEquals (1, aStore.getSpooledCount (EAS4SpoolTier.MEMORY));
+      assertEquals (40_000, aStore.getSpooledBytes (EAS4SpoolTier.MEMORY));
+      assertEquals (1, aStore.getSpooledCount (EAS4SpoolTier.FILE));
+      assertEquals (60_000, aStore.getSpooledBytes (EAS4SpoolTier.FILE));
+    }
+    // All chunks are back in the pool
+    assertEquals (0, aStore.getMemoryInUse ());
+    assertTrue (aStore.getMemoryAllocated () > 0);
+  }
+
+  @Test
+  public void testMemoryBudget () throws Exception
+  {
+    // Budget for 2 chunks only
+    final AS4SpoolStore aStore = new AS4SpoolStore ().setMemoryBudget (2L * AS4SpoolStore.CHUNK_SIZE);
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper (aStore))
+    {
+      final AS4SpoolEntry aEntry1 = _spool (aResHelper, _createContent (AS4SpoolStore.CHUNK_SIZE + 1));
+      assertEquals (EAS4SpoolTier.MEMORY, aEntry1.getTier ());
+
+      // Budget exhausted in between
+      final AS4SpoolEntry aEntry2 = _spool (aResHelper, _createContent (AS4SpoolStore.CHUNK_SIZE + 1));
+      assertEquals (EAS4SpoolTier.FILE, aEntry2.getTier ());
+      assertEquals (2L * AS4SpoolStore.CHUNK_SIZE, aStore.getMemoryInUse ());
+    }
+    assertEquals (0, aStore.getMemoryInUse ());
+    assertEquals (2L * AS4SpoolStore.CHUNK_SIZE, aStore.getMemoryAllocated ());
+  }
+
+  @Test
+  public void testFastFileTier () throws Exception
+  {
+    final File aFastDir = Files.createTempDirectory ("phase4-fast").toFile ();
+    try
+    {
+      final AS4SpoolStore aStore = new AS4SpoolStore ().setDirectMemory (true)
+                                                        .setFastFileDirectory (aFastDir)
+                                                        .setFastFileThreshold (200_000);
+      try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper (aStore))
+      {
+        assertEquals (EAS4SpoolTier.MEMORY, _spool (aResHelper, _createContent (1000)).getTier ());
+
+        final AS4SpoolEntry aFast = _spool (aResHelper, _createContent (100_000));
+        assertEquals (EAS4SpoolTier.FAST_FILE, aFast.getTier ());
+        assertEquals (aFastDir, aFast.getFile ().getParentFile ());
+
+        // Starts in the fast tier and is moved
+        final AS4SpoolEntry aLarge = _spool (aResHelper, _createContent (300_000));
+        assertEquals (EAS4SpoolTier.FILE, aLarge.getTier ());
+        assertFalse (aFastDir.equals (aLarge.getFile ().getParentFile ()));
+        assertEquals (1, aFastDir.list ().length);
+      }
+      assertEquals (0, aFastDir.list ().length);
+    }
+    finally
+    {
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aFastDir);
+    }
+  }
+
+  @Test
+  public void testHeapMemory () throws Exception
+  {
+    // Budget for 2 chunks only
+    final AS4SpoolStore aStore = new AS4SpoolStore ().setMemoryBudget (2L * AS4SpoolStore.CHUNK_SIZE);
+    final byte [] aContent = _createContent (AS4SpoolStore.CHUNK_SIZE + 1);
+    final AS4SpoolEntry aEntry;
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper (aStore))
+    {
+      aEntry = _spool (aResHelper, aContent, false);
+      assertEquals (EAS4SpoolTier.MEMORY, aEntry.getTier ());
+      assertNotNull (aEntry.getHeapBytes ());
+      // Exactly the content size is counted
+      assertEquals (aContent.length, aEntry.getHeapBytes ().length);
+      assertEquals (aContent.length, aStore.getMemoryInUse ());
+
+      // Budget exhausted while growing
+      final AS4SpoolEntry aEntry2 = _spool (aResHelper, aContent, false);
+      assertEquals (EAS4SpoolTier.FILE, aEntry2.getTier ());
+      assertNull (aEntry2.getHeapBytes ());
+      assertEquals (aContent.length, aStore.getMemoryInUse ());
+    }
+    // Still valid and counted, as long as the byte array is reachable
+    assertArrayEquals (aContent, aEntry.getHeapBytes ());
+    assertArrayEquals (aContent, aEntry.getAllBytes ());
+    assertEquals (aContent.length, aStore.getMemoryInUse ());
+    assertEquals (aContent.length, aStore.getMemoryAllocated ());
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.helger.phase4.AS4TestRule;
+import com.helger.phase4.config.AS4Configuration;
+import com.helger.phase4.config.EAS4ExecutionMode;
+
+/**
+ * Test class for class {@link AS4ExecutionHelper}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4ExecutionHelperTest
+{
+  @Rule
+  public final TestRule m_aTestRule = new AS4TestRule ();
+
+  @Test
+  public void testDefaultMode () throws Exception
+  {
+    assertEquals (EAS4ExecutionMode.PLATFORM_THREADS, AS4Configuration.getExecutionMode ());
+    assertFalse (AS4ExecutionHelper.isUseVirtualThreads ());
+    assertNull (AS4ExecutionHelper.getVirtualThreadExecutorOrNull ());
+    assertNotNull (AS4ExecutionHelper.getDefaultAsyncExecutor ());
+    // Never block the common pool
+    assertNotSame (ForkJoinPool.commonPool (), AS4ExecutionHelper.getDefaultAsyncExecutor ());
+    assertSame (AS4ExecutionHelper.getPlatformThreadExecutor (), AS4ExecutionHelper.getDefaultAsyncExecutor ());
+    final CompletableFuture <String> aName = CompletableFuture.supplyAsync ( () -> Thread.currentThread ().getName (),
+                                                                             AS4ExecutionHelper.getDefaultAsyncExecutor ());
+    assertTrue (aName.get (10, TimeUnit.SECONDS).startsWith ("phase4-async-"));
+
+    final CountDownLatch aLatch = new CountDownLatch (1);
+    final Thread aThread = AS4ExecutionHelper.newThread ("phase4-test", aLatch::countDown);
+    assertEquals ("phase4-test", aThread.getName ());
+    assertTrue (aThread.isDaemon ());
+    aThread.start ();
+    assertTrue (aLatch.await (10, TimeUnit.SECONDS));
+
+    final AtomicInteger aCounter = new AtomicInteger (0);
+    AS4ExecutionHelper.runAsync ("test", aCounter::incrementAndGet).get (10, TimeUnit.SECONDS);
+    assertEquals (1, aCounter.get ());
+  }
+
+  @Test
+  public void testExecutionModeIDs ()
+  {
+    assertEquals (EAS4ExecutionMode.VIRTUAL_THREADS, EAS4ExecutionMode.getFromIDOrNull ("virtual"));
+    assertEquals (EAS4ExecutionMode.PLATFORM_THREADS, EAS4ExecutionMode.getFromIDOrNull ("platform"));
+    assertNull (EAS4ExecutionMode.getFromIDOrNull ("foo"));
+  }
+}
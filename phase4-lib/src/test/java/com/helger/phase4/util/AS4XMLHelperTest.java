@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.xml.XMLFactory;
+
+/**
+ * Test class for class {@link AS4XMLHelper}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4XMLHelperTest
+{
+  @Test
+  public void testSerializeVariantsAreEqual () throws Exception
+  {
+    final Document aDoc = XMLFactory.newDocument ();
+    final Element eRoot = (Element) aDoc.appendChild (aDoc.createElementNS ("urn:test", "t:Root"));
+    eRoot.setAttribute ("id", "a");
+    eRoot.setTextContent ("äöü");
+
+    final String sXML = AS4XMLHelper.serializeXML (aDoc);
+    assertTrue (sXML, sXML.contains ("äöü"));
+
+    final byte [] aBytes = AS4XMLHelper.serializeXMLToBytes (aDoc);
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+    {
+      AS4XMLHelper.serializeXML (aDoc, aBAOS);
+      assertArrayEquals (aBytes, aBAOS.toByteArray ());
+    }
+    assertEquals (sXML, new String (aBytes, AS4XMLHelper.XWS.getCharset ()));
+
+    // Serializing again with the reused transformer must give the same result
+    assertEquals (sXML, AS4XMLHelper.serializeXML (aDoc));
+  }
+
+  @Test
+  public void testConcurrentUsage () throws Exception
+  {
+    final ExecutorService aES = Executors.newFixedThreadPool (4);
+    try
+    {
+      final ICommonsList <Future <Boolean>> aFutures = new CommonsArrayList <> ();
+      for (int i = 0; i < 100; ++i)
+      {
+        final String sValue = "value" + i;
+        aFutures.add (aES.submit ( () -> {
+          final Document aDoc = XMLFactory.newDocument ();
+          aDoc.appendChild (aDoc.createElementNS ("urn:test", "Root")).setTextContent (sValue);
+          return Boolean.valueOf (AS4XMLHelper.serializeXML (aDoc).contains (">" + sValue + "<"));
+        }));
+      }
+      for (final Future <Boolean> aFuture : aFutures)
+        assertTrue (aFuture.get ().booleanValue ());
+    }
+    finally
+    {
+      aES.shutdown ();
+    }
+  }
+}
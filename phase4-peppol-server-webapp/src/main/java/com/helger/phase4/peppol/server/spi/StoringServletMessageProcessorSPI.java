@@ -17,7 +17,11 @@
 package com.helger.phase4.peppol.server.spi;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.security.cert.X509Certificate;
 
 import javax.annotation.Nonnull;
@@ -32,10 +36,7 @@ import com.helger.commons.annotation.IsSPIImplementation;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.http.HttpHeaderMap;
-import com.helger.commons.io.file.FileHelper;
 import com.helger.commons.io.file.SimpleFileIO;
-import com.helger.commons.io.stream.StreamHelper;
-import com.helger.commons.mutable.MutableLong;
 import com.helger.phase4.attachment.WSS4JAttachment;
 import com.helger.phase4.ebms3header.Ebms3Error;
 import com.helger.phase4.ebms3header.Ebms3SignalMessage;
@@ -120,34 +121,25 @@ public class StoringServletMessageProcessorSPI implements IAS4ServletMessageProc
     final File aFile = StorageHelper.getStorageFile (aMessageMetadata, ".attachment" + nIndex);
     LOGGER.info ("Start writing incoming Attachment " + nIndex + " to '" + aFile.getAbsolutePath () + "'");
 
-    final MutableLong aCopyCount = new MutableLong (0);
-    if (StreamHelper.copyByteStream ()
-                    .from (aIncomingAttachment.getInputStreamProvider ().getInputStream ())
-                    .closeFrom (true)
-                    .to (FileHelper.getOutputStream (aFile))
-                    .closeTo (true)
-                    .copyByteCount (aCopyCount)
-                    .build ()
-                    .isFailure ())
-    {
-      LOGGER.error ("Failed to write Incoming Attachment " +
-                    nIndex +
-                    " to '" +
-                    aFile.getAbsolutePath () +
-                    "' (" +
-                    aCopyCount.longValue () +
-                    " bytes)");
-    }
-    else
+    // Spooled attachments are copied without passing through the Java heap
+    try (final FileChannel aDst = FileChannel.open (aFile.toPath (),
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.WRITE))
     {
+      final long nCopyCount = aIncomingAttachment.transferSourceTo (aDst);
       LOGGER.info ("Wrote Incoming Attachment " +
                    nIndex +
                    " to '" +
                    aFile.getAbsolutePath () +
                    "' (" +
-                   aCopyCount.longValue () +
+                   nCopyCount +
                    " bytes)");
     }
+    catch (final IOException | UncheckedIOException ex)
+    {
+      LOGGER.error ("Failed to write Incoming Attachment " + nIndex + " to '" + aFile.getAbsolutePath () + "'", ex);
+    }
   }
 
   @Nonnull
@@ -18,11 +18,14 @@ package com.helger.phase4.profile.peppol;
 
 import java.security.GeneralSecurityException;
 
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 
 import org.apache.hc.core5.util.Timeout;
 
+import com.helger.commons.concurrent.SimpleReadWriteLock;
 import com.helger.commons.ws.TrustManagerTrustAll;
 import com.helger.http.tls.ETLSVersion;
 import com.helger.httpclient.HttpClientSettings;
@@ -44,21 +47,43 @@ public class Phase4PeppolHttpClientSettings extends HttpClientSettings
   // 2 minutes according new Peppol SLAs
   public static final Timeout DEFAULT_PEPPOL_RESPONSE_TIMEOUT = Timeout.ofMinutes (2);
 
-  public Phase4PeppolHttpClientSettings ()
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  // Shared by all instances, so that TLS sessions can be resumed
+  @GuardedBy ("RW_LOCK")
+  private static SSLContext s_aSharedSSLContext;
+
+  @Nonnull
+  private static SSLContext _getSharedSSLContext ()
   {
-    try
-    {
-      // Peppol requires TLS v1.2
-      final SSLContext aSSLContext = SSLContext.getInstance (ETLSVersion.TLS_12.getID ());
-      // But we're basically trusting all hosts - the exact list is hard to
-      // determine
-      aSSLContext.init (null, new TrustManager [] { new TrustManagerTrustAll (false) }, null);
-      setSSLContext (aSSLContext);
-    }
-    catch (final GeneralSecurityException ex)
+    SSLContext ret = RW_LOCK.readLockedGet ( () -> s_aSharedSSLContext);
+    if (ret == null)
     {
-      throw new IllegalStateException ("Failed to initialize SSLContext for Phase4PeppolHttpClientSettings", ex);
+      ret = RW_LOCK.writeLockedGet ( () -> {
+        if (s_aSharedSSLContext == null)
+        {
+          try
+          {
+            // Peppol requires TLS v1.2
+            final SSLContext aSSLContext = SSLContext.getInstance (ETLSVersion.TLS_12.getID ());
+            // But we're basically trusting all hosts - the exact list is hard
+            // to determine
+            aSSLContext.init (null, new TrustManager [] { new TrustManagerTrustAll (false) }, null);
+            s_aSharedSSLContext = aSSLContext;
+          }
+          catch (final GeneralSecurityException ex)
+          {
+            throw new IllegalStateException ("Failed to initialize SSLContext for Phase4PeppolHttpClientSettings", ex);
+          }
+        }
+        return s_aSharedSSLContext;
+      });
     }
+    return ret;
+  }
+
+  public Phase4PeppolHttpClientSettings ()
+  {
+    setSSLContext (_getSharedSSLContext ());
 
     setConnectionRequestTimeout (DEFAULT_PEPPOL_CONNECTION_REQUEST_TIMEOUT);
     setConnectTimeout (DEFAULT_PEPPOL_CONNECT_TIMEOUT);